@@ -8,7 +8,9 @@
 package org.jsr107.tck.event;
 
 import org.jsr107.tck.support.CacheClient;
+import org.jsr107.tck.support.Client;
 import org.jsr107.tck.support.Operation;
+import org.jsr107.tck.support.Server;
 
 import javax.cache.event.CacheEntryCreatedListener;
 import javax.cache.event.CacheEntryEvent;
@@ -21,12 +23,32 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 /**
  * A {@link javax.cache.event.CacheEntryListener} that delegates requests to a
  * {@link org.jsr107.tck.event.CacheEntryListenerServer}. Added to support testing TCK in a distributed
  * environment.
+ * <p>
+ * The events of each callback are sent to the {@link CacheEntryListenerServer}
+ * in batches of at most the batch size, configured with the
+ * {@value #BATCH_SIZE_PROPERTY} system property when not specified, each of
+ * which is delivered to the server's listeners in a single callback, so that
+ * listeners consume events remotely as they would locally.
+ * <p>
+ * For asynchronous listeners, a positive in-flight window, configured with the
+ * {@value #WINDOW_PROPERTY} system property when not specified, selects
+ * fire-and-forget forwarding: batches are pipelined over a dedicated
+ * connection, preserving their order, without waiting for each to be
+ * acknowledged.  Once the window of batches is unacknowledged, the client
+ * waits on a barrier for them to be delivered, as {@link #flush()} does.
+ * Failures of the server's listeners are then logged by the server rather
+ * than thrown.  The events of synchronous listeners, which must be delivered
+ * before the mutation that caused them returns, are always acknowledged, so
+ * the client must be told whether it's registered as a synchronous listener,
+ * as it is unless specified otherwise.
  *
  * @param <K> the type of keys
  * @param <V> the type of values
@@ -38,23 +60,186 @@ public class CacheEntryListenerClient<K, V> extends CacheClient
   CacheEntryRemovedListener<K, V>, CacheEntryExpiredListener<K, V> {
 
   /**
-   * Constructs a {@link CacheEntryListenerClient}.
+   * The system property specifying the maximum number of events sent to the
+   * {@link CacheEntryListenerServer} in a batch.
+   */
+  public static final String BATCH_SIZE_PROPERTY = "org.jsr107.tck.event.batchSize";
+
+  /**
+   * The default maximum number of events in a batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /**
+   * The system property specifying the maximum number of batches forwarded
+   * without being acknowledged, 0 for each batch to be acknowledged.
+   */
+  public static final String WINDOW_PROPERTY = "org.jsr107.tck.event.window";
+
+  /**
+   * The maximum number of events sent in a batch.
+   */
+  private final int batchSize;
+
+  /**
+   * The maximum number of batches forwarded without being acknowledged, or
+   * 0 when each batch is acknowledged.
+   */
+  private final int window;
+
+  /**
+   * Is the client registered as a synchronous listener?
+   */
+  private final boolean synchronous;
+
+  /**
+   * The {@link Client} forwarding batches without acknowledgement, created
+   * when first required.
+   */
+  private transient Client forwarder;
+
+  /**
+   * The number of batches forwarded since the last barrier.
+   */
+  private transient int unacknowledged;
+
+  /**
+   * Constructs a {@link CacheEntryListenerClient} for a synchronous listener,
+   * using the batch size configured with the {@value #BATCH_SIZE_PROPERTY}
+   * system property.
    *
    * @param address the {@link java.net.InetAddress} on which to connect to the
    * {@link org.jsr107.tck.event.CacheEntryListenerServer}
    * @param port    the port to which to connect to the {@link org.jsr107.tck.event.CacheEntryListenerServer}
    */
   public CacheEntryListenerClient(InetAddress address, int port) {
+    this(address, port, true);
+  }
+
+  /**
+   * Constructs a {@link CacheEntryListenerClient} using the batch size and
+   * window configured with the {@value #BATCH_SIZE_PROPERTY} and
+   * {@value #WINDOW_PROPERTY} system properties, the latter only applying to
+   * an asynchronous listener.
+   *
+   * @param address     the {@link java.net.InetAddress} on which to connect to the
+   * {@link org.jsr107.tck.event.CacheEntryListenerServer}
+   * @param port        the port to which to connect to the {@link org.jsr107.tck.event.CacheEntryListenerServer}
+   * @param synchronous is the client registered as a synchronous listener?
+   */
+  public CacheEntryListenerClient(InetAddress address, int port, boolean synchronous) {
+    this(address, port, Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE),
+        Integer.getInteger(WINDOW_PROPERTY, 0), synchronous);
+  }
+
+  /**
+   * Constructs a {@link CacheEntryListenerClient} for a synchronous listener.
+   *
+   * @param address   the {@link java.net.InetAddress} on which to connect to the
+   * {@link org.jsr107.tck.event.CacheEntryListenerServer}
+   * @param port      the port to which to connect to the {@link org.jsr107.tck.event.CacheEntryListenerServer}
+   * @param batchSize the maximum number of events sent in a batch
+   */
+  public CacheEntryListenerClient(InetAddress address, int port, int batchSize) {
+    this(address, port, batchSize, 0, true);
+  }
+
+  /**
+   * Constructs a {@link CacheEntryListenerClient}.
+   *
+   * @param address     the {@link java.net.InetAddress} on which to connect to the
+   * {@link org.jsr107.tck.event.CacheEntryListenerServer}
+   * @param port        the port to which to connect to the {@link org.jsr107.tck.event.CacheEntryListenerServer}
+   * @param batchSize   the maximum number of events sent in a batch
+   * @param window      the maximum number of batches of an asynchronous listener
+   *                    forwarded without being acknowledged, or 0 for each batch
+   *                    to be acknowledged
+   * @param synchronous is the client registered as a synchronous listener,
+   *                    whose batches are always acknowledged?
+   */
+  public CacheEntryListenerClient(InetAddress address, int port, int batchSize, int window, boolean synchronous) {
     super(address, port);
 
-    this.client = null;
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be positive, not " + batchSize);
+    }
+    if (window < 0) {
+      throw new IllegalArgumentException("The window can't be negative: " + window);
+    }
+    this.batchSize = batchSize;
+    this.window = window;
+    this.synchronous = synchronous;
+  }
+
+  /**
+   * Obtains the maximum number of events sent in a batch.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Obtains the maximum number of batches forwarded without being acknowledged.
+   *
+   * @return the window, or 0 when each batch is acknowledged
+   */
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * Determines whether the client is registered as a synchronous listener,
+   * whose batches are always acknowledged, whatever the window.
+   *
+   * @return <code>true</code> when synchronous
+   */
+  public boolean isSynchronous() {
+    return synchronous;
+  }
+
+  /**
+   * Waits until every batch forwarded without acknowledgement has been
+   * delivered to the listeners of the {@link CacheEntryListenerServer}.
+   *
+   * @throws CacheEntryListenerException when the source of a batch forwarded
+   *                                     since the last flush couldn't be resolved
+   */
+  public synchronized void flush() {
+    if (forwarder != null && unacknowledged > 0) {
+      try {
+        forwarder.invoke(new BarrierOperation());
+      } finally {
+        unacknowledged = 0;
+      }
+    }
+  }
+
+  /**
+   * Flushes and closes the connection forwarding batches, if any, then
+   * closes the pooled connections.
+   */
+  @Override
+  public synchronized void close() {
+    try {
+      if (forwarder != null) {
+        try {
+          flush();
+          forwarder.invoke(Server.CLOSE_OPERATION);
+        } finally {
+          forwarder.close();
+          forwarder = null;
+        }
+      }
+    } finally {
+      super.close();
+    }
   }
 
   @Override
   public void onCreated(Iterable<CacheEntryEvent<? extends K, ? extends V>> cacheEntryEvents) throws CacheEntryListenerException {
-    for (CacheEntryEvent<? extends K, ? extends V> event : cacheEntryEvents) {
-      getClient().invoke(new OnCacheEntryEventHandler<K, V>(event));
-    }
+    dispatch(cacheEntryEvents);
   }
 
   @Override
@@ -63,41 +248,100 @@ public class CacheEntryListenerClient<K, V> extends CacheClient
     // since ExpiryEvents are processed asynchronously, this may cause issues.
     // the test do not currently delay waiting for asynchronous expiry events to complete processing.
     // not breaking anything now, so leaving in for time being.
-    for (CacheEntryEvent<? extends K, ? extends V> event : cacheEntryEvents) {
-      getClient().invoke(new OnCacheEntryEventHandler<K, V>(event));
-    }
+    dispatch(cacheEntryEvents);
   }
 
   @Override
   public void onRemoved(Iterable<CacheEntryEvent<? extends K, ? extends V>> cacheEntryEvents) throws CacheEntryListenerException {
-    for (CacheEntryEvent<? extends K, ? extends V> event : cacheEntryEvents) {
-      getClient().invoke(new OnCacheEntryEventHandler<K, V>(event));
-    }
+    dispatch(cacheEntryEvents);
   }
 
   @Override
   public void onUpdated(Iterable<CacheEntryEvent<? extends K, ? extends V>> cacheEntryEvents)
     throws CacheEntryListenerException {
+    dispatch(cacheEntryEvents);
+  }
+
+  /**
+   * Sends events to the server in batches of at most the batch size, a batch
+   * also ending when the type or source of the events changes.
+   *
+   * @param cacheEntryEvents the events to send
+   */
+  private void dispatch(Iterable<CacheEntryEvent<? extends K, ? extends V>> cacheEntryEvents) {
+    List<CacheEntryEvent<? extends K, ? extends V>> batch = new ArrayList<>();
     for (CacheEntryEvent<? extends K, ? extends V> event : cacheEntryEvents) {
-      getClient().invoke(new OnCacheEntryEventHandler<K, V>(event));
+      if (!batch.isEmpty()) {
+        CacheEntryEvent<? extends K, ? extends V> first = batch.get(0);
+        if (batch.size() == batchSize
+            || first.getEventType() != event.getEventType() || first.getSource() != event.getSource()) {
+          send(batch);
+          batch = new ArrayList<>();
+        }
+      }
+      batch.add(event);
+    }
+
+    if (!batch.isEmpty()) {
+      send(batch);
+    }
+  }
+
+  /**
+   * Sends a batch of events, waiting for it to be acknowledged unless
+   * forwarding the events of an asynchronous listener without
+   * acknowledgement.
+   *
+   * @param batch the events to send
+   */
+  private void send(List<CacheEntryEvent<? extends K, ? extends V>> batch) {
+    if (synchronous || window == 0) {
+      invoke(new OnCacheEntryEventHandler<K, V>(batch, true));
+    } else {
+      forward(batch);
     }
   }
 
   /**
-   * Represent a CacheEntryEvent to dispatch to server.
+   * Forwards a batch of events without waiting for it to be acknowledged,
+   * unless the window of unacknowledged batches is then full.
+   *
+   * @param batch the events to forward
+   */
+  private synchronized void forward(List<CacheEntryEvent<? extends K, ? extends V>> batch) {
+    if (forwarder == null) {
+      try {
+        // a multiplexed connection may process operations concurrently, so use one that preserves their order
+        forwarder = new Client(address, port, false);
+      } catch (IOException e) {
+        throw new CacheEntryListenerException("Failed to connect to forward events", e);
+      }
+    }
+
+    forwarder.invoke(new OnCacheEntryEventHandler<K, V>(batch, false));
+    if (++unacknowledged >= window) {
+      flush();
+    }
+  }
+
+  /**
+   * Represent a batch of CacheEntryEvents of the same type and source to dispatch to server.
    * @param <K>
    * @param <V>
    */
   private static class OnCacheEntryEventHandler<K, V> implements Operation<Object> {
-    private CacheEntryEvent event;
+    private List<CacheEntryEvent<? extends K, ? extends V>> events;
+    private boolean acknowledged;
 
-    public OnCacheEntryEventHandler(CacheEntryEvent<? extends K, ? extends V> event) {
-      this.event = event;
+    public OnCacheEntryEventHandler(List<CacheEntryEvent<? extends K, ? extends V>> events, boolean acknowledged) {
+      this.events = events;
+      this.acknowledged = acknowledged;
     }
 
     @Override
     public String getType() {
-      return event.getEventType().name();
+      String type = events.get(0).getEventType().name();
+      return acknowledged ? type : CacheEntryListenerServer.UNACKNOWLEDGED_PREFIX + type;
     }
 
     @Override
@@ -106,31 +350,67 @@ public class CacheEntryListenerClient<K, V> extends CacheClient
       Object result = null;
       try {
         // serialize components of source since source is definitely not serializable.
-        // use these two components to resolve source in server.
-        oos.writeUTF(event.getSource().getName());
-        oos.writeObject(event.getSource().getCacheManager().getURI());
-
-        // Serialize rest of CacheEntryEvent
-        oos.writeObject(event.getKey());
-        oos.writeObject(event.getValue());
-        oos.writeObject(event.getOldValue());
-        oos.writeBoolean(event.isOldValueAvailable());
+        // use these two components to resolve source in server, once for the batch.
+        CacheEntryEvent<? extends K, ? extends V> first = events.get(0);
+        oos.writeUTF(first.getSource().getName());
+        CODEC.writeObject(oos, first.getSource().getCacheManager().getURI());
+
+        // Serialize rest of each CacheEntryEvent
+        oos.writeInt(events.size());
+        for (CacheEntryEvent<? extends K, ? extends V> event : events) {
+          CODEC.writeObject(oos, event.getKey());
+          CODEC.writeObject(oos, event.getValue());
+          CODEC.writeObject(oos, event.getOldValue());
+          oos.writeBoolean(event.isOldValueAvailable());
+        }
         // ensure everything is written to the stream before blocking, waiting for a result
         oos.flush();
 
-        result = ois.readObject();
+        if (!acknowledged) {
+          return null;
+        }
+        result = CODEC.readObject(ois);
       } catch (Throwable t) {
         t.printStackTrace();
       }
-      if (result instanceof CacheEntryListenerException) {
-        throw ((CacheEntryListenerException)result);
-      }
-      if (result instanceof AssertionError) {
-        throw ((AssertionError) result);
-      }
+      rethrow(result);
 
       // nothing to return.
       return null;
     }
   }
+
+  /**
+   * Rethrows a failure to deliver events returned by the {@link CacheEntryListenerServer},
+   * when a {@link CacheEntryListenerException} or {@link AssertionError}.
+   *
+   * @param result the result returned by the {@link CacheEntryListenerServer}
+   */
+  private static void rethrow(Object result) {
+    if (result instanceof CacheEntryListenerException) {
+      throw ((CacheEntryListenerException)result);
+    }
+    if (result instanceof AssertionError) {
+      throw ((AssertionError) result);
+    }
+  }
+
+  /**
+   * The barrier acknowledged once the batches forwarded before it have been
+   * delivered, rethrowing the first failure to resolve their source.
+   */
+  private static class BarrierOperation implements Operation<Void> {
+
+    @Override
+    public String getType() {
+      return CacheEntryListenerServer.BARRIER_TYPE;
+    }
+
+    @Override
+    public Void onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+      oos.flush();
+      rethrow(CODEC.readObject(ois));
+      return null;
+    }
+  }
 }
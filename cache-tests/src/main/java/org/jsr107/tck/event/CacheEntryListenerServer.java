@@ -6,6 +6,7 @@
  */
 package org.jsr107.tck.event;
 
+import org.jsr107.tck.support.BatchStatistics;
 import org.jsr107.tck.support.OperationHandler;
 import org.jsr107.tck.support.Server;
 
@@ -14,6 +15,7 @@ import javax.cache.Caching;
 import javax.cache.event.CacheEntryCreatedListener;
 import javax.cache.event.CacheEntryExpiredListener;
 import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryListenerException;
 import javax.cache.event.CacheEntryRemovedListener;
 import javax.cache.event.CacheEntryUpdatedListener;
 import javax.cache.event.EventType;
@@ -22,13 +24,34 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 
 /**
  * A {@link org.jsr107.tck.support.Server} that handles {@link javax.cache.event.CacheEntryListener} requests from a
  * {@link org.jsr107.tck.event.CacheEntryListenerClient} and delegates them to an underlying
  * {@link javax.cache.event.CacheEntryListener}.
+ * <p>
+ * Each batch of events sent by a {@link org.jsr107.tck.event.CacheEntryListenerClient}
+ * is delivered to each listener in a single callback, the sizes of the batches
+ * being recorded in {@link #getEventBatches()}.
+ * <p>
+ * Events are delivered with the {@link Cache} that is their source, resolved
+ * by name.  A batch whose source can't be resolved isn't delivered, failing
+ * with a {@link CacheEntryListenerException}.
+ * <p>
+ * Batches forwarded by a {@link org.jsr107.tck.event.CacheEntryListenerClient}
+ * in fire-and-forget mode aren't acknowledged, so a failure of a listener is
+ * logged rather than returned.  The client instead periodically waits on a
+ * barrier, which is acknowledged once every batch sent before it on the same
+ * connection has been delivered, returning the first failure since the
+ * previous barrier to resolve the source of a batch.
+ * <p>
+ * Listeners may be added and removed while events are being delivered.  The
+ * registry of listeners is copied on each change, grouping the listeners by
+ * the {@link EventType}s they handle, so that delivery scans an array of the
+ * listeners of its type without locking.
  *
  * @param <K> the type of keys
  * @param <V> the type of values
@@ -37,10 +60,33 @@ import java.util.Set;
  */
 public class CacheEntryListenerServer<K, V> extends Server {
   /**
-   * The underlying {@link javax.cache.event.CacheEntryListener} that will be used to
+   * The prefix of the types of the operations delivering batches of events
+   * without acknowledging them.
+   */
+  static final String UNACKNOWLEDGED_PREFIX = "UNACKNOWLEDGED_";
+
+  /**
+   * The type of the operation acknowledged once every batch of events sent
+   * before it on the same connection has been delivered.
+   */
+  static final String BARRIER_TYPE = "BARRIER";
+
+  /**
+   * The {@link Registry} of the underlying {@link javax.cache.event.CacheEntryListener}s that will be used to
    * listen cache entry events delivered by the {@link org.jsr107.tck.event.CacheEntryListenerClient}s.
    */
-  private Set<CacheEntryListener<K, V>> listeners;
+  private final AtomicReference<Registry> listeners;
+
+  /**
+   * The {@link BatchStatistics} of the batches of events received.
+   */
+  private final BatchStatistics eventBatches = new BatchStatistics();
+
+  /**
+   * The first failure to resolve the source of a batch of events that isn't
+   * acknowledged, since the last barrier.
+   */
+  private final AtomicReference<Throwable> unacknowledgedFailure = new AtomicReference<Throwable>();
 
   /**
    * Constructs an CacheLoaderServer.
@@ -51,12 +97,14 @@ public class CacheEntryListenerServer<K, V> extends Server {
    */
   public CacheEntryListenerServer(int port, Class keyClass, Class valueClass) {
     super(port);
-    this.listeners = new HashSet<CacheEntryListener<K, V>>();
+    this.listeners = new AtomicReference<Registry>(Registry.EMPTY);
 
     // establish the client-server operation handlers
     for (EventType eventType : EventType.values()) {
       addOperationHandler(new CacheEntryEventOperationHandler(eventType, keyClass, valueClass));
+      addOperationHandler(new CacheEntryEventOperationHandler(eventType, keyClass, valueClass, false));
     }
+    addOperationHandler(new BarrierOperationHandler());
   }
 
   /**
@@ -69,15 +117,44 @@ public class CacheEntryListenerServer<K, V> extends Server {
     if (cacheEventListener == null) {
       throw new NullPointerException();
     }
-    this.listeners.add(cacheEventListener);
+    while (true) {
+      Registry registry = listeners.get();
+      if (registry.contains(cacheEventListener)
+          || listeners.compareAndSet(registry, registry.with(cacheEventListener))) {
+        return;
+      }
+    }
   }
 
+  /**
+   * Removes a {@link javax.cache.event.CacheEntryListener} so that the
+   * {@link CacheEntryListenerServer} no longer delivers events to it.
+   *
+   * @param cacheEventListener the {@link javax.cache.event.CacheEntryListener}
+   */
   public void removeCacheEventListener(CacheEntryListener<K, V> cacheEventListener) {
     if (cacheEventListener != null) {
-      listeners.remove(cacheEventListener);
+      while (true) {
+        Registry registry = listeners.get();
+        if (!registry.contains(cacheEventListener)
+            || listeners.compareAndSet(registry, registry.without(cacheEventListener))) {
+          return;
+        }
+      }
     }
   }
 
+  /**
+   * Obtains the {@link BatchStatistics} of the batches of events received
+   * from {@link org.jsr107.tck.event.CacheEntryListenerClient}s, including
+   * the histogram of their sizes.
+   *
+   * @return the {@link BatchStatistics}
+   */
+  public BatchStatistics getEventBatches() {
+    return eventBatches;
+  }
+
   /**
    * The {@link org.jsr107.tck.support.OperationHandler} for a {@link javax.cache.event.CacheEntryListener} handlers.
    */
@@ -86,25 +163,39 @@ public class CacheEntryListenerServer<K, V> extends Server {
     private EventType eventType;
     private Class keyClass;
     private Class valueClass;
+    private boolean acknowledged;
 
     public CacheEntryEventOperationHandler(EventType type, Class keyClass, Class valueClass) {
+      this(type, keyClass, valueClass, true);
+    }
+
+    /**
+     * Constructs a {@link CacheEntryEventOperationHandler}.
+     *
+     * @param type         the {@link EventType} of the events handled
+     * @param keyClass     the class for entry key
+     * @param valueClass   the class for entry value
+     * @param acknowledged should each batch of events be acknowledged once delivered?
+     */
+    public CacheEntryEventOperationHandler(EventType type, Class keyClass, Class valueClass, boolean acknowledged) {
       this.eventType = type;
       this.keyClass = keyClass;
       this.valueClass = valueClass;
+      this.acknowledged = acknowledged;
     }
 
     @Override
     public String getType() {
-      return eventType.name();
+      return acknowledged ? eventType.name() : UNACKNOWLEDGED_PREFIX + eventType.name();
     }
 
     @Override
     public void onProcess(ObjectInputStream ois,
                           ObjectOutputStream oos) throws IOException, ClassNotFoundException {
 
-        // load a CacheEntryEvent
+        // load a batch of CacheEntryEvents from the same source
         String sourceCacheName = ois.readUTF();
-        URI sourceCacheManagerURI = (URI) ois.readObject();
+        URI sourceCacheManagerURI = (URI) CODEC.readObject(ois);
         Cache source = null;
           try {
             source =
@@ -114,53 +205,227 @@ public class CacheEntryListenerServer<K, V> extends Server {
             t.printStackTrace();
           }
         try {
-          TestCacheEntryEvent event = new TestCacheEntryEvent(source, eventType);
-          event.readObject(ois);
+          int count = ois.readInt();
+          eventBatches.record(count);
 
-          runHandlers(eventType, event);
+          ArrayList<TestCacheEntryEvent> events = new ArrayList<TestCacheEntryEvent>(count);
+          for (int i = 0; i < count; i++) {
+            if (source == null) {
+              // consume the events of a source that couldn't be resolved
+              CODEC.readObject(ois);
+              CODEC.readObject(ois);
+              CODEC.readObject(ois);
+              ois.readBoolean();
+            } else {
+              TestCacheEntryEvent event = new TestCacheEntryEvent(source, eventType);
+              event.readObject(ois);
+              events.add(event);
+            }
+          }
+          if (source == null) {
+            CacheEntryListenerException unresolved = new CacheEntryListenerException(
+                "Unable to resolve the source cache " + sourceCacheName + " of " + sourceCacheManagerURI);
+            if (!acknowledged) {
+              unacknowledgedFailure.compareAndSet(null, unresolved);
+            }
+            throw unresolved;
+          }
+
+          runHandlers(eventType, events);
 
           // let client know completed synchronous communication
-          oos.writeObject(null);
+          if (acknowledged) {
+            CODEC.writeObject(oos, null);
+          }
         } catch (Throwable t) {
-          oos.writeObject(t);
+          if (acknowledged) {
+            CODEC.writeObject(oos, t);
+          } else {
+            LOG.log(Level.WARNING, "Failed to deliver unacknowledged " + eventType + " events", t);
+          }
         }
       }
 
   }
 
-  private void runHandlers(EventType eventType, TestCacheEntryEvent event) {
-    ArrayList events = new ArrayList(1);
-    events.add(event);
+  /**
+   * The {@link OperationHandler} acknowledging a barrier, which it processes
+   * after the batches of events sent before it on the same connection, with
+   * the first failure to resolve the source of an unacknowledged batch since
+   * the last barrier, or <code>null</code>.
+   */
+  private class BarrierOperationHandler implements OperationHandler {
 
-    for (CacheEntryListener listener : listeners) {
-      switch (eventType) {
-        case CREATED :
-          if (listener instanceof CacheEntryCreatedListener) {
-            ((CacheEntryCreatedListener) listener).onCreated(events);
-          }
-          break;
+    @Override
+    public String getType() {
+      return BARRIER_TYPE;
+    }
 
-        case UPDATED:
-          if (listener instanceof CacheEntryUpdatedListener) {
-            ((CacheEntryUpdatedListener) listener).onUpdated(events);
-          }
-          break;
+    @Override
+    public void onProcess(ObjectInputStream ois, ObjectOutputStream oos) throws IOException {
+      CODEC.writeObject(oos, unacknowledgedFailure.getAndSet(null));
+    }
+  }
 
-        case REMOVED:
-          if (listener instanceof CacheEntryRemovedListener) {
-            ((CacheEntryRemovedListener) listener).onRemoved(events);
-          }
-          break;
+  /**
+   * Delivers a batch of events to the listeners of its {@link EventType}.
+   *
+   * @param eventType the {@link EventType} of the events
+   * @param events    the events
+   */
+  private void runHandlers(EventType eventType, ArrayList events) {
+    CacheEntryListener[] handlers = listeners.get().of(eventType);
+    switch (eventType) {
+      case CREATED:
+        for (CacheEntryListener listener : handlers) {
+          ((CacheEntryCreatedListener) listener).onCreated(events);
+        }
+        break;
 
-        case EXPIRED:
-          if (listener instanceof CacheEntryExpiredListener) {
-            ((CacheEntryExpiredListener) listener).onExpired(events);
+      case UPDATED:
+        for (CacheEntryListener listener : handlers) {
+          ((CacheEntryUpdatedListener) listener).onUpdated(events);
+        }
+        break;
+
+      case REMOVED:
+        for (CacheEntryListener listener : handlers) {
+          ((CacheEntryRemovedListener) listener).onRemoved(events);
+        }
+        break;
+
+      case EXPIRED:
+        for (CacheEntryListener listener : handlers) {
+          ((CacheEntryExpiredListener) listener).onExpired(events);
+        }
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  /**
+   * An immutable registry of listeners, which is replaced rather than
+   * changed, holding the listeners of each {@link EventType} in an array.
+   */
+  private static final class Registry {
+
+    /**
+     * The {@link Registry} without listeners.
+     */
+    private static final Registry EMPTY = new Registry(new CacheEntryListener[0]);
+
+    /**
+     * The listeners, in the order in which they were added.
+     */
+    private final CacheEntryListener[] all;
+
+    /**
+     * The listeners of each {@link EventType}, indexed by its ordinal.
+     */
+    private final CacheEntryListener[][] byEventType;
+
+    /**
+     * Constructs a {@link Registry}.
+     *
+     * @param all the listeners, which the {@link Registry} owns
+     */
+    private Registry(CacheEntryListener[] all) {
+      this.all = all;
+      this.byEventType = new CacheEntryListener[EventType.values().length][];
+      for (EventType eventType : EventType.values()) {
+        ArrayList<CacheEntryListener> handlers = new ArrayList<CacheEntryListener>();
+        for (CacheEntryListener listener : all) {
+          if (handles(listener, eventType)) {
+            handlers.add(listener);
           }
-          break;
+        }
+        byEventType[eventType.ordinal()] = handlers.toArray(new CacheEntryListener[handlers.size()]);
+      }
+    }
 
+    /**
+     * Determines whether a listener handles events of an {@link EventType}.
+     *
+     * @param listener  the listener
+     * @param eventType the {@link EventType}
+     * @return <code>true</code> when the listener handles the events
+     */
+    private static boolean handles(CacheEntryListener listener, EventType eventType) {
+      switch (eventType) {
+        case CREATED:
+          return listener instanceof CacheEntryCreatedListener;
+        case UPDATED:
+          return listener instanceof CacheEntryUpdatedListener;
+        case REMOVED:
+          return listener instanceof CacheEntryRemovedListener;
+        case EXPIRED:
+          return listener instanceof CacheEntryExpiredListener;
         default:
-          break;
+          return false;
+      }
+    }
+
+    /**
+     * Obtains the listeners of an {@link EventType}.
+     *
+     * @param eventType the {@link EventType}
+     * @return the listeners, which must not be changed
+     */
+    private CacheEntryListener[] of(EventType eventType) {
+      return byEventType[eventType.ordinal()];
+    }
+
+    /**
+     * Determines whether a listener is registered.
+     *
+     * @param listener the listener
+     * @return <code>true</code> when an equal listener is registered
+     */
+    private boolean contains(CacheEntryListener listener) {
+      return indexOf(listener) >= 0;
+    }
+
+    /**
+     * Obtains a {@link Registry} with a listener added.
+     *
+     * @param listener the listener to add
+     * @return a new {@link Registry}
+     */
+    private Registry with(CacheEntryListener listener) {
+      CacheEntryListener[] listeners = Arrays.copyOf(all, all.length + 1);
+      listeners[all.length] = listener;
+      return new Registry(listeners);
+    }
+
+    /**
+     * Obtains a {@link Registry} with a listener removed.
+     *
+     * @param listener the listener to remove, which is registered
+     * @return a new {@link Registry}
+     */
+    private Registry without(CacheEntryListener listener) {
+      int index = indexOf(listener);
+      CacheEntryListener[] listeners = new CacheEntryListener[all.length - 1];
+      System.arraycopy(all, 0, listeners, 0, index);
+      System.arraycopy(all, index + 1, listeners, index, all.length - index - 1);
+      return new Registry(listeners);
+    }
+
+    /**
+     * Obtains the position of a listener.
+     *
+     * @param listener the listener
+     * @return the position of an equal listener, or -1 when not registered
+     */
+    private int indexOf(CacheEntryListener listener) {
+      for (int i = 0; i < all.length; i++) {
+        if (all[i].equals(listener)) {
+          return i;
+        }
       }
+      return -1;
     }
   }
 }
@@ -0,0 +1,188 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.event;
+
+import org.jsr107.tck.support.StripedCounter;
+
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryUpdatedListener;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A listener that checks that the created and updated events of each key are
+ * delivered in the order in which their mutations were made.
+ * <p>
+ * The values put are sequence numbers obtained from {@link #nextSequence()},
+ * which the mutating threads share, so the mutations of a key made by one
+ * thread at a time have increasing sequence numbers.  On delivery the
+ * sequence number of each event is compared with the highest delivered for
+ * its key, without locking.  An event whose sequence number isn't higher is a
+ * violation, the difference being its reorder distance, measured in
+ * mutations made across all keys.
+ *
+ * @param <K> the type of keys
+ */
+public class OrderingCheckingListener<K> implements CacheEntryCreatedListener<K, Long>,
+    CacheEntryUpdatedListener<K, Long> {
+
+  /**
+   * The generator of sequence numbers.
+   */
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * The highest sequence number delivered for each key.
+   */
+  private final ConcurrentMap<Object, AtomicLong> delivered = new ConcurrentHashMap<Object, AtomicLong>();
+
+  /**
+   * The number of events delivered.
+   */
+  private final StripedCounter eventCount = new StripedCounter();
+
+  /**
+   * The number of events delivered out of order.
+   */
+  private final StripedCounter violationCount = new StripedCounter();
+
+  /**
+   * The sum of the reorder distances of the violations.
+   */
+  private final StripedCounter totalDistance = new StripedCounter();
+
+  /**
+   * The largest reorder distance of the violations.
+   */
+  private final AtomicLong maximumDistance = new AtomicLong();
+
+  /**
+   * Obtains the sequence number to put for a mutation that is about to be made.
+   *
+   * @return the next sequence number, starting at one
+   */
+  public long nextSequence() {
+    return sequence.incrementAndGet();
+  }
+
+  @Override
+  public void onCreated(Iterable<CacheEntryEvent<? extends K, ? extends Long>> events)
+      throws CacheEntryListenerException {
+    check(events);
+  }
+
+  @Override
+  public void onUpdated(Iterable<CacheEntryEvent<? extends K, ? extends Long>> events)
+      throws CacheEntryListenerException {
+    check(events);
+  }
+
+  /**
+   * Checks the order of delivered events.
+   *
+   * @param events the events delivered
+   */
+  private void check(Iterable<CacheEntryEvent<? extends K, ? extends Long>> events) {
+    for (CacheEntryEvent<? extends K, ? extends Long> event : events) {
+      check(event.getKey(), event.getValue());
+    }
+  }
+
+  /**
+   * Checks that a sequence number is the highest delivered for its key.
+   *
+   * @param key            the key of the event
+   * @param sequenceNumber the sequence number of the event
+   */
+  private void check(Object key, long sequenceNumber) {
+    eventCount.increment();
+
+    AtomicLong highest = delivered.get(key);
+    if (highest == null) {
+      highest = new AtomicLong();
+      AtomicLong existing = delivered.putIfAbsent(key, highest);
+      highest = existing == null ? highest : existing;
+    }
+
+    while (true) {
+      long current = highest.get();
+      if (sequenceNumber <= current) {
+        violated(current - sequenceNumber);
+        return;
+      }
+      if (highest.compareAndSet(current, sequenceNumber)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Records a violation.
+   *
+   * @param distance the reorder distance of the violation
+   */
+  private void violated(long distance) {
+    violationCount.increment();
+    totalDistance.add(distance);
+
+    long maximum = maximumDistance.get();
+    while (distance > maximum && !maximumDistance.compareAndSet(maximum, distance)) {
+      maximum = maximumDistance.get();
+    }
+  }
+
+  /**
+   * Obtains the number of events delivered.
+   *
+   * @return the number of events
+   */
+  public long getEventCount() {
+    return eventCount.get();
+  }
+
+  /**
+   * Obtains the number of events delivered no later than an event of the
+   * same key that was mutated after them.  A repeated event is also a
+   * violation, with a distance of zero.
+   *
+   * @return the number of violations
+   */
+  public long getViolationCount() {
+    return violationCount.get();
+  }
+
+  /**
+   * Obtains the largest reorder distance of the violations.
+   *
+   * @return the maximum distance, or 0 when there are no violations
+   */
+  public long getMaximumDistance() {
+    return maximumDistance.get();
+  }
+
+  /**
+   * Obtains the mean reorder distance of the violations.
+   *
+   * @return the mean distance, or 0 when there are no violations
+   */
+  public double getMeanDistance() {
+    long violations = violationCount.get();
+    return violations == 0 ? 0 : (double) totalDistance.get() / violations;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("events=%d, violations=%d, distance mean=%.1f max=%d",
+        getEventCount(), getViolationCount(), getMeanDistance(), getMaximumDistance());
+  }
+}
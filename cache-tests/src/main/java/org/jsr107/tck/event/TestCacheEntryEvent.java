@@ -6,6 +6,9 @@
  */
 package org.jsr107.tck.event;
 
+import org.jsr107.tck.support.Codec;
+import org.jsr107.tck.support.Codecs;
+
 import javax.cache.Cache;
 import javax.cache.event.CacheEntryEvent;
 import javax.cache.event.EventType;
@@ -73,10 +76,11 @@ public class TestCacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
   }
 
   public CacheEntryEvent readObject(ObjectInputStream ois)  {
+    Codec codec = Codecs.getCodec();
     try {
-      key = (K) ois.readObject();
-      value = (V) ois.readObject();
-      oldValue = (V) ois.readObject();
+      key = (K) codec.readObject(ois);
+      value = (V) codec.readObject(ois);
+      oldValue = (V) codec.readObject(ois);
       isOldValueAvailable = ois.readBoolean();
 
       // problem dealing with the next 2 fields of CacheEntryEvent.
@@ -28,8 +28,6 @@ public class ExpiryPolicyClient extends CacheClient implements ExpiryPolicy {
    */
   public ExpiryPolicyClient(InetAddress address, int port) {
     super(address, port);
-
-    this.client = null;
   }
 
   /**
@@ -37,7 +35,7 @@ public class ExpiryPolicyClient extends CacheClient implements ExpiryPolicy {
    */
   @Override
   public Duration getExpiryForCreation() {
-    return getClient().invoke(new GetExpiryOperation(ExpiryPolicyServer.EntryOperation.CREATION));
+    return invoke(new GetExpiryOperation(ExpiryPolicyServer.EntryOperation.CREATION));
   }
 
   /**
@@ -45,7 +43,7 @@ public class ExpiryPolicyClient extends CacheClient implements ExpiryPolicy {
    */
   @Override
   public Duration getExpiryForAccess() {
-    return getClient().invoke(new GetExpiryOperation(ExpiryPolicyServer.EntryOperation.ACCESSED));
+    return invoke(new GetExpiryOperation(ExpiryPolicyServer.EntryOperation.ACCESSED));
   }
 
   /**
@@ -53,7 +51,7 @@ public class ExpiryPolicyClient extends CacheClient implements ExpiryPolicy {
    */
   @Override
   public Duration getExpiryForUpdate() {
-    return getClient().invoke(new GetExpiryOperation(ExpiryPolicyServer.EntryOperation.UPDATED));
+    return invoke(new GetExpiryOperation(ExpiryPolicyServer.EntryOperation.UPDATED));
   }
 
   /**
@@ -84,9 +82,9 @@ public class ExpiryPolicyClient extends CacheClient implements ExpiryPolicy {
     @Override
     public Duration onInvoke(ObjectInputStream ois,
                              ObjectOutputStream oos) throws IOException, ClassNotFoundException {
-      oos.writeObject(entryOperation.name());
+      CODEC.writeObject(oos, entryOperation.name());
 
-      Object o = ois.readObject();
+      Object o = CODEC.readObject(ois);
 
       if (o instanceof RuntimeException) {
         throw (RuntimeException) o;
@@ -99,7 +99,7 @@ public class ExpiryPolicyServer extends Server {
       if (expiryPolicy == null) {
         throw new NullPointerException("The ExpiryPolicy for the ExpiryPolicyServer has not be set");
       } else {
-        EntryOperation entryOperation = EntryOperation.valueOf((String)ois.readObject());
+        EntryOperation entryOperation = EntryOperation.valueOf((String)CODEC.readObject(ois));
 
         try {
           Duration duration;
@@ -117,9 +117,9 @@ public class ExpiryPolicyServer extends Server {
               duration = null;
               break;
           }
-          oos.writeObject(duration);
+          CODEC.writeObject(oos, duration);
         } catch (Exception e) {
-          oos.writeObject(e);
+          CODEC.writeObject(oos, e);
         }
       }
     }
@@ -6,8 +6,9 @@
  */
 package org.jsr107.tck.integration;
 
+import org.jsr107.tck.support.AsyncOperation;
 import org.jsr107.tck.support.CacheClient;
-import org.jsr107.tck.support.Operation;
+import org.jsr107.tck.support.OperationFuture;
 
 import javax.cache.Cache;
 import javax.cache.integration.CacheLoader;
@@ -21,12 +22,15 @@ import java.util.concurrent.ExecutionException;
 
 /**
  * A {@link CacheLoader} that delegates requests to a {@link CacheLoaderServer}.
+ * <p>
+ * As a {@link StreamingCacheLoader}, entries loaded by a {@link CacheLoaderServer}
+ * may be handed on one at a time as they arrive, rather than collected in a {@link Map}.
  *
  * @param <K> the type of keys
  * @param <V> the type of values
  * @author Brian Oliver
  */
-public class CacheLoaderClient<K, V> extends CacheClient implements CacheLoader<K, V> {
+public class CacheLoaderClient<K, V> extends CacheClient implements StreamingCacheLoader<K, V> {
 
   /**
    * Constructs a {@link CacheLoaderClient}.
@@ -36,13 +40,11 @@ public class CacheLoaderClient<K, V> extends CacheClient implements CacheLoader<
    */
   public CacheLoaderClient(InetAddress address, int port) {
     super(address, port);
-
-    this.client = null;
   }
 
   @Override
   public V load(final K key) {
-    return getClient().invoke(new LoadOperation<K, V>(key));
+    return invoke(new LoadOperation<K, V>(key));
   }
 
   /**
@@ -50,7 +52,35 @@ public class CacheLoaderClient<K, V> extends CacheClient implements CacheLoader<
    */
   @Override
   public Map<K, V> loadAll(Iterable<? extends K> keys) {
-    return getClient().invoke(new LoadAllOperation<K, V>(keys));
+    return invoke(new LoadAllOperation<K, V>(keys, null));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void loadAll(Iterable<? extends K> keys, EntryConsumer<K, V> consumer) {
+    invoke(new LoadAllOperation<K, V>(keys, consumer));
+  }
+
+  /**
+   * Asynchronously loads the value for a key, as {@link #load(Object)} would.
+   *
+   * @param key the key to load
+   * @return the {@link OperationFuture} loaded value
+   */
+  public OperationFuture<V> loadAsync(K key) {
+    return invokeAsync(new LoadOperation<K, V>(key));
+  }
+
+  /**
+   * Asynchronously loads the values for keys, as {@link #loadAll(Iterable)} would.
+   *
+   * @param keys the keys to load
+   * @return the {@link OperationFuture} loaded values
+   */
+  public OperationFuture<Map<K, V>> loadAllAsync(Iterable<? extends K> keys) {
+    return invokeAsync(new LoadAllOperation<K, V>(keys, null));
   }
 
   /**
@@ -60,7 +90,7 @@ public class CacheLoaderClient<K, V> extends CacheClient implements CacheLoader<
    * @param <K> the type of keys
    * @param <V> the type of values
    */
-  private static class LoadOperation<K, V> implements Operation<V> {
+  private static class LoadOperation<K, V> implements AsyncOperation<V> {
     /**
      * The key to load.
      */
@@ -89,9 +119,24 @@ public class CacheLoaderClient<K, V> extends CacheClient implements CacheLoader<
     @Override
     public V onInvoke(ObjectInputStream ois,
                       ObjectOutputStream oos) throws IOException, ClassNotFoundException {
-      oos.writeObject(key);
+      onRequest(oos);
+      return onReply(ois);
+    }
 
-      Object o = ois.readObject();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRequest(ObjectOutputStream oos) throws IOException {
+      CODEC.writeObject(oos, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+      Object o = CODEC.readObject(ois);
 
       if (o instanceof RuntimeException) {
         throw (RuntimeException) o;
@@ -108,19 +153,29 @@ public class CacheLoaderClient<K, V> extends CacheClient implements CacheLoader<
    * @param <K> the type of keys
    * @param <V> the type of values
    */
-  private static class LoadAllOperation<K, V> implements Operation<Map<K, V>> {
+  private static class LoadAllOperation<K, V> implements AsyncOperation<Map<K, V>> {
     /**
      * The keys to load.
      */
     private Iterable<? extends K> keys;
 
+    /**
+     * The {@link StreamingCacheLoader.EntryConsumer} to which to hand on the
+     * loaded entries, or <code>null</code> to return them in a {@link Map}.
+     */
+    private StreamingCacheLoader.EntryConsumer<K, V> consumer;
+
     /**
      * Constructs a {@link LoadAllOperation}.
      *
-     * @param keys the keys to load
+     * @param keys     the keys to load
+     * @param consumer the {@link StreamingCacheLoader.EntryConsumer} to which
+     *                 to hand on the loaded entries, or <code>null</code> to
+     *                 return them in a {@link Map}
      */
-    public LoadAllOperation(Iterable<? extends K> keys) {
+    public LoadAllOperation(Iterable<? extends K> keys, StreamingCacheLoader.EntryConsumer<K, V> consumer) {
       this.keys = keys;
+      this.consumer = consumer;
     }
 
     /**
@@ -137,24 +192,52 @@ public class CacheLoaderClient<K, V> extends CacheClient implements CacheLoader<
     @Override
     public Map<K, V> onInvoke(ObjectInputStream ois, ObjectOutputStream oos)
         throws IOException, ClassNotFoundException, ExecutionException {
+      onRequest(oos);
+      return onReply(ois);
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRequest(ObjectOutputStream oos) throws IOException {
       //send the keys to load
       for(K key : keys) {
-        oos.writeObject(key);
+        CODEC.writeObject(oos, key);
       }
-      oos.writeObject(null);
+      CODEC.writeObject(oos, null);
+    }
 
-      //read the resulting map
-      HashMap<K, V> map = new HashMap<K, V>();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<K, V> onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+      //read the resulting entries, handing them on as they arrive
+      HashMap<K, V> map = consumer == null ? new HashMap<K, V>() : null;
+      RuntimeException consumerFailure = null;
 
-      Object result = ois.readObject();
+      Object result = CODEC.readObject(ois);
       while (result != null && !(result instanceof Exception)) {
         K key = (K)result;
-        V value = (V) ois.readObject();
-
-        map.put(key, value);
+        V value = (V) CODEC.readObject(ois);
+
+        if (consumer == null) {
+          map.put(key, value);
+        } else if (consumerFailure == null) {
+          try {
+            consumer.accept(key, value);
+          } catch (RuntimeException e) {
+            //keep reading so the connection remains usable
+            consumerFailure = e;
+          }
+        }
+
+        result = CODEC.readObject(ois);
+      }
 
-        result = ois.readObject();
+      if (consumerFailure != null) {
+        throw consumerFailure;
       }
 
       if (result instanceof RuntimeException) {
@@ -6,6 +6,7 @@
  */
 package org.jsr107.tck.integration;
 
+import org.jsr107.tck.support.BatchStatistics;
 import org.jsr107.tck.support.OperationHandler;
 import org.jsr107.tck.support.Server;
 
@@ -13,24 +14,67 @@ import javax.cache.integration.CacheLoader;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A {@link Server} that handles {@link CacheLoader} requests from a
  * {@link CacheLoaderClient} and delegates them to an underlying {@link CacheLoader}.
+ * <p>
+ * When the underlying {@link CacheLoader} is a {@link StreamingCacheLoader},
+ * the entries of a {@link CacheLoader#loadAll(Iterable)} are sent to the
+ * {@link CacheLoaderClient} as they are loaded, rather than once all are loaded.
+ * <p>
+ * With a parallelism greater than one, configured with the
+ * {@value #PARALLELISM_PROPERTY} system property or {@link #setParallelism(int)},
+ * the keys of a {@link CacheLoader#loadAll(Iterable)} by a {@link CacheLoader}
+ * that doesn't stream are instead partitioned and each partition loaded on a
+ * {@link ForkJoinPool}, modelling a sharded backing store.  The entries of
+ * each partition are sent as soon as it has been loaded.  A partition that
+ * fails doesn't prevent the others from being sent, after which the failure
+ * is reported.
  *
  * @param <K> the type of keys
  * @param <V> the type of values
  * @author Brian Oliver
  */
 public class CacheLoaderServer<K, V> extends Server {
+  /**
+   * The system property specifying the number of partitions loaded in
+   * parallel for a {@link CacheLoader#loadAll(Iterable)}.
+   */
+  public static final String PARALLELISM_PROPERTY = "org.jsr107.tck.integration.loader.parallelism";
+
   /**
    * The underlying {@link CacheLoader} that will be used to
    * load entries requested by the {@link CacheLoaderClient}s.
    */
   private volatile CacheLoader<K, V> cacheLoader;
 
+  /**
+   * The {@link BatchStatistics} of the batches of keys requested by
+   * {@link CacheLoaderClient}s with {@link CacheLoader#loadAll(Iterable)}.
+   */
+  private final BatchStatistics loadAllBatches = new BatchStatistics();
+
+  /**
+   * The number of partitions loaded in parallel, no more than one meaning
+   * that the keys of a {@link CacheLoader#loadAll(Iterable)} are loaded serially.
+   */
+  private int parallelism;
+
+  /**
+   * The {@link ForkJoinPool} loading partitions, created when first required.
+   */
+  private ForkJoinPool loaderPool;
+
   /**
    * Constructs an {@link CacheLoaderServer} (without a {@link CacheLoader} to
    * which client requests will be delegated).
@@ -56,6 +100,56 @@ public class CacheLoaderServer<K, V> extends Server {
     addOperationHandler(new LoadAllOperationHandler());
 
     this.cacheLoader = cacheLoader;
+    this.parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 1);
+  }
+
+  /**
+   * Sets the number of partitions into which the keys of a
+   * {@link CacheLoader#loadAll(Iterable)} are split, each loaded in parallel.
+   *
+   * @param parallelism the number of partitions, no more than one to load serially
+   */
+  public synchronized void setParallelism(int parallelism) {
+    if (parallelism != this.parallelism && loaderPool != null) {
+      loaderPool.shutdown();
+      loaderPool = null;
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Obtains the number of partitions into which the keys of a
+   * {@link CacheLoader#loadAll(Iterable)} are split.
+   *
+   * @return the parallelism, no more than one when loading serially
+   */
+  public synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Obtains the {@link ForkJoinPool} loading partitions, creating it when first required.
+   *
+   * @return the {@link ForkJoinPool}
+   */
+  private synchronized ForkJoinPool getLoaderPool() {
+    if (loaderPool == null) {
+      loaderPool = new ForkJoinPool(parallelism);
+    }
+    return loaderPool;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void close() {
+    super.close();
+
+    if (loaderPool != null) {
+      loaderPool.shutdown();
+      loaderPool = null;
+    }
   }
 
   /**
@@ -68,6 +162,18 @@ public class CacheLoaderServer<K, V> extends Server {
     this.cacheLoader = cacheLoader;
   }
 
+  /**
+   * Obtains the {@link BatchStatistics} of the batches of keys requested by
+   * {@link CacheLoaderClient}s with {@link CacheLoader#loadAll(Iterable)},
+   * that is the batches the {@link javax.cache.Cache} handed to its
+   * {@link CacheLoader}.
+   *
+   * @return the {@link BatchStatistics}
+   */
+  public BatchStatistics getLoadAllBatches() {
+    return loadAllBatches;
+  }
+
   /**
    * The {@link OperationHandler} for a {@link CacheLoader#loadAll(Iterable)}} operation.
    */
@@ -86,29 +192,166 @@ public class CacheLoaderServer<K, V> extends Server {
       } else {
         HashSet<K> keys = new HashSet<K>();
 
-        K key = (K) ois.readObject();
+        K key = (K) CODEC.readObject(ois);
         while (key != null) {
           keys.add(key);
 
-          key = (K) ois.readObject();
+          key = (K) CODEC.readObject(ois);
+        }
+        loadAllBatches.record(keys.size());
+
+        CacheLoader<K, V> loader = cacheLoader;
+        int partitions = Math.min(getParallelism(), keys.size());
+        if (loader instanceof StreamingCacheLoader) {
+          streamAll((StreamingCacheLoader<K, V>) loader, keys, oos);
+          return;
+        } else if (partitions > 1) {
+          loadInParallel(loader, keys, partitions, oos);
+          return;
         }
 
         Map<K, V> map = null;
         try {
-          map = cacheLoader.loadAll(keys);
+          map = loader.loadAll(keys);
         } catch (Exception e) {
-          oos.writeObject(e);
+          CODEC.writeObject(oos, e);
         }
 
         if (map != null) {
           for (Map.Entry<K, V> entry : map.entrySet()) {
-            oos.writeObject(entry.getKey());
-            oos.writeObject(entry.getValue());
+            CODEC.writeObject(oos, entry.getKey());
+            CODEC.writeObject(oos, entry.getValue());
+          }
+          CODEC.writeObject(oos, null);
+        }
+      }
+    }
+
+    /**
+     * Loads the specified keys with a {@link StreamingCacheLoader}, writing
+     * each entry as soon as it is loaded.  The first entry is flushed
+     * immediately, so that the {@link CacheLoaderClient} may start handing on
+     * entries while the rest are loaded.
+     *
+     * @param loader the {@link StreamingCacheLoader}
+     * @param keys   the keys to load
+     * @param oos    the {@link ObjectOutputStream} to the {@link CacheLoaderClient}
+     * @throws IOException when the entries can't be written
+     */
+    private void streamAll(StreamingCacheLoader<K, V> loader, HashSet<K> keys, final ObjectOutputStream oos)
+        throws IOException {
+      final int[] count = new int[1];
+      try {
+        loader.loadAll(keys, new StreamingCacheLoader.EntryConsumer<K, V>() {
+          @Override
+          public void accept(K key, V value) {
+            try {
+              CODEC.writeObject(oos, key);
+              CODEC.writeObject(oos, value);
+              if (count[0]++ == 0) {
+                oos.flush();
+              }
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
           }
-          oos.writeObject(null);
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      } catch (Exception e) {
+        //entries already sent remain loaded
+        CODEC.writeObject(oos, e);
+        return;
+      }
+      CODEC.writeObject(oos, null);
+    }
+  }
+
+  /**
+   * Loads the specified keys in partitions on the {@link ForkJoinPool},
+   * writing the entries of each partition as soon as it has been loaded.
+   * Once every partition has completed, the failure of the first partition
+   * that failed is written, with those of the others suppressed by it, or
+   * <code>null</code> when none failed.
+   *
+   * @param loader     the {@link CacheLoader}
+   * @param keys       the keys to load
+   * @param partitions the number of partitions
+   * @param oos        the {@link ObjectOutputStream} to the {@link CacheLoaderClient}
+   * @throws IOException when the entries can't be written
+   */
+  private void loadInParallel(final CacheLoader<K, V> loader, HashSet<K> keys, int partitions,
+                              ObjectOutputStream oos) throws IOException {
+    List<List<K>> partitioned = new ArrayList<List<K>>(partitions);
+    for (int i = 0; i < partitions; i++) {
+      partitioned.add(new ArrayList<K>(keys.size() / partitions + 1));
+    }
+    int next = 0;
+    for (K key : keys) {
+      partitioned.get(next++ % partitions).add(key);
+    }
+
+    CompletionService<Map<K, V>> completionService = new ExecutorCompletionService<Map<K, V>>(getLoaderPool());
+    for (final List<K> partition : partitioned) {
+      completionService.submit(new Callable<Map<K, V>>() {
+        @Override
+        public Map<K, V> call() {
+          return loader.loadAll(partition);
+        }
+      });
+    }
+
+    Exception failure = null;
+    for (int i = 0; i < partitions; i++) {
+      Map<K, V> map;
+      try {
+        map = completionService.take().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while loading partitions", e);
+      } catch (ExecutionException e) {
+        Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+        continue;
+      }
+
+      if (map != null) {
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+          CODEC.writeObject(oos, entry.getKey());
+          CODEC.writeObject(oos, entry.getValue());
         }
+        oos.flush();
       }
     }
+
+    CODEC.writeObject(oos, failure);
+  }
+
+  /**
+   * Carries an {@link IOException} writing an entry through a {@link StreamingCacheLoader}.
+   */
+  private static class UncheckedIOException extends RuntimeException {
+
+    /**
+     * Constructs an {@link UncheckedIOException}.
+     *
+     * @param cause the {@link IOException}
+     */
+    UncheckedIOException(IOException cause) {
+      super(cause);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IOException getCause() {
+      return (IOException) super.getCause();
+    }
   }
 
   /**
@@ -133,14 +376,14 @@ public class CacheLoaderServer<K, V> extends Server {
       if (cacheLoader == null) {
         throw new NullPointerException("The CacheLoader for the CacheLoaderServer has not be set");
       } else {
-        K key = (K) ois.readObject();
+        K key = (K) CODEC.readObject(ois);
 
         V value = null;
         try {
           value = cacheLoader.load(key);
-          oos.writeObject(value);
+          CODEC.writeObject(oos, value);
         } catch (Exception e) {
-          oos.writeObject(e);
+          CODEC.writeObject(oos, e);
         }
       }
     }
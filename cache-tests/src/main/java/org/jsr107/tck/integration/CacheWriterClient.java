@@ -8,23 +8,38 @@
 
 package org.jsr107.tck.integration;
 
+import org.jsr107.tck.support.AsyncOperation;
 import org.jsr107.tck.support.CacheClient;
-import org.jsr107.tck.support.Operation;
+import org.jsr107.tck.support.OperationFuture;
 
 import javax.cache.Cache;
 import javax.cache.integration.CacheWriter;
+import javax.cache.integration.CacheWriterException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * A {@link CacheWriter} that delegates requests to a {@link CacheWriterServer}.
+ * <p>
+ * The entries of {@link #writeAll(Collection)} and the keys of
+ * {@link #deleteAll(Collection)} are sent in chunks of at most the chunk
+ * size, configured with the {@value #CHUNK_SIZE_PROPERTY} system property
+ * when not specified.  The {@link CacheWriterServer} writes each chunk as it
+ * arrives, while the following chunks are still being sent, so that neither
+ * side holds the whole collection at once and the underlying
+ * {@link CacheWriter} persists it in bounded batches.  Each chunk is
+ * acknowledged once written, and at most {@value #ACKNOWLEDGEMENT_WINDOW}
+ * chunks are sent ahead of their acknowledgements, so that a failure stops
+ * the sending of the remaining chunks and unread acknowledgements never fill
+ * the connection.
  *
  * @param <K> the type of keys
  * @param <V> the type of values
@@ -34,13 +49,61 @@ import java.util.concurrent.ExecutionException;
 public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<K, V> {
 
     /**
-     * Constructs a {@link CacheWriterClient}.
+     * The system property specifying the maximum number of entries, or keys,
+     * sent to the {@link CacheWriterServer} in a chunk.
+     */
+    public static final String CHUNK_SIZE_PROPERTY = "org.jsr107.tck.integration.writer.chunkSize";
+
+    /**
+     * The default maximum number of entries, or keys, in a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * The maximum number of chunks sent by {@link #writeAll(Collection)} and
+     * {@link #deleteAll(Collection)} that may be yet to be acknowledged.
+     */
+    private static final int ACKNOWLEDGEMENT_WINDOW = 16;
+
+    /**
+     * The maximum number of entries, or keys, sent in a chunk.
+     */
+    private final int chunkSize;
+
+    /**
+     * Constructs a {@link CacheWriterClient} using the chunk size configured
+     * with the {@value #CHUNK_SIZE_PROPERTY} system property.
      *
      * @param address the {@link InetAddress} on which to connect to the {@link CacheWriterServer}
      * @param port    the port to which to connect to the {@link CacheWriterServer}
      */
     public CacheWriterClient(InetAddress address, int port) {
+        this(address, port, Integer.getInteger(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE));
+    }
+
+    /**
+     * Constructs a {@link CacheWriterClient}.
+     *
+     * @param address   the {@link InetAddress} on which to connect to the {@link CacheWriterServer}
+     * @param port      the port to which to connect to the {@link CacheWriterServer}
+     * @param chunkSize the maximum number of entries, or keys, sent in a chunk
+     */
+    public CacheWriterClient(InetAddress address, int port, int chunkSize) {
         super(address, port);
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive, not " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Obtains the maximum number of entries, or keys, sent in a chunk.
+     *
+     * @return the chunk size
+     */
+    public int getChunkSize() {
+        return chunkSize;
     }
 
     /**
@@ -48,7 +111,7 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
      */
     @Override
     public void write(Cache.Entry<? extends K, ? extends V> entry) {
-        getClient().invoke(new WriteOperation<>(entry));
+        invoke(new WriteOperation<>(entry));
     }
 
     /**
@@ -56,41 +119,118 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
      */
     @Override
     public void writeAll(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
-        getClient().invoke(new WriteAllOperation<>(entries));
+        invoke(new WriteAllOperation<>(entries, chunkSize));
     }
 
     @Override
     public void delete(Object key) {
-        getClient().invoke(new DeleteOperation<K, V>((K)key));
+        invoke(new DeleteOperation<K, V>((K)key));
 
     }
 
     @Override
     public void deleteAll(Collection<?> keys) {
-        getClient().invoke(new DeleteAllOperation<K, V>((Collection<K>) keys));
+        invoke(new DeleteAllOperation<K, V>((Collection<K>) keys, chunkSize));
+    }
+
+    /**
+     * Asynchronously writes an entry, as {@link #write(Cache.Entry)} would.
+     *
+     * @param entry the entry to write
+     * @return the {@link OperationFuture} completed once the entry was written
+     */
+    public OperationFuture<Void> writeAsync(Cache.Entry<? extends K, ? extends V> entry) {
+        return invokeAsync(new WriteOperation<>(entry));
+    }
+
+    /**
+     * Asynchronously writes entries, as {@link #writeAll(Collection)} would,
+     * removing the entries that were written from the collection once the
+     * returned {@link OperationFuture} completes.  The entries are those in
+     * the collection when this method is called, so the collection may be
+     * changed before the {@link OperationFuture} completes.
+     *
+     * @param entries the entries to write
+     * @return the {@link OperationFuture} completed once the entries were written
+     */
+    public OperationFuture<Void> writeAllAsync(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
+        return invokeAsync(new WriteAllOperation<>(entries, chunkSize));
+    }
+
+    /**
+     * Asynchronously deletes an entry, as {@link #delete(Object)} would.
+     *
+     * @param key the key of the entry to delete
+     * @return the {@link OperationFuture} completed once the entry was deleted
+     */
+    public OperationFuture<Void> deleteAsync(Object key) {
+        return invokeAsync(new DeleteOperation<K, V>((K) key));
+    }
+
+    /**
+     * Asynchronously deletes entries, as {@link #deleteAll(Collection)} would,
+     * removing the keys that were deleted from the collection once the
+     * returned {@link OperationFuture} completes.  The keys are those in the
+     * collection when this method is called, so the collection may be
+     * changed before the {@link OperationFuture} completes.
+     *
+     * @param keys the keys of the entries to delete
+     * @return the {@link OperationFuture} completed once the entries were deleted
+     */
+    public OperationFuture<Void> deleteAllAsync(Collection<?> keys) {
+        return invokeAsync(new DeleteAllOperation<K, V>((Collection<K>) keys, chunkSize));
     }
 
     /**
      * The {@link DeleteAllOperation} representing a {@link CacheWriter#deleteAll(java.util.Collection)}
      * request.
+     * <p>
+     * The number of keys is sent, followed by the keys in chunks, each preceded
+     * by its size and the last followed by an empty chunk.  The
+     * {@link CacheWriterServer} replies to each chunk as it is deleted, with
+     * <code>true</code>, or with the exception of the chunk that failed and its
+     * keys that weren't deleted, terminated by <code>null</code>, after which
+     * it discards the chunks that follow.  Once the empty chunk has arrived
+     * and all chunks were deleted, it replies <code>null</code>.
+     * <p>
+     * When invoked synchronously, no more chunks are sent once one has failed.
+     * When invoked asynchronously, every chunk is sent before the replies are
+     * read.
      *
      * @param <K> the type of keys
      * @param <V> the type of values
      */
-    private static class DeleteAllOperation<K, V> implements Operation<Map<K, V>> {
+    private static class DeleteAllOperation<K, V> implements AsyncOperation<Void> {
 
         /**
          * The keys to Delete.
          */
         private Collection<? extends K> keys;
 
+        /**
+         * The maximum number of keys sent in a chunk.
+         */
+        private int chunkSize;
+
+        /**
+         * The keys sent, in the order in which they were sent.
+         */
+        private Object[] sent;
+
+        /**
+         * The number of chunks acknowledged as deleted.
+         */
+        private long acknowledged;
+
         /**
          * Constructs a {@link DeleteAllOperation}.
          *
-         * @param keys the keys to Delete
+         * @param keys      the keys to Delete
+         * @param chunkSize the maximum number of keys sent in a chunk
          */
-        public DeleteAllOperation(Collection<? extends K> keys) {
+        public DeleteAllOperation(Collection<? extends K> keys, int chunkSize) {
             this.keys = keys;
+            this.chunkSize = chunkSize;
         }
 
         /**
@@ -105,39 +245,127 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
          * {@inheritDoc}
          */
         @Override
-        public Map<K, V> onInvoke(ObjectInputStream ois, ObjectOutputStream oos)
-                throws IOException, ClassNotFoundException, ExecutionException {
+        public Void onInvoke(ObjectInputStream ois, ObjectOutputStream oos)
+                throws IOException, ClassNotFoundException {
 
-            // send the keys to Delete
-            for (K key : keys) {
-                oos.writeObject(key);
+            // send the keys to Delete, reading acknowledgements once the window is full
+            sent = keys.toArray();
+            CODEC.writeObject(oos, sent.length);
+
+            Object reply = Boolean.TRUE;
+            int unacknowledged = 0;
+            for (int from = 0; from < sent.length && Boolean.TRUE.equals(reply); from += chunkSize) {
+                writeChunk(oos, from);
+
+                if (++unacknowledged == ACKNOWLEDGEMENT_WINDOW) {
+                    reply = readReply(ois);
+                    unacknowledged--;
+                }
             }
 
-            oos.writeObject(null);
+            CODEC.writeObject(oos, 0);
+            oos.flush();
 
-            // check for remote exceptions
-            Object result = ois.readObject();
-            Collection<K> notDeletedKeys;
+            return onReply(ois, reply, true);
+        }
 
-            if (result instanceof RuntimeException) {
-                notDeletedKeys = (Collection<K>) ois.readObject();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRequest(ObjectOutputStream oos) throws IOException {
+            sent = keys.toArray();
+            CODEC.writeObject(oos, sent.length);
 
-                // Partial Success processsing
-                // returned keys were not able to be deleted.  remove from original keys list.
-                Iterator<? extends K> iter = keys.iterator();
-                while (iter.hasNext()) {
-                    if (!notDeletedKeys.contains(iter.next())) {
-                        iter.remove();
-                    }
-                }
+            for (int from = 0; from < sent.length; from += chunkSize) {
+                writeChunk(oos, from);
+            }
 
-                throw(RuntimeException) result;
-            } else {
+            CODEC.writeObject(oos, 0);
+        }
 
-                // if no exception then all keys were deleted, remove all these keys to record that they were deleted.
-                keys.clear();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Void onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            return onReply(ois, Boolean.TRUE, false);
+        }
+
+        /**
+         * Writes a chunk of the keys sent, flushing it so that it's deleted while
+         * the next is sent.
+         *
+         * @param oos  the {@link ObjectOutputStream} to write to
+         * @param from the index of the first key of the chunk
+         */
+        private void writeChunk(ObjectOutputStream oos, int from) throws IOException {
+            int count = Math.min(chunkSize, sent.length - from);
+            CODEC.writeObject(oos, count);
+            for (int i = from; i < from + count; i++) {
+                CODEC.writeObject(oos, sent[i]);
+            }
+            oos.flush();
+        }
+
+        /**
+         * Reads a reply, counting it when it acknowledges a chunk.
+         *
+         * @param ois the {@link ObjectInputStream} to read from
+         * @return the reply
+         */
+        private Object readReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            Object reply = CODEC.readObject(ois);
+            if (Boolean.TRUE.equals(reply)) {
+                acknowledged++;
+            }
+            return reply;
+        }
+
+        /**
+         * Reads the remaining replies, removing the keys that were deleted.
+         *
+         * @param ois       the {@link ObjectInputStream} to read from
+         * @param reply     the last reply read, <code>true</code> when more are to be read
+         * @param unchanged is the collection of keys unchanged since it was sent?
+         * @return <code>null</code>
+         */
+        private Void onReply(ObjectInputStream ois, Object reply, boolean unchanged)
+                throws IOException, ClassNotFoundException {
+            while (Boolean.TRUE.equals(reply)) {
+                reply = readReply(ois);
+            }
 
+            // check for remote exceptions
+            if (reply == null) {
+                if (unchanged) {
+                    keys.clear();
+                } else {
+                    keys.removeAll(new HashSet<>(Arrays.asList(sent)));
+                }
                 return null;
+            } else {
+                HashSet<K> notDeletedKeys = new HashSet<>();
+                K key = (K) CODEC.readObject(ois);
+                while (key != null) {
+                    notDeletedKeys.add(key);
+                    key = (K) CODEC.readObject(ois);
+                }
+
+                // Partial Success processsing
+                // the keys of the acknowledged chunks were deleted, as were those of the failed chunk
+                // that weren't returned.  remove them from the original keys, leaving the keys of the
+                // chunks that followed.
+                int failed = (int) Math.min(acknowledged * chunkSize, sent.length);
+                HashSet<Object> deletedKeys = new HashSet<>(Arrays.asList(sent).subList(0, failed));
+                for (int i = failed; i < Math.min(failed + chunkSize, sent.length); i++) {
+                    if (!notDeletedKeys.contains(sent[i])) {
+                        deletedKeys.add(sent[i]);
+                    }
+                }
+                keys.removeAll(deletedKeys);
+
+                throw asRuntimeException(reply);
             }
         }
     }
@@ -150,7 +378,7 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
      * @param <K> the type of keys
      * @param <V> the type of values
      */
-    private static class DeleteOperation<K, V> implements Operation<V> {
+    private static class DeleteOperation<K, V> implements AsyncOperation<Void> {
 
         /**
          * The key to Delete.
@@ -178,10 +406,25 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
          * {@inheritDoc}
          */
         @Override
-        public V onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
-            oos.writeObject(key);
+        public Void onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+            onRequest(oos);
+            return onReply(ois);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRequest(ObjectOutputStream oos) throws IOException {
+            CODEC.writeObject(oos, key);
+        }
 
-            Object o = ois.readObject();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Void onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            Object o = CODEC.readObject(ois);
 
             if (o instanceof RuntimeException) {
                 throw(RuntimeException) o;
@@ -195,24 +438,54 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
     /**
      * The {@link WriteAllOperation} representing a {@link Cache#putAll(java.util.Map)} )}
      * request.
+     * <p>
+     * The number of entries is sent, followed by the entries in chunks, each
+     * preceded by its size and the last followed by an empty chunk.  The
+     * {@link CacheWriterServer} replies to each chunk as it is written, with
+     * <code>true</code>, or with the exception of the chunk that failed and
+     * the keys of its entries that weren't written, terminated by
+     * <code>null</code>, after which it discards the chunks that follow.  Once
+     * the empty chunk has arrived and all chunks were written, it replies
+     * <code>null</code>.
+     * <p>
+     * When invoked synchronously, no more chunks are sent once one has failed.
+     * When invoked asynchronously, every chunk is sent before the replies are
+     * read.
      *
      * @param <K> the type of keys
      * @param <V> the type of values
      */
-    private static class WriteAllOperation<K, V> implements Operation<Map<K, V>> {
+    private static class WriteAllOperation<K, V> implements AsyncOperation<Void> {
 
         /**
          * The entries to write.
          */
         private Collection<Cache.Entry<? extends K, ? extends V>> entries;
 
+        /**
+         * The maximum number of entries sent in a chunk.
+         */
+        private int chunkSize;
+
+        /**
+         * The entries sent, in the order in which they were sent.
+         */
+        private Cache.Entry<? extends K, ? extends V>[] sent;
+
+        /**
+         * The number of chunks acknowledged as written.
+         */
+        private long acknowledged;
+
         /**
          * Constructs a {@link WriteAllOperation}.
          *
-         * @param entries the entries to write
+         * @param entries   the entries to write
+         * @param chunkSize the maximum number of entries sent in a chunk
          */
-        public WriteAllOperation(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
+        public WriteAllOperation(Collection<Cache.Entry<? extends K, ? extends V>> entries, int chunkSize) {
             this.entries = entries;
+            this.chunkSize = chunkSize;
         }
 
         /**
@@ -227,41 +500,133 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
          * {@inheritDoc}
          */
         @Override
-        public Map<K, V> onInvoke(ObjectInputStream ois, ObjectOutputStream oos)
+        public Void onInvoke(ObjectInputStream ois, ObjectOutputStream oos)
                 throws IOException, ClassNotFoundException {
 
-            // send the entries to write
-            for (Cache.Entry<? extends K, ? extends V> entry : entries) {
-                oos.writeObject(entry.getKey());
-                oos.writeObject(entry.getValue());
+            // send the entries to write, reading acknowledgements once the window is full
+            sent = entries.toArray(new Cache.Entry[entries.size()]);
+            CODEC.writeObject(oos, sent.length);
+
+            Object reply = Boolean.TRUE;
+            int unacknowledged = 0;
+            for (int from = 0; from < sent.length && Boolean.TRUE.equals(reply); from += chunkSize) {
+                writeChunk(oos, from);
+
+                if (++unacknowledged == ACKNOWLEDGEMENT_WINDOW) {
+                    reply = readReply(ois);
+                    unacknowledged--;
+                }
             }
 
-            oos.writeObject(null);
-            Object o = ois.readObject();
+            CODEC.writeObject(oos, 0);
+            oos.flush();
 
-            if (o instanceof RuntimeException) {
+            return onReply(ois, reply, true);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRequest(ObjectOutputStream oos) throws IOException {
+            sent = entries.toArray(new Cache.Entry[entries.size()]);
+            CODEC.writeObject(oos, sent.length);
+
+            for (int from = 0; from < sent.length; from += chunkSize) {
+                writeChunk(oos, from);
+            }
+
+            CODEC.writeObject(oos, 0);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Void onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            return onReply(ois, Boolean.TRUE, false);
+        }
+
+        /**
+         * Writes a chunk of the entries sent, flushing it so that it's written
+         * while the next is sent.
+         *
+         * @param oos  the {@link ObjectOutputStream} to write to
+         * @param from the index of the first entry of the chunk
+         */
+        private void writeChunk(ObjectOutputStream oos, int from) throws IOException {
+            int count = Math.min(chunkSize, sent.length - from);
+            CODEC.writeObject(oos, count);
+            for (int i = from; i < from + count; i++) {
+                CODEC.writeObject(oos, sent[i].getKey());
+                CODEC.writeObject(oos, sent[i].getValue());
+            }
+            oos.flush();
+        }
+
+        /**
+         * Reads a reply, counting it when it acknowledges a chunk.
+         *
+         * @param ois the {@link ObjectInputStream} to read from
+         * @return the reply
+         */
+        private Object readReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            Object reply = CODEC.readObject(ois);
+            if (Boolean.TRUE.equals(reply)) {
+                acknowledged++;
+            }
+            return reply;
+        }
+
+        /**
+         * Reads the remaining replies, removing the entries that were written.
+         *
+         * @param ois       the {@link ObjectInputStream} to read from
+         * @param reply     the last reply read, <code>true</code> when more are to be read
+         * @param unchanged is the collection of entries unchanged since it was sent?
+         * @return <code>null</code>
+         */
+        private Void onReply(ObjectInputStream ois, Object reply, boolean unchanged)
+                throws IOException, ClassNotFoundException {
+            while (Boolean.TRUE.equals(reply)) {
+                reply = readReply(ois);
+            }
 
-                // Partial Success processsing, read in keys that failed to be written
+            // entries needn't define equality, so those written are removed by identity
+            Set<Cache.Entry<? extends K, ? extends V>> writtenEntries =
+                Collections.newSetFromMap(new IdentityHashMap<Cache.Entry<? extends K, ? extends V>, Boolean>());
+
+            if (reply == null) {
+                if (unchanged) {
+                    entries.clear();
+                } else {
+                    writtenEntries.addAll(Arrays.asList(sent));
+                    entries.removeAll(writtenEntries);
+                }
+                return null;
+            } else {
+
+                // Partial Success processsing, read in keys of the failed chunk that failed to be written
                 HashSet<K> failedToWriteKeys = new HashSet<>();
-                K key = (K) ois.readObject();
+                K key = (K) CODEC.readObject(ois);
                 while (key != null) {
                     failedToWriteKeys.add(key);
-                    key = (K) ois.readObject();
+                    key = (K) CODEC.readObject(ois);
                 }
 
-                Iterator<Cache.Entry<? extends K, ? extends V>> iter = entries.iterator();
-                while (iter.hasNext()) {
-                    if (!failedToWriteKeys.contains(iter.next().getKey())) {
-                        iter.remove();
+                // the entries of the acknowledged chunks were written, as were those of the failed chunk
+                // that weren't returned.  remove them from the original entries, leaving the entries of
+                // the chunks that followed.
+                int failed = (int) Math.min(acknowledged * chunkSize, sent.length);
+                writtenEntries.addAll(Arrays.asList(sent).subList(0, failed));
+                for (int i = failed; i < Math.min(failed + chunkSize, sent.length); i++) {
+                    if (!failedToWriteKeys.contains(sent[i].getKey())) {
+                        writtenEntries.add(sent[i]);
                     }
                 }
+                entries.removeAll(writtenEntries);
 
-                throw(RuntimeException) o;
-            } else {
-
-                entries.clear();
-
-                return null;
+                throw asRuntimeException(reply);
             }
         }
     }
@@ -274,7 +639,7 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
      * @param <K> the type of keys
      * @param <V> the type of values
      */
-    private static class WriteOperation<K, V> implements Operation<V> {
+    private static class WriteOperation<K, V> implements AsyncOperation<Void> {
 
         /**
          * The key to load.
@@ -302,11 +667,26 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
          * {@inheritDoc}
          */
         @Override
-        public V onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
-            oos.writeObject(entry.getKey());
-            oos.writeObject(entry.getValue());
+        public Void onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+            onRequest(oos);
+            return onReply(ois);
+        }
 
-            Object o = ois.readObject();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onRequest(ObjectOutputStream oos) throws IOException {
+            CODEC.writeObject(oos, entry.getKey());
+            CODEC.writeObject(oos, entry.getValue());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Void onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            Object o = CODEC.readObject(ois);
 
             if (o instanceof RuntimeException) {
                 throw(RuntimeException) o;
@@ -315,4 +695,16 @@ public class CacheWriterClient<K, V> extends CacheClient implements CacheWriter<
             }
         }
     }
+
+    /**
+     * Obtains the {@link RuntimeException} to throw for the failure of a chunk.
+     *
+     * @param failure the failure replied by the {@link CacheWriterServer}
+     * @return the {@link RuntimeException}
+     */
+    private static RuntimeException asRuntimeException(Object failure) {
+        return failure instanceof RuntimeException
+            ? (RuntimeException) failure
+            : new CacheWriterException((Exception) failure);
+    }
 }
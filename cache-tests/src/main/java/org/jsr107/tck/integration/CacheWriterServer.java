@@ -9,6 +9,7 @@
 
 package org.jsr107.tck.integration;
 
+import org.jsr107.tck.support.BatchStatistics;
 import org.jsr107.tck.support.OperationHandler;
 import org.jsr107.tck.support.Server;
 
@@ -23,6 +24,12 @@ import java.util.HashSet;
 /**
  * A {@link Server} that handles {@link CacheWriter} requests from a
  * {@link CacheWriterClient} and delegates them to an underlying {@link CacheWriter}.
+ * <p>
+ * The entries of a {@link CacheWriter#writeAll(Collection)} and the keys of a
+ * {@link CacheWriter#deleteAll(Collection)} request arrive in chunks, each
+ * written or deleted, and acknowledged, as soon as it has arrived.  Once a
+ * chunk fails, its failure is replied at once and the chunks that follow are
+ * discarded.
  *
  * @param <K> the type of keys
  * @param <V> the type of values
@@ -37,6 +44,18 @@ public class CacheWriterServer<K, V> extends Server {
      */
     private CacheWriter<K, V> cacheWriter;
 
+    /**
+     * The {@link BatchStatistics} of the batches of entries requested by
+     * {@link CacheWriterClient}s with {@link CacheWriter#writeAll(Collection)}.
+     */
+    private final BatchStatistics writeAllBatches = new BatchStatistics();
+
+    /**
+     * The {@link BatchStatistics} of the batches of keys requested by
+     * {@link CacheWriterClient}s with {@link CacheWriter#deleteAll(Collection)}.
+     */
+    private final BatchStatistics deleteAllBatches = new BatchStatistics();
+
     /**
      * Constructs an CacheWriterServer.
      *
@@ -66,6 +85,30 @@ public class CacheWriterServer<K, V> extends Server {
         this.cacheWriter = cacheWriter;
     }
 
+    /**
+     * Obtains the {@link BatchStatistics} of the batches of entries requested
+     * by {@link CacheWriterClient}s with {@link CacheWriter#writeAll(Collection)},
+     * that is the batches the {@link Cache} handed to its {@link CacheWriter},
+     * however many chunks they were sent in.
+     *
+     * @return the {@link BatchStatistics}
+     */
+    public BatchStatistics getWriteAllBatches() {
+        return writeAllBatches;
+    }
+
+    /**
+     * Obtains the {@link BatchStatistics} of the batches of keys requested
+     * by {@link CacheWriterClient}s with {@link CacheWriter#deleteAll(Collection)},
+     * that is the batches the {@link Cache} handed to its {@link CacheWriter},
+     * however many chunks they were sent in.
+     *
+     * @return the {@link BatchStatistics}
+     */
+    public BatchStatistics getDeleteAllBatches() {
+        return deleteAllBatches;
+    }
+
     /**
      * The {@link OperationHandler} for a {@link CacheWriter#deleteAll(java.util.Collection)}} operation.
      */
@@ -82,25 +125,41 @@ public class CacheWriterServer<K, V> extends Server {
             if (cacheWriter == null) {
                 throw new NullPointerException("The cacheWriter for the CacheWriterServer has not be set");
             } else {
-                HashSet<K> keys = new HashSet<>();
+                Exception failure = null;
 
-                K key = (K) ois.readObject();
-                while (key != null) {
-                    keys.add(key);
+                deleteAllBatches.record((Integer) CODEC.readObject(ois));
 
-                    key = (K) ois.readObject();
-                }
+                int count = (Integer) CODEC.readObject(ois);
+                while (count > 0) {
+                    HashSet<K> keys = new HashSet<>();
+                    for (int i = 0; i < count; i++) {
+                        keys.add((K) CODEC.readObject(ois));
+                    }
 
-                try {
-                    cacheWriter.deleteAll(keys);
-                } catch (Exception e) {
-                    oos.writeObject(e);
-                    oos.writeObject(keys);
+                    // the chunks following a failed chunk are discarded
+                    if (failure == null) {
+                        try {
+                            cacheWriter.deleteAll(keys);
+
+                            CODEC.writeObject(oos, Boolean.TRUE);
+                        } catch (Exception e) {
+                            failure = e;
+
+                            CODEC.writeObject(oos, failure);
+                            for (K key : keys) {
+                                CODEC.writeObject(oos, key);
+                            }
+                            CODEC.writeObject(oos, null);
+                        }
+                        oos.flush();
+                    }
 
-                    return;
+                    count = (Integer) CODEC.readObject(ois);
                 }
 
-                oos.writeObject(keys);
+                if (failure == null) {
+                    CODEC.writeObject(oos, null);
+                }
             }
         }
     }
@@ -129,17 +188,17 @@ public class CacheWriterServer<K, V> extends Server {
                 throw new NullPointerException("The cacheWriter for the CacheWriterServer has not be set");
             } else {
 
-                K key = (K) ois.readObject();
+                K key = (K) CODEC.readObject(ois);
                 try {
                     cacheWriter.delete(key);
                 } catch (Exception e) {
-                    oos.writeObject(e);
+                    CODEC.writeObject(oos, e);
 
                     return;
                 }
 
                 // successful completion without an exception.
-                oos.writeObject(null);
+                CODEC.writeObject(oos, null);
             }
         }
     }
@@ -185,32 +244,23 @@ public class CacheWriterServer<K, V> extends Server {
             return "writeAll";
         }
 
-        private Collection<Cache.Entry<? extends K, ? extends V>> readEntries(ObjectInputStream ois)
+        /**
+         * Reads a chunk of entries.
+         *
+         * @param ois   the {@link ObjectInputStream} from the {@link CacheWriterClient}
+         * @param count the number of entries in the chunk
+         * @return the entries
+         */
+        private Collection<Cache.Entry<? extends K, ? extends V>> readEntries(ObjectInputStream ois, int count)
                 throws IOException, ClassNotFoundException {
             Collection<Cache.Entry<? extends K, ? extends V>> entrys = new HashSet<Cache.Entry<? extends K,
                                                                            ? extends V>>();
 
-            K key = (K) ois.readObject();
-            V value = null;
-            if (key != null) {
-                value = (V) ois.readObject();
-            }
-
-            Entry entry = ((key == null) || (value == null))
-                          ? null
-                          : new Entry(key, value);
-            while (entry != null) {
-                entrys.add(entry);
-                key = (K) ois.readObject();
-                value = null;
+            for (int i = 0; i < count; i++) {
+                K key = (K) CODEC.readObject(ois);
+                V value = (V) CODEC.readObject(ois);
 
-                if (key != null) {
-                    value = (V) ois.readObject();
-                }
-
-                entry = ((key == null) || (value == null))
-                        ? null
-                        : new Entry(key, value);
+                entrys.add(new Entry<>(key, value));
             }
 
             return entrys;
@@ -222,23 +272,39 @@ public class CacheWriterServer<K, V> extends Server {
             if (cacheWriter == null) {
                 throw new NullPointerException("The cacheWriter for the CacheWriterServer has not be set");
             } else {
-                Collection<Cache.Entry<? extends K, ? extends V>> entrys = readEntries(ois);
-                try {
-                    cacheWriter.writeAll(entrys);
-                } catch (Exception e) {
-                    oos.writeObject(e);
-
-                    for (Cache.Entry<? extends K, ? extends V> entry1 : entrys) {
-                        oos.writeObject(entry1.getKey());
+                Exception failure = null;
+
+                writeAllBatches.record((Integer) CODEC.readObject(ois));
+
+                int count = (Integer) CODEC.readObject(ois);
+                while (count > 0) {
+                    Collection<Cache.Entry<? extends K, ? extends V>> entrys = readEntries(ois, count);
+
+                    // the chunks following a failed chunk are discarded
+                    if (failure == null) {
+                        try {
+                            cacheWriter.writeAll(entrys);
+
+                            assert(entrys.size() == 0);
+                            CODEC.writeObject(oos, Boolean.TRUE);
+                        } catch (Exception e) {
+                            failure = e;
+
+                            CODEC.writeObject(oos, failure);
+                            for (Cache.Entry<? extends K, ? extends V> entry1 : entrys) {
+                                CODEC.writeObject(oos, entry1.getKey());
+                            }
+                            CODEC.writeObject(oos, null);
+                        }
+                        oos.flush();
                     }
 
-                    oos.writeObject(null);
-
-                    return;
+                    count = (Integer) CODEC.readObject(ois);
                 }
 
-                assert(entrys.size() == 0);
-                oos.writeObject(null);
+                if (failure == null) {
+                    CODEC.writeObject(oos, null);
+                }
             }
         }
     }
@@ -266,21 +332,21 @@ public class CacheWriterServer<K, V> extends Server {
             if (cacheWriter == null) {
                 throw new NullPointerException("The cacheWriter for the CacheWriterServer has not be set");
             } else {
-                final K key = (K) ois.readObject();
-                final V value = (V) ois.readObject();
+                final K key = (K) CODEC.readObject(ois);
+                final V value = (V) CODEC.readObject(ois);
                 Cache.Entry<K, V> entry = new Entry<>(key, value);
                 try {
                     if ((key != null) && (value != null)) {
                         cacheWriter.write(entry);
                     }
                 } catch (Exception e) {
-                    oos.writeObject(e);
+                    CODEC.writeObject(oos, e);
 
                     return;
                 }
 
                 // successfully completed operation.
-                oos.writeObject(null);
+                CODEC.writeObject(oos, null);
             }
         }
     }
@@ -0,0 +1,669 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.support.LatencyHistogram;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheLoaderException;
+import javax.cache.integration.CacheWriter;
+import javax.cache.integration.CacheWriterException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link CacheLoader} and {@link CacheWriter} backed by an embedded store
+ * on the local disk, so that read-through and write-through can be exercised,
+ * and benchmarked, against real persistence rather than an in-memory map.
+ * <p>
+ * Entries are appended to a log, each written entry as a record of its
+ * serialized key and value, and each deleted key as a record of its
+ * serialized key and no value.  The latest record of each key is found with
+ * an open addressing hash index held in a memory-mapped file, so that loads
+ * cost one probe of the index and one read of the log.  Keys are compared by
+ * their serialized form.  The log is never compacted.
+ * <p>
+ * The log is the only durable state: the index is rebuilt from it when the
+ * store is opened, after discarding any partially written record at the end
+ * of the log.  When the log is forced to disk is chosen with a
+ * {@link SyncPolicy}, the cost of each force being recorded in the
+ * {@link #getSyncLatencies()} histogram.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class DiskBackedCacheLoaderWriter<K, V> implements CacheLoader<K, V>, CacheWriter<K, V>, Closeable {
+
+    /**
+     * When the log is forced to disk.
+     */
+    public enum SyncPolicy {
+        /**
+         * The log is never forced, leaving it to the operating system to
+         * write pages back.
+         */
+        NEVER,
+
+        /**
+         * The log is forced once per call, so that the records of a
+         * {@link CacheWriter#writeAll(Collection)} or
+         * {@link CacheWriter#deleteAll(Collection)} are committed together.
+         */
+        PER_CALL,
+
+        /**
+         * The log is forced after each record, even those of a batch.
+         */
+        PER_RECORD
+    }
+
+    /**
+     * The name of the log file in the directory of the store.
+     */
+    static final String LOG_FILE = "store.log";
+
+    /**
+     * The name of the index file in the directory of the store.
+     */
+    static final String INDEX_FILE = "store.index";
+
+    /**
+     * The size of a record header: the length of the key and of the value,
+     * which is -1 for a deleted key.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The size of an index slot: the position of the record in the log plus
+     * one, so that zero marks an empty slot, then the hash of the key, padded
+     * to 16 bytes.
+     */
+    private static final int SLOT_SIZE = 16;
+
+    /**
+     * The initial number of index slots, a power of two.
+     */
+    private static final int INITIAL_SLOTS = 1024;
+
+    /**
+     * The {@link SyncPolicy} of the store.
+     */
+    private final SyncPolicy syncPolicy;
+
+    /**
+     * The {@link FileChannel} of the log, appended to by writers and read by
+     * position by loaders.
+     */
+    private final FileChannel log;
+
+    /**
+     * The {@link FileChannel} of the index file.
+     */
+    private final FileChannel indexFile;
+
+    /**
+     * Guards the index and the end of the log: loads share the read lock,
+     * while writes and deletes take the write lock.
+     */
+    private final ReadWriteLock lock;
+
+    /**
+     * The {@link LatencyHistogram} of the time taken to force the log.
+     */
+    private final LatencyHistogram syncLatencies;
+
+    /**
+     * The memory-mapped index.
+     */
+    private MappedByteBuffer index;
+
+    /**
+     * The number of slots in the {@link #index}, a power of two.
+     */
+    private int slots;
+
+    /**
+     * The number of used slots, one per key ever written or deleted.
+     */
+    private int keyCount;
+
+    /**
+     * The position at which the next record is appended.
+     */
+    private long end;
+
+    /**
+     * Whether the store has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Opens, or creates, a {@link DiskBackedCacheLoaderWriter} in a directory.
+     *
+     * @param directory  the directory of the log and index files, which is
+     *                   created when it doesn't exist
+     * @param syncPolicy the {@link SyncPolicy}
+     * @throws IOException when the store can't be opened
+     */
+    public DiskBackedCacheLoaderWriter(File directory, SyncPolicy syncPolicy) throws IOException {
+        if (syncPolicy == null) {
+            throw new NullPointerException("A SyncPolicy must be specified");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create the directory " + directory);
+        }
+
+        this.syncPolicy = syncPolicy;
+        this.lock = new ReentrantReadWriteLock();
+        this.syncLatencies = new LatencyHistogram();
+        this.log = new RandomAccessFile(new File(directory, LOG_FILE), "rw").getChannel();
+        try {
+            this.indexFile = new RandomAccessFile(new File(directory, INDEX_FILE), "rw").getChannel();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+
+        try {
+            mapIndex(INITIAL_SLOTS);
+            recover();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Obtains the {@link SyncPolicy} of the store.
+     *
+     * @return the {@link SyncPolicy}
+     */
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    @Override
+    public V load(K key) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return find(toBytes(key));
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CacheLoaderException("Failed to load " + key, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<K, V> loadAll(Iterable<? extends K> keys) {
+        Map<K, V> map = new HashMap<K, V>();
+        for (K key : keys) {
+            V value = load(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public void write(Cache.Entry<? extends K, ? extends V> entry) {
+        try {
+            append(Collections.singletonList(record(entry.getKey(), entry.getValue())));
+        } catch (IOException e) {
+            throw new CacheWriterException("Failed to write " + entry.getKey(), e);
+        }
+    }
+
+    @Override
+    public void writeAll(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
+        try {
+            List<byte[][]> records = new ArrayList<byte[][]>(entries.size());
+            for (Cache.Entry<? extends K, ? extends V> entry : entries) {
+                records.add(record(entry.getKey(), entry.getValue()));
+            }
+            append(records);
+        } catch (IOException e) {
+            throw new CacheWriterException("Failed to write " + entries.size() + " entries", e);
+        }
+        entries.clear();
+    }
+
+    @Override
+    public void delete(Object key) {
+        try {
+            append(Collections.singletonList(record(key, null)));
+        } catch (IOException e) {
+            throw new CacheWriterException("Failed to delete " + key, e);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<?> keys) {
+        try {
+            List<byte[][]> records = new ArrayList<byte[][]>(keys.size());
+            for (Object key : keys) {
+                records.add(record(key, null));
+            }
+            append(records);
+        } catch (IOException e) {
+            throw new CacheWriterException("Failed to delete " + keys.size() + " keys", e);
+        }
+        keys.clear();
+    }
+
+    /**
+     * Obtains the number of keys that have been written or deleted, and so
+     * have an entry in the index.
+     *
+     * @return the number of keys
+     */
+    public int getKeyCount() {
+        lock.readLock().lock();
+        try {
+            return keyCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the size of the log.
+     *
+     * @return the number of bytes appended to the log, including by earlier
+     *         openings of the store
+     */
+    public long getLogSize() {
+        lock.readLock().lock();
+        try {
+            return end;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the {@link LatencyHistogram} of the time taken to force the log
+     * to disk, whose count is the number of times it was forced.
+     *
+     * @return the {@link LatencyHistogram}
+     */
+    public LatencyHistogram getSyncLatencies() {
+        return syncLatencies;
+    }
+
+    /**
+     * Closes the store, forcing the log to disk unless the {@link SyncPolicy}
+     * is {@link SyncPolicy#NEVER}.  The memory-mapped index is released when
+     * it is garbage collected.
+     *
+     * @throws IOException when the log can't be forced or closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            index = null;
+
+            try {
+                if (syncPolicy != SyncPolicy.NEVER && log.isOpen()) {
+                    sync();
+                }
+            } finally {
+                try {
+                    log.close();
+                } finally {
+                    indexFile.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends records to the log in a single write, forcing the log according
+     * to the {@link SyncPolicy}, and then indexes them.
+     *
+     * @param records the serialized keys and values, a <code>null</code> value
+     *                recording a deleted key
+     * @throws IOException when the records can't be appended
+     */
+    private void append(List<byte[][]> records) throws IOException {
+        int size = 0;
+        for (byte[][] record : records) {
+            size += HEADER_SIZE + record[0].length + (record[1] == null ? 0 : record[1].length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        long[] positions = new long[records.size()];
+
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+
+            int i = 0;
+            for (byte[][] record : records) {
+                int start = buffer.position();
+                positions[i++] = end + start;
+                buffer.putInt(record[0].length);
+                buffer.putInt(record[1] == null ? -1 : record[1].length);
+                buffer.put(record[0]);
+                if (record[1] != null) {
+                    buffer.put(record[1]);
+                }
+
+                if (syncPolicy == SyncPolicy.PER_RECORD) {
+                    ByteBuffer written = buffer.duplicate();
+                    written.limit(buffer.position());
+                    written.position(start);
+                    writeFully(written, end + start);
+                    sync();
+                }
+            }
+
+            if (syncPolicy != SyncPolicy.PER_RECORD) {
+                buffer.flip();
+                writeFully(buffer, end);
+                if (syncPolicy == SyncPolicy.PER_CALL) {
+                    sync();
+                }
+            }
+            end += size;
+
+            i = 0;
+            for (byte[][] record : records) {
+                index(record[0], positions[i++]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer to the log.
+     *
+     * @param buffer   the {@link ByteBuffer}
+     * @param position the position in the log of the first remaining byte
+     * @throws IOException when the bytes can't be written
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+    }
+
+    /**
+     * Forces the log to disk, recording the time taken.
+     *
+     * @throws IOException when the log can't be forced
+     */
+    private void sync() throws IOException {
+        long start = System.nanoTime();
+        log.force(false);
+        syncLatencies.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer from the log.
+     *
+     * @param buffer   the {@link ByteBuffer}
+     * @param position the position in the log of the first byte to read
+     * @throws IOException when the bytes can't be read
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of log at " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Finds the value of the latest record of a key.  Must be called holding
+     * the {@link #lock}.
+     *
+     * @param key the serialized key
+     * @return the value, or <code>null</code> when the key was never written
+     *         or has since been deleted
+     * @throws IOException            when the log can't be read
+     * @throws ClassNotFoundException when the class of the value can't be loaded
+     */
+    @SuppressWarnings("unchecked")
+    private V find(byte[] key) throws IOException, ClassNotFoundException {
+        int hash = hash(key);
+        for (int slot = hash & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            long position = index.getLong(slot * SLOT_SIZE) - 1;
+            if (position < 0) {
+                return null;
+            }
+            if (index.getInt(slot * SLOT_SIZE + 8) == hash) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(header, position);
+                int keyLength = header.getInt();
+                int valueLength = header.getInt();
+
+                if (keyLength == key.length) {
+                    ByteBuffer record = ByteBuffer.allocate(keyLength + Math.max(valueLength, 0));
+                    readFully(record, position + HEADER_SIZE);
+                    byte[] recorded = new byte[keyLength];
+                    record.get(recorded);
+
+                    if (Arrays.equals(recorded, key)) {
+                        if (valueLength < 0) {
+                            return null;
+                        }
+                        byte[] value = new byte[valueLength];
+                        record.get(value);
+                        return (V) fromBytes(value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Points the index entry of a key at its latest record, adding an entry
+     * for a new key.  Must be called holding the write lock.
+     *
+     * @param key      the serialized key
+     * @param position the position of the record in the log
+     * @throws IOException when the log can't be read or the index grown
+     */
+    private void index(byte[] key, long position) throws IOException {
+        int hash = hash(key);
+        for (int slot = hash & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            long indexed = index.getLong(slot * SLOT_SIZE) - 1;
+            if (indexed < 0) {
+                index.putInt(slot * SLOT_SIZE + 8, hash);
+                index.putLong(slot * SLOT_SIZE, position + 1);
+                keyCount++;
+                if (keyCount * 2 > slots) {
+                    mapIndex(slots * 2);
+                }
+                return;
+            }
+            if (index.getInt(slot * SLOT_SIZE + 8) == hash && Arrays.equals(keyAt(indexed), key)) {
+                index.putLong(slot * SLOT_SIZE, position + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the serialized key of a record.
+     *
+     * @param position the position of the record in the log
+     * @return the serialized key
+     * @throws IOException when the log can't be read
+     */
+    private byte[] keyAt(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, position);
+        ByteBuffer key = ByteBuffer.allocate(header.getInt());
+        readFully(key, position + HEADER_SIZE);
+        return key.array();
+    }
+
+    /**
+     * Maps an empty index of a number of slots, re-indexing the entries of
+     * the current index, if any, which only ever grows.  Must be called
+     * holding the write lock, or while constructing.
+     *
+     * @param capacity the number of slots, a power of two
+     * @throws IOException when the index can't be mapped
+     */
+    private void mapIndex(int capacity) throws IOException {
+        long[] positions = new long[keyCount];
+        int[] hashes = new int[keyCount];
+        int count = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long position = index.getLong(slot * SLOT_SIZE);
+            if (position != 0) {
+                positions[count] = position;
+                hashes[count++] = index.getInt(slot * SLOT_SIZE + 8);
+            }
+        }
+
+        index = indexFile.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * SLOT_SIZE);
+        slots = capacity;
+        for (int i = 0; i < capacity * SLOT_SIZE; i += 8) {
+            index.putLong(i, 0);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int slot = hashes[i] & (slots - 1);
+            while (index.getLong(slot * SLOT_SIZE) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            index.putInt(slot * SLOT_SIZE + 8, hashes[i]);
+            index.putLong(slot * SLOT_SIZE, positions[i]);
+        }
+    }
+
+    /**
+     * Rebuilds the index from the log, truncating a partially written record
+     * at its end.
+     *
+     * @throws IOException when the log can't be read
+     */
+    private void recover() throws IOException {
+        long size = log.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            long next = position + HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            if (keyLength < 0 || valueLength < -1 || next > size) {
+                break;
+            }
+
+            end = next;
+            index(keyAt(position), position);
+            position = next;
+        }
+
+        if (end < size) {
+            log.truncate(end);
+        }
+    }
+
+    /**
+     * Ensures that the store hasn't been closed.
+     *
+     * @throws IllegalStateException when the store has been closed
+     */
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The store has been closed");
+        }
+    }
+
+    /**
+     * Serializes a key and a value into a record.
+     *
+     * @param key   the key
+     * @param value the value, or <code>null</code> for a deleted key
+     * @return the serialized key and value
+     * @throws IOException when the key or value can't be serialized
+     */
+    private static byte[][] record(Object key, Object value) throws IOException {
+        return new byte[][] {toBytes(key), value == null ? null : toBytes(value)};
+    }
+
+    /**
+     * Serializes an object.
+     *
+     * @param object the object
+     * @return the serialized form of the object
+     * @throws IOException when the object can't be serialized
+     */
+    private static byte[] toBytes(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an object.
+     *
+     * @param bytes the serialized form of the object
+     * @return the object
+     * @throws IOException            when the object can't be deserialized
+     * @throws ClassNotFoundException when the class of the object can't be loaded
+     */
+    private static Object fromBytes(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * Hashes a serialized key, spreading the bits so that the low bits
+     * select well distributed slots.
+     *
+     * @param key the serialized key
+     * @return the hash
+     */
+    private static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
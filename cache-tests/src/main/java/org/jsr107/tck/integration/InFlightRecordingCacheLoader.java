@@ -0,0 +1,244 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import javax.cache.integration.CacheLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link CacheLoader} that delegates to another {@link CacheLoader} while
+ * recording, for each key, how many loads are in flight at once, so that
+ * duplicate concurrent loads of the same key, a cache stampede, are detected.
+ * <p>
+ * An implementation that coalesces concurrent loads of a key never has more
+ * than one load of the key in flight.  Wrapping a slow {@link CacheLoader},
+ * for example a {@link LatencyInjectingCacheLoader}, widens the window in
+ * which duplicate loads may occur.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class InFlightRecordingCacheLoader<K, V> implements CacheLoader<K, V>, AutoCloseable {
+
+  /**
+   * The {@link CacheLoader} to delegate to.
+   */
+  private final CacheLoader<K, V> cacheLoader;
+
+  /**
+   * The {@link KeyRecord} of each key that has been loaded.
+   */
+  private final ConcurrentMap<K, KeyRecord> records = new ConcurrentHashMap<K, KeyRecord>();
+
+  /**
+   * The number of loads started while a load of the same key was in flight.
+   */
+  private final AtomicLong duplicateLoadCount = new AtomicLong();
+
+  /**
+   * The maximum number of loads of any single key that were in flight at once.
+   */
+  private final AtomicInteger maximumConcurrentLoads = new AtomicInteger();
+
+  /**
+   * Constructs an {@link InFlightRecordingCacheLoader}.
+   *
+   * @param cacheLoader the {@link CacheLoader} to delegate to
+   */
+  public InFlightRecordingCacheLoader(CacheLoader<K, V> cacheLoader) {
+    if (cacheLoader == null) {
+      throw new NullPointerException("The CacheLoader to delegate to must be specified");
+    }
+    this.cacheLoader = cacheLoader;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public V load(K key) {
+    KeyRecord record = begin(key);
+    try {
+      return cacheLoader.load(key);
+    } finally {
+      record.inFlight.decrementAndGet();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<K, V> loadAll(Iterable<? extends K> keys) {
+    List<KeyRecord> begun = new ArrayList<KeyRecord>();
+    try {
+      for (K key : keys) {
+        begun.add(begin(key));
+      }
+
+      return cacheLoader.loadAll(keys);
+    } finally {
+      for (KeyRecord record : begun) {
+        record.inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Records the start of a load of a key.
+   *
+   * @param key the key being loaded
+   * @return the {@link KeyRecord} of the key
+   */
+  private KeyRecord begin(K key) {
+    if (key == null) {
+      throw new NullPointerException("Attempted to load a null key!");
+    }
+
+    KeyRecord record = records.get(key);
+    if (record == null) {
+      KeyRecord created = new KeyRecord();
+      record = records.putIfAbsent(key, created);
+      if (record == null) {
+        record = created;
+      }
+    }
+
+    record.loads.incrementAndGet();
+    int inFlight = record.inFlight.incrementAndGet();
+    if (inFlight > 1) {
+      duplicateLoadCount.incrementAndGet();
+    }
+    raise(record.maximumInFlight, inFlight);
+    raise(maximumConcurrentLoads, inFlight);
+
+    return record;
+  }
+
+  /**
+   * Raises a maximum to a value, unless it's already greater.
+   *
+   * @param maximum the maximum
+   * @param value   the value
+   */
+  private static void raise(AtomicInteger maximum, int value) {
+    int current = maximum.get();
+    while (value > current && !maximum.compareAndSet(current, value)) {
+      current = maximum.get();
+    }
+  }
+
+  /**
+   * Obtains the number of loads of a key.
+   *
+   * @param key the key
+   * @return the number of loads of the key
+   */
+  public int getLoadCount(K key) {
+    KeyRecord record = records.get(key);
+    return record == null ? 0 : record.loads.get();
+  }
+
+  /**
+   * Obtains the maximum number of loads of a key that were in flight at once.
+   *
+   * @param key the key
+   * @return the maximum number of concurrent loads of the key
+   */
+  public int getMaximumConcurrentLoads(K key) {
+    KeyRecord record = records.get(key);
+    return record == null ? 0 : record.maximumInFlight.get();
+  }
+
+  /**
+   * Obtains the maximum number of loads of any single key that were in flight
+   * at once, which is 1 when concurrent loads were always coalesced.
+   *
+   * @return the maximum number of concurrent loads of a key
+   */
+  public int getMaximumConcurrentLoads() {
+    return maximumConcurrentLoads.get();
+  }
+
+  /**
+   * Obtains the number of loads that started while a load of the same key
+   * was already in flight, which is 0 when concurrent loads were always coalesced.
+   *
+   * @return the number of duplicate loads
+   */
+  public long getDuplicateLoadCount() {
+    return duplicateLoadCount.get();
+  }
+
+  /**
+   * Obtains the total number of loads of all keys.
+   *
+   * @return the number of loads
+   */
+  public long getLoadCount() {
+    long count = 0;
+    for (KeyRecord record : records.values()) {
+      count += record.loads.get();
+    }
+    return count;
+  }
+
+  /**
+   * Obtains the number of distinct keys that have been loaded.
+   *
+   * @return the number of keys
+   */
+  public int getKeyCount() {
+    return records.size();
+  }
+
+  /**
+   * Forgets what has been recorded.  Loads in flight while being reset may
+   * be partially recorded.
+   */
+  public void reset() {
+    records.clear();
+    duplicateLoadCount.set(0);
+    maximumConcurrentLoads.set(0);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws Exception {
+    if (cacheLoader instanceof AutoCloseable) {
+      ((AutoCloseable) cacheLoader).close();
+    }
+  }
+
+  /**
+   * What has been recorded for a key.
+   */
+  private static class KeyRecord {
+    /**
+     * The number of loads of the key.
+     */
+    private final AtomicInteger loads = new AtomicInteger();
+
+    /**
+     * The number of loads of the key in flight.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The maximum number of loads of the key that were in flight at once.
+     */
+    private final AtomicInteger maximumInFlight = new AtomicInteger();
+  }
+}
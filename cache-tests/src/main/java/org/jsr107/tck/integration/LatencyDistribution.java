@@ -0,0 +1,156 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A distribution of latencies injected by a {@link LatencyInjectingCacheLoader}
+ * or a {@link LatencyInjectingCacheWriter}, simulating a slow backing store.
+ * <p>
+ * Latencies are drawn using a {@link Random} supplied by the caller, so that
+ * seeding the {@link Random} reproduces the same sequence of latencies.
+ *
+ * @see LatencyInjectingCacheLoader
+ * @see LatencyInjectingCacheWriter
+ */
+public abstract class LatencyDistribution {
+
+    /**
+     * Draws the next latency from the {@link LatencyDistribution}.
+     *
+     * @param random the {@link Random} to draw with
+     * @return the latency in nanoseconds, never negative
+     */
+    public abstract long nextNanos(Random random);
+
+    /**
+     * Obtains a {@link LatencyDistribution} that always has the same latency.
+     *
+     * @param latency the latency
+     * @param unit    the {@link TimeUnit} of the latency
+     * @return the {@link LatencyDistribution}
+     */
+    public static LatencyDistribution fixed(long latency, TimeUnit unit) {
+        final long nanos = toNanos(latency, unit);
+
+        return new LatencyDistribution() {
+            @Override
+            public long nextNanos(Random random) {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed{" + nanos + "ns}";
+            }
+        };
+    }
+
+    /**
+     * Obtains a {@link LatencyDistribution} with latencies uniformly
+     * distributed between a minimum (inclusive) and a maximum (exclusive).
+     *
+     * @param minimum the minimum latency
+     * @param maximum the maximum latency
+     * @param unit    the {@link TimeUnit} of the latencies
+     * @return the {@link LatencyDistribution}
+     */
+    public static LatencyDistribution uniform(long minimum, long maximum, TimeUnit unit) {
+        final long minimumNanos = toNanos(minimum, unit);
+        final long maximumNanos = toNanos(maximum, unit);
+        if (maximumNanos < minimumNanos) {
+            throw new IllegalArgumentException("The maximum latency must not be less than the minimum latency");
+        }
+
+        return new LatencyDistribution() {
+            @Override
+            public long nextNanos(Random random) {
+                return minimumNanos + (long) (random.nextDouble() * (maximumNanos - minimumNanos));
+            }
+
+            @Override
+            public String toString() {
+                return "uniform{" + minimumNanos + "ns.." + maximumNanos + "ns}";
+            }
+        };
+    }
+
+    /**
+     * Obtains a {@link LatencyDistribution} with exponentially distributed
+     * latencies, as when requests queue for a busy backing store, so that
+     * most latencies are short but some are many times the mean.
+     *
+     * @param mean the mean latency
+     * @param unit the {@link TimeUnit} of the mean latency
+     * @return the {@link LatencyDistribution}
+     */
+    public static LatencyDistribution exponential(long mean, TimeUnit unit) {
+        final long meanNanos = toNanos(mean, unit);
+
+        return new LatencyDistribution() {
+            @Override
+            public long nextNanos(Random random) {
+                return (long) (-meanNanos * Math.log(1.0 - random.nextDouble()));
+            }
+
+            @Override
+            public String toString() {
+                return "exponential{mean=" + meanNanos + "ns}";
+            }
+        };
+    }
+
+    /**
+     * Obtains a {@link LatencyDistribution} that usually draws from one
+     * {@link LatencyDistribution}, but occasionally spikes by drawing from
+     * another, simulating the tail latencies of garbage collection pauses,
+     * lock contention or failovers in a backing store.
+     *
+     * @param usual            the usual {@link LatencyDistribution}
+     * @param spike            the {@link LatencyDistribution} of spikes
+     * @param spikeProbability the probability, between 0 and 1, of a spike
+     * @return the {@link LatencyDistribution}
+     */
+    public static LatencyDistribution bimodal(final LatencyDistribution usual,
+                                              final LatencyDistribution spike,
+                                              final double spikeProbability) {
+        if (usual == null || spike == null) {
+            throw new NullPointerException("The usual and spike distributions must be specified");
+        }
+        if (spikeProbability < 0 || spikeProbability > 1) {
+            throw new IllegalArgumentException("The spike probability must be between 0 and 1, not " + spikeProbability);
+        }
+
+        return new LatencyDistribution() {
+            @Override
+            public long nextNanos(Random random) {
+                return random.nextDouble() < spikeProbability ? spike.nextNanos(random) : usual.nextNanos(random);
+            }
+
+            @Override
+            public String toString() {
+                return "bimodal{usual=" + usual + ", spike=" + spike + ", probability=" + spikeProbability + "}";
+            }
+        };
+    }
+
+    /**
+     * Converts a latency into nanoseconds, ensuring it isn't negative.
+     *
+     * @param latency the latency
+     * @param unit    the {@link TimeUnit} of the latency
+     * @return the latency in nanoseconds
+     */
+    private static long toNanos(long latency, TimeUnit unit) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("A latency can't be negative: " + latency);
+        }
+        return unit.toNanos(latency);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.support.LatencyHistogram;
+
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheLoaderException;
+import java.util.Map;
+
+/**
+ * A {@link CacheLoader} that delegates to another {@link CacheLoader} after
+ * injecting a latency drawn from a {@link LatencyDistribution}, and fails at
+ * a configurable rate, simulating a slow or unreliable backing store so that
+ * read-through throughput and tail latencies can be measured.
+ * <p>
+ * A latency is injected once per call, so that {@link #loadAll(Iterable)}
+ * models a single round trip to the backing store.  A failed call throws a
+ * {@link CacheLoaderException} without delegating.  Latencies and failures are
+ * drawn from a {@link java.util.Random} with the specified seed, so that
+ * single-threaded runs are reproducible.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class LatencyInjectingCacheLoader<K, V> implements CacheLoader<K, V>, AutoCloseable {
+
+  /**
+   * The {@link CacheLoader} to delegate to.
+   */
+  private final CacheLoader<K, V> cacheLoader;
+
+  /**
+   * The {@link LatencyInjector} delaying and failing calls.
+   */
+  private final LatencyInjector injector;
+
+  /**
+   * Constructs a {@link LatencyInjectingCacheLoader} that never fails.
+   *
+   * @param cacheLoader  the {@link CacheLoader} to delegate to
+   * @param distribution the {@link LatencyDistribution} of the injected latencies
+   * @param seed         the seed for drawing latencies
+   */
+  public LatencyInjectingCacheLoader(CacheLoader<K, V> cacheLoader, LatencyDistribution distribution, long seed) {
+    this(cacheLoader, distribution, 0, seed);
+  }
+
+  /**
+   * Constructs a {@link LatencyInjectingCacheLoader}.
+   *
+   * @param cacheLoader  the {@link CacheLoader} to delegate to
+   * @param distribution the {@link LatencyDistribution} of the injected latencies
+   * @param failureRate  the probability, between 0 and 1, that a call fails
+   * @param seed         the seed for drawing latencies and failures
+   */
+  public LatencyInjectingCacheLoader(CacheLoader<K, V> cacheLoader, LatencyDistribution distribution,
+                                     double failureRate, long seed) {
+    if (cacheLoader == null) {
+      throw new NullPointerException("The CacheLoader to delegate to must be specified");
+    }
+    this.cacheLoader = cacheLoader;
+    this.injector = new LatencyInjector(distribution, failureRate, seed);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public V load(K key) {
+    inject("load of " + key);
+
+    return cacheLoader.load(key);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<K, V> loadAll(Iterable<? extends K> keys) {
+    inject("loadAll");
+
+    return cacheLoader.loadAll(keys);
+  }
+
+  /**
+   * Injects the next latency, failing the call when required.
+   *
+   * @param call a description of the call
+   * @throws CacheLoaderException when the call should fail
+   */
+  private void inject(String call) {
+    try {
+      if (injector.inject()) {
+        throw new CacheLoaderException("Injected failure of " + call);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheLoaderException("Interrupted while injecting latency into " + call, e);
+    }
+  }
+
+  /**
+   * Obtains the {@link LatencyHistogram} of the injected latencies.
+   *
+   * @return the {@link LatencyHistogram}
+   */
+  public LatencyHistogram getInjectedLatencies() {
+    return injector.getLatencies();
+  }
+
+  /**
+   * Obtains the number of calls that were failed.
+   *
+   * @return the number of injected failures
+   */
+  public long getInjectedFailureCount() {
+    return injector.getFailureCount();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws Exception {
+    if (cacheLoader instanceof AutoCloseable) {
+      ((AutoCloseable) cacheLoader).close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LatencyInjectingCacheLoader{" + injector + ", cacheLoader=" + cacheLoader + "}";
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.support.LatencyHistogram;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheWriter;
+import javax.cache.integration.CacheWriterException;
+import java.util.Collection;
+
+/**
+ * A {@link CacheWriter} that delegates to another {@link CacheWriter} after
+ * injecting a latency drawn from a {@link LatencyDistribution}, and fails at
+ * a configurable rate, simulating a slow or unreliable backing store so that
+ * write-through throughput and tail latencies can be measured.
+ * <p>
+ * A latency is injected once per call, so that {@link #writeAll(Collection)}
+ * and {@link #deleteAll(Collection)} model a single round trip to the backing
+ * store.  A failed call throws a {@link CacheWriterException} without
+ * delegating, leaving all of the entries, or keys, of a batch unwritten.
+ * Latencies and failures are drawn from a {@link java.util.Random} with the
+ * specified seed, so that single-threaded runs are reproducible.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class LatencyInjectingCacheWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
+
+    /**
+     * The {@link CacheWriter} to delegate to.
+     */
+    private final CacheWriter<K, V> cacheWriter;
+
+    /**
+     * The {@link LatencyInjector} delaying and failing calls.
+     */
+    private final LatencyInjector injector;
+
+    /**
+     * Constructs a {@link LatencyInjectingCacheWriter} that never fails.
+     *
+     * @param cacheWriter  the {@link CacheWriter} to delegate to
+     * @param distribution the {@link LatencyDistribution} of the injected latencies
+     * @param seed         the seed for drawing latencies
+     */
+    public LatencyInjectingCacheWriter(CacheWriter<K, V> cacheWriter, LatencyDistribution distribution, long seed) {
+        this(cacheWriter, distribution, 0, seed);
+    }
+
+    /**
+     * Constructs a {@link LatencyInjectingCacheWriter}.
+     *
+     * @param cacheWriter  the {@link CacheWriter} to delegate to
+     * @param distribution the {@link LatencyDistribution} of the injected latencies
+     * @param failureRate  the probability, between 0 and 1, that a call fails
+     * @param seed         the seed for drawing latencies and failures
+     */
+    public LatencyInjectingCacheWriter(CacheWriter<K, V> cacheWriter, LatencyDistribution distribution,
+                                       double failureRate, long seed) {
+        if (cacheWriter == null) {
+            throw new NullPointerException("The CacheWriter to delegate to must be specified");
+        }
+        this.cacheWriter = cacheWriter;
+        this.injector = new LatencyInjector(distribution, failureRate, seed);
+    }
+
+    @Override
+    public void write(Cache.Entry<? extends K, ? extends V> entry) {
+        inject("write of " + entry.getKey());
+
+        cacheWriter.write(entry);
+    }
+
+    @Override
+    public void writeAll(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
+        inject("writeAll");
+
+        cacheWriter.writeAll(entries);
+    }
+
+    @Override
+    public void delete(Object key) {
+        inject("delete of " + key);
+
+        cacheWriter.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<?> keys) {
+        inject("deleteAll");
+
+        cacheWriter.deleteAll(keys);
+    }
+
+    /**
+     * Injects the next latency, failing the call when required.
+     *
+     * @param call a description of the call
+     * @throws CacheWriterException when the call should fail
+     */
+    private void inject(String call) {
+        try {
+            if (injector.inject()) {
+                throw new CacheWriterException("Injected failure of " + call);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheWriterException("Interrupted while injecting latency into " + call, e);
+        }
+    }
+
+    /**
+     * Obtains the {@link LatencyHistogram} of the injected latencies.
+     *
+     * @return the {@link LatencyHistogram}
+     */
+    public LatencyHistogram getInjectedLatencies() {
+        return injector.getLatencies();
+    }
+
+    /**
+     * Obtains the number of calls that were failed.
+     *
+     * @return the number of injected failures
+     */
+    public long getInjectedFailureCount() {
+        return injector.getFailureCount();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (cacheWriter instanceof AutoCloseable) {
+            ((AutoCloseable) cacheWriter).close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "LatencyInjectingCacheWriter{" + injector + ", cacheWriter=" + cacheWriter + "}";
+    }
+}
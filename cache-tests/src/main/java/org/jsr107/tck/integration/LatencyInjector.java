@@ -0,0 +1,123 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.support.LatencyHistogram;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delays the calling thread by latencies drawn from a {@link LatencyDistribution}
+ * and decides, at a failure rate, which calls should fail, on behalf of a
+ * {@link LatencyInjectingCacheLoader} or a {@link LatencyInjectingCacheWriter}.
+ * <p>
+ * Latencies and failures are drawn from a single seeded {@link Random}, so
+ * a single-threaded sequence of calls is reproducible.
+ */
+final class LatencyInjector {
+
+    /**
+     * The {@link LatencyDistribution} of the injected latencies.
+     */
+    private final LatencyDistribution distribution;
+
+    /**
+     * The probability, between 0 and 1, that a call fails.
+     */
+    private final double failureRate;
+
+    /**
+     * The seeded {@link Random} drawing latencies and failures.
+     */
+    private final Random random;
+
+    /**
+     * The injected latencies.
+     */
+    private final LatencyHistogram latencies;
+
+    /**
+     * The number of injected failures.
+     */
+    private final AtomicLong failures;
+
+    /**
+     * Constructs a {@link LatencyInjector}.
+     *
+     * @param distribution the {@link LatencyDistribution} of the injected latencies
+     * @param failureRate  the probability, between 0 and 1, that a call fails
+     * @param seed         the seed of the {@link Random} drawing latencies and failures
+     */
+    LatencyInjector(LatencyDistribution distribution, double failureRate, long seed) {
+        if (distribution == null) {
+            throw new NullPointerException("The latency distribution must be specified");
+        }
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("The failure rate must be between 0 and 1, not " + failureRate);
+        }
+
+        this.distribution = distribution;
+        this.failureRate = failureRate;
+        this.random = new Random(seed);
+        this.latencies = new LatencyHistogram();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * Delays the calling thread by the next latency, then determines if the
+     * call should fail.
+     *
+     * @return <code>true</code> if the call should fail
+     * @throws InterruptedException when interrupted while delayed
+     */
+    boolean inject() throws InterruptedException {
+        long nanos;
+        boolean isFailure;
+        synchronized (random) {
+            nanos = distribution.nextNanos(random);
+            isFailure = failureRate > 0 && random.nextDouble() < failureRate;
+        }
+
+        latencies.record(nanos);
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+
+        if (isFailure) {
+            failures.incrementAndGet();
+        }
+        return isFailure;
+    }
+
+    /**
+     * Obtains the {@link LatencyHistogram} of the injected latencies.
+     *
+     * @return the {@link LatencyHistogram}
+     */
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Obtains the number of injected failures.
+     *
+     * @return the number of failures
+     */
+    long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return distribution + ", failureRate=" + failureRate;
+    }
+}
@@ -6,6 +6,8 @@
  */
 package org.jsr107.tck.integration;
 
+import org.jsr107.tck.support.BatchStatistics;
+
 import javax.cache.integration.CacheLoader;
 import java.util.HashMap;
 import java.util.Map;
@@ -35,6 +37,11 @@ public class RecordingCacheLoader<K> implements CacheLoader<K, K>, AutoCloseable
    */
   private final AtomicInteger loadCount = new AtomicInteger(0);
 
+  /**
+   * The {@link BatchStatistics} of the batches of keys loaded with {@link #loadAll(Iterable)}.
+   */
+  private final BatchStatistics loadAllBatches = new BatchStatistics();
+
   /**
    * {@inheritDoc}
    */
@@ -56,14 +63,18 @@ public class RecordingCacheLoader<K> implements CacheLoader<K, K>, AutoCloseable
   @Override
   public Map<K, K> loadAll(Iterable<? extends K> keys) {
     Map<K, K> map = new HashMap<K, K>();
+    int size = 0;
     for (K key : keys) {
       if (key == null) {
         throw new NullPointerException("Attempted to load a null key!");
       } else {
         map.put(key, key);
+        size++;
       }
     }
 
+    loadAllBatches.record(size);
+
     loaded.putAll(map);
     loadCount.addAndGet(map.size());
 
@@ -79,6 +90,16 @@ public class RecordingCacheLoader<K> implements CacheLoader<K, K>, AutoCloseable
     return loadCount.get();
   }
 
+  /**
+   * Obtains the {@link BatchStatistics} of the batches of keys loaded with
+   * {@link #loadAll(Iterable)}, including the histogram of their sizes.
+   *
+   * @return the {@link BatchStatistics}
+   */
+  public BatchStatistics getLoadAllBatches() {
+    return loadAllBatches;
+  }
+
   /**
    * Determines if the specified key has been loaded by this loader.
    *
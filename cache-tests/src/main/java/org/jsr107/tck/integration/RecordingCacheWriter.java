@@ -6,16 +6,25 @@
  */
 package org.jsr107.tck.integration;
 
+import org.jsr107.tck.support.BatchStatistics;
+import org.jsr107.tck.support.StripedCounter;
+
 import javax.cache.Cache;
 import javax.cache.integration.CacheWriter;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A CacheWriter implementation that records the entries written and deleted from it so
  * that they may be later asserted.
+ * <p>
+ * Counts are kept in {@link StripedCounter}s, so that many threads writing
+ * through concurrently don't contend on the recorder.  In compact mode only
+ * the counts and batches are recorded, rather than the keys and values, so
+ * that high volume write-through tests measure the cache rather than the
+ * heap used by the recorder, and what was written or deleted for each key
+ * can't be determined.
  *
  * @param <K> the type of the keys
  * @param <V> the type of the values
@@ -23,44 +32,81 @@ import java.util.concurrent.atomic.AtomicLong;
 public class RecordingCacheWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
 
     /**
-     * A writtenKeys of keys to values that have been written.
+     * A writtenKeys of keys to values that have been written, or
+     * <code>null</code> in compact mode.
      */
-    private ConcurrentHashMap<K, V> writtenKeys;
+    private final ConcurrentHashMap<K, V> writtenKeys;
 
 
     /**
-     * A writtenKeys of keys to values that have been deleted.
+     * A writtenKeys of keys to values that have been deleted, or
+     * <code>null</code> in compact mode.
      */
-    private ConcurrentHashMap<K, V> deletedEntries;
+    private final ConcurrentHashMap<K, V> deletedEntries;
 
     /**
      * The number of writes that have so far occurred.
      */
-    private AtomicLong writeCount;
+    private final StripedCounter writeCount;
 
     /**
      * The number of deletes that have so far occurred.
      */
-    private AtomicLong deleteCount;
+    private final StripedCounter deleteCount;
+
+    /**
+     * The {@link BatchStatistics} of the batches written with {@link #writeAll(Collection)}.
+     */
+    private final BatchStatistics writeBatches;
+
+    /**
+     * The {@link BatchStatistics} of the batches deleted with {@link #deleteAll(Collection)}.
+     */
+    private final BatchStatistics deleteBatches;
 
     /**
      * Constructs a RecordingCacheWriter.
      */
     public RecordingCacheWriter() {
-        this.writtenKeys = new ConcurrentHashMap<>();
-        this.deletedEntries = new ConcurrentHashMap<>();
-        this.writeCount = new AtomicLong();
-        this.deleteCount = new AtomicLong();
+        this(false);
+    }
+
+    /**
+     * Constructs a RecordingCacheWriter.
+     *
+     * @param compact <code>true</code> to record only the counts and batches,
+     *                rather than the keys and values
+     */
+    public RecordingCacheWriter(boolean compact) {
+        this.writtenKeys = compact ? null : new ConcurrentHashMap<K, V>();
+        this.deletedEntries = compact ? null : new ConcurrentHashMap<K, V>();
+        this.writeCount = new StripedCounter();
+        this.deleteCount = new StripedCounter();
+        this.writeBatches = new BatchStatistics();
+        this.deleteBatches = new BatchStatistics();
+    }
+
+    /**
+     * Determines if only the counts and batches are recorded.
+     *
+     * @return true if in compact mode
+     */
+    public boolean isCompact() {
+        return writtenKeys == null;
     }
 
     @Override
     public void write(Cache.Entry<? extends K, ? extends V> entry) {
-        writtenKeys.put(entry.getKey(), entry.getValue());
-        writeCount.incrementAndGet();
+        if (writtenKeys != null) {
+            writtenKeys.put(entry.getKey(), entry.getValue());
+        }
+        writeCount.increment();
     }
 
     @Override
     public void writeAll(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
+        writeBatches.record(entries.size());
+
         Iterator<Cache.Entry<? extends K, ? extends V>> iterator = entries.iterator();
         while (iterator.hasNext()) {
             write(iterator.next());
@@ -70,15 +116,19 @@ public class RecordingCacheWriter<K, V> implements CacheWriter<K, V>, AutoClosea
 
     @Override
     public void delete(Object key) {
-        V value = writtenKeys.remove((K)key);
-        if (value != null) {
-            deletedEntries.put((K) key, value);
+        if (writtenKeys != null) {
+            V value = writtenKeys.remove((K)key);
+            if (value != null) {
+                deletedEntries.put((K) key, value);
+            }
         }
-        deleteCount.incrementAndGet();
+        deleteCount.increment();
     }
 
     @Override
     public void deleteAll(Collection<?> entries) {
+        deleteBatches.record(entries.size());
+
         for (Iterator<?> keys = entries.iterator(); keys.hasNext(); ) {
             delete(keys.next());
             keys.remove();
@@ -90,8 +140,10 @@ public class RecordingCacheWriter<K, V> implements CacheWriter<K, V>, AutoClosea
      *
      * @param key the key
      * @return the value last written
+     * @throws IllegalStateException in compact mode, as values aren't recorded
      */
     public V get(K key) {
+        assertRecordingEntries();
         return writtenKeys.get(key);
     }
 
@@ -100,8 +152,10 @@ public class RecordingCacheWriter<K, V> implements CacheWriter<K, V>, AutoClosea
      *
      * @param key the key
      * @return true if there is a last written value
+     * @throws IllegalStateException in compact mode, as keys aren't recorded
      */
     public boolean hasWritten(K key) {
+        assertRecordingEntries();
         return writtenKeys.containsKey(key);
     }
 
@@ -110,11 +164,24 @@ public class RecordingCacheWriter<K, V> implements CacheWriter<K, V>, AutoClosea
      *
      * @param key the key
      * @return true if there is a last written value
+     * @throws IllegalStateException in compact mode, as keys aren't recorded
      */
     public boolean hasDeleted(K key) {
+        assertRecordingEntries();
         return deletedEntries.containsKey(key);
     }
 
+    /**
+     * Ensures that the keys and values are being recorded.
+     *
+     * @throws IllegalStateException in compact mode
+     */
+    private void assertRecordingEntries() {
+        if (writtenKeys == null) {
+            throw new IllegalStateException("Keys and values aren't recorded by a compact RecordingCacheWriter");
+        }
+    }
+
     /**
      * Gets the number of writes that have occurred.
      *
@@ -134,13 +201,77 @@ public class RecordingCacheWriter<K, V> implements CacheWriter<K, V>, AutoClosea
     }
 
     /**
-     * Clears the contents of stored values.
+     * Gets the number of batches written with {@link #writeAll(Collection)}.
+     *
+     * @return the number of batches
+     */
+    public long getWriteBatchCount() {
+        return writeBatches.getCount();
+    }
+
+    /**
+     * Gets the number of batches deleted with {@link #deleteAll(Collection)}.
+     *
+     * @return the number of batches
+     */
+    public long getDeleteBatchCount() {
+        return deleteBatches.getCount();
+    }
+
+    /**
+     * Gets the size of the largest batch written with {@link #writeAll(Collection)}.
+     *
+     * @return the size of the largest batch
+     */
+    public long getMaximumWriteBatchSize() {
+        return writeBatches.getMaximum();
+    }
+
+    /**
+     * Gets the size of the largest batch deleted with {@link #deleteAll(Collection)}.
+     *
+     * @return the size of the largest batch
+     */
+    public long getMaximumDeleteBatchSize() {
+        return deleteBatches.getMaximum();
+    }
+
+    /**
+     * Gets the {@link BatchStatistics} of the batches written with
+     * {@link #writeAll(Collection)}, including the histogram of their sizes.
+     *
+     * @return the {@link BatchStatistics}
+     */
+    public BatchStatistics getWriteBatches() {
+        return writeBatches;
+    }
+
+    /**
+     * Gets the {@link BatchStatistics} of the batches deleted with
+     * {@link #deleteAll(Collection)}, including the histogram of their sizes.
+     *
+     * @return the {@link BatchStatistics}
+     */
+    public BatchStatistics getDeleteBatches() {
+        return deleteBatches;
+    }
+
+    /**
+     * Clears the contents of stored values and resets the counts.
+     * <p>
+     * The counters are reset in place rather than replaced, so a write or
+     * delete concurrent with clearing is counted either before or after
+     * clearing, but never lost.
      */
     public void clear() {
-        writtenKeys.clear();
-        deletedEntries.clear();
-        this.writeCount = new AtomicLong();
-        this.deleteCount = new AtomicLong();
+        if (writtenKeys != null) {
+            writtenKeys.clear();
+            deletedEntries.clear();
+        }
+        writeCount.reset();
+        deleteCount.reset();
+        writeBatches.reset();
+        deleteBatches.reset();
     }
 
   @Override
@@ -0,0 +1,54 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheLoaderException;
+
+/**
+ * A {@link CacheLoader} that can hand on loaded entries one at a time, as
+ * they are produced, instead of returning them all in a single {@link java.util.Map}.
+ * <p>
+ * When the {@link CacheLoader} of a {@link CacheLoaderServer} is a
+ * {@link StreamingCacheLoader}, entries are sent to the {@link CacheLoaderClient}
+ * as they are loaded, so that neither needs to hold every loaded entry at
+ * once and the first entries arrive before the last have been loaded.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @see CacheLoaderServer
+ * @see CacheLoaderClient
+ */
+public interface StreamingCacheLoader<K, V> extends CacheLoader<K, V> {
+
+  /**
+   * Loads multiple objects, handing each to the specified {@link EntryConsumer}
+   * as soon as it has been loaded.  Should loading fail, the entries already
+   * handed on remain loaded.
+   *
+   * @param keys     the keys identifying the values to be loaded
+   * @param consumer the {@link EntryConsumer} to which loaded entries are handed
+   * @throws CacheLoaderException when loading fails
+   */
+  void loadAll(Iterable<? extends K> keys, EntryConsumer<K, V> consumer) throws CacheLoaderException;
+
+  /**
+   * Accepts the entries loaded by a {@link StreamingCacheLoader}.
+   *
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   */
+  interface EntryConsumer<K, V> {
+    /**
+     * Accepts a loaded entry.
+     *
+     * @param key   the key
+     * @param value the loaded value
+     */
+    void accept(K key, V value);
+  }
+}
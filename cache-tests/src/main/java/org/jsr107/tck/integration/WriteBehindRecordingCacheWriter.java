@@ -0,0 +1,322 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.support.LatencyHistogram;
+import org.jsr107.tck.support.StripedCounter;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheWriter;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link CacheWriter} that measures how far, and in what order, the writes
+ * and deletes it receives lag behind the mutations made to a {@link Cache},
+ * so that implementations that write behind can be evaluated.
+ * <p>
+ * A test calls {@link #mutating(Object, Object)} just before each mutation,
+ * with the value put or <code>null</code> for a removal, which timestamps the
+ * mutation.  Each write or delete received is matched to the latest pending
+ * mutation of its key with the same value, recording the time since that
+ * mutation as its lag.  Earlier pending mutations of the key that are never
+ * written are counted as coalesced.  A write or delete that matches no
+ * pending mutation, because a later mutation of the key has already been
+ * written, is counted as an ordering violation.
+ * <p>
+ * Mutations of a key must be made by one thread at a time, so that the order
+ * in which they are timestamped is the order in which they are made.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class WriteBehindRecordingCacheWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
+
+    /**
+     * The {@link KeyRecord} of each key that has been mutated.
+     */
+    private final ConcurrentMap<Object, KeyRecord> records = new ConcurrentHashMap<Object, KeyRecord>();
+
+    /**
+     * The {@link LatencyHistogram} of the time from each mutation to the
+     * write or delete of its value.
+     */
+    private final LatencyHistogram lags = new LatencyHistogram();
+
+    /**
+     * The number of mutations timestamped.
+     */
+    private final StripedCounter mutationCount = new StripedCounter();
+
+    /**
+     * The number of writes and deletes received.
+     */
+    private final StripedCounter operationCount = new StripedCounter();
+
+    /**
+     * The number of mutations superseded before being written.
+     */
+    private final StripedCounter coalescedCount = new StripedCounter();
+
+    /**
+     * The number of writes and deletes received out of order.
+     */
+    private final StripedCounter orderingViolationCount = new StripedCounter();
+
+    /**
+     * The number of keys whose latest mutation hasn't been written.
+     */
+    private final AtomicLong pendingKeyCount = new AtomicLong();
+
+    /**
+     * Timestamps a mutation that is about to be made.
+     *
+     * @param key   the key being mutated
+     * @param value the value being put, or <code>null</code> when the key is being removed
+     */
+    public void mutating(K key, V value) {
+        KeyRecord record = records.get(key);
+        if (record == null) {
+            record = new KeyRecord();
+            KeyRecord existing = records.putIfAbsent(key, record);
+            record = existing == null ? record : existing;
+        }
+
+        synchronized (record) {
+            if (record.pending.isEmpty()) {
+                pendingKeyCount.incrementAndGet();
+            }
+            record.pending.addLast(new Mutation(value, System.nanoTime()));
+        }
+        mutationCount.increment();
+    }
+
+    @Override
+    public void write(Cache.Entry<? extends K, ? extends V> entry) {
+        received(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public void writeAll(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
+        Iterator<Cache.Entry<? extends K, ? extends V>> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            write(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public void delete(Object key) {
+        received(key, null);
+    }
+
+    @Override
+    public void deleteAll(Collection<?> keys) {
+        Iterator<?> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            delete(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Matches a write or delete to the latest pending mutation of its key
+     * with the same value.
+     *
+     * @param key   the key written or deleted
+     * @param value the value written, or <code>null</code> when deleted
+     */
+    private void received(Object key, Object value) {
+        long now = System.nanoTime();
+        operationCount.increment();
+
+        KeyRecord record = records.get(key);
+        if (record == null) {
+            orderingViolationCount.increment();
+            return;
+        }
+
+        synchronized (record) {
+            Mutation matched = null;
+            int position = 0;
+            int index = 0;
+            for (Mutation mutation : record.pending) {
+                if (value == null ? mutation.value == null : value.equals(mutation.value)) {
+                    matched = mutation;
+                    position = index;
+                }
+                index++;
+            }
+
+            if (matched == null) {
+                orderingViolationCount.increment();
+                return;
+            }
+
+            lags.record(now - matched.nanos);
+            coalescedCount.add(position);
+            for (int i = 0; i <= position; i++) {
+                record.pending.removeFirst();
+            }
+            if (record.pending.isEmpty()) {
+                pendingKeyCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Waits until the latest mutation of every key has been written or deleted.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the {@link TimeUnit} of the timeout
+     * @return <code>true</code> when every mutation has been written or
+     *         coalesced, <code>false</code> when the timeout elapsed first
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public boolean awaitWritten(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pendingKeyCount.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Obtains the {@link LatencyHistogram} of the time from each mutation
+     * that was written, or deleted, to the write or delete.
+     *
+     * @return the {@link LatencyHistogram} of the lags
+     */
+    public LatencyHistogram getLags() {
+        return lags;
+    }
+
+    /**
+     * Obtains the number of mutations timestamped.
+     *
+     * @return the number of mutations
+     */
+    public long getMutationCount() {
+        return mutationCount.get();
+    }
+
+    /**
+     * Obtains the number of writes and deletes received.
+     *
+     * @return the number of writes and deletes
+     */
+    public long getOperationCount() {
+        return operationCount.get();
+    }
+
+    /**
+     * Obtains the number of mutations that were superseded by a later
+     * mutation of their key before being written or deleted.
+     *
+     * @return the number of coalesced mutations
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Obtains the ratio of mutations to the writes and deletes received,
+     * which is one when no mutations are coalesced.
+     *
+     * @return the coalescing ratio, or 0 when nothing has been received
+     */
+    public double getCoalescingRatio() {
+        long operations = operationCount.get();
+        return operations == 0 ? 0 : (double) mutationCount.get() / operations;
+    }
+
+    /**
+     * Obtains the number of writes and deletes that matched no pending
+     * mutation, because a later mutation of the key had already been written
+     * or the key was never mutated.
+     *
+     * @return the number of ordering violations
+     */
+    public long getOrderingViolationCount() {
+        return orderingViolationCount.get();
+    }
+
+    /**
+     * Obtains the number of keys whose latest mutation hasn't been written or
+     * deleted.
+     *
+     * @return the number of pending keys
+     */
+    public long getPendingKeyCount() {
+        return pendingKeyCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("mutations=%d, operations=%d, coalesced=%d (ratio %.2f), violations=%d, lags{%s}",
+            getMutationCount(), getOperationCount(), getCoalescedCount(), getCoalescingRatio(),
+            getOrderingViolationCount(), lags);
+    }
+
+    /**
+     * Closes the {@link WriteBehindRecordingCacheWriter}.
+     */
+    @Override
+    public void close() {
+        // nothing to close
+    }
+
+    /**
+     * A timestamped mutation.
+     */
+    private static final class Mutation {
+
+        /**
+         * The value put, or <code>null</code> for a removal.
+         */
+        private final Object value;
+
+        /**
+         * The {@link System#nanoTime()} of the mutation.
+         */
+        private final long nanos;
+
+        /**
+         * Constructs a {@link Mutation}.
+         *
+         * @param value the value put, or <code>null</code> for a removal
+         * @param nanos the {@link System#nanoTime()} of the mutation
+         */
+        private Mutation(Object value, long nanos) {
+            this.value = value;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * The mutations of a key that haven't yet been written or deleted, guarded
+     * by the {@link KeyRecord} itself.
+     */
+    private static final class KeyRecord {
+
+        /**
+         * The pending mutations, oldest first.
+         */
+        private final ArrayDeque<Mutation> pending = new ArrayDeque<Mutation>();
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An {@link Operation} that writes its whole request before reading its
+ * reply, and so may be invoked with {@link Client#invokeAsync(Operation)}
+ * without a thread waiting for the reply.
+ * <p>
+ * When invoked asynchronously on a multiplexed connection, the request is
+ * written by the calling thread and the reply is decoded, once it has
+ * completely arrived, by the thread receiving replies.  The reply must
+ * therefore be decoded from what the request captured when it was written,
+ * not from state that may have changed since.
+ *
+ * @param <T> the type of value returned from the {@link Operation} when it
+ *            is invoked
+ * @see Client#invokeAsync(Operation)
+ */
+public interface AsyncOperation<T> extends Operation<T> {
+
+  /**
+   * Writes the request of the {@link Operation}.
+   *
+   * @param oos the {@link ObjectOutputStream} to send information to the
+   *            {@link Server}
+   * @throws IOException when the Operation can't write to the stream
+   */
+  void onRequest(ObjectOutputStream oos) throws IOException;
+
+  /**
+   * Reads the reply of the {@link Operation}, returning the result.
+   *
+   * @param ois the {@link ObjectInputStream} to read information from the
+   *            {@link Server}
+   * @return the result of the {@link Operation}
+   * @throws IOException            when the Operation can't read from the stream
+   * @throws ClassNotFoundException when the operation can't load a required class
+   * @throws ExecutionException     when an exception occurred invoking the operation
+   */
+  T onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException, ExecutionException;
+}
@@ -0,0 +1,224 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the sizes of the batches handed to a batch operation, such as
+ * {@link javax.cache.integration.CacheLoader#loadAll(Iterable)} or
+ * {@link javax.cache.integration.CacheWriter#writeAll(java.util.Collection)},
+ * and the rate of calls, so that whether an implementation batches calls to
+ * the integration layer can be determined.
+ * <p>
+ * Batch sizes are recorded in a histogram of power of two buckets, the first
+ * for empty batches, then 1, 2-3, 4-7 and so on, so percentiles are
+ * approximate.  Batches are recorded concurrently without locking.
+ */
+public final class BatchStatistics {
+
+    /**
+     * The number of buckets, enough for any batch size.
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * The number of batches recorded in each bucket.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The number of batches.
+     */
+    private final StripedCounter count;
+
+    /**
+     * The total size of the batches.
+     */
+    private final StripedCounter total;
+
+    /**
+     * The size of the largest batch.
+     */
+    private final AtomicLong maximum;
+
+    /**
+     * The {@link System#nanoTime()} of the first call, or 0 when none has been recorded.
+     */
+    private final AtomicLong firstCallNanos;
+
+    /**
+     * The {@link System#nanoTime()} of the latest call.
+     */
+    private final AtomicLong lastCallNanos;
+
+    /**
+     * Constructs empty {@link BatchStatistics}.
+     */
+    public BatchStatistics() {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new StripedCounter();
+        this.total = new StripedCounter();
+        this.maximum = new AtomicLong();
+        this.firstCallNanos = new AtomicLong();
+        this.lastCallNanos = new AtomicLong();
+    }
+
+    /**
+     * Records a call with a batch.
+     *
+     * @param size the size of the batch
+     */
+    public void record(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("A batch can't have a negative size: " + size);
+        }
+
+        long now = System.nanoTime();
+        firstCallNanos.compareAndSet(0, now);
+        lastCallNanos.set(now);
+
+        buckets.incrementAndGet(bucketOf(size));
+        count.increment();
+        total.add(size);
+
+        long largest = maximum.get();
+        while (size > largest && !maximum.compareAndSet(largest, size)) {
+            largest = maximum.get();
+        }
+    }
+
+    /**
+     * Obtains the number of batches.
+     *
+     * @return the number of batches
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Obtains the total size of the batches.
+     *
+     * @return the total size
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Obtains the average size of the batches.
+     *
+     * @return the average size, or 0 when no batch has been recorded
+     */
+    public double getMean() {
+        long batches = count.get();
+        return batches == 0 ? 0 : (double) total.get() / batches;
+    }
+
+    /**
+     * Obtains the size of the largest batch.
+     *
+     * @return the size of the largest batch
+     */
+    public long getMaximum() {
+        return maximum.get();
+    }
+
+    /**
+     * Obtains an upper bound for the size of the batch at a percentile.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the largest size in the bucket of the percentile, or 0 when
+     *         no batch has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long batches = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            batches += counts[i];
+        }
+
+        long rank = (long) Math.ceil(percentile / 100.0 * batches);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (counts[i] > 0 && seen >= rank) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, maximum.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Obtains the number of batches recorded in each bucket: empty batches,
+     * then those of size 1, 2-3, 4-7 and so on.
+     *
+     * @return the counts of the buckets, up to the last bucket that isn't empty
+     */
+    public long[] getHistogram() {
+        int used = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (buckets.get(i) > 0) {
+                used = i + 1;
+            }
+        }
+
+        long[] histogram = new long[used];
+        for (int i = 0; i < used; i++) {
+            histogram[i] = buckets.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Obtains the average rate of calls between the first and latest call.
+     *
+     * @return the calls per second, or 0 when fewer than two calls have been recorded
+     */
+    public double getCallsPerSecond() {
+        long batches = count.get();
+        long elapsed = lastCallNanos.get() - firstCallNanos.get();
+        return batches < 2 || elapsed <= 0 ? 0 : (batches - 1) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * Resets the statistics.  Batches recorded concurrently may be partially recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        maximum.set(0);
+        firstCallNanos.set(0);
+        lastCallNanos.set(0);
+    }
+
+    /**
+     * Determines the bucket of a batch size.
+     *
+     * @param size the size
+     * @return the index of the bucket
+     */
+    private static int bucketOf(long size) {
+        return size == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(size));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("batches=%d, mean=%.1f, p50<=%d, p99<=%d, max=%d, rate=%.1f/s",
+            getCount(), getMean(), getPercentile(50), getPercentile(99), getMaximum(), getCallsPerSecond());
+    }
+}
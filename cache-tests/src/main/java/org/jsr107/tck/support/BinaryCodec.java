@@ -0,0 +1,146 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import javax.cache.expiry.Duration;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A compact {@link Codec} that writes a one byte tag followed by a binary
+ * encoding for the types of keys and values most commonly used by the TCK,
+ * namely {@link Long}, {@link Integer}, {@link String}, <code>byte[]</code>
+ * and {@link Duration}, falling back to Java serialization for everything else.
+ * <p>
+ * Unlike Java serialization, the binary encodings don't write class
+ * descriptors or object handles, and reading them needn't resolve classes.
+ *
+ * @see Codecs
+ */
+public class BinaryCodec implements Codec {
+
+    /**
+     * The tag of <code>null</code>.
+     */
+    private static final byte NULL = 0;
+
+    /**
+     * The tag of an object written using Java serialization.
+     */
+    private static final byte SERIALIZED = 1;
+
+    /**
+     * The tag of a {@link Long}.
+     */
+    private static final byte LONG = 2;
+
+    /**
+     * The tag of an {@link Integer}.
+     */
+    private static final byte INTEGER = 3;
+
+    /**
+     * The tag of a {@link String}.
+     */
+    private static final byte STRING = 4;
+
+    /**
+     * The tag of a <code>byte[]</code>.
+     */
+    private static final byte BYTES = 5;
+
+    /**
+     * The tag of a {@link Duration}.
+     */
+    private static final byte DURATION = 6;
+
+    /**
+     * The length of the longest {@link String} that is guaranteed to be
+     * written by {@link ObjectOutputStream#writeUTF(String)}, which encodes
+     * characters in up to three bytes and is limited to 65535 bytes.
+     */
+    private static final int MAXIMUM_UTF_LENGTH = 65535 / 3;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeObject(ObjectOutputStream oos, Object object) throws IOException {
+        if (object == null) {
+            oos.writeByte(NULL);
+            return;
+        }
+
+        Class<?> clazz = object.getClass();
+        if (clazz == Long.class) {
+            oos.writeByte(LONG);
+            oos.writeLong((Long) object);
+        } else if (clazz == Integer.class) {
+            oos.writeByte(INTEGER);
+            oos.writeInt((Integer) object);
+        } else if (clazz == String.class && ((String) object).length() <= MAXIMUM_UTF_LENGTH) {
+            oos.writeByte(STRING);
+            oos.writeUTF((String) object);
+        } else if (clazz == byte[].class) {
+            byte[] bytes = (byte[]) object;
+            oos.writeByte(BYTES);
+            oos.writeInt(bytes.length);
+            oos.write(bytes);
+        } else if (clazz == Duration.class) {
+            Duration duration = (Duration) object;
+            oos.writeByte(DURATION);
+            oos.writeByte(duration.getTimeUnit() == null ? -1 : duration.getTimeUnit().ordinal());
+            oos.writeLong(duration.getDurationAmount());
+        } else {
+            oos.writeByte(SERIALIZED);
+            oos.writeObject(object);
+
+            //only serialized objects are retained by the handle table
+            ResettingObjectOutputStream.checkpoint(oos);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        byte tag = ois.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+
+            case SERIALIZED:
+                return ois.readObject();
+
+            case LONG:
+                return ois.readLong();
+
+            case INTEGER:
+                return ois.readInt();
+
+            case STRING:
+                return ois.readUTF();
+
+            case BYTES:
+                byte[] bytes = new byte[ois.readInt()];
+                ois.readFully(bytes);
+                return bytes;
+
+            case DURATION:
+                byte timeUnit = ois.readByte();
+                long amount = ois.readLong();
+                return timeUnit < 0 ? Duration.ETERNAL : new Duration(TimeUnit.values()[timeUnit], amount);
+
+            default:
+                throw new StreamCorruptedException("Unknown tag " + tag);
+        }
+    }
+}
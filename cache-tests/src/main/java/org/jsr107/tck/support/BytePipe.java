@@ -0,0 +1,259 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * An unbounded in-memory queue of bytes, written by one party and read by
+ * another, that offers blocking {@link InputStream} semantics to the reader.
+ * <p>
+ * Writes never block.  Reads block until bytes are available or the
+ * {@link BytePipe} has been closed, after which the remaining bytes may be
+ * read before end-of-stream is reported.
+ *
+ * @see Server
+ */
+final class BytePipe {
+
+    /**
+     * The initial capacity of the buffer.
+     */
+    private static final int INITIAL_CAPACITY = 8192;
+
+    /**
+     * The capacity above which an emptied buffer is released, so that a
+     * single large transfer doesn't pin memory for the life of the pipe.
+     */
+    private static final int RETAINED_CAPACITY = 1024 * 1024;
+
+    /**
+     * The circular buffer of bytes.
+     */
+    private byte[] buffer;
+
+    /**
+     * The index of the next byte to read from the buffer.
+     */
+    private int head;
+
+    /**
+     * The number of bytes available to read from the buffer.
+     */
+    private int count;
+
+    /**
+     * Has the {@link BytePipe} been closed for writing?
+     */
+    private boolean closed;
+
+    /**
+     * The {@link InputStream} view of the {@link BytePipe}.
+     */
+    private final InputStream inputStream;
+
+    /**
+     * The {@link OutputStream} view of the {@link BytePipe}.
+     */
+    private final OutputStream outputStream;
+
+    /**
+     * Constructs an empty {@link BytePipe}.
+     */
+    BytePipe() {
+        this.buffer = new byte[INITIAL_CAPACITY];
+        this.head = 0;
+        this.count = 0;
+        this.closed = false;
+        this.inputStream = new PipeInputStream();
+        this.outputStream = new PipeOutputStream();
+    }
+
+    /**
+     * Appends the specified bytes to the {@link BytePipe}, waking up any
+     * blocked reader.
+     *
+     * @param bytes  the bytes to append
+     * @param offset the offset of the first byte in the array
+     * @param length the number of bytes to append
+     * @throws IOException when the {@link BytePipe} has been closed
+     */
+    synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("BytePipe is closed");
+        }
+
+        ensureCapacity(count + length);
+
+        int tail = (head + count) % buffer.length;
+        int firstChunk = Math.min(length, buffer.length - tail);
+        System.arraycopy(bytes, offset, buffer, tail, firstChunk);
+        System.arraycopy(bytes, offset + firstChunk, buffer, 0, length - firstChunk);
+        count += length;
+
+        notifyAll();
+    }
+
+    /**
+     * Reads up to the specified number of bytes from the {@link BytePipe},
+     * blocking until at least one byte is available or the {@link BytePipe}
+     * is closed.
+     *
+     * @param bytes  the array into which to read
+     * @param offset the offset in the array at which to start
+     * @param length the maximum number of bytes to read
+     * @return the number of bytes read or -1 when the {@link BytePipe} is
+     *         closed and empty
+     * @throws IOException when interrupted while waiting for bytes
+     */
+    synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        while (count == 0 && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bytes");
+            }
+        }
+
+        if (count == 0) {
+            return -1;
+        }
+
+        int total = Math.min(length, count);
+        int firstChunk = Math.min(total, buffer.length - head);
+        System.arraycopy(buffer, head, bytes, offset, firstChunk);
+        System.arraycopy(buffer, 0, bytes, offset + firstChunk, total - firstChunk);
+        head = (head + total) % buffer.length;
+        count -= total;
+
+        if (count == 0) {
+            head = 0;
+            if (buffer.length > RETAINED_CAPACITY) {
+                buffer = new byte[INITIAL_CAPACITY];
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Obtains the number of bytes that may be read without blocking.
+     *
+     * @return the number of available bytes
+     */
+    synchronized int available() {
+        return count;
+    }
+
+    /**
+     * Determines if the {@link BytePipe} has been closed for writing.
+     *
+     * @return <code>true</code> if closed
+     */
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the {@link BytePipe} for writing.  Bytes already written remain
+     * readable, after which readers observe end-of-stream.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Obtains an {@link InputStream} that reads from the {@link BytePipe}.
+     *
+     * @return the {@link InputStream}
+     */
+    InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Obtains an {@link OutputStream} that writes to the {@link BytePipe}.
+     * Closing the {@link OutputStream} closes the {@link BytePipe}.
+     *
+     * @return the {@link OutputStream}
+     */
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Ensures the buffer can hold at least the specified number of bytes,
+     * growing and unwrapping it as necessary.
+     *
+     * @param required the required capacity
+     */
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            int capacity = buffer.length;
+            while (capacity < required) {
+                capacity *= 2;
+            }
+
+            byte[] grown = new byte[capacity];
+            int firstChunk = Math.min(count, buffer.length - head);
+            System.arraycopy(buffer, head, grown, 0, firstChunk);
+            System.arraycopy(buffer, 0, grown, firstChunk, count - firstChunk);
+            buffer = grown;
+            head = 0;
+        }
+    }
+
+    /**
+     * The {@link InputStream} view of a {@link BytePipe}.
+     */
+    private class PipeInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return BytePipe.this.read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return BytePipe.this.read(bytes, offset, length);
+        }
+
+        @Override
+        public int available() {
+            return BytePipe.this.available();
+        }
+    }
+
+    /**
+     * The {@link OutputStream} view of a {@link BytePipe}.
+     */
+    private class PipeOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            BytePipe.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            BytePipe.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            BytePipe.this.close();
+        }
+    }
+}
@@ -17,6 +17,12 @@ import java.net.InetAddress;
  * @author Joe Fialli
  */
 public class CacheClient implements Closeable, Serializable {
+    /**
+     * The {@link Codec} used by {@link Operation}s to read and write keys,
+     * values and results.
+     */
+    protected static final Codec CODEC = Codecs.getCodec();
+
     /**
      * The {@link java.net.InetAddress} on which to connect to the {@link org.jsr107.tck.integration.CacheLoaderServer}.
      */
@@ -28,33 +34,55 @@ public class CacheClient implements Closeable, Serializable {
     protected int port;
 
     /**
-     * The {@link org.jsr107.tck.support.Client} connection to the {@link org.jsr107.tck.integration.CacheLoaderServer}.
+     * The {@link ClientPool} of connections to the {@link org.jsr107.tck.integration.CacheLoaderServer},
+     * created when first required.
      */
-    protected transient Client client;
+    protected transient ClientPool pool;
 
     protected CacheClient(InetAddress address, int port) {
         this.address = address;
         this.port = port;
-        this.client = null;
+        this.pool = null;
     }
 
     /**
-     * Obtains the internal {@link Client} used to communicate with the
-     * {@link org.jsr107.tck.integration.CacheLoaderServer}.  If the {@link Client} is not connected, a
-     * connection will be attempted.
+     * Obtains the {@link ClientPool} used to communicate with the
+     * {@link org.jsr107.tck.integration.CacheLoaderServer}, including its
+     * hit, miss and wait counters.
      *
-     * @return the {@link Client}
+     * @return the {@link ClientPool}
      */
-    protected synchronized Client getClient() {
-        if (client == null) {
-            try {
-                client = new Client(address, port);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to acquire Client address:" + address + ":" + port, e);
-            }
+    public synchronized ClientPool getClientPool() {
+        if (pool == null) {
+            pool = new ClientPool(address, port);
         }
 
-        return client;
+        return pool;
+    }
+
+    /**
+     * Invokes the specified {@link Operation} using a {@link Client} from the
+     * {@link ClientPool}, so that concurrent invocations use separate connections.
+     *
+     * @param operation the {@link Operation} to be performed
+     * @param <T>       the type of the result
+     * @return the result of the {@link Operation}
+     */
+    protected <T> T invoke(Operation<T> operation) {
+        return getClientPool().invoke(operation);
+    }
+
+    /**
+     * Invokes the specified {@link Operation} without waiting for its result,
+     * using a {@link Client} from the {@link ClientPool}.
+     *
+     * @param operation the {@link Operation} to be performed
+     * @param <T>       the type of the result
+     * @return the {@link OperationFuture} result of the {@link Operation}
+     * @see Client#invokeAsync(Operation)
+     */
+    protected <T> OperationFuture<T> invokeAsync(Operation<T> operation) {
+        return getClientPool().invokeAsync(operation);
     }
 
     /**
@@ -62,12 +90,11 @@ public class CacheClient implements Closeable, Serializable {
      */
     @Override
     public synchronized void close() {
-        if (client != null) {
+        if (pool != null) {
             try {
-                client.invoke(Server.CLOSE_OPERATION);
-                client.close();
+                pool.close();
             } finally {
-                client = null;
+                pool = null;
             }
         }
     }
@@ -6,11 +6,18 @@
  */
 package org.jsr107.tck.support;
 
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,7 +27,25 @@ import java.util.logging.Logger;
  * <p>
  * Note: Only a single-thread should access individual {@link Client} instances
  * at any point in time.   Should multiple-threaded access be required,
- * additional {@link Client} instances should be created, one per thread.
+ * additional {@link Client} instances should be created, one per thread,
+ * or the {@link Client} should be multiplexed.
+ * <p>
+ * A multiplexed {@link Client} may be used by many threads at once.  Each
+ * invocation of an {@link Operation} becomes an {@link Exchange} with its own
+ * correlation id, so that {@link Operation}s are pipelined on the single
+ * connection and replies are routed back to the invoking thread in whatever
+ * order the {@link Server} completes them.  {@link Client}s are multiplexed
+ * when constructed as such, or when the {@value #MULTIPLEXED_PROPERTY}
+ * system property is <code>true</code>.  {@link Operation}s may also be
+ * invoked asynchronously on a multiplexed {@link Client}, in which case their
+ * replies are read by the thread demultiplexing the connection.
+ * <p>
+ * When the {@value #TRANSPORT_PROPERTY} system property is <code>local</code>,
+ * {@link Client}s connect to {@link Server}s open in the same JVM through
+ * in-memory pipes instead of sockets, while still copying everything
+ * exchanged through object streams.  When it is <code>unix</code>, and the
+ * Java runtime supports them, {@link Client}s connect through Unix domain
+ * sockets whose files are named after the ports of the {@link Server}s.
  *
  * @author Brian Oliver
  * @see Server
@@ -29,18 +54,31 @@ import java.util.logging.Logger;
  */
 public class Client implements AutoCloseable {
 
+  /**
+   * The system property that, when <code>true</code>, multiplexes {@link Client}s by default.
+   */
+  public static final String MULTIPLEXED_PROPERTY = "org.jsr107.tck.support.client.multiplexed";
+
+  /**
+   * The system property used to select the transport of {@link Client}s,
+   * either <code>socket</code> (the default) or <code>local</code>.
+   */
+  public static final String TRANSPORT_PROPERTY = "org.jsr107.tck.support.transport";
+
   /**
    * The port on which the {@link Server} is running.
    */
   private int port;
 
   /**
-   * The {@link Socket} connecting the {@link Client} to the {@link Server}.
+   * The transport connecting the {@link Client} to the {@link Server}, either
+   * a {@link Socket}, a Unix domain {@link SocketChannel} or an in-process
+   * {@link LocalTransport.Endpoint}.
    * <p>
    * When this is <code>null</code> the {@link Client} is not connected.
    * </p>
    */
-  private Socket socket;
+  private Closeable transport;
 
   /**
    * The {@link ObjectOutputStream} to the {@link Server}.
@@ -58,9 +96,38 @@ public class Client implements AutoCloseable {
    */
   private ObjectInputStream ois;
 
+  /**
+   * Is the connection to the {@link Server} multiplexed?
+   */
+  private final boolean multiplexed;
+
+  /**
+   * The in-flight {@link Exchange}s of a multiplexed connection, by correlation id.
+   */
+  private final ConcurrentHashMap<Integer, Exchange> exchanges;
+
+  /**
+   * The correlation id of the last {@link Exchange}.
+   */
+  private final AtomicInteger nextExchangeId;
+
+  /**
+   * The {@link Opcodes} of the {@link Operation}s written to the {@link Server}.
+   * <p>
+   * When multiplexed, these are guarded by the {@link ObjectOutputStream}.
+   * </p>
+   */
+  private final Opcodes opcodes;
+
+  /**
+   * Is the {@link Demultiplexer} still routing replies from the {@link Server}?
+   */
+  private volatile boolean isDemultiplexing;
+
   /**
    * Constructs a {@link Client} that will auto connect to a {@link Server}
-   * on the specified port.
+   * on the specified port, multiplexed according to the
+   * {@value #MULTIPLEXED_PROPERTY} system property.
    *
    * @param address the {@link InetAddress} on which the {@link Server}
    *                is accepting requests
@@ -70,17 +137,98 @@ public class Client implements AutoCloseable {
    *                     {@link Server}
    */
   public Client(InetAddress address, int port) throws IOException {
+    this(address, port, Boolean.getBoolean(MULTIPLEXED_PROPERTY));
+  }
+
+  /**
+   * Constructs a {@link Client} that will auto connect to a {@link Server}
+   * on the specified port.
+   *
+   * @param address the {@link InetAddress} on which the {@link Server}
+   *                is accepting requests
+   * @param port        the port on which the {@link Server} is
+   *                    is accepting requests
+   * @param multiplexed should the connection be multiplexed?
+   * @throws IOException when the {@link Client} can't connect to the
+   *                     {@link Server}
+   */
+  public Client(InetAddress address, int port, boolean multiplexed) throws IOException {
     Logger logger = Logger.getLogger(this.getClass().getName());
     this.port = port;
-    try {
-        logger.log(Level.INFO, "Starting " + this.getClass().getCanonicalName() +
-                " client connecting to server at address:" + address + " port:" + port);
-        this.socket = new Socket(address, port);
-    } catch (IOException ioe) {
-        throw new IOException("Client failed to connect to server at " + address + ":" + port, ioe);
-    }
-    this.oos = new ObjectOutputStream(socket.getOutputStream());
-    this.ois = new ObjectInputStream(socket.getInputStream());
+
+    LocalTransport.Endpoint endpoint = LocalTransport.isSelected() ? LocalTransport.connect(address, port) : null;
+    if (endpoint == null && UnixDomainSockets.isSelected()) {
+      SocketChannel channel;
+      try {
+          logger.log(Level.INFO, "Starting " + this.getClass().getCanonicalName() +
+                  " client connecting to server at " + UnixDomainSockets.getPath(port));
+          channel = UnixDomainSockets.connect(port);
+      } catch (IOException ioe) {
+          throw new IOException("Client failed to connect to server at " + UnixDomainSockets.getPath(port), ioe);
+      }
+      this.transport = channel;
+      this.oos = new ResettingObjectOutputStream(UnixDomainSockets.newOutputStream(channel));
+      this.ois = new ObjectInputStream(new FlushingInputStream(UnixDomainSockets.newInputStream(channel), oos));
+    } else if (endpoint == null) {
+      Socket socket;
+      try {
+          logger.log(Level.INFO, "Starting " + this.getClass().getCanonicalName() +
+                  " client connecting to server at address:" + address + " port:" + port);
+          socket = new Socket(address, port);
+      } catch (IOException ioe) {
+          throw new IOException("Client failed to connect to server at " + address + ":" + port, ioe);
+      }
+      // operations are written as several small writes followed by a read, which
+      // Nagle's algorithm would otherwise delay until the server acknowledges
+      socket.setTcpNoDelay(true);
+      this.transport = socket;
+      this.oos = new ResettingObjectOutputStream(socket.getOutputStream());
+      this.ois = new ObjectInputStream(new FlushingInputStream(socket.getInputStream(), oos));
+    } else {
+      logger.log(Level.FINE, "Starting " + this.getClass().getCanonicalName() +
+              " client connecting in-process to server at address:" + address + " port:" + port);
+      this.transport = endpoint;
+      this.oos = new ResettingObjectOutputStream(endpoint.getOutputStream());
+      this.ois = new ObjectInputStream(new FlushingInputStream(endpoint.getInputStream(), oos));
+    }
+
+    this.multiplexed = multiplexed;
+    this.exchanges = new ConcurrentHashMap<Integer, Exchange>();
+    this.nextExchangeId = new AtomicInteger();
+    this.opcodes = new Opcodes();
+
+    if (multiplexed) {
+      try {
+        opcodes.write(oos, Server.MULTIPLEX_OPERATION.getType());
+        Server.MULTIPLEX_OPERATION.onInvoke(ois, oos);
+      } catch (ClassNotFoundException | ExecutionException e) {
+        throw new IOException("Client failed to multiplex the connection to " + address + ":" + port, e);
+      }
+
+      isDemultiplexing = true;
+      Thread thread = new Thread(new Demultiplexer(ois), "Client-demultiplexer-" + port);
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Determines if the {@link Client} is connected to the {@link Server}
+   * in-process rather than with a socket.
+   *
+   * @return <code>true</code> if connected in-process
+   */
+  public synchronized boolean isInProcess() {
+    return transport instanceof LocalTransport.Endpoint;
+  }
+
+  /**
+   * Determines if the connection to the {@link Server} is multiplexed.
+   *
+   * @return <code>true</code> if multiplexed
+   */
+  public boolean isMultiplexed() {
+    return multiplexed;
   }
 
   /**
@@ -90,19 +238,149 @@ public class Client implements AutoCloseable {
    * @param <T>       the type of the result
    * @return the result of the {@link Operation}
    */
-  public synchronized <T> T invoke(Operation<T> operation) {
-    if (socket == null) {
-      throw new IllegalStateException("Can't execute an operation as the Client is disconnected");
-    } else {
+  public <T> T invoke(Operation<T> operation) {
+    if (multiplexed) {
+      return invokeMultiplexed(operation);
+    }
+
+    synchronized (this) {
+      if (transport == null) {
+        throw new IllegalStateException("Can't execute an operation as the Client is disconnected");
+      } else {
+        try {
+          opcodes.write(oos, operation.getType());
+          return operation.onInvoke(ois, oos);
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new RuntimeException("Failed to perform operation " + operation.getType(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Invokes the specified {@link Operation} on the {@link Server} as an
+   * {@link Exchange} on the multiplexed connection.
+   *
+   * @param operation the {@link Operation} to be performed
+   * @param <T>       the type of the result
+   * @return the result of the {@link Operation}
+   */
+  private <T> T invokeMultiplexed(Operation<T> operation) {
+    ObjectOutputStream connection;
+    synchronized (this) {
+      if (transport == null) {
+        throw new IllegalStateException("Can't execute an operation as the Client is disconnected");
+      }
+      connection = oos;
+    }
+
+    Exchange exchange = null;
+    try {
+      exchange = new Exchange(nextExchangeId.incrementAndGet(), operation.getType(), connection, opcodes);
+      exchanges.put(exchange.getId(), exchange);
+
+      //replies will never arrive once the connection has failed
+      if (!isDemultiplexing) {
+        exchange.receiveEnd();
+      }
+
+      T result = operation.onInvoke(exchange.getObjectInputStream(), exchange.getObjectOutputStream());
+      exchange.flush();
+      return result;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to perform operation " + operation.getType(), e);
+    } finally {
+      //the server ends the exchanges it was told about, we end the others
+      if (exchange != null && !exchange.isOpened()) {
+        exchanges.remove(exchange.getId());
+      }
+    }
+  }
+
+  /**
+   * Invokes the specified {@link Operation} on the {@link Server} without
+   * waiting for its result.
+   * <p>
+   * On a multiplexed connection an {@link AsyncOperation} writes its request
+   * on the calling thread, and its reply is decoded by the thread receiving
+   * replies once the reply has completely arrived.  Otherwise the
+   * {@link Operation} is invoked synchronously and the returned
+   * {@link OperationFuture} is already complete.
+   *
+   * @param operation the {@link Operation} to be performed
+   * @param <T>       the type of the result
+   * @return the {@link OperationFuture} result of the {@link Operation}
+   */
+  public <T> OperationFuture<T> invokeAsync(Operation<T> operation) {
+    final OperationFuture<T> future = new OperationFuture<T>();
+    if (!multiplexed || !(operation instanceof AsyncOperation)) {
       try {
-        oos.writeObject(operation.getType());
-        return operation.onInvoke(ois, oos);
+        future.complete(invoke(operation));
       } catch (RuntimeException e) {
-        throw e;
-      } catch (Exception e) {
-        throw new RuntimeException("Failed to perform operation " + operation.getType(), e);
+        future.fail(e);
+      }
+      return future;
+    }
+
+    final AsyncOperation<T> asyncOperation = (AsyncOperation<T>) operation;
+
+    ObjectOutputStream connection;
+    synchronized (this) {
+      if (transport == null) {
+        throw new IllegalStateException("Can't execute an operation as the Client is disconnected");
+      }
+      connection = oos;
+    }
+
+    Exchange exchange = null;
+    try {
+      final Exchange deferred = new Exchange(nextExchangeId.incrementAndGet(), operation.getType(), connection, opcodes);
+      exchange = deferred;
+      exchanges.put(exchange.getId(), exchange);
+
+      asyncOperation.onRequest(exchange.getObjectOutputStream());
+      exchange.deferReply(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            future.complete(asyncOperation.onReply(deferred.getObjectInputStream()));
+          } catch (Exception e) {
+            future.fail(asRuntimeException(asyncOperation, e));
+          }
+        }
+      });
+
+      //replies will never arrive once the connection has failed
+      if (!isDemultiplexing) {
+        exchange.receiveEnd();
+      }
+    } catch (Exception e) {
+      future.fail(asRuntimeException(operation, e));
+    } finally {
+      //the server ends the exchanges it was told about, we end the others
+      if (exchange != null && !exchange.isOpened()) {
+        exchanges.remove(exchange.getId());
       }
     }
+    return future;
+  }
+
+  /**
+   * Converts the failure of an {@link Operation} into the {@link RuntimeException}
+   * that {@link #invoke(Operation)} would throw.
+   *
+   * @param operation the {@link Operation} that failed
+   * @param e         the failure
+   * @return the {@link RuntimeException}
+   */
+  private static RuntimeException asRuntimeException(Operation<?> operation, Exception e) {
+    return e instanceof RuntimeException
+        ? (RuntimeException) e
+        : new RuntimeException("Failed to perform operation " + operation.getType(), e);
   }
 
   /**
@@ -110,7 +388,7 @@ public class Client implements AutoCloseable {
    * nothing will happen.
    */
   public synchronized void close() {
-    if (socket != null) {
+    if (transport != null) {
       try {
         oos.close();
       } catch (IOException e) {
@@ -129,11 +407,121 @@ public class Client implements AutoCloseable {
       }
 
       try {
-        socket.close();
+        transport.close();
+      } catch (IOException e) {
+        //failed to close the transport - but we don't care
+      } finally {
+        transport = null;
+      }
+    }
+  }
+
+  /**
+   * An {@link InputStream} that flushes what has been written to the
+   * {@link Server} before waiting for the {@link Server} to reply, so that
+   * {@link Operation}s needn't flush, even when the last thing they wrote
+   * was buffered, like an opcode.
+   */
+  private static class FlushingInputStream extends FilterInputStream {
+
+    /**
+     * The {@link ObjectOutputStream} to the {@link Server}.
+     */
+    private final ObjectOutputStream oos;
+
+    /**
+     * Constructs a {@link FlushingInputStream}.
+     *
+     * @param in  the {@link InputStream} from the {@link Server}
+     * @param oos the {@link ObjectOutputStream} to the {@link Server}
+     */
+    FlushingInputStream(InputStream in, ObjectOutputStream oos) {
+      super(in);
+      this.oos = oos;
+    }
+
+    /**
+     * Flushes the {@link ObjectOutputStream} when reading would block.
+     * Multiplexed {@link Exchange}s write to the same stream, so it is
+     * flushed while holding its lock.
+     *
+     * @throws IOException when the {@link ObjectOutputStream} can't be flushed
+     */
+    private void flushIfWaiting() throws IOException {
+      if (in.available() == 0) {
+        synchronized (oos) {
+          oos.flush();
+        }
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      flushIfWaiting();
+      return in.read();
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      flushIfWaiting();
+      return in.read(bytes, offset, length);
+    }
+  }
+
+  /**
+   * Routes the frames received on a multiplexed connection to the
+   * {@link Exchange}s awaiting them.
+   */
+  private class Demultiplexer implements Runnable {
+
+    /**
+     * The {@link ObjectInputStream} from the {@link Server}.
+     */
+    private final ObjectInputStream ois;
+
+    /**
+     * Constructs a {@link Demultiplexer}.
+     *
+     * @param ois the {@link ObjectInputStream} from the {@link Server}
+     */
+    Demultiplexer(ObjectInputStream ois) {
+      this.ois = ois;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          byte frame = ois.readByte();
+          int id = ois.readInt();
+
+          if (frame == Exchange.DATA_FRAME) {
+            byte[] bytes = new byte[ois.readInt()];
+            ois.readFully(bytes);
+
+            Exchange exchange = exchanges.get(id);
+            if (exchange != null) {
+              exchange.receive(bytes);
+            }
+          } else if (frame == Exchange.END_FRAME) {
+            Exchange exchange = exchanges.remove(id);
+            if (exchange != null) {
+              exchange.receiveEnd();
+            }
+          } else {
+            throw new IOException("Unknown frame " + frame + " received from the server");
+          }
+        }
       } catch (IOException e) {
-        //failed to close the socket - but we don't care
+        //the connection has been closed
       } finally {
-        socket = null;
+        isDemultiplexing = false;
+        for (Exchange exchange : exchanges.values()) {
+          exchange.receiveEnd();
+        }
       }
     }
   }
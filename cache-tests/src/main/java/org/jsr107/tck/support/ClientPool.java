@@ -0,0 +1,485 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of {@link Client} connections to a {@link Server}, allowing
+ * concurrent {@link Operation}s to be invoked on separate connections.
+ * <p>
+ * Connections are created on demand, up to a maximum pool size, after which
+ * invokers wait for a connection to be released.  Connections that have been
+ * idle for longer than the idle timeout are closed when the pool is next used.
+ * The maximum size and idle timeout default to the values of the
+ * {@value #MAX_SIZE_PROPERTY} and {@value #IDLE_TIMEOUT_PROPERTY} (in
+ * milliseconds, <code>0</code> for none) system properties.
+ * <p>
+ * The {@link ClientPool} counts the invocations that reused an idle connection
+ * (hits), those that required a new connection (misses) and those that had to
+ * wait for a connection, together with the total time spent waiting.
+ *
+ * @see CacheClient
+ * @see Client
+ */
+public final class ClientPool implements Closeable {
+
+    /**
+     * The system property defining the maximum number of connections in a {@link ClientPool}.
+     */
+    public static final String MAX_SIZE_PROPERTY = "org.jsr107.tck.support.client.pool.maxSize";
+
+    /**
+     * The system property defining the number of milliseconds after which an
+     * idle connection is closed.
+     */
+    public static final String IDLE_TIMEOUT_PROPERTY = "org.jsr107.tck.support.client.pool.idleTimeout";
+
+    /**
+     * The default maximum number of connections in a {@link ClientPool}.
+     */
+    public static final int DEFAULT_MAX_SIZE = 8;
+
+    /**
+     * The default number of milliseconds after which an idle connection is closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+    /**
+     * The {@link InetAddress} on which to connect to the {@link Server}.
+     */
+    private final InetAddress address;
+
+    /**
+     * The port on which to connect to the {@link Server}.
+     */
+    private final int port;
+
+    /**
+     * The maximum number of connections.
+     */
+    private final int maxSize;
+
+    /**
+     * The number of milliseconds after which an idle connection is closed,
+     * <code>0</code> to keep idle connections open.
+     */
+    private final long idleTimeout;
+
+    /**
+     * The idle connections, the most recently released first.
+     */
+    private final ArrayDeque<IdleClient> idleClients;
+
+    /**
+     * The number of open connections, both idle and in use.
+     */
+    private int size;
+
+    /**
+     * Has the {@link ClientPool} been closed?
+     */
+    private boolean isClosed;
+
+    /**
+     * The number of invocations that reused an idle connection.
+     */
+    private final AtomicLong hitCount;
+
+    /**
+     * The number of invocations that opened a new connection.
+     */
+    private final AtomicLong missCount;
+
+    /**
+     * The number of invocations that waited for a connection to be released.
+     */
+    private final AtomicLong waitCount;
+
+    /**
+     * The total number of nanoseconds spent waiting for connections.
+     */
+    private final AtomicLong waitNanos;
+
+    /**
+     * Constructs a {@link ClientPool} configured by the system properties.
+     *
+     * @param address the {@link InetAddress} on which to connect to the {@link Server}
+     * @param port    the port on which to connect to the {@link Server}
+     */
+    public ClientPool(InetAddress address, int port) {
+        this(address, port,
+             Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+             Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT));
+    }
+
+    /**
+     * Constructs a {@link ClientPool}.
+     *
+     * @param address     the {@link InetAddress} on which to connect to the {@link Server}
+     * @param port        the port on which to connect to the {@link Server}
+     * @param maxSize     the maximum number of connections
+     * @param idleTimeout the number of milliseconds after which an idle
+     *                    connection is closed, <code>0</code> for never
+     */
+    public ClientPool(InetAddress address, int port, int maxSize, long idleTimeout) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size of a ClientPool must be positive");
+        }
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("The idle timeout of a ClientPool can't be negative");
+        }
+
+        this.address = address;
+        this.port = port;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.idleClients = new ArrayDeque<IdleClient>();
+        this.size = 0;
+        this.isClosed = false;
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.waitCount = new AtomicLong();
+        this.waitNanos = new AtomicLong();
+    }
+
+    /**
+     * Invokes the specified {@link Operation} on the {@link Server} using a
+     * connection from the {@link ClientPool}.
+     *
+     * @param operation the {@link Operation} to be performed
+     * @param <T>       the type of the result
+     * @return the result of the {@link Operation}
+     */
+    public <T> T invoke(Operation<T> operation) {
+        Client client = acquire();
+        boolean isHealthy = false;
+        try {
+            T result = client.invoke(operation);
+            isHealthy = true;
+            return result;
+        } catch (RuntimeException e) {
+            //exceptions thrown by the server leave the connection usable, i/o failures don't
+            isHealthy = !(e.getCause() instanceof IOException);
+            throw e;
+        } finally {
+            release(client, isHealthy);
+        }
+    }
+
+    /**
+     * Invokes the specified {@link Operation} on the {@link Server} without
+     * waiting for its result, using a connection from the {@link ClientPool}.
+     * <p>
+     * The connection is released as soon as the request has been sent, as a
+     * multiplexed connection may be shared while {@link Operation}s are in
+     * flight.  {@link Client}s that aren't multiplexed complete the
+     * {@link Operation} before it is released.
+     *
+     * @param operation the {@link Operation} to be performed
+     * @param <T>       the type of the result
+     * @return the {@link OperationFuture} result of the {@link Operation}
+     * @see Client#invokeAsync(Operation)
+     */
+    public <T> OperationFuture<T> invokeAsync(Operation<T> operation) {
+        Client client = acquire();
+        boolean isHealthy = false;
+        try {
+            OperationFuture<T> future = client.invokeAsync(operation);
+
+            //exceptions thrown by the server leave the connection usable, i/o failures don't
+            RuntimeException failure = future.getFailure();
+            isHealthy = failure == null || !(failure.getCause() instanceof IOException);
+            return future;
+        } finally {
+            release(client, isHealthy);
+        }
+    }
+
+    /**
+     * Acquires a {@link Client} from the {@link ClientPool}, reusing an idle
+     * connection, opening a new connection or waiting for one to be released.
+     *
+     * @return the {@link Client}
+     */
+    private Client acquire() {
+        List<Client> expiredClients = new ArrayList<Client>();
+        long waitStarted = 0;
+        try {
+            synchronized (this) {
+                while (true) {
+                    if (isClosed) {
+                        throw new IllegalStateException("Can't execute an operation as the ClientPool is closed");
+                    }
+
+                    expire(expiredClients);
+
+                    if (!idleClients.isEmpty()) {
+                        hitCount.incrementAndGet();
+                        return idleClients.pollFirst().client;
+                    }
+
+                    if (size < maxSize) {
+                        size++;
+                        missCount.incrementAndGet();
+                        break;
+                    }
+
+                    if (waitStarted == 0) {
+                        waitStarted = System.nanoTime();
+                        waitCount.incrementAndGet();
+                    }
+
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted while waiting for a Client", e);
+                    }
+                }
+            }
+        } finally {
+            if (waitStarted != 0) {
+                waitNanos.addAndGet(System.nanoTime() - waitStarted);
+            }
+            closeExpired(expiredClients);
+        }
+
+        try {
+            return new Client(address, port);
+        } catch (Exception e) {
+            synchronized (this) {
+                size--;
+                notifyAll();
+            }
+            throw new RuntimeException("Failed to acquire Client address:" + address + ":" + port, e);
+        }
+    }
+
+    /**
+     * Returns a {@link Client} to the {@link ClientPool}.  Unhealthy {@link Client}s
+     * and those released after the {@link ClientPool} was closed are closed.
+     *
+     * @param client    the {@link Client}
+     * @param isHealthy can the {@link Client} be reused?
+     */
+    private void release(Client client, boolean isHealthy) {
+        synchronized (this) {
+            if (isHealthy && !isClosed) {
+                idleClients.addFirst(new IdleClient(client, System.currentTimeMillis()));
+                notify();
+                return;
+            }
+
+            size--;
+            notifyAll();
+        }
+        close(client, isHealthy);
+    }
+
+    /**
+     * Removes the {@link Client}s that have been idle for longer than the idle
+     * timeout.  Must be called while synchronized on the {@link ClientPool}.
+     *
+     * @param expiredClients the {@link List} to which expired {@link Client}s are added
+     */
+    private void expire(List<Client> expiredClients) {
+        if (idleTimeout > 0) {
+            long expiryTime = System.currentTimeMillis() - idleTimeout;
+
+            //the least recently released clients are at the end
+            Iterator<IdleClient> iterator = idleClients.descendingIterator();
+            while (iterator.hasNext()) {
+                IdleClient idleClient = iterator.next();
+                if (idleClient.releasedTime > expiryTime) {
+                    break;
+                }
+                iterator.remove();
+                size--;
+                expiredClients.add(idleClient.client);
+            }
+        }
+    }
+
+    /**
+     * Closes the {@link Client}s that have expired.  They have already been
+     * removed from the {@link ClientPool}, so failing to close them gracefully,
+     * say because the {@link Server} already dropped the connection, mustn't
+     * fail the invocation that happened to expire them.
+     *
+     * @param expiredClients the expired {@link Client}s
+     */
+    private void closeExpired(List<Client> expiredClients) {
+        for (Client client : expiredClients) {
+            try {
+                close(client, true);
+            } catch (RuntimeException e) {
+                //failed to close the connection gracefully - but we don't care
+            }
+        }
+    }
+
+    /**
+     * Closes a {@link Client}, first asking the {@link Server} to close the
+     * connection when it is healthy.
+     *
+     * @param client     the {@link Client}
+     * @param isGraceful should the {@link Server} be asked to close the connection?
+     */
+    private void close(Client client, boolean isGraceful) {
+        try {
+            if (isGraceful) {
+                client.invoke(Server.CLOSE_OPERATION);
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Closes the {@link ClientPool}, closing the idle connections.  Connections
+     * in use are closed when they are released.
+     */
+    @Override
+    public void close() {
+        List<Client> clients = new ArrayList<Client>();
+        synchronized (this) {
+            isClosed = true;
+            for (IdleClient idleClient : idleClients) {
+                clients.add(idleClient.client);
+            }
+            size -= idleClients.size();
+            idleClients.clear();
+            notifyAll();
+        }
+
+        RuntimeException failure = null;
+        for (Client client : clients) {
+            try {
+                close(client, true);
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Obtains the maximum number of connections.
+     *
+     * @return the maximum number of connections
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Obtains the number of open connections, both idle and in use.
+     *
+     * @return the number of open connections
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Obtains the number of idle connections.
+     *
+     * @return the number of idle connections
+     */
+    public synchronized int getIdleCount() {
+        return idleClients.size();
+    }
+
+    /**
+     * Obtains the number of invocations that reused an idle connection.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Obtains the number of invocations that opened a new connection.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Obtains the number of invocations that waited for a connection.
+     *
+     * @return the number of waits
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    /**
+     * Obtains the total time invocations spent waiting for a connection.
+     *
+     * @param timeUnit the {@link TimeUnit} of the result
+     * @return the total wait time
+     */
+    public long getWaitTime(TimeUnit timeUnit) {
+        return timeUnit.convert(waitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ClientPool{" + address + ":" + port +
+            ", size=" + getSize() + "/" + maxSize +
+            ", idle=" + getIdleCount() +
+            ", hits=" + getHitCount() +
+            ", misses=" + getMissCount() +
+            ", waits=" + getWaitCount() +
+            ", waitTime=" + getWaitTime(TimeUnit.MICROSECONDS) + "us}";
+    }
+
+    /**
+     * A {@link Client} that is idle in the {@link ClientPool}.
+     */
+    private static class IdleClient {
+
+        /**
+         * The idle {@link Client}.
+         */
+        private final Client client;
+
+        /**
+         * The time at which the {@link Client} was released, in milliseconds.
+         */
+        private final long releasedTime;
+
+        /**
+         * Constructs an {@link IdleClient}.
+         *
+         * @param client       the idle {@link Client}
+         * @param releasedTime the time at which the {@link Client} was released
+         */
+        IdleClient(Client client, long releasedTime) {
+            this.client = client;
+            this.releasedTime = releasedTime;
+        }
+    }
+}
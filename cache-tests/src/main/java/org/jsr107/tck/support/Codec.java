@@ -0,0 +1,50 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * A {@link Codec} encodes the keys, values and results exchanged by
+ * {@link Operation}s and {@link OperationHandler}s.
+ * <p>
+ * The {@link Codec} used by the TCK is chosen with the
+ * {@value Codecs#CODEC_PROPERTY} system property, which must be the same for
+ * {@link Client}s and {@link Server}s.
+ * <p>
+ * Implementations should call
+ * {@link ResettingObjectOutputStream#checkpoint(ObjectOutputStream)} after
+ * writing each object, so that long-lived connections don't retain every
+ * object written.
+ *
+ * @see Codecs
+ * @see BinaryCodec
+ * @see SerializationCodec
+ */
+public interface Codec {
+
+  /**
+   * Writes an object, which may be <code>null</code>.
+   *
+   * @param oos    the {@link ObjectOutputStream} to write to
+   * @param object the object to write
+   * @throws IOException when the object can't be written
+   */
+  void writeObject(ObjectOutputStream oos, Object object) throws IOException;
+
+  /**
+   * Reads an object written by {@link #writeObject(ObjectOutputStream, Object)}.
+   *
+   * @param ois the {@link ObjectInputStream} to read from
+   * @return the object read, which may be <code>null</code>
+   * @throws IOException            when the object can't be read
+   * @throws ClassNotFoundException when the class of the object can't be loaded
+   */
+  Object readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,66 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+/**
+ * Provides the {@link Codec} used by {@link Operation}s and {@link OperationHandler}s.
+ * <p>
+ * The {@link Codec} is chosen with the {@value #CODEC_PROPERTY} system
+ * property, which may be <code>binary</code> (the default) for the
+ * {@link BinaryCodec}, <code>serialization</code> for the
+ * {@link SerializationCodec} or the name of a class implementing {@link Codec}.
+ *
+ * @see Codec
+ */
+public final class Codecs {
+
+    /**
+     * The system property used to choose the {@link Codec}.
+     */
+    public static final String CODEC_PROPERTY = "org.jsr107.tck.support.codec";
+
+    /**
+     * The {@link Codec} chosen by the system property.
+     */
+    private static final Codec CODEC = createCodec(System.getProperty(CODEC_PROPERTY, "binary"));
+
+    /**
+     * Utility class.
+     */
+    private Codecs() {
+    }
+
+    /**
+     * Obtains the {@link Codec} chosen by the {@value #CODEC_PROPERTY} system property.
+     *
+     * @return the {@link Codec}
+     */
+    public static Codec getCodec() {
+        return CODEC;
+    }
+
+    /**
+     * Creates a {@link Codec} given its name.
+     *
+     * @param name <code>binary</code>, <code>serialization</code> or the name
+     *             of a class implementing {@link Codec}
+     * @return the {@link Codec}
+     */
+    static Codec createCodec(String name) {
+        if (name.trim().equalsIgnoreCase("binary")) {
+            return new BinaryCodec();
+        } else if (name.trim().equalsIgnoreCase("serialization")) {
+            return new SerializationCodec();
+        } else {
+            try {
+                return (Codec) Class.forName(name.trim()).newInstance();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Failed to create the Codec " + name, e);
+            }
+        }
+    }
+}
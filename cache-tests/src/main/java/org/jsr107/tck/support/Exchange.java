@@ -0,0 +1,378 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One invocation of an {@link Operation} that is in flight on a multiplexed
+ * connection between a {@link Client} and a {@link Server}.
+ * <p>
+ * On a multiplexed connection many {@link Exchange}s may be in flight at once.
+ * Each {@link Exchange} is identified by a correlation id and has its own
+ * pair of object streams, so that the {@link Operation} and the
+ * {@link OperationHandler} keep their conversational programming model.
+ * What is written to an {@link Exchange} is buffered and sent to the peer as
+ * a frame tagged with the correlation id when the writer flushes, is about
+ * to wait for a reply, or completes.  Frames received from the peer are
+ * routed to the {@link Exchange} with the matching correlation id, so replies
+ * may arrive in any order.
+ * <p>
+ * An {@link Exchange} may instead defer reading the reply until it has
+ * been completely received, so that no thread waits for it, in which case
+ * the reply is read by the thread receiving the end of the {@link Exchange}.
+ * <p>
+ * Frames are written to the connection {@link ObjectOutputStream} as
+ * <ul>
+ * <li>{@link #OPEN_FRAME}, id, operation opcode: the start of an {@link Exchange}</li>
+ * <li>{@link #DATA_FRAME}, id, length, bytes: part of a conversation</li>
+ * <li>{@link #END_FRAME}, id: the {@link OperationHandler} has completed</li>
+ * </ul>
+ *
+ * @see Client
+ * @see Server
+ */
+final class Exchange {
+
+    /**
+     * The frame that opens an {@link Exchange}.
+     */
+    static final byte OPEN_FRAME = 1;
+
+    /**
+     * The frame that carries bytes of an {@link Exchange}.
+     */
+    static final byte DATA_FRAME = 2;
+
+    /**
+     * The frame that ends an {@link Exchange}.
+     */
+    static final byte END_FRAME = 3;
+
+    /**
+     * The correlation id of the {@link Exchange}.
+     */
+    private final int id;
+
+    /**
+     * The type of {@link Operation} being exchanged.
+     */
+    private final String type;
+
+    /**
+     * The {@link ObjectOutputStream} of the connection to which frames are
+     * written, also used to serialize writers.
+     */
+    private final ObjectOutputStream connection;
+
+    /**
+     * The {@link Opcodes} written to the connection, used to open the {@link Exchange}.
+     */
+    private final Opcodes opcodes;
+
+    /**
+     * The bytes received from the peer, not yet read.
+     */
+    private final BytePipe inbound;
+
+    /**
+     * The bytes written for the peer, not yet sent.
+     */
+    private final ByteArrayOutputStream outbound;
+
+    /**
+     * The {@link ObjectOutputStream} for the {@link Exchange}.
+     */
+    private final ObjectOutputStream oos;
+
+    /**
+     * The {@link ObjectInputStream} for the {@link Exchange}.
+     */
+    private final ObjectInputStream ois;
+
+    /**
+     * The {@link Meter} measuring the object streams of the {@link Exchange}.
+     */
+    private final Meter meter;
+
+    /**
+     * Has the {@link Exchange} been opened with the peer?
+     */
+    private boolean isOpened;
+
+    /**
+     * The {@link Runnable} to run once the deferred reply has been completely
+     * received, or <code>null</code> when reading the reply isn't deferred or
+     * the {@link Runnable} has already run.
+     */
+    private final AtomicReference<Runnable> replyListener;
+
+    /**
+     * Constructs an {@link Exchange}.
+     *
+     * @param id         the correlation id
+     * @param type       the type of {@link Operation} being exchanged
+     * @param connection the {@link ObjectOutputStream} of the connection
+     * @param opcodes    the {@link Opcodes} written to the connection, guarded by
+     *                   the connection, or <code>null</code> when the peer
+     *                   opened the {@link Exchange}
+     * @throws IOException should the object streams fail to initialize
+     */
+    Exchange(int id, String type, ObjectOutputStream connection, Opcodes opcodes) throws IOException {
+        this.id = id;
+        this.type = type;
+        this.connection = connection;
+        this.opcodes = opcodes;
+        this.inbound = new BytePipe();
+        this.outbound = new ByteArrayOutputStream();
+        this.meter = new Meter();
+        this.oos = new HeaderlessObjectOutputStream(meter.meter(new OutboundStream()));
+        this.ois = new HeaderlessObjectInputStream(meter.meter(new ExchangeInputStream()));
+        this.isOpened = opcodes == null;
+        this.replyListener = new AtomicReference<Runnable>();
+    }
+
+    /**
+     * Obtains the correlation id of the {@link Exchange}.
+     *
+     * @return the correlation id
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Obtains the type of {@link Operation} being exchanged.
+     *
+     * @return the type of {@link Operation}
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * Obtains the {@link ObjectInputStream} from which to read what the peer sent.
+     *
+     * @return the {@link ObjectInputStream}
+     */
+    ObjectInputStream getObjectInputStream() {
+        return ois;
+    }
+
+    /**
+     * Obtains the {@link ObjectOutputStream} to which to write for the peer.
+     *
+     * @return the {@link ObjectOutputStream}
+     */
+    ObjectOutputStream getObjectOutputStream() {
+        return oos;
+    }
+
+    /**
+     * Obtains the {@link Meter} measuring the object streams of the {@link Exchange},
+     * including the time spent waiting for and sending frames.
+     *
+     * @return the {@link Meter}
+     */
+    Meter getMeter() {
+        return meter;
+    }
+
+    /**
+     * Sends what has been written for the peer and defers reading the reply
+     * until it has been completely received.
+     *
+     * @param listener the {@link Runnable} to run, on the thread receiving
+     *                 the end of the {@link Exchange}, once the reply has
+     *                 been completely received
+     * @throws IOException when the connection has failed
+     */
+    void deferReply(Runnable listener) throws IOException {
+        replyListener.set(listener);
+        flush();
+    }
+
+    /**
+     * Determines if the {@link Exchange} has been opened with the peer.
+     *
+     * @return <code>true</code> if opened
+     */
+    boolean isOpened() {
+        return isOpened;
+    }
+
+    /**
+     * Accepts bytes sent by the peer.
+     *
+     * @param bytes the bytes
+     * @throws IOException when the {@link Exchange} has ended
+     */
+    void receive(byte[] bytes) throws IOException {
+        inbound.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Notes that the peer will send nothing more, after which reading beyond
+     * what has been received reports end-of-stream.
+     */
+    void receiveEnd() {
+        inbound.close();
+        runReplyListener();
+    }
+
+    /**
+     * Runs the {@link Runnable} to which the reply has been deferred, at most once.
+     */
+    private void runReplyListener() {
+        Runnable listener = replyListener.getAndSet(null);
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Sends what has been written for the peer, opening the {@link Exchange} first if necessary.
+     *
+     * @throws IOException when the connection has failed
+     */
+    void flush() throws IOException {
+        oos.flush();
+        send();
+    }
+
+    /**
+     * Sends the bytes written for the peer, opening the {@link Exchange} first if necessary.
+     *
+     * @throws IOException when the connection has failed
+     */
+    private void send() throws IOException {
+        if (outbound.size() > 0 || !isOpened) {
+            synchronized (connection) {
+                if (!isOpened) {
+                    connection.writeByte(OPEN_FRAME);
+                    connection.writeInt(id);
+                    opcodes.write(connection, type);
+                    isOpened = true;
+                }
+
+                if (outbound.size() > 0) {
+                    connection.writeByte(DATA_FRAME);
+                    connection.writeInt(id);
+                    connection.writeInt(outbound.size());
+                    outbound.writeTo(connection);
+                }
+                connection.flush();
+            }
+            outbound.reset();
+        }
+    }
+
+    /**
+     * Sends what has been written for the peer, followed by the end of the
+     * {@link Exchange}.
+     *
+     * @throws IOException when the connection has failed
+     */
+    void end() throws IOException {
+        long start = System.nanoTime();
+        try {
+            flush();
+
+            synchronized (connection) {
+                connection.writeByte(END_FRAME);
+                connection.writeInt(id);
+                connection.flush();
+            }
+        } finally {
+            meter.addWireTime(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The {@link OutputStream} of an {@link Exchange}, that buffers what is
+     * written for the peer until flushed, so that an {@link Operation} or
+     * {@link OperationHandler} flushing its {@link ObjectOutputStream} sends
+     * what it has written so far, as it would on a connection of its own.
+     */
+    private class OutboundStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            outbound.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            outbound.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            send();
+        }
+    }
+
+    /**
+     * The {@link InputStream} of an {@link Exchange}, that sends what has been
+     * written for the peer before waiting for the peer to reply.
+     */
+    private class ExchangeInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (inbound.available() == 0) {
+                flush();
+            }
+            return inbound.read(bytes, offset, length);
+        }
+
+        @Override
+        public int available() {
+            return inbound.available();
+        }
+    }
+
+    /**
+     * An {@link ObjectOutputStream} that doesn't write a stream header, as
+     * the streams of an {@link Exchange} only live as long as the {@link Exchange}.
+     */
+    private static class HeaderlessObjectOutputStream extends ObjectOutputStream {
+        HeaderlessObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeStreamHeader() {
+            //the stream header is implied
+        }
+    }
+
+    /**
+     * An {@link ObjectInputStream} that doesn't read a stream header, as
+     * the streams of an {@link Exchange} only live as long as the {@link Exchange}.
+     */
+    private static class HeaderlessObjectInputStream extends ObjectInputStream {
+        HeaderlessObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected void readStreamHeader() {
+            //the stream header is implied
+        }
+    }
+}
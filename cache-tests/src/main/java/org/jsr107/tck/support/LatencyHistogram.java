@@ -0,0 +1,199 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, recorded in nanoseconds, from which
+ * percentiles may be estimated.
+ * <p>
+ * Latencies are counted in log-linear buckets: each power of two is divided
+ * into {@value #SUB_BUCKETS} equal buckets, so that estimated percentiles are
+ * within about three percent of the recorded latencies, whatever their
+ * magnitude, while the histogram occupies a fixed amount of memory.
+ *
+ * @see OperationStatistics
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of buckets into which each power of two is divided.
+     */
+    private static final int SUB_BUCKETS = 32;
+
+    /**
+     * The number of bits needed to index the {@link #SUB_BUCKETS}.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of latencies recorded in each bucket.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The number of latencies recorded.
+     */
+    private final AtomicLong count;
+
+    /**
+     * The sum of the latencies recorded.
+     */
+    private final AtomicLong total;
+
+    /**
+     * The largest latency recorded.
+     */
+    private final AtomicLong maximum;
+
+    /**
+     * Constructs an empty {@link LatencyHistogram}.
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.maximum = new AtomicLong();
+    }
+
+    /**
+     * Records a latency.  Negative latencies are recorded as zero.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long latency = Math.max(0, nanos);
+
+        buckets.incrementAndGet(getBucket(latency));
+        count.incrementAndGet();
+        total.addAndGet(latency);
+
+        long current = maximum.get();
+        while (latency > current && !maximum.compareAndSet(current, latency)) {
+            current = maximum.get();
+        }
+    }
+
+    /**
+     * Obtains the number of latencies recorded.
+     *
+     * @return the number of latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Obtains the mean of the latencies recorded.
+     *
+     * @param unit the {@link TimeUnit} of the result
+     * @return the mean latency, or <code>0</code> when none were recorded
+     */
+    public long getMean(TimeUnit unit) {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : unit.convert(total.get() / recorded, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Obtains the largest latency recorded.
+     *
+     * @param unit the {@link TimeUnit} of the result
+     * @return the largest latency, or <code>0</code> when none were recorded
+     */
+    public long getMaximum(TimeUnit unit) {
+        return unit.convert(maximum.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Estimates the latency below which the specified percentage of the
+     * recorded latencies fall.
+     *
+     * @param percentile the percentile, between <code>0</code> and <code>100</code>
+     * @param unit       the {@link TimeUnit} of the result
+     * @return the estimated latency, or <code>0</code> when none were recorded
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length(); bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                long latency = Math.min(getHighestLatency(bucket), maximum.get());
+                return unit.convert(latency, TimeUnit.NANOSECONDS);
+            }
+        }
+        return getMaximum(unit);
+    }
+
+    /**
+     * Forgets the latencies recorded so far.  Latencies recorded concurrently
+     * may or may not be forgotten.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < buckets.length(); bucket++) {
+            buckets.set(bucket, 0);
+        }
+        count.set(0);
+        total.set(0);
+        maximum.set(0);
+    }
+
+    /**
+     * Determines the bucket in which to record a latency.
+     *
+     * @param nanos the non-negative latency
+     * @return the index of the bucket
+     */
+    private static int getBucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((nanos >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Determines the highest latency that is recorded in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the highest latency of the bucket
+     */
+    private static long getHighestLatency(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest < 0 ? Long.MAX_VALUE : lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        TimeUnit unit = TimeUnit.MICROSECONDS;
+        return "p50=" + getPercentile(50, unit)
+            + "us, p99=" + getPercentile(99, unit)
+            + "us, p999=" + getPercentile(99.9, unit)
+            + "us, max=" + getMaximum(unit) + "us";
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process transport that connects {@link Client}s to {@link Server}s
+ * open in the same JVM through in-memory {@link BytePipe}s rather than sockets.
+ * <p>
+ * {@link Operation}s are still written to and read from object streams,
+ * so keys and values are copied exactly as they are over a socket and
+ * store-by-value semantics continue to be exercised.  Only the socket, the
+ * TCP loopback and the kernel are bypassed.
+ * <p>
+ * {@link Client}s use the in-process transport when the
+ * {@value Client#TRANSPORT_PROPERTY} system property is <code>local</code> and a
+ * {@link Server} is open in the JVM at the requested address and port,
+ * falling back to a socket otherwise.
+ *
+ * @see Client
+ * @see Server
+ */
+final class LocalTransport {
+
+    /**
+     * The {@link Server}s open in the JVM, by the address on which they accept connections.
+     */
+    private static final ConcurrentHashMap<InetSocketAddress, Server> SERVERS =
+        new ConcurrentHashMap<InetSocketAddress, Server>();
+
+    /**
+     * The identity of the last in-process connection, counting down so as
+     * not to collide with the identities of socket connections.
+     */
+    private static final AtomicInteger CONNECTION_ID = new AtomicInteger();
+
+    /**
+     * Utility class.
+     */
+    private LocalTransport() {
+    }
+
+    /**
+     * Determines if {@link Client}s should use the in-process transport.
+     *
+     * @return <code>true</code> if the in-process transport was selected
+     */
+    static boolean isSelected() {
+        return "local".equalsIgnoreCase(System.getProperty(Client.TRANSPORT_PROPERTY, "socket").trim());
+    }
+
+    /**
+     * Registers a {@link Server} that has been opened.
+     *
+     * @param address the {@link InetAddress} on which the {@link Server} accepts connections
+     * @param port    the port on which the {@link Server} accepts connections
+     * @param server  the {@link Server}
+     */
+    static void register(InetAddress address, int port, Server server) {
+        SERVERS.put(new InetSocketAddress(address, port), server);
+    }
+
+    /**
+     * Unregisters a {@link Server} that is closing.
+     *
+     * @param server the {@link Server}
+     */
+    static void unregister(Server server) {
+        SERVERS.values().remove(server);
+    }
+
+    /**
+     * Connects to the {@link Server} open in the JVM at the specified address and port.
+     *
+     * @param address the {@link InetAddress} of the {@link Server}
+     * @param port    the port of the {@link Server}
+     * @return the {@link Endpoint} of the connection for the {@link Client},
+     *         or <code>null</code> when no such {@link Server} is open in the JVM
+     */
+    static Endpoint connect(InetAddress address, int port) {
+        Server server = SERVERS.get(new InetSocketAddress(address, port));
+        if (server == null) {
+            return null;
+        }
+
+        BytePipe requests = new BytePipe();
+        BytePipe replies = new BytePipe();
+
+        LocalConnection connection = new LocalConnection(server, CONNECTION_ID.decrementAndGet(), requests, replies);
+        server.addConnection(connection);
+        Threads.newThread(connection, server.isUsingVirtualThreads()).start();
+
+        return new Endpoint(requests, replies);
+    }
+
+    /**
+     * The {@link Client} end of an in-process connection.
+     */
+    static final class Endpoint implements Closeable {
+
+        /**
+         * The {@link BytePipe} carrying requests to the {@link Server}.
+         */
+        private final BytePipe requests;
+
+        /**
+         * The {@link BytePipe} carrying replies from the {@link Server}.
+         */
+        private final BytePipe replies;
+
+        /**
+         * Constructs an {@link Endpoint}.
+         *
+         * @param requests the {@link BytePipe} carrying requests to the {@link Server}
+         * @param replies  the {@link BytePipe} carrying replies from the {@link Server}
+         */
+        Endpoint(BytePipe requests, BytePipe replies) {
+            this.requests = requests;
+            this.replies = replies;
+        }
+
+        /**
+         * Obtains the {@link OutputStream} to the {@link Server}.
+         *
+         * @return the {@link OutputStream}
+         */
+        OutputStream getOutputStream() {
+            return requests.getOutputStream();
+        }
+
+        /**
+         * Obtains the {@link InputStream} from the {@link Server}.
+         *
+         * @return the {@link InputStream}
+         */
+        InputStream getInputStream() {
+            return replies.getInputStream();
+        }
+
+        /**
+         * Closes the connection, after which the {@link Server} observes end-of-stream.
+         */
+        @Override
+        public void close() {
+            requests.close();
+            replies.close();
+        }
+    }
+
+    /**
+     * The {@link Server} end of an in-process connection, served by a
+     * dedicated {@link Thread}.
+     */
+    private static final class LocalConnection implements Server.Connection, Runnable {
+
+        /**
+         * The {@link Server} serving the connection.
+         */
+        private final Server server;
+
+        /**
+         * The identity of the connection.
+         */
+        private final int identity;
+
+        /**
+         * The {@link BytePipe} carrying requests from the {@link Client}.
+         */
+        private final BytePipe requests;
+
+        /**
+         * The {@link BytePipe} carrying replies to the {@link Client}.
+         */
+        private final BytePipe replies;
+
+        /**
+         * Constructs a {@link LocalConnection}.
+         *
+         * @param server   the {@link Server} serving the connection
+         * @param identity the identity of the connection
+         * @param requests the {@link BytePipe} carrying requests from the {@link Client}
+         * @param replies  the {@link BytePipe} carrying replies to the {@link Client}
+         */
+        LocalConnection(Server server, int identity, BytePipe requests, BytePipe replies) {
+            this.server = server;
+            this.identity = identity;
+            this.requests = requests;
+            this.replies = replies;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getIdentity() {
+            return identity;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            try {
+                Meter meter = new Meter();
+                ObjectOutputStream oos = new ResettingObjectOutputStream(meter.meter(replies.getOutputStream()));
+                ObjectInputStream ois = new ObjectInputStream(meter.meter(requests.getInputStream()));
+                Opcodes opcodes = new Opcodes();
+
+                boolean isOpen = true;
+                while (isOpen) {
+                    isOpen = server.processOperation(identity, opcodes, meter, ois, oos);
+                }
+            } catch (IOException e) {
+                //any error closes the connection
+
+            } finally {
+                //closing acknowledges the close to the client
+                close();
+                server.removeConnection(identity);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void multiplex(Runnable multiplexer) {
+            multiplexer.run();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            requests.close();
+            replies.close();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "LocalConnection{identity=" + identity + "}";
+        }
+    }
+}
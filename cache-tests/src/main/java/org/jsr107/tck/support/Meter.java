@@ -0,0 +1,208 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Measures the bytes transferred through, and the time spent blocked in, the
+ * streams of a connection between a {@link Client} and a {@link Server}, so
+ * that the {@link OperationStatistics} of each {@link Operation} may separate
+ * the wire time from the time spent by the {@link OperationHandler}.
+ * <p>
+ * The bytes received for an {@link Operation} are those read since the
+ * previous {@link Operation} ended, including its opcode, whereas times are
+ * measured from when the {@link Operation} began, so that a connection
+ * waiting for its next {@link Operation} isn't counted.
+ * <p>
+ * A {@link Meter} is used by one thread at a time.
+ */
+final class Meter {
+
+    /**
+     * The number of bytes read.
+     */
+    private long bytesRead;
+
+    /**
+     * The number of bytes written.
+     */
+    private long bytesWritten;
+
+    /**
+     * The time spent blocked reading and writing.
+     */
+    private long wireNanos;
+
+    /**
+     * The number of bytes read when the previous {@link Operation} ended.
+     */
+    private long bytesReadAtEnd;
+
+    /**
+     * The number of bytes written when the previous {@link Operation} ended.
+     */
+    private long bytesWrittenAtEnd;
+
+    /**
+     * The time at which the current {@link Operation} began.
+     */
+    private long beginNanos;
+
+    /**
+     * The wire time when the current {@link Operation} began.
+     */
+    private long wireNanosAtBegin;
+
+    /**
+     * Wraps an {@link InputStream} so that reading from it is measured.
+     *
+     * @param in the {@link InputStream}
+     * @return the measured {@link InputStream}
+     */
+    InputStream meter(InputStream in) {
+        return new MeteredInputStream(in);
+    }
+
+    /**
+     * Wraps an {@link OutputStream} so that writing to it is measured.
+     *
+     * @param out the {@link OutputStream}
+     * @return the measured {@link OutputStream}
+     */
+    OutputStream meter(OutputStream out) {
+        return new MeteredOutputStream(out);
+    }
+
+    /**
+     * Adds time spent blocked on the connection outside of the measured streams.
+     *
+     * @param nanos the time spent
+     */
+    void addWireTime(long nanos) {
+        wireNanos += nanos;
+    }
+
+    /**
+     * Notes that an {@link Operation} has begun.
+     */
+    void begin() {
+        beginNanos = System.nanoTime();
+        wireNanosAtBegin = wireNanos;
+    }
+
+    /**
+     * Notes that the {@link Operation} that began has ended, recording it.
+     *
+     * @param statistics the {@link OperationStatistics} in which to record the
+     *                   {@link Operation}, or <code>null</code> not to record it
+     */
+    void end(OperationStatistics statistics) {
+        if (statistics != null) {
+            long wire = wireNanos - wireNanosAtBegin;
+            long elapsed = System.nanoTime() - beginNanos;
+            statistics.record(bytesRead - bytesReadAtEnd, bytesWritten - bytesWrittenAtEnd, elapsed - wire, wire);
+        }
+
+        bytesReadAtEnd = bytesRead;
+        bytesWrittenAtEnd = bytesWritten;
+    }
+
+    /**
+     * An {@link InputStream} that measures reading.
+     */
+    private class MeteredInputStream extends FilterInputStream {
+
+        /**
+         * Constructs a {@link MeteredInputStream}.
+         *
+         * @param in the {@link InputStream} to read from
+         */
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                int b = in.read();
+                if (b >= 0) {
+                    bytesRead++;
+                }
+                return b;
+            } finally {
+                wireNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                int count = in.read(bytes, offset, length);
+                if (count > 0) {
+                    bytesRead += count;
+                }
+                return count;
+            } finally {
+                wireNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * An {@link OutputStream} that measures writing.
+     */
+    private class MeteredOutputStream extends FilterOutputStream {
+
+        /**
+         * Constructs a {@link MeteredOutputStream}.
+         *
+         * @param out the {@link OutputStream} to write to
+         */
+        MeteredOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.write(b);
+                bytesWritten++;
+            } finally {
+                wireNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.write(bytes, offset, length);
+                bytesWritten += length;
+            } finally {
+                wireNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            try {
+                out.flush();
+            } finally {
+                wireNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The integer opcodes that identify the types of {@link Operation}s on a
+ * connection between a {@link Client} and a {@link Server}.
+ * <p>
+ * Each connection interns the types of {@link Operation}s as they are first
+ * invoked.  The first invocation of a type writes the negated opcode followed
+ * by the type, after which only the opcode is written.  The reader resolves
+ * the {@link OperationHandler} of an opcode once, so that processing an
+ * {@link Operation} needn't look up its type.
+ * <p>
+ * Each end of a connection has its own {@link Opcodes}, which isn't thread-safe.
+ *
+ * @see Client
+ * @see Server
+ */
+final class Opcodes {
+
+    /**
+     * The opcodes assigned to the types of {@link Operation}s written.
+     */
+    private final HashMap<String, Integer> assigned;
+
+    /**
+     * The types of {@link Operation}s read, indexed by opcode.
+     */
+    private final ArrayList<String> types;
+
+    /**
+     * The {@link OperationHandler}s resolved for the opcodes read, indexed by opcode.
+     */
+    private final ArrayList<OperationHandler> handlers;
+
+    /**
+     * Constructs an empty {@link Opcodes}.
+     */
+    Opcodes() {
+        this.assigned = new HashMap<String, Integer>();
+        this.types = new ArrayList<String>();
+        this.handlers = new ArrayList<OperationHandler>();
+    }
+
+    /**
+     * Writes the opcode of a type of {@link Operation}, assigning one when
+     * the type is first written.
+     *
+     * @param out  the {@link DataOutput} to write to
+     * @param type the type of {@link Operation}
+     * @throws IOException when the opcode can't be written
+     */
+    void write(DataOutput out, String type) throws IOException {
+        Integer opcode = assigned.get(type);
+        if (opcode == null) {
+            opcode = assigned.size();
+            assigned.put(type, opcode);
+
+            //opcodes are introduced with their one's complement, so zero can be introduced too
+            out.writeInt(~opcode);
+            out.writeUTF(type);
+        } else {
+            out.writeInt(opcode);
+        }
+    }
+
+    /**
+     * Reads an opcode, learning its type when the opcode is introduced.
+     *
+     * @param in the {@link DataInput} to read from
+     * @return the opcode
+     * @throws IOException when the opcode can't be read or is unknown
+     */
+    int read(DataInput in) throws IOException {
+        int opcode = in.readInt();
+        if (opcode < 0) {
+            opcode = ~opcode;
+            if (opcode != types.size()) {
+                throw new IOException("Opcode " + opcode + " was introduced out of order");
+            }
+            types.add(in.readUTF());
+            handlers.add(null);
+        } else if (opcode >= types.size()) {
+            throw new IOException("Unknown opcode " + opcode);
+        }
+        return opcode;
+    }
+
+    /**
+     * Obtains the type of {@link Operation} of an opcode that has been read.
+     *
+     * @param opcode the opcode
+     * @return the type of {@link Operation}
+     */
+    String getType(int opcode) {
+        return types.get(opcode);
+    }
+
+    /**
+     * Obtains the {@link OperationHandler} for an opcode that has been read,
+     * resolving it the first time it is required.
+     *
+     * @param opcode            the opcode
+     * @param operationHandlers the {@link OperationHandler}s by type of {@link Operation}
+     * @return the {@link OperationHandler} or <code>null</code> when none is registered
+     */
+    OperationHandler getHandler(int opcode, Map<String, OperationHandler> operationHandlers) {
+        OperationHandler handler = handlers.get(opcode);
+        if (handler == null) {
+            handler = operationHandlers.get(types.get(opcode));
+            handlers.set(opcode, handler);
+        }
+        return handler;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link Future} result of an {@link Operation} invoked asynchronously
+ * with {@link Client#invokeAsync(Operation)}.
+ * <p>
+ * Rather than waiting with {@link #get()}, callers may register a
+ * {@link Listener} that is notified once the result is available, so that
+ * no thread is parked while the {@link Operation} is in flight.
+ * <p>
+ * {@link Operation}s can't be recalled once sent, so an {@link OperationFuture}
+ * can't be cancelled.
+ *
+ * @param <T> the type of the result
+ * @see Client#invokeAsync(Operation)
+ */
+public final class OperationFuture<T> implements Future<T> {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = Logger.getLogger(OperationFuture.class.getName());
+
+    /**
+     * The result of the {@link Operation}, once successfully completed.
+     */
+    private T result;
+
+    /**
+     * The failure of the {@link Operation}, once failed.
+     */
+    private RuntimeException failure;
+
+    /**
+     * Has the {@link Operation} completed?
+     */
+    private boolean isDone;
+
+    /**
+     * The {@link Listener}s to notify upon completion, <code>null</code> once notified.
+     */
+    private List<Listener<T>> listeners;
+
+    /**
+     * Constructs an {@link OperationFuture} for an {@link Operation} in flight.
+     */
+    OperationFuture() {
+        this.listeners = new ArrayList<Listener<T>>();
+    }
+
+    /**
+     * Completes the {@link OperationFuture} with a result, notifying the {@link Listener}s.
+     *
+     * @param result the result of the {@link Operation}
+     */
+    void complete(T result) {
+        List<Listener<T>> notified;
+        synchronized (this) {
+            if (isDone) {
+                return;
+            }
+            this.result = result;
+            this.isDone = true;
+            notified = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        notify(notified);
+    }
+
+    /**
+     * Completes the {@link OperationFuture} with a failure, notifying the {@link Listener}s.
+     *
+     * @param failure the failure of the {@link Operation}
+     */
+    void fail(RuntimeException failure) {
+        List<Listener<T>> notified;
+        synchronized (this) {
+            if (isDone) {
+                return;
+            }
+            this.failure = failure;
+            this.isDone = true;
+            notified = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        notify(notified);
+    }
+
+    /**
+     * Obtains the failure of the {@link Operation}.
+     *
+     * @return the failure, or <code>null</code> if the {@link Operation}
+     *         hasn't failed (yet)
+     */
+    synchronized RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Registers a {@link Listener} to notify once the {@link Operation} has
+     * completed, immediately on the calling thread when it already has.
+     * Otherwise the {@link Listener} is notified by the thread that completes
+     * the {@link Operation}, usually the thread receiving replies from the
+     * {@link Server}, so {@link Listener}s must not block.
+     *
+     * @param listener the {@link Listener}
+     */
+    public void addListener(Listener<T> listener) {
+        synchronized (this) {
+            if (!isDone) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notify(listener);
+    }
+
+    /**
+     * Notifies the specified {@link Listener}s of completion.
+     *
+     * @param notified the {@link Listener}s to notify
+     */
+    private void notify(List<Listener<T>> notified) {
+        for (Listener<T> listener : notified) {
+            notify(listener);
+        }
+    }
+
+    /**
+     * Notifies a {@link Listener} of completion, logging what it throws.
+     *
+     * @param listener the {@link Listener} to notify
+     */
+    private void notify(Listener<T> listener) {
+        try {
+            listener.onComplete(this);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "OperationFuture listener " + listener + " failed", e);
+        }
+    }
+
+    /**
+     * Always fails, as {@link Operation}s can't be recalled once sent.
+     *
+     * @param mayInterruptIfRunning ignored
+     * @return <code>false</code>
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isDone() {
+        return isDone;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!isDone) {
+            wait();
+        }
+        return getResult();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isDone) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException("The operation didn't complete within " + timeout + " " + unit);
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    /**
+     * Obtains the result of the completed {@link Operation}, as would
+     * {@link Client#invoke(Operation)}, throwing its failure when it failed.
+     *
+     * @return the result
+     * @throws IllegalStateException when the {@link Operation} hasn't completed
+     */
+    public synchronized T getNow() {
+        if (!isDone) {
+            throw new IllegalStateException("The operation hasn't completed");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Obtains the result of the completed {@link Operation}.
+     *
+     * @return the result
+     * @throws ExecutionException when the {@link Operation} failed
+     */
+    private T getResult() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "OperationFuture{" + (!isDone ? "pending" : failure != null ? "failure=" + failure : "result=" + result) + "}";
+    }
+
+    /**
+     * Notified once an {@link Operation} invoked asynchronously has completed.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Listener<T> {
+        /**
+         * Invoked once the {@link Operation} has completed, after which
+         * {@link OperationFuture#getNow()} returns its result without blocking.
+         *
+         * @param future the completed {@link OperationFuture}
+         */
+        void onComplete(OperationFuture<T> future);
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics a {@link Server} records for each type of {@link Operation}
+ * processed by its {@link OperationHandler}s: how many were processed, the
+ * bytes exchanged with {@link Client}s and histograms of the handler and
+ * wire times.
+ * <p>
+ * Statistics are recorded concurrently without locking.
+ *
+ * @see Server#getOperationStatistics()
+ */
+public final class OperationStatistics implements OperationStatisticsMXBean {
+
+    /**
+     * The type of {@link Operation} the statistics are for.
+     */
+    private final String type;
+
+    /**
+     * The number of bytes received from {@link Client}s.
+     */
+    private final AtomicLong bytesIn;
+
+    /**
+     * The number of bytes sent to {@link Client}s.
+     */
+    private final AtomicLong bytesOut;
+
+    /**
+     * The times spent by the {@link OperationHandler}.
+     */
+    private final LatencyHistogram handlerTime;
+
+    /**
+     * The times spent blocked on the connection to the {@link Client}.
+     */
+    private final LatencyHistogram wireTime;
+
+    /**
+     * Constructs {@link OperationStatistics}.
+     *
+     * @param type the type of {@link Operation} the statistics are for
+     */
+    public OperationStatistics(String type) {
+        this.type = type;
+        this.bytesIn = new AtomicLong();
+        this.bytesOut = new AtomicLong();
+        this.handlerTime = new LatencyHistogram();
+        this.wireTime = new LatencyHistogram();
+    }
+
+    /**
+     * Records the processing of an {@link Operation}.
+     *
+     * @param bytesIn      the number of bytes received from the {@link Client}
+     * @param bytesOut     the number of bytes sent to the {@link Client}
+     * @param handlerNanos the time spent by the {@link OperationHandler}
+     * @param wireNanos    the time spent blocked on the connection
+     */
+    public void record(long bytesIn, long bytesOut, long handlerNanos, long wireNanos) {
+        this.bytesIn.addAndGet(bytesIn);
+        this.bytesOut.addAndGet(bytesOut);
+        this.wireTime.record(wireNanos);
+        this.handlerTime.record(handlerNanos);
+    }
+
+    /**
+     * Obtains the {@link LatencyHistogram} of the handler times.
+     *
+     * @return the {@link LatencyHistogram}
+     */
+    public LatencyHistogram getHandlerTime() {
+        return handlerTime;
+    }
+
+    /**
+     * Obtains the {@link LatencyHistogram} of the wire times.
+     *
+     * @return the {@link LatencyHistogram}
+     */
+    public LatencyHistogram getWireTime() {
+        return wireTime;
+    }
+
+    @Override
+    public String getOperationType() {
+        return type;
+    }
+
+    @Override
+    public long getCount() {
+        return handlerTime.getCount();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public long getHandlerTime50thPercentile() {
+        return handlerTime.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHandlerTime99thPercentile() {
+        return handlerTime.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHandlerTime999thPercentile() {
+        return handlerTime.getPercentile(99.9, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHandlerTimeMaximum() {
+        return handlerTime.getMaximum(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWireTime50thPercentile() {
+        return wireTime.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWireTime99thPercentile() {
+        return wireTime.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWireTime999thPercentile() {
+        return wireTime.getPercentile(99.9, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWireTimeMaximum() {
+        return wireTime.getMaximum(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public void clear() {
+        bytesIn.set(0);
+        bytesOut.set(0);
+        handlerTime.reset();
+        wireTime.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return type + ": count=" + getCount()
+            + ", bytesIn=" + getBytesIn()
+            + ", bytesOut=" + getBytesOut()
+            + ", handler{" + handlerTime + "}"
+            + ", wire{" + wireTime + "}";
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+/**
+ * The management interface of the {@link OperationStatistics} a {@link Server}
+ * records for a type of {@link Operation}.
+ * <p>
+ * Times are in microseconds.  The handler time is the time an
+ * {@link OperationHandler} spent processing an {@link Operation}, excluding
+ * the wire time spent blocked reading requests from, and writing replies to,
+ * the {@link Client}.  Comparing the two tells whether the
+ * {@link OperationHandler}, for example a remote {@link javax.cache.integration.CacheLoader},
+ * or the transport is the bottleneck.
+ *
+ * @see Server#getOperationStatistics(String)
+ */
+public interface OperationStatisticsMXBean {
+
+    /**
+     * Obtains the type of {@link Operation} the statistics are for.
+     *
+     * @return the type of {@link Operation}
+     */
+    String getOperationType();
+
+    /**
+     * Obtains the number of {@link Operation}s processed.
+     *
+     * @return the number of {@link Operation}s
+     */
+    long getCount();
+
+    /**
+     * Obtains the number of bytes received from {@link Client}s.
+     *
+     * @return the number of bytes
+     */
+    long getBytesIn();
+
+    /**
+     * Obtains the number of bytes sent to {@link Client}s.
+     *
+     * @return the number of bytes
+     */
+    long getBytesOut();
+
+    /**
+     * Obtains the median handler time.
+     *
+     * @return the median handler time in microseconds
+     */
+    long getHandlerTime50thPercentile();
+
+    /**
+     * Obtains the 99th percentile handler time.
+     *
+     * @return the 99th percentile handler time in microseconds
+     */
+    long getHandlerTime99thPercentile();
+
+    /**
+     * Obtains the 99.9th percentile handler time.
+     *
+     * @return the 99.9th percentile handler time in microseconds
+     */
+    long getHandlerTime999thPercentile();
+
+    /**
+     * Obtains the maximum handler time.
+     *
+     * @return the maximum handler time in microseconds
+     */
+    long getHandlerTimeMaximum();
+
+    /**
+     * Obtains the median wire time.
+     *
+     * @return the median wire time in microseconds
+     */
+    long getWireTime50thPercentile();
+
+    /**
+     * Obtains the 99th percentile wire time.
+     *
+     * @return the 99th percentile wire time in microseconds
+     */
+    long getWireTime99thPercentile();
+
+    /**
+     * Obtains the 99.9th percentile wire time.
+     *
+     * @return the 99.9th percentile wire time in microseconds
+     */
+    long getWireTime999thPercentile();
+
+    /**
+     * Obtains the maximum wire time.
+     *
+     * @return the maximum wire time in microseconds
+     */
+    long getWireTimeMaximum();
+
+    /**
+     * Clears the statistics.
+     */
+    void clear();
+}
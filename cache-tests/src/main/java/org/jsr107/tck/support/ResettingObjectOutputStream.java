@@ -0,0 +1,295 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * An {@link ObjectOutputStream} for the lifetime of a connection between a
+ * {@link Client} and a {@link Server} that periodically resets itself, so
+ * that neither it nor the {@link java.io.ObjectInputStream} reading from it
+ * retain every object ever sent in their back-reference handle tables.
+ * <p>
+ * {@link Codec}s call {@link #checkpoint(ObjectOutputStream)} after writing
+ * each top-level object, and the stream is reset once the number of objects
+ * or bytes written since the last reset reaches the limits defined by the
+ * {@value #RESET_OBJECTS_PROPERTY} and {@value #RESET_BYTES_PROPERTY} system
+ * properties (<code>0</code> for no limit).
+ * <p>
+ * The objects and bytes retained by all open streams are available as a
+ * gauge through {@link #getRetainedObjectCount()} and {@link #getRetainedByteCount()}.
+ *
+ * @see Codec
+ */
+public class ResettingObjectOutputStream extends ObjectOutputStream {
+
+    /**
+     * The system property defining the number of objects after which a stream is reset.
+     */
+    public static final String RESET_OBJECTS_PROPERTY = "org.jsr107.tck.support.stream.resetObjects";
+
+    /**
+     * The system property defining the number of bytes after which a stream is reset.
+     */
+    public static final String RESET_BYTES_PROPERTY = "org.jsr107.tck.support.stream.resetBytes";
+
+    /**
+     * The default number of objects after which a stream is reset.
+     */
+    public static final int DEFAULT_RESET_OBJECTS = 10000;
+
+    /**
+     * The default number of bytes after which a stream is reset.
+     */
+    public static final long DEFAULT_RESET_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The open {@link ResettingObjectOutputStream}s, for the gauge.
+     */
+    private static final Set<ResettingObjectOutputStream> STREAMS =
+        Collections.newSetFromMap(new WeakHashMap<ResettingObjectOutputStream, Boolean>());
+
+    /**
+     * The number of objects after which the stream is reset, <code>0</code> for no limit.
+     */
+    private final int resetObjects;
+
+    /**
+     * The number of bytes after which the stream is reset, <code>0</code> for no limit.
+     */
+    private final long resetBytes;
+
+    /**
+     * The {@link CountingOutputStream} beneath the stream.
+     */
+    private final CountingOutputStream counter;
+
+    /**
+     * The number of objects written since the last reset.
+     */
+    private volatile int objectsSinceReset;
+
+    /**
+     * The number of bytes written when the stream was last reset.
+     */
+    private volatile long bytesAtReset;
+
+    /**
+     * The number of times the stream has been reset.
+     */
+    private volatile long resetCount;
+
+    /**
+     * Constructs a {@link ResettingObjectOutputStream} with the limits defined
+     * by the system properties.
+     *
+     * @param out the {@link OutputStream} to write to
+     * @throws IOException when the stream header can't be written
+     */
+    public ResettingObjectOutputStream(OutputStream out) throws IOException {
+        this(out,
+             Integer.getInteger(RESET_OBJECTS_PROPERTY, DEFAULT_RESET_OBJECTS),
+             Long.getLong(RESET_BYTES_PROPERTY, DEFAULT_RESET_BYTES));
+    }
+
+    /**
+     * Constructs a {@link ResettingObjectOutputStream}.
+     *
+     * @param out          the {@link OutputStream} to write to
+     * @param resetObjects the number of objects after which the stream is
+     *                     reset, <code>0</code> for no limit
+     * @param resetBytes   the number of bytes after which the stream is
+     *                     reset, <code>0</code> for no limit
+     * @throws IOException when the stream header can't be written
+     */
+    public ResettingObjectOutputStream(OutputStream out, int resetObjects, long resetBytes) throws IOException {
+        this(new CountingOutputStream(out), resetObjects, resetBytes);
+    }
+
+    /**
+     * Constructs a {@link ResettingObjectOutputStream} writing through a
+     * {@link CountingOutputStream}.
+     *
+     * @param counter      the {@link CountingOutputStream} to write to
+     * @param resetObjects the number of objects after which the stream is reset
+     * @param resetBytes   the number of bytes after which the stream is reset
+     * @throws IOException when the stream header can't be written
+     */
+    private ResettingObjectOutputStream(CountingOutputStream counter, int resetObjects, long resetBytes)
+        throws IOException {
+        super(counter);
+        this.counter = counter;
+        this.resetObjects = resetObjects;
+        this.resetBytes = resetBytes;
+        this.objectsSinceReset = 0;
+        this.bytesAtReset = 0;
+        this.resetCount = 0;
+
+        synchronized (STREAMS) {
+            STREAMS.add(this);
+        }
+    }
+
+    /**
+     * Notes that a top-level object has been written to the specified stream,
+     * resetting it when it is a {@link ResettingObjectOutputStream} that has
+     * reached one of its limits.  Other streams are ignored.
+     *
+     * @param oos the {@link ObjectOutputStream} that has been written to
+     * @throws IOException when the stream can't be reset
+     */
+    public static void checkpoint(ObjectOutputStream oos) throws IOException {
+        if (oos instanceof ResettingObjectOutputStream) {
+            ((ResettingObjectOutputStream) oos).checkpoint();
+        }
+    }
+
+    /**
+     * Notes that a top-level object has been written, resetting the stream
+     * when one of its limits has been reached.
+     *
+     * @throws IOException when the stream can't be reset
+     */
+    private void checkpoint() throws IOException {
+        objectsSinceReset++;
+
+        if ((resetObjects > 0 && objectsSinceReset >= resetObjects)
+            || (resetBytes > 0 && counter.count - bytesAtReset >= resetBytes)) {
+            reset();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+
+        objectsSinceReset = 0;
+        bytesAtReset = counter.count;
+        resetCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (STREAMS) {
+            STREAMS.remove(this);
+        }
+        super.close();
+    }
+
+    /**
+     * Obtains the number of objects written since the stream was last reset.
+     *
+     * @return the number of objects
+     */
+    public int getObjectsSinceReset() {
+        return objectsSinceReset;
+    }
+
+    /**
+     * Obtains the number of bytes written since the stream was last reset.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesSinceReset() {
+        return counter.count - bytesAtReset;
+    }
+
+    /**
+     * Obtains the number of times the stream has been reset.
+     *
+     * @return the number of resets
+     */
+    public long getResetCount() {
+        return resetCount;
+    }
+
+    /**
+     * Obtains the number of top-level objects retained by the handle tables
+     * of all open {@link ResettingObjectOutputStream}s.
+     *
+     * @return the number of retained objects
+     */
+    public static long getRetainedObjectCount() {
+        long count = 0;
+        for (ResettingObjectOutputStream stream : getStreams()) {
+            count += stream.getObjectsSinceReset();
+        }
+        return count;
+    }
+
+    /**
+     * Obtains the number of bytes written since the last reset of all open
+     * {@link ResettingObjectOutputStream}s, approximating the memory retained
+     * by their handle tables.
+     *
+     * @return the number of retained bytes
+     */
+    public static long getRetainedByteCount() {
+        long count = 0;
+        for (ResettingObjectOutputStream stream : getStreams()) {
+            count += stream.getBytesSinceReset();
+        }
+        return count;
+    }
+
+    /**
+     * Obtains a snapshot of the open {@link ResettingObjectOutputStream}s.
+     *
+     * @return the open streams
+     */
+    private static List<ResettingObjectOutputStream> getStreams() {
+        synchronized (STREAMS) {
+            return new ArrayList<ResettingObjectOutputStream>(STREAMS);
+        }
+    }
+
+    /**
+     * An {@link OutputStream} that counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * The number of bytes written.
+         */
+        private volatile long count;
+
+        /**
+         * Constructs a {@link CountingOutputStream}.
+         *
+         * @param out the {@link OutputStream} to write to
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,688 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link Server.Engine#NIO} engine of a {@link Server}.
+ * <p>
+ * A single {@link Selector} thread accepts {@link Client} connections, reads
+ * their requests into per-connection {@link BytePipe}s and writes their
+ * responses, while a small pool of worker threads processes the
+ * {@link Operation}s of connections that have requests pending, using the
+ * {@link OperationHandler}s registered with the {@link Server}.
+ * <p>
+ * A worker is only occupied while an {@link Operation} is in flight, so many
+ * mostly idle {@link Client} connections may be served by a handful of threads,
+ * while {@link OperationHandler}s keep their blocking programming model.  A
+ * multiplexed connection, whose {@link Exchange}s are in flight for as long
+ * as it is open, is instead served by a thread of its own.
+ * <p>
+ * An {@link Operation} is processed as soon as its request starts to arrive,
+ * so a worker remains occupied until the rest of the request has arrived and
+ * the {@link OperationHandler} completes.  A {@link Client} that is slow to
+ * send a request, or that streams a large request such as the chunks of a
+ * <code>writeAll</code>, occupies a worker for the rest of that request, and
+ * as many such {@link Client}s as there are workers delay the others.  The
+ * pool should therefore be sized for the number of concurrently streaming
+ * {@link Client}s rather than for the number of connections.
+ * <p>
+ * Reading from a connection is suspended while more than
+ * {@value #READ_HIGH_WATER_MARK} request bytes are waiting to be processed,
+ * and resumed once they have been drained below half of that, so that a
+ * {@link Client} can't buffer an unbounded request in the {@link Server}.
+ *
+ * @see Server
+ */
+final class SelectorEngine implements Runnable {
+
+    /**
+     * The size of the buffer used by the {@link Selector} thread to read requests.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of unprocessed request bytes for a connection after which
+     * the {@link Selector} thread stops reading from it, until a worker has
+     * processed half of them.
+     */
+    private static final int READ_HIGH_WATER_MARK = 1024 * 1024;
+
+    /**
+     * The number of unsent response bytes for a connection after which
+     * workers writing further responses wait for the {@link Client} to catch up.
+     */
+    private static final int WRITE_HIGH_WATER_MARK = 1024 * 1024;
+
+    /**
+     * The {@link Server} whose {@link OperationHandler}s will process requests.
+     */
+    private final Server server;
+
+    /**
+     * The {@link ServerSocketChannel} on which to accept {@link Client} connections.
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The {@link Selector} multiplexing the connections.
+     */
+    private final Selector selector;
+
+    /**
+     * The worker threads that process {@link Operation}s.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The connections that have queued responses waiting for their channel
+     * to become writable.
+     */
+    private final ConcurrentLinkedQueue<NioConnection> pendingWrites;
+
+    /**
+     * The connections whose unprocessed requests have been drained while
+     * reading from them was suspended.
+     */
+    private final ConcurrentLinkedQueue<NioConnection> pendingReads;
+
+    /**
+     * The buffer into which the {@link Selector} thread reads requests.
+     */
+    private final ByteBuffer readBuffer;
+
+    /**
+     * Constructs a {@link SelectorEngine}.
+     *
+     * @param server        the {@link Server} to process {@link Operation}s
+     * @param serverChannel the bound {@link ServerSocketChannel} on which to accept connections
+     * @param workerCount   the number of worker threads
+     * @throws IOException when the {@link Selector} can't be opened
+     */
+    SelectorEngine(Server server, ServerSocketChannel serverChannel, int workerCount) throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.selector = Selector.open();
+        this.workers = Executors.newFixedThreadPool(workerCount, new WorkerThreadFactory());
+        this.pendingWrites = new ConcurrentLinkedQueue<NioConnection>();
+        this.pendingReads = new ConcurrentLinkedQueue<NioConnection>();
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            int connectionId = 0;
+
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            while (serverChannel.isOpen() && !Thread.currentThread().isInterrupted()) {
+                selector.select();
+
+                NioConnection connection = pendingWrites.poll();
+                while (connection != null) {
+                    connection.enableWrites();
+                    connection = pendingWrites.poll();
+                }
+
+                connection = pendingReads.poll();
+                while (connection != null) {
+                    connection.enableReads();
+                    connection = pendingReads.poll();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept(connectionId++);
+                    } else {
+                        service(key);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            //the selector was closed - we're done
+        } catch (IOException e) {
+            //the server channel failed or was closed - we're done
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection) {
+                    ((NioConnection) key.attachment()).close();
+                }
+            }
+
+            workers.shutdownNow();
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                //failed to close the selector - but we don't care
+            }
+        }
+    }
+
+    /**
+     * Accepts a pending {@link Client} connection.
+     *
+     * @param identity the identity for the connection
+     * @throws IOException when the {@link ServerSocketChannel} has failed
+     */
+    private void accept(int identity) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+
+        if (channel != null) {
+            NioConnection connection = new NioConnection(identity, channel);
+            try {
+                channel.configureBlocking(false);
+                if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                    channel.socket().setTcpNoDelay(true);
+                }
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+
+                server.addConnection(connection);
+                connection.open();
+            } catch (IOException e) {
+                connection.abandon();
+            }
+        }
+    }
+
+    /**
+     * Services a ready {@link Client} connection, writing queued responses
+     * and reading requests.
+     *
+     * @param key the {@link SelectionKey} of the connection
+     */
+    private void service(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isWritable()) {
+                connection.onWritable();
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+        } catch (CancelledKeyException e) {
+            connection.abandon();
+        } catch (IOException e) {
+            connection.abandon();
+        }
+    }
+
+    /**
+     * A {@link Client} connection served by the {@link SelectorEngine}.
+     * <p>
+     * Requests are read by the {@link Selector} thread into a {@link BytePipe}
+     * from which a worker thread, scheduled whenever bytes are pending,
+     * reads and processes {@link Operation}s.  Responses are written directly
+     * to the channel when possible, otherwise queued for the {@link Selector}
+     * thread to write once the channel is writable.  Reading is suspended
+     * while the {@link BytePipe} holds more than {@value #READ_HIGH_WATER_MARK}
+     * bytes, and resumed once the worker has drained it below half of that.
+     */
+    private final class NioConnection implements Server.Connection, Runnable {
+
+        /**
+         * The identity of the connection.
+         */
+        private final int identity;
+
+        /**
+         * The {@link SocketChannel} to the {@link Client}.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The {@link SelectionKey} of the {@link SocketChannel}.
+         */
+        private volatile SelectionKey key;
+
+        /**
+         * The request bytes received from the {@link Client}, not yet processed.
+         */
+        private final BytePipe inbound;
+
+        /**
+         * The response bytes not yet written to the {@link Client}.
+         */
+        private final ArrayDeque<ByteBuffer> outbound;
+
+        /**
+         * The number of bytes in the outbound queue.
+         */
+        private int outboundBytes;
+
+        /**
+         * Has the connection been scheduled for processing by a worker?
+         */
+        private final AtomicBoolean isScheduled;
+
+        /**
+         * Has reading from the {@link SocketChannel} been suspended, as too
+         * many request bytes are waiting to be processed?
+         */
+        private final AtomicBoolean isReadSuspended;
+
+        /**
+         * The {@link ObjectOutputStream} to the {@link Client}.
+         */
+        private ObjectOutputStream oos;
+
+        /**
+         * The {@link ObjectInputStream} from the {@link Client}, created by a
+         * worker once the {@link Client} stream header has arrived.
+         */
+        private ObjectInputStream ois;
+
+        /**
+         * The {@link Opcodes} read from the {@link Client}, used by one worker at a time.
+         */
+        private final Opcodes opcodes;
+
+        /**
+         * The {@link Meter} measuring the object streams, used by one worker at a time.
+         */
+        private final Meter meter;
+
+        /**
+         * Has the connection been handed to a thread of its own to be served
+         * as multiplexed, after which no worker processes it?
+         */
+        private volatile boolean isMultiplexed;
+
+        /**
+         * Constructs a {@link NioConnection}.
+         *
+         * @param identity the identity of the connection
+         * @param channel  the {@link SocketChannel} to the {@link Client}
+         */
+        NioConnection(int identity, SocketChannel channel) {
+            this.identity = identity;
+            this.channel = channel;
+            this.inbound = new BytePipe();
+            this.outbound = new ArrayDeque<ByteBuffer>();
+            this.outboundBytes = 0;
+            this.isScheduled = new AtomicBoolean(false);
+            this.isReadSuspended = new AtomicBoolean(false);
+            this.opcodes = new Opcodes();
+            this.meter = new Meter();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getIdentity() {
+            return identity;
+        }
+
+        /**
+         * Opens the connection by sending the stream header the {@link Client}
+         * is waiting for.
+         *
+         * @throws IOException when the header can't be sent
+         */
+        void open() throws IOException {
+            oos = new ResettingObjectOutputStream(meter.meter(new ChannelOutputStream()));
+            oos.flush();
+        }
+
+        /**
+         * Reads the available request bytes, called by the {@link Selector} thread.
+         */
+        void onReadable() {
+            readBuffer.clear();
+
+            int count;
+            try {
+                count = channel.read(readBuffer);
+            } catch (IOException e) {
+                count = -1;
+            }
+
+            if (count < 0) {
+                //the client has gone, so let the worker observe end-of-stream
+                key.cancel();
+                inbound.close();
+            } else {
+                try {
+                    inbound.write(readBuffer.array(), 0, count);
+                } catch (IOException e) {
+                    //the connection has been closed - ignore the request
+                    return;
+                }
+
+                //stop reading until the worker catches up
+                if (inbound.available() > READ_HIGH_WATER_MARK && isReadSuspended.compareAndSet(false, true)) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            }
+
+            schedule();
+        }
+
+        /**
+         * Writes queued response bytes, called by the {@link Selector} thread
+         * once the {@link SocketChannel} is writable.
+         *
+         * @throws IOException when the {@link SocketChannel} has failed
+         */
+        void onWritable() throws IOException {
+            synchronized (outbound) {
+                ByteBuffer buffer = outbound.peek();
+                while (buffer != null) {
+                    outboundBytes -= channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        break;
+                    }
+                    outbound.poll();
+                    buffer = outbound.peek();
+                }
+
+                if (outbound.isEmpty()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+
+                outbound.notifyAll();
+            }
+        }
+
+        /**
+         * Registers interest in the {@link SocketChannel} becoming writable,
+         * called by the {@link Selector} thread.
+         */
+        void enableWrites() {
+            try {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            } catch (CancelledKeyException e) {
+                //the connection has been closed
+            }
+        }
+
+        /**
+         * Registers interest in the {@link SocketChannel} becoming readable
+         * again, called by the {@link Selector} thread once the unprocessed
+         * requests have been drained.
+         */
+        void enableReads() {
+            try {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            } catch (CancelledKeyException e) {
+                //the connection has been closed
+            }
+        }
+
+        /**
+         * Resumes reading from the {@link SocketChannel}, if suspended, once
+         * the unprocessed requests have been drained below half the high-water
+         * mark, called by the thread processing them.
+         */
+        void resumeReadsIfDrained() {
+            if (isReadSuspended.get() && inbound.available() <= READ_HIGH_WATER_MARK / 2
+                && isReadSuspended.compareAndSet(true, false)) {
+                pendingReads.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Sends response bytes to the {@link Client}, writing them directly
+         * when nothing is queued, otherwise queuing them for the {@link Selector}
+         * thread.  Blocks while too many response bytes are queued.
+         *
+         * @param buffer the bytes to send
+         * @throws IOException when the connection has been closed or failed
+         */
+        void send(ByteBuffer buffer) throws IOException {
+            synchronized (outbound) {
+                while (outboundBytes > WRITE_HIGH_WATER_MARK && channel.isOpen()) {
+                    try {
+                        outbound.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while sending a response");
+                    }
+                }
+
+                if (!channel.isOpen()) {
+                    throw new IOException("Connection " + identity + " is closed");
+                }
+
+                boolean wasEmpty = outbound.isEmpty();
+                if (wasEmpty) {
+                    channel.write(buffer);
+                }
+
+                if (buffer.hasRemaining()) {
+                    outbound.add(buffer);
+                    outboundBytes += buffer.remaining();
+
+                    if (wasEmpty) {
+                        pendingWrites.add(this);
+                        selector.wakeup();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Schedules the connection to be processed by a worker, unless it
+         * already is.
+         */
+        void schedule() {
+            if (!isMultiplexed && isScheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    //the engine is shutting down
+                    isScheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Processes the pending {@link Operation}s of the connection, called by a worker.
+         */
+        @Override
+        public void run() {
+            try {
+                if (ois == null) {
+                    ois = new ObjectInputStream(meter.meter(new InboundStream()));
+                }
+
+                while (inbound.available() > 0 || inbound.isClosed()) {
+                    if (!server.processOperation(identity, opcodes, meter, ois, oos)) {
+                        //acknowledge the close to the client, unless now served by a thread of its own
+                        if (!isMultiplexed) {
+                            close();
+                        }
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                //any error closes the connection
+                abandon();
+                return;
+            }
+
+            isScheduled.set(false);
+
+            //requests may have arrived after we last looked
+            if (inbound.available() > 0) {
+                schedule();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void multiplex(final Runnable multiplexer) {
+            isMultiplexed = true;
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        multiplexer.run();
+                    } finally {
+                        //acknowledge the close to the client
+                        close();
+                    }
+                }
+            }, "SelectorEngine-multiplexed-" + identity);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            inbound.close();
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //failed to close the channel - but we don't care
+            }
+
+            synchronized (outbound) {
+                outbound.clear();
+                outboundBytes = 0;
+                outbound.notifyAll();
+            }
+
+            //ensure the selector deregisters (and finally closes) the channel
+            selector.wakeup();
+        }
+
+        /**
+         * Closes the connection after a failure and removes it from the {@link Server}.
+         */
+        void abandon() {
+            close();
+            server.removeConnection(identity);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "NioConnection{identity=" + identity + ", channel=" + channel + "}";
+        }
+
+        /**
+         * An {@link InputStream} that reads the request bytes received from
+         * the {@link Client}, resuming reading from the {@link SocketChannel}
+         * once they have been drained.
+         */
+        private class InboundStream extends InputStream {
+            /**
+             * The {@link InputStream} of the {@link BytePipe} of requests.
+             */
+            private final InputStream requests = inbound.getInputStream();
+
+            @Override
+            public int read() throws IOException {
+                int b = requests.read();
+                resumeReadsIfDrained();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = requests.read(bytes, offset, length);
+                resumeReadsIfDrained();
+                return count;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return requests.available();
+            }
+        }
+
+        /**
+         * An {@link OutputStream} that sends response bytes to the {@link Client}.
+         */
+        private class ChannelOutputStream extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                send(ByteBuffer.wrap(new byte[] {(byte) b}));
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                send(ByteBuffer.wrap(Arrays.copyOfRange(bytes, offset, offset + length)));
+            }
+        }
+    }
+
+    /**
+     * A {@link ThreadFactory} for the daemon worker threads of a {@link SelectorEngine}.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        /**
+         * The number of worker threads created so far.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SelectorEngine-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
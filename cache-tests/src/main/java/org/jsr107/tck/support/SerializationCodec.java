@@ -0,0 +1,36 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * A {@link Codec} that uses Java serialization for everything.
+ *
+ * @see Codecs
+ */
+public class SerializationCodec implements Codec {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeObject(ObjectOutputStream oos, Object object) throws IOException {
+        oos.writeObject(object);
+        ResettingObjectOutputStream.checkpoint(oos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        return ois.readObject();
+    }
+}
@@ -7,20 +7,37 @@
  */
 package org.jsr107.tck.support;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,6 +46,38 @@ import java.util.logging.Logger;
  * A rudimentary multi-threaded {@link Socket}-based {@link Server} that can
  * handle, using {@link OperationHandler}s, {@link Operation}s invoked by
  * {@link Client}s.
+ * <p>
+ * By default each {@link Client} connection is served by a dedicated
+ * {@link Thread}.  Setting the system property
+ * <code>org.jsr107.tck.support.server.engine</code> to <code>nio</code>
+ * selects an {@link Engine#NIO} engine that serves all connections from a
+ * single {@link java.nio.channels.Selector} and a small pool of worker threads,
+ * sized by <code>org.jsr107.tck.support.server.nio.workers</code>.
+ * <p>
+ * Setting the system property
+ * <code>org.jsr107.tck.support.server.virtualThreads</code> to <code>true</code>
+ * makes the default engine accept and serve connections using virtual threads,
+ * when the Java runtime supports them, so that many thousands of connections
+ * may be served while {@link OperationHandler}s keep blocking.
+ * <p>
+ * A {@link Client} may request that its connection be multiplexed, in which
+ * case many {@link Operation}s may be in flight on the connection at once,
+ * each processed by its own thread.  Multiplexed connections served by the
+ * {@link Engine#NIO} engine are handed to a thread of their own, so that they
+ * don't occupy a worker thread for their lifetime.
+ * <p>
+ * {@link Client}s in the same JVM may instead connect to an open
+ * {@link Server} in-process, without a socket, when the system property
+ * <code>org.jsr107.tck.support.transport</code> is <code>local</code>.
+ * Setting it to <code>unix</code> makes {@link Server}s and {@link Client}s
+ * communicate through Unix domain sockets, when the Java runtime supports
+ * them, in which case the port of a {@link Server} names its socket file.
+ * <p>
+ * For each type of {@link Operation}, a {@link Server} records
+ * {@link OperationStatistics} that separate the time spent by the
+ * {@link OperationHandler} from the time spent on the wire.  They are
+ * available through {@link #getOperationStatistics()},
+ * {@link #dumpOperationStatistics()} and, while the {@link Server} is open, JMX.
  *
  * @author Brian Oliver
  * @author Jens Wilke
@@ -43,6 +92,90 @@ public class Server implements AutoCloseable {
      */
     public static final  Logger LOG = Logger.getLogger(Server.class.getName());
 
+    /**
+     * The {@link Codec} used by {@link OperationHandler}s to read and write
+     * keys, values and results.
+     */
+    protected static final Codec CODEC = Codecs.getCodec();
+
+    /**
+     * The system property used to select the {@link Engine} of a {@link Server}.
+     */
+    public static final String ENGINE_PROPERTY = "org.jsr107.tck.support.server.engine";
+
+    /**
+     * The system property used to size the worker pool of the {@link Engine#NIO} engine.
+     */
+    public static final String NIO_WORKERS_PROPERTY = "org.jsr107.tck.support.server.nio.workers";
+
+    /**
+     * The system property used to request that the {@link Engine#SOCKET} engine
+     * uses virtual threads, when supported by the Java runtime.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "org.jsr107.tck.support.server.virtualThreads";
+
+    /**
+     * The engines a {@link Server} may use to serve {@link Client} connections.
+     */
+    public enum Engine {
+        /**
+         * Each {@link Client} connection is served by a dedicated, blocking {@link Thread}.
+         */
+        SOCKET,
+
+        /**
+         * All {@link Client} connections are multiplexed by a single
+         * {@link java.nio.channels.Selector} thread, with {@link Operation}s
+         * dispatched to a small pool of worker threads.
+         */
+        NIO;
+
+        /**
+         * Obtains the {@link Engine} configured with the {@link #ENGINE_PROPERTY}
+         * system property, defaulting to {@link #SOCKET}.
+         *
+         * @return the configured {@link Engine}
+         */
+        public static Engine fromSystemProperties() {
+            String engine = System.getProperty(ENGINE_PROPERTY);
+            return engine == null || engine.trim().isEmpty() ? SOCKET : valueOf(engine.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * A connection from a {@link Client} that is being served by the {@link Server}.
+     */
+    interface Connection extends AutoCloseable {
+        /**
+         * Obtains the identity of the {@link Connection}.
+         *
+         * @return the identity
+         */
+        int getIdentity();
+
+        /**
+         * Serves the {@link Connection} from now on, once the {@link Client}
+         * has requested that it be multiplexed, using the specified
+         * {@link Runnable}, which returns once the {@link Connection} has been
+         * closed by the {@link Client} or has failed, having removed it from
+         * the {@link Server}.
+         * <p>
+         * A {@link Connection} served by a thread of its own runs the
+         * {@link Runnable} on the calling thread.  One sharing threads with
+         * other {@link Connection}s hands it to a new thread, itself processing
+         * no further {@link Operation}s, and closes once it returns.
+         *
+         * @param multiplexer the {@link Runnable} serving the multiplexed {@link Connection}
+         */
+        void multiplex(Runnable multiplexer);
+
+        /**
+         * Closes the {@link Connection} without acknowledging the {@link Client}.
+         */
+        @Override
+        void close();
+    }
+
     /**
      * Special operation to signal the server that the client has been closed.
      */
@@ -73,16 +206,57 @@ public class Server implements AutoCloseable {
         }
     };
 
+    /**
+     * Special operation to request that the connection to the server be
+     * multiplexed from now on, using {@link Exchange}s.
+     */
+    public static final Operation<Void> MULTIPLEX_OPERATION = new Operation<Void>() {
+        @Override
+        public String getType() {
+            return "MULTIPLEX";
+        }
+
+        @Override
+        public Void onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+            oos.flush();
+            if (!Boolean.TRUE.equals(ois.readObject())) {
+                throw new IOException("The server refused to multiplex the connection");
+            }
+            return null;
+        }
+    };
+
     /**
      * The port on which the {@link Server} will accept {@link Client} connections.
      */
     private int port;
 
+    /**
+     * The {@link Engine} used to serve {@link Client} connections.
+     */
+    private final Engine engine;
+
+    /**
+     * Should the {@link Engine#SOCKET} engine use virtual threads?
+     */
+    private final boolean useVirtualThreads;
+
     /**
      * The {@link OperationHandler}s by operation.
      */
     private ConcurrentHashMap<String, OperationHandler> operationHandlers;
 
+    /**
+     * The {@link OperationStatistics} by operation.
+     */
+    private final ConcurrentHashMap<String, OperationStatistics> operationStatistics;
+
+    /**
+     * The {@link ObjectName}s of the {@link OperationStatistics} registered
+     * with the platform {@link MBeanServer} while the {@link Server} is open.
+     */
+    private final List<ObjectName> registeredStatistics;
+
     /**
      * The {@link ServerSocket} that will be used to accept {@link Client}
      * connections and requests.
@@ -91,6 +265,15 @@ public class Server implements AutoCloseable {
      */
     private ServerSocket serverSocket;
 
+    /**
+     * The Unix domain {@link ServerSocketChannel} that will be used to accept
+     * {@link Client} connections instead of the {@link #serverSocket}.
+     * <p>
+     * When this and the {@link #serverSocket} are <code>null</code> the
+     * {@link Server} is not running.
+     */
+    private ServerSocketChannel unixServerChannel;
+
     /**
      * The {@link Thread} that will manage accepting {@link Client} connections.
      * <p>
@@ -99,11 +282,17 @@ public class Server implements AutoCloseable {
     private Thread serverThread;
 
     /**
-     * A map of {@link ClientConnection} by connection number.
+     * A map of {@link Connection}s by connection number.
      */
-    private ConcurrentHashMap<Integer, ClientConnection> clientConnections;
+    private ConcurrentHashMap<Integer, Connection> clientConnections;
 
 
+    /**
+     * The {@link ExecutorService} processing the {@link Exchange}s of
+     * multiplexed connections, created when first required.
+     */
+    private ExecutorService exchangeExecutor;
+
     /**
      * Should the running {@link Server} terminate as soon as possible?
      */
@@ -116,11 +305,33 @@ public class Server implements AutoCloseable {
      * @param port the port on which to accept {@link Client} connections and requests
      */
     public Server(int port) {
+        this(port, Engine.fromSystemProperties());
+    }
+
+    /**
+     * Construct a {@link Server} that will accept {@link Client} connections
+     * and requests on the specified port, using the specified {@link Engine}.
+     *
+     * @param port   the port on which to accept {@link Client} connections and requests
+     * @param engine the {@link Engine} to serve {@link Client} connections
+     */
+    public Server(int port, Engine engine) {
         this.port = port;
+        this.engine = engine;
+        this.useVirtualThreads = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+        if (useVirtualThreads && !Threads.isVirtualThreadSupported()) {
+            LOG.warning("Virtual threads are not supported by this Java runtime; using platform threads");
+        }
+        if (UnixDomainSockets.isRequested() && !UnixDomainSockets.isSupported()) {
+            LOG.warning("Unix domain sockets are not supported by this Java runtime; using TCP");
+        }
         this.operationHandlers = new ConcurrentHashMap<String, OperationHandler>();
+        this.operationStatistics = new ConcurrentHashMap<String, OperationStatistics>();
+        this.registeredStatistics = new ArrayList<ObjectName>();
         this.serverSocket = null;
+        this.unixServerChannel = null;
         this.serverThread = null;
-        this.clientConnections = new ConcurrentHashMap<Integer, ClientConnection>();
+        this.clientConnections = new ConcurrentHashMap<Integer, Connection>();
         this.isTerminating = new AtomicBoolean(false);
     }
 
@@ -131,6 +342,91 @@ public class Server implements AutoCloseable {
      */
     public void addOperationHandler(OperationHandler handler) {
         this.operationHandlers.put(handler.getType(), handler);
+        getOperationStatistics(handler.getType());
+    }
+
+    /**
+     * Obtains the {@link OperationStatistics} recorded for a type of
+     * {@link Operation}, creating them when first required.
+     * <p>
+     * While the {@link Server} is open, the {@link OperationStatistics} are
+     * also registered with the platform {@link MBeanServer} as
+     * <code>org.jsr107.tck.support:type=OperationStatistics,port=&lt;port&gt;,operation=&lt;type&gt;</code>.
+     *
+     * @param type the type of {@link Operation}
+     * @return the {@link OperationStatistics}
+     */
+    public OperationStatistics getOperationStatistics(String type) {
+        OperationStatistics statistics = operationStatistics.get(type);
+        if (statistics == null) {
+            statistics = new OperationStatistics(type);
+            OperationStatistics existing = operationStatistics.putIfAbsent(type, statistics);
+            if (existing == null) {
+                registerStatistics(statistics);
+            } else {
+                statistics = existing;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Obtains the {@link OperationStatistics} recorded for each type of {@link Operation}.
+     *
+     * @return the {@link OperationStatistics} by type of {@link Operation}
+     */
+    public Map<String, OperationStatistics> getOperationStatistics() {
+        return new TreeMap<String, OperationStatistics>(operationStatistics);
+    }
+
+    /**
+     * Dumps the {@link OperationStatistics} recorded for each type of
+     * {@link Operation}, one type per line.
+     *
+     * @return the dumped {@link OperationStatistics}
+     */
+    public String dumpOperationStatistics() {
+        StringBuilder builder = new StringBuilder();
+        for (OperationStatistics statistics : getOperationStatistics().values()) {
+            builder.append(statistics).append(System.getProperty("line.separator"));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Registers {@link OperationStatistics} with the platform {@link MBeanServer},
+     * when the {@link Server} is open.
+     *
+     * @param statistics the {@link OperationStatistics}
+     */
+    private synchronized void registerStatistics(OperationStatistics statistics) {
+        if (serverSocket == null && unixServerChannel == null) {
+            return;
+        }
+
+        try {
+            ObjectName name = new ObjectName("org.jsr107.tck.support:type=OperationStatistics,port=" + port
+                + ",operation=" + ObjectName.quote(statistics.getOperationType()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, name);
+            registeredStatistics.add(name);
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Failed to register the statistics of " + statistics.getOperationType(), e);
+        }
+    }
+
+    /**
+     * Unregisters all {@link OperationStatistics} from the platform {@link MBeanServer}.
+     */
+    private synchronized void unregisterStatistics() {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredStatistics) {
+            try {
+                mBeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                //already unregistered - but we don't care
+            }
+        }
+        registeredStatistics.clear();
     }
 
     /**
@@ -143,42 +439,108 @@ public class Server implements AutoCloseable {
      * @throws IOException if not able to create ServerSocket
      */
     public synchronized InetAddress open() throws IOException {
-        if (serverSocket == null) {
-            serverSocket = createServerSocket();
-            serverThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        int connectionId = 0;
-
-                        while (!isTerminating.get()) {
-                            Socket socket = serverSocket.accept();
+        if (serverSocket == null && unixServerChannel == null) {
+            if (UnixDomainSockets.isSelected()) {
+                unixServerChannel = UnixDomainSockets.bind(port);
+                port = UnixDomainSockets.getPort(unixServerChannel);
+                LOG.log(Level.INFO, "Starting " + this.getClass().getCanonicalName() +
+                        " server at " + unixServerChannel.getLocalAddress() + " port:" + port);
 
-                            ClientConnection clientConnection = new ClientConnection(connectionId++, socket);
-                            clientConnections.put(clientConnection.getIdentity(), clientConnection);
-                            clientConnection.start();
-                        }
-                    } catch (NullPointerException e) {
-                        isTerminating.compareAndSet(false, true);
-                    } catch (IOException e) {
-                        isTerminating.compareAndSet(false, true);
-                    }
+                if (engine == Engine.NIO) {
+                    serverThread = new Thread(new SelectorEngine(this, unixServerChannel, getNioWorkerCount()));
+                } else {
+                    serverThread = Threads.newThread(createUnixAcceptRunnable(), useVirtualThreads);
                 }
-            });
+            } else {
+                serverSocket = createServerSocket();
+                if (engine == Engine.NIO) {
+                    serverThread = new Thread(new SelectorEngine(this, serverSocket.getChannel(), getNioWorkerCount()));
+                } else {
+                    serverThread = Threads.newThread(createAcceptRunnable(), useVirtualThreads);
+                }
+            }
 
             serverThread.start();
+
+            //allow clients in this JVM to connect without a socket
+            LocalTransport.register(getInetAddress(), getPort(), this);
+
+            for (OperationStatistics statistics : operationStatistics.values()) {
+                registerStatistics(statistics);
+            }
         }
 
         return getInetAddress();
     }
 
+    /**
+     * Creates the {@link Runnable} that accepts {@link Client} connections for
+     * the {@link Engine#SOCKET} engine, each of which is then served by a
+     * dedicated {@link ClientConnection} {@link Thread}.
+     *
+     * @return a new {@link Runnable}
+     */
+    private Runnable createAcceptRunnable() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int connectionId = 0;
+
+                    while (!isTerminating.get()) {
+                        Socket socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+
+                        ClientConnection clientConnection = new ClientConnection(connectionId++, socket);
+                        clientConnections.put(clientConnection.getIdentity(), clientConnection);
+                        Threads.newThread(clientConnection, useVirtualThreads).start();
+                    }
+                } catch (NullPointerException e) {
+                    isTerminating.compareAndSet(false, true);
+                } catch (IOException e) {
+                    isTerminating.compareAndSet(false, true);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the {@link Runnable} that accepts {@link Client} connections on
+     * a Unix domain socket for the {@link Engine#SOCKET} engine, each of which
+     * is then served by a dedicated {@link ClientConnection} {@link Thread}.
+     *
+     * @return a new {@link Runnable}
+     */
+    private Runnable createUnixAcceptRunnable() {
+        final ServerSocketChannel channel = unixServerChannel;
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int connectionId = 0;
+
+                    while (!isTerminating.get()) {
+                        ClientConnection clientConnection = new ClientConnection(connectionId++, channel.accept());
+                        clientConnections.put(clientConnection.getIdentity(), clientConnection);
+                        Threads.newThread(clientConnection, useVirtualThreads).start();
+                    }
+                } catch (IOException e) {
+                    isTerminating.compareAndSet(false, true);
+                }
+            }
+        };
+    }
+
     /**
      * Obtains the {@link InetAddress} on which the {@link Server} is listening.
+     * When using Unix domain sockets, this is the loopback address.
      *
      * @return the {@link InetAddress}
      */
     public synchronized InetAddress getInetAddress() {
-        if (serverSocket != null) {
+        if (unixServerChannel != null) {
+            return InetAddress.getLoopbackAddress();
+        } else if (serverSocket != null) {
             try {
                 return getServerInetAddress();
             } catch (SocketException e) {
@@ -197,7 +559,7 @@ public class Server implements AutoCloseable {
      * @return the port
      */
     public synchronized int getPort() {
-        if (serverSocket != null) {
+        if (serverSocket != null || unixServerChannel != null) {
             return port;
         } else {
             throw new IllegalStateException("Server is not open");
@@ -210,7 +572,7 @@ public class Server implements AutoCloseable {
      * Does nothing if the {@link Server} is already stopped.
      */
     public synchronized void close() {
-        if (serverSocket != null) {
+        if (serverSocket != null || unixServerChannel != null) {
             //we're now terminating
             isTerminating.set(true);
 
@@ -223,33 +585,332 @@ public class Server implements AutoCloseable {
                 );
             }
 
+            LocalTransport.unregister(this);
+            unregisterStatistics();
+
             //stop the server socket
             try {
-                serverSocket.close();
+                if (serverSocket != null) {
+                    serverSocket.close();
+                } else {
+                    unixServerChannel.close();
+                    Files.deleteIfExists(UnixDomainSockets.getPath(port));
+                }
             } catch (IOException e) {
                 //failed to close the server socket - but we don't care
             }
             serverSocket = null;
+            unixServerChannel = null;
 
             //interrupt the server thread
             serverThread.interrupt();
             serverThread = null;
 
             //stop the clients
-            for (ClientConnection clientConnection : clientConnections.values()) {
+            for (Connection clientConnection : clientConnections.values()) {
                 clientConnection.close();
             }
-            this.clientConnections = new ConcurrentHashMap<Integer, ClientConnection>();
+            this.clientConnections = new ConcurrentHashMap<Integer, Connection>();
+
+            //stop processing multiplexed operations
+            if (exchangeExecutor != null) {
+                exchangeExecutor.shutdownNow();
+                exchangeExecutor = null;
+            }
 
             isTerminating.set(false);
         }
     }
 
+    /**
+     * Determines if {@link Connection}s are served using virtual threads.
+     *
+     * @return <code>true</code> if virtual threads are used
+     */
+    boolean isUsingVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Registers a {@link Connection} that is now being served by the {@link Server}.
+     *
+     * @param connection the {@link Connection}
+     */
+    void addConnection(Connection connection) {
+        clientConnections.put(connection.getIdentity(), connection);
+    }
+
+    /**
+     * Forgets a {@link Connection} that is no longer being served by the {@link Server}.
+     *
+     * @param identity the identity of the {@link Connection}
+     */
+    void removeConnection(int identity) {
+        clientConnections.remove(identity);
+    }
+
+    /**
+     * Reads the next {@link Operation} requested by a {@link Client} and
+     * processes it using the registered {@link OperationHandler}.
+     * <p>
+     * When the {@link Client} requests the {@link #CLOSE_OPERATION} the
+     * {@link Connection} is removed from the {@link Server}, after which the
+     * caller must close the underlying transport to acknowledge the close.
+     * When the {@link Client} requests the {@link #MULTIPLEX_OPERATION} the
+     * rest of the {@link Connection} is served as multiplexed, as arranged by
+     * {@link Connection#multiplex(Runnable)}, after which the caller must
+     * process no further {@link Operation}s.
+     *
+     * @param identity the identity of the {@link Connection}
+     * @param opcodes  the {@link Opcodes} of the {@link Connection}
+     * @param meter    the {@link Meter} measuring the object streams
+     * @param ois      the {@link ObjectInputStream} from the {@link Client}
+     * @param oos      the {@link ObjectOutputStream} to the {@link Client}
+     * @return <code>false</code> if the {@link Client} requested to close or
+     *         multiplex the {@link Connection}, <code>true</code> otherwise
+     * @throws IOException when the {@link Connection} failed
+     */
+    boolean processOperation(int identity, Opcodes opcodes, Meter meter,
+                             ObjectInputStream ois, ObjectOutputStream oos) throws IOException {
+        try {
+            int opcode = opcodes.read(ois);
+            meter.begin();
+
+            String operation = opcodes.getType(opcode);
+            if (CLOSE_OPERATION.getType().equals(operation)) {
+                // regular close, remove before closing
+                removeConnection(identity);
+                return false;
+            } else if (MULTIPLEX_OPERATION.getType().equals(operation)) {
+                oos.writeObject(Boolean.TRUE);
+                oos.flush();
+                multiplex(identity, opcodes, ois, oos);
+                return false;
+            }
+            OperationHandler handler = opcodes.getHandler(opcode, operationHandlers);
+
+            if (handler != null) {
+                handler.onProcess(ois, oos);
+
+                //the codec may leave the end of a reply buffered
+                oos.flush();
+
+                meter.end(operationStatistics.get(handler.getType()));
+            }
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * Serves the rest of a {@link Connection} as multiplexed, using the
+     * {@link Connection} to decide on which thread.
+     *
+     * @param identity the identity of the {@link Connection}
+     * @param opcodes  the {@link Opcodes} of the {@link Connection}
+     * @param ois      the {@link ObjectInputStream} from the {@link Client}
+     * @param oos      the {@link ObjectOutputStream} to the {@link Client}
+     */
+    private void multiplex(final int identity, final Opcodes opcodes,
+                           final ObjectInputStream ois, final ObjectOutputStream oos) {
+        Runnable multiplexer = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    serveMultiplexed(identity, opcodes, ois, oos);
+                } catch (IOException e) {
+                    //any error closes the connection
+                    removeConnection(identity);
+                }
+            }
+        };
+
+        Connection connection = clientConnections.get(identity);
+        if (connection == null) {
+            multiplexer.run();
+        } else {
+            connection.multiplex(multiplexer);
+        }
+    }
+
+    /**
+     * Serves a multiplexed connection, reading the frames of {@link Exchange}s
+     * and processing each {@link Exchange} on its own thread, until the
+     * {@link Client} requests the {@link #CLOSE_OPERATION}.
+     *
+     * @param identity the identity of the {@link Connection}
+     * @param opcodes  the {@link Opcodes} of the {@link Connection}
+     * @param ois      the {@link ObjectInputStream} from the {@link Client}
+     * @param oos      the {@link ObjectOutputStream} to the {@link Client}
+     * @throws IOException when the {@link Connection} failed
+     */
+    private void serveMultiplexed(int identity, Opcodes opcodes, ObjectInputStream ois, ObjectOutputStream oos)
+        throws IOException {
+        Map<Integer, Exchange> exchanges = new HashMap<Integer, Exchange>();
+        try {
+            while (true) {
+                byte frame = ois.readByte();
+                int id = ois.readInt();
+
+                if (frame == Exchange.OPEN_FRAME) {
+                    int opcode = opcodes.read(ois);
+                    String type = opcodes.getType(opcode);
+                    if (CLOSE_OPERATION.getType().equals(type)) {
+                        awaitExchanges(exchanges);
+                        removeConnection(identity);
+                        return;
+                    }
+
+                    Exchange exchange = new Exchange(id, type, oos, null);
+                    synchronized (exchanges) {
+                        exchanges.put(id, exchange);
+                    }
+                    getExchangeExecutor().execute(new ExchangeTask(exchange, opcodes.getHandler(opcode, operationHandlers), exchanges));
+
+                } else if (frame == Exchange.DATA_FRAME) {
+                    byte[] bytes = new byte[ois.readInt()];
+                    ois.readFully(bytes);
+
+                    Exchange exchange;
+                    synchronized (exchanges) {
+                        exchange = exchanges.get(id);
+                    }
+                    //frames for exchanges that have already completed are ignored
+                    if (exchange != null) {
+                        exchange.receive(bytes);
+                    }
+
+                } else if (frame == Exchange.END_FRAME) {
+                    synchronized (exchanges) {
+                        if (exchanges.containsKey(id)) {
+                            exchanges.get(id).receiveEnd();
+                        }
+                    }
+
+                } else {
+                    throw new IOException("Unknown frame " + frame + " received from the client");
+                }
+            }
+        } finally {
+            //ensure no handler waits for requests that will never arrive
+            synchronized (exchanges) {
+                for (Exchange exchange : exchanges.values()) {
+                    exchange.receiveEnd();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the in-flight {@link Exchange}s of a multiplexed connection to complete.
+     *
+     * @param exchanges the in-flight {@link Exchange}s
+     * @throws IOException when interrupted while waiting
+     */
+    private void awaitExchanges(Map<Integer, Exchange> exchanges) throws IOException {
+        synchronized (exchanges) {
+            while (!exchanges.isEmpty()) {
+                try {
+                    exchanges.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while closing a multiplexed connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtains the {@link ExecutorService} to process {@link Exchange}s,
+     * creating it when first required.
+     *
+     * @return the {@link ExecutorService}
+     */
+    private synchronized ExecutorService getExchangeExecutor() {
+        if (exchangeExecutor == null) {
+            exchangeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = Threads.newThread(runnable, useVirtualThreads);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return exchangeExecutor;
+    }
+
+    /**
+     * Processes an {@link Exchange} of a multiplexed connection using the
+     * registered {@link OperationHandler}.
+     */
+    private class ExchangeTask implements Runnable {
+
+        /**
+         * The {@link Exchange} to process.
+         */
+        private final Exchange exchange;
+
+        /**
+         * The {@link OperationHandler} for the {@link Exchange}, or <code>null</code> when none is registered.
+         */
+        private final OperationHandler handler;
+
+        /**
+         * The in-flight {@link Exchange}s of the connection.
+         */
+        private final Map<Integer, Exchange> exchanges;
+
+        /**
+         * Constructs an {@link ExchangeTask}.
+         *
+         * @param exchange  the {@link Exchange} to process
+         * @param handler   the {@link OperationHandler} for the {@link Exchange}
+         * @param exchanges the in-flight {@link Exchange}s of the connection
+         */
+        ExchangeTask(Exchange exchange, OperationHandler handler, Map<Integer, Exchange> exchanges) {
+            this.exchange = exchange;
+            this.handler = handler;
+            this.exchanges = exchanges;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            exchange.getMeter().begin();
+            try {
+                if (handler != null) {
+                    handler.onProcess(exchange.getObjectInputStream(), exchange.getObjectOutputStream());
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to process multiplexed operation " + exchange.getType(), e);
+            } finally {
+                try {
+                    exchange.end();
+                } catch (IOException e) {
+                    //the connection has failed - the client will notice
+                }
+
+                if (handler != null) {
+                    exchange.getMeter().end(operationStatistics.get(handler.getType()));
+                }
+
+                synchronized (exchanges) {
+                    exchanges.remove(exchange.getId());
+                    exchanges.notifyAll();
+                }
+            }
+        }
+    }
+
     /**
      * Asynchronously handles {@link Client} requests via a {@link Socket} using the
      * defined {@link OperationHandler}s.
      */
-    private class ClientConnection extends Thread implements AutoCloseable {
+    private class ClientConnection implements Runnable, Connection {
 
         /**
          * The {@link ClientConnection} identity.
@@ -257,9 +918,9 @@ public class Server implements AutoCloseable {
         private int identity;
 
         /**
-         * The {@link Socket} to the {@link Client}.
+         * The {@link Socket}, or Unix domain {@link SocketChannel}, to the {@link Client}.
          */
-        private Socket socket;
+        private Closeable socket;
 
         /**
          * Constructs a {@link ClientConnection}.
@@ -273,11 +934,24 @@ public class Server implements AutoCloseable {
             this.socket = socket;
         }
 
+        /**
+         * Constructs a {@link ClientConnection} for a Unix domain socket.
+         *
+         * @param identity the identity for the {@link ClientConnection}
+         * @param channel  the blocking {@link SocketChannel} on which to receive
+         *                 and respond to {@link Client} requests
+         */
+        public ClientConnection(int identity, SocketChannel channel) {
+            this.identity = identity;
+            this.socket = channel;
+        }
+
         /**
          * Obtains the identity for the {@link ClientConnection}.
          *
          * @return the identity
          */
+        @Override
         public int getIdentity() {
             return this.identity;
         }
@@ -289,30 +963,28 @@ public class Server implements AutoCloseable {
         public void run() {
 
             try {
-                ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-                ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
-
-                while (true) {
-                    try {
-                        String operation = (String) ois.readObject();
-                        if (CLOSE_OPERATION.getType().equals(operation)) {
-                            // regular close, remove before closing
-                            Server.this.clientConnections.remove(identity);
-                            // connection close means we acknowledge to the client and the client may
-                            // complete the close operation.
-                            socket.close();
-                            socket = null;
-                            break;
-                        }
-                        OperationHandler handler = Server.this.operationHandlers.get(operation);
+                Meter meter = new Meter();
+                ObjectOutputStream oos;
+                ObjectInputStream ois;
+                if (socket instanceof SocketChannel) {
+                    SocketChannel channel = (SocketChannel) socket;
+                    oos = new ResettingObjectOutputStream(meter.meter(UnixDomainSockets.newOutputStream(channel)));
+                    ois = new ObjectInputStream(meter.meter(UnixDomainSockets.newInputStream(channel)));
+                } else {
+                    oos = new ResettingObjectOutputStream(meter.meter(((Socket) socket).getOutputStream()));
+                    ois = new ObjectInputStream(meter.meter(((Socket) socket).getInputStream()));
+                }
+                Opcodes opcodes = new Opcodes();
 
-                        if (handler != null) {
-                            handler.onProcess(ois, oos);
-                        }
-                    } catch (ClassNotFoundException e) {
-                        e.printStackTrace();
-                    }
+                boolean isOpen = true;
+                while (isOpen) {
+                    isOpen = processOperation(identity, opcodes, meter, ois, oos);
                 }
+
+                // connection close means we acknowledge to the client and the client may
+                // complete the close operation.
+                socket.close();
+                socket = null;
             } catch (IOException e) {
                 //any error closes the connection
 
@@ -333,6 +1005,15 @@ public class Server implements AutoCloseable {
         /**
          * {@inheritDoc}
          */
+        @Override
+        public void multiplex(Runnable multiplexer) {
+            multiplexer.run();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
         public void close() {
             try {
                 socket.close();
@@ -342,6 +1023,14 @@ public class Server implements AutoCloseable {
                 socket = null;
             }
         }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "ClientConnection{identity=" + identity + ", socket=" + socket + "}";
+        }
     }
 
     private static InetAddress serverSocketAddress = null;
@@ -349,14 +1038,20 @@ public class Server implements AutoCloseable {
     private ServerSocket createServerSocket() throws IOException {
 
         final int ephemeralPort = 0;
-        ServerSocket result = null;
+        ServerSocket result = newServerSocket();
         try {
-            result = new ServerSocket(port, 50, getServerInetAddress());
+            result.bind(new InetSocketAddress(getServerInetAddress(), port), 50);
         } catch (IOException e) {
+            try {
+                result.close();
+            } catch (IOException ignored) {
+                //failed to close the unbound server socket - but we don't care
+            }
 
             // requested port may still be in use due to linger on close on some OSs,
             // use ephemeral port for server socket
-            result = new ServerSocket(ephemeralPort, 50, getServerInetAddress());
+            result = newServerSocket();
+            result.bind(new InetSocketAddress(getServerInetAddress(), ephemeralPort), 50);
             LOG.warning("createServerSocket: unable to use requested port " + port +
                     "; using ephemeral port " + result.getLocalPort());
             this.port = result.getLocalPort();
@@ -366,6 +1061,29 @@ public class Server implements AutoCloseable {
         return result;
     }
 
+    /**
+     * Creates an unbound {@link ServerSocket} suitable for the {@link Engine}
+     * of the {@link Server}.  The {@link Engine#NIO} engine requires a
+     * {@link ServerSocket} that is backed by a {@link ServerSocketChannel}.
+     *
+     * @return a new unbound {@link ServerSocket}
+     * @throws IOException if the {@link ServerSocket} can't be created
+     */
+    private ServerSocket newServerSocket() throws IOException {
+        return engine == Engine.NIO ? ServerSocketChannel.open().socket() : new ServerSocket();
+    }
+
+    /**
+     * Determines the number of worker threads for the {@link Engine#NIO} engine,
+     * as configured by the {@link #NIO_WORKERS_PROPERTY} system property.
+     *
+     * @return the number of worker threads
+     */
+    private static int getNioWorkerCount() {
+        int defaultWorkers = Math.max(2, Runtime.getRuntime().availableProcessors());
+        return Integer.getInteger(NIO_WORKERS_PROPERTY, defaultWorkers);
+    }
+
     /**
      * To support distributed testing, return a non-loopback address if available.
      * <p>
@@ -0,0 +1,122 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads may increment concurrently without contending
+ * on a single memory location, in the manner of
+ * <code>java.util.concurrent.atomic.LongAdder</code>, which isn't available
+ * to the TCK's source level.
+ * <p>
+ * Each thread adds to one of several stripes, each on its own cache line,
+ * and the stripes are summed when the count is read.  The count read while
+ * threads are adding is therefore approximate, but no addition is ever lost,
+ * including by a concurrent {@link #reset()}, which only ever attributes an
+ * addition to before or after the reset.
+ */
+public final class StripedCounter {
+
+    /**
+     * The number of longs between stripes, so that each stripe is on its own
+     * 64 byte cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The number of stripes, a power of two.
+     */
+    private static final int STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The stripes, spaced {@link #PADDING} apart.
+     */
+    private final AtomicLongArray stripes;
+
+    /**
+     * Constructs a {@link StripedCounter} with a count of zero.
+     */
+    public StripedCounter() {
+        this.stripes = new AtomicLongArray(STRIPES * PADDING);
+    }
+
+    /**
+     * Adds one to the count.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds to the count.
+     *
+     * @param delta the amount to add
+     */
+    public void add(long delta) {
+        stripes.addAndGet(stripe(), delta);
+    }
+
+    /**
+     * Obtains the count.
+     *
+     * @return the sum of what has been added since constructed or reset
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < stripes.length(); i += PADDING) {
+            sum += stripes.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Resets the count to zero, returning what it was.
+     *
+     * @return the count before being reset
+     */
+    public long reset() {
+        long sum = 0;
+        for (int i = 0; i < stripes.length(); i += PADDING) {
+            sum += stripes.getAndSet(i, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Obtains the index of the stripe for the calling thread.
+     *
+     * @return the index
+     */
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+        return (hash & (STRIPES - 1)) * PADDING;
+    }
+
+    /**
+     * Determines the number of stripes for a number of processors.
+     *
+     * @param processors the number of processors
+     * @return the number of stripes, a power of two
+     */
+    private static int stripesFor(int processors) {
+        int stripes = 1;
+        while (stripes < processors * 2 && stripes < 256) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+
+/**
+ * Creates the {@link Thread}s used by {@link Server}s, which may be virtual
+ * threads when the Java runtime supports them.
+ * <p>
+ * The TCK is compiled for Java 7, so virtual threads (Java 21 and later) are
+ * created reflectively.  On runtimes without virtual threads, platform
+ * threads are created instead.
+ *
+ * @see Server
+ */
+final class Threads {
+
+    /**
+     * The <code>Thread.Builder.OfVirtual</code> used to create virtual
+     * threads, or <code>null</code> when they aren't supported.
+     */
+    private static final Object VIRTUAL_THREAD_BUILDER;
+
+    /**
+     * The <code>Thread.Builder.unstarted(Runnable)</code> method, or
+     * <code>null</code> when virtual threads aren't supported.
+     */
+    private static final Method UNSTARTED_METHOD;
+
+    static {
+        Object builder = null;
+        Method unstarted = null;
+        try {
+            builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (Exception e) {
+            //virtual threads aren't supported by this runtime
+            unstarted = null;
+        }
+        VIRTUAL_THREAD_BUILDER = builder;
+        UNSTARTED_METHOD = unstarted;
+    }
+
+    /**
+     * Utility class.
+     */
+    private Threads() {
+    }
+
+    /**
+     * Determines if the Java runtime supports virtual threads.
+     *
+     * @return <code>true</code> if virtual threads are supported
+     */
+    static boolean isVirtualThreadSupported() {
+        return UNSTARTED_METHOD != null;
+    }
+
+    /**
+     * Creates an unstarted {@link Thread} to execute the specified {@link Runnable}.
+     *
+     * @param runnable the {@link Runnable} to execute
+     * @param virtual  should a virtual thread be created (when supported)?
+     * @return a new unstarted {@link Thread}
+     */
+    static Thread newThread(Runnable runnable, boolean virtual) {
+        if (virtual && isVirtualThreadSupported()) {
+            try {
+                return (Thread) UNSTARTED_METHOD.invoke(VIRTUAL_THREAD_BUILDER, runnable);
+            } catch (Exception e) {
+                Server.LOG.log(Level.WARNING, "Failed to create a virtual thread, using a platform thread", e);
+            }
+        }
+        return new Thread(runnable);
+    }
+}
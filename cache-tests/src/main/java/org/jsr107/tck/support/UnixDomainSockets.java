@@ -0,0 +1,305 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+
+/**
+ * Creates the Unix domain socket channels used when {@link Client}s and
+ * {@link Server}s on the same host communicate through the file system
+ * rather than TCP.
+ * <p>
+ * Unix domain socket channels are selected by setting the
+ * {@value Client#TRANSPORT_PROPERTY} system property to <code>unix</code>.
+ * A {@link Server} "port" then names the socket file
+ * <code>jsr107-tck-&lt;port&gt;.sock</code> in the directory defined by the
+ * {@value #DIRECTORY_PROPERTY} system property, so that no network interface
+ * needs to be discovered.  By default a directory of its own is created in
+ * <code>java.io.tmpdir</code> for each Java runtime, so {@link Client}s
+ * connecting from another runtime must set the property to share a directory.
+ * <p>
+ * A {@link Server} binds exactly the socket file of its port.  When that file
+ * already exists the {@link Server} fails to open, rather than replacing a
+ * file that another runtime may be serving.
+ * <p>
+ * The TCK is compiled for Java 7, so Unix domain sockets (Java 16 and later)
+ * are created reflectively.  On runtimes without them, TCP is used instead.
+ *
+ * @see Client
+ * @see Server
+ */
+final class UnixDomainSockets {
+
+    /**
+     * The system property defining the directory of the socket files.
+     */
+    static final String DIRECTORY_PROPERTY = "org.jsr107.tck.support.unix.directory";
+
+    /**
+     * The directory of the socket files when the {@value #DIRECTORY_PROPERTY}
+     * system property isn't set, unique to this Java runtime.
+     */
+    private static final Path RUNTIME_DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"),
+        "jsr107-tck-" + Long.toHexString(new SecureRandom().nextLong() & Long.MAX_VALUE));
+
+    /**
+     * The <code>StandardProtocolFamily.UNIX</code> protocol family, or
+     * <code>null</code> when not supported.
+     */
+    private static final ProtocolFamily UNIX;
+
+    /**
+     * The <code>UnixDomainSocketAddress.of(Path)</code> method, or
+     * <code>null</code> when not supported.
+     */
+    private static final Method ADDRESS_OF_METHOD;
+
+    /**
+     * The <code>ServerSocketChannel.open(ProtocolFamily)</code> method, or
+     * <code>null</code> when not supported.
+     */
+    private static final Method OPEN_SERVER_METHOD;
+
+    /**
+     * The <code>SocketChannel.open(ProtocolFamily)</code> method, or
+     * <code>null</code> when not supported.
+     */
+    private static final Method OPEN_CLIENT_METHOD;
+
+    static {
+        ProtocolFamily unix = null;
+        Method addressOf = null;
+        Method openServer = null;
+        Method openClient = null;
+        try {
+            unix = StandardProtocolFamily.valueOf("UNIX");
+            addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+            openServer = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+            openClient = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+        } catch (Exception e) {
+            //unix domain sockets aren't supported by this runtime
+            unix = null;
+        }
+        UNIX = unix;
+        ADDRESS_OF_METHOD = addressOf;
+        OPEN_SERVER_METHOD = openServer;
+        OPEN_CLIENT_METHOD = openClient;
+    }
+
+    /**
+     * Utility class.
+     */
+    private UnixDomainSockets() {
+    }
+
+    /**
+     * Determines if the Java runtime supports Unix domain sockets.
+     *
+     * @return <code>true</code> if Unix domain sockets are supported
+     */
+    static boolean isSupported() {
+        return UNIX != null;
+    }
+
+    /**
+     * Determines if Unix domain sockets were requested with the
+     * {@value Client#TRANSPORT_PROPERTY} system property.
+     *
+     * @return <code>true</code> if Unix domain sockets were requested
+     */
+    static boolean isRequested() {
+        return "unix".equalsIgnoreCase(System.getProperty(Client.TRANSPORT_PROPERTY, "socket").trim());
+    }
+
+    /**
+     * Determines if Unix domain sockets were requested and are supported.
+     *
+     * @return <code>true</code> if Unix domain sockets should be used
+     */
+    static boolean isSelected() {
+        return isRequested() && isSupported();
+    }
+
+    /**
+     * Obtains the {@link Path} of the socket file for a port.
+     *
+     * @param port the port
+     * @return the {@link Path} of the socket file
+     */
+    static Path getPath(int port) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        return (directory == null ? RUNTIME_DIRECTORY : Paths.get(directory)).resolve("jsr107-tck-" + port + ".sock");
+    }
+
+    /**
+     * Opens a blocking {@link ServerSocketChannel} bound to the socket file
+     * for the specified port, creating its directory when required.
+     *
+     * @param port the port
+     * @return the bound {@link ServerSocketChannel}
+     * @throws IOException when the socket file already exists or can't be bound
+     */
+    static ServerSocketChannel bind(int port) throws IOException {
+        Path path = getPath(port);
+        Path directory = path.getParent();
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            directory.toFile().deleteOnExit();
+        }
+        if (Files.exists(path)) {
+            throw new IOException("Failed to bind a Unix domain socket to " + path +
+                " as the file already exists, either in use by another Server or left behind by one");
+        }
+
+        ServerSocketChannel channel = (ServerSocketChannel) invoke(OPEN_SERVER_METHOD, UNIX);
+        try {
+            channel.bind(newAddress(path), 50);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw new IOException("Failed to bind a Unix domain socket to " + path, e);
+        }
+    }
+
+    /**
+     * Obtains the port that a {@link ServerSocketChannel} opened by
+     * {@link #bind(int)} is bound to.
+     *
+     * @param channel the {@link ServerSocketChannel}
+     * @return the port
+     * @throws IOException when the channel isn't bound
+     */
+    static int getPort(ServerSocketChannel channel) throws IOException {
+        String name = new File(channel.getLocalAddress().toString()).getName();
+        return Integer.parseInt(name.substring("jsr107-tck-".length(), name.length() - ".sock".length()));
+    }
+
+    /**
+     * Opens a blocking {@link SocketChannel} connected to the socket file for the specified port.
+     *
+     * @param port the port
+     * @return the connected {@link SocketChannel}
+     * @throws IOException when the connection can't be established
+     */
+    static SocketChannel connect(int port) throws IOException {
+        SocketChannel channel = (SocketChannel) invoke(OPEN_CLIENT_METHOD, UNIX);
+        try {
+            channel.connect(newAddress(getPath(port)));
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the <code>UnixDomainSocketAddress</code> of a socket file.
+     *
+     * @param path the {@link Path} of the socket file
+     * @return the {@link SocketAddress}
+     * @throws IOException when the address can't be created
+     */
+    private static SocketAddress newAddress(Path path) throws IOException {
+        return (SocketAddress) invoke(ADDRESS_OF_METHOD, path);
+    }
+
+    /**
+     * Invokes a static method reflectively, unwrapping {@link IOException}s.
+     *
+     * @param method   the static {@link Method}
+     * @param argument the argument to the {@link Method}
+     * @return the result of the {@link Method}
+     * @throws IOException when the {@link Method} failed
+     */
+    private static Object invoke(Method method, Object argument) throws IOException {
+        try {
+            return method.invoke(null, argument);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to invoke " + method, e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException("Failed to invoke " + method, e);
+        }
+    }
+
+    /**
+     * Obtains an {@link InputStream} that reads from a blocking {@link SocketChannel}.
+     * <p>
+     * Unlike {@link java.nio.channels.Channels#newInputStream}, reading doesn't
+     * prevent other threads from concurrently writing to the channel.
+     *
+     * @param channel the {@link SocketChannel}
+     * @return the {@link InputStream}
+     */
+    static InputStream newInputStream(final SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return length == 0 ? 0 : channel.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Obtains an {@link OutputStream} that writes to a blocking {@link SocketChannel}.
+     * <p>
+     * Unlike {@link java.nio.channels.Channels#newOutputStream}, writing doesn't
+     * prevent other threads from concurrently reading from the channel.
+     *
+     * @param channel the {@link SocketChannel}
+     * @return the {@link OutputStream}
+     */
+    static OutputStream newOutputStream(final SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
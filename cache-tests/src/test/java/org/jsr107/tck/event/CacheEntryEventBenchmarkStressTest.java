@@ -0,0 +1,370 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.event;
+
+import org.jsr107.tck.support.LatencyHistogram;
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Measures how fast an implementation dispatches {@link CacheEntryEvent}s, by
+ * driving puts, updates, removes and expirations at a target rate and
+ * recording the latency from each mutation to the callback of its event, for
+ * each {@link EventType}.
+ * <p>
+ * Each combination of synchronous and asynchronous listeners, with and
+ * without old values and with and without a {@link CacheEntryEventFilter}, is
+ * measured in turn.  Events are delivered through a
+ * {@link CacheEntryListenerClient} and {@link CacheEntryListenerServer}, as in
+ * the other listener tests, asynchronous listeners using fire-and-forget
+ * forwarding.  An unbounded rate measures the maximum sustainable rate.
+ * <p>
+ * Values are the {@link System#nanoTime()} of their mutation, from which the
+ * latency of each event is determined.  As a removed event carries the value
+ * that was removed, each entry is updated with the time of its removal just
+ * before it is removed, and removals are only timed when the implementation
+ * provides the removed value.  The accesses that expire entries are
+ * timestamped by key.
+ * <p>
+ * The driven entries never expire, whatever the rate, while the expirations
+ * are driven on a separate {@link Cache} of entries that expire after the
+ * configured time.
+ * <p>
+ * The load is configured with the <code>org.jsr107.tck.stress.threads</code>,
+ * <code>.keys</code>, <code>.durationMillis</code>, <code>.rate</code>
+ * (mutations per second, 0 for unbounded) and <code>.expiryMillis</code>
+ * system properties.
+ */
+public class CacheEntryEventBenchmarkStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(CacheEntryEventBenchmarkStressTest.class.getName());
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(CacheEntryEventBenchmarkStressTest.class);
+
+  /**
+   * Benchmarks each combination of listener configuration.
+   */
+  @Test
+  public void shouldReportEventThroughputAndLatency() throws Exception {
+    for (boolean synchronous : new boolean[] {true, false}) {
+      for (boolean oldValueRequired : new boolean[] {false, true}) {
+        for (boolean filtered : new boolean[] {false, true}) {
+          benchmark(synchronous, oldValueRequired, filtered);
+        }
+      }
+    }
+  }
+
+  /**
+   * Drives mutations at a {@link Cache} with a listener of the specified
+   * configuration, reporting the throughput and latency of its events.
+   *
+   * @param synchronous      is the listener synchronous?
+   * @param oldValueRequired does the listener require old values?
+   * @param filtered         are the events filtered?
+   */
+  private void benchmark(boolean synchronous, boolean oldValueRequired, final boolean filtered) throws Exception {
+    final int threads = Integer.getInteger("org.jsr107.tck.stress.threads", 4);
+    final int keys = Integer.getInteger("org.jsr107.tck.stress.keys", 1000);
+    long durationMillis = Long.getLong("org.jsr107.tck.stress.durationMillis", 2000);
+    long rate = Long.getLong("org.jsr107.tck.stress.rate", 0);
+    final long expiryMillis = Long.getLong("org.jsr107.tck.stress.expiryMillis", 1000);
+
+    final LatencyRecordingListener listener = new LatencyRecordingListener();
+    CacheEntryListenerServer<Long, Long> server = new CacheEntryListenerServer<>(10011, Long.class, Long.class);
+    server.addCacheEventListener(listener);
+    server.open();
+
+    CacheEntryListenerClient<Long, Long> client = new CacheEntryListenerClient<>(server.getInetAddress(), server.getPort(),
+        CacheEntryListenerClient.DEFAULT_BATCH_SIZE, 64, synchronous);
+
+    MutableConfiguration<Long, Long> configuration = new MutableConfiguration<>();
+    configuration.setTypes(Long.class, Long.class);
+    configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<Long, Long>(
+        FactoryBuilder.factoryOf(client), filtered ? FactoryBuilder.factoryOf(EvenKeyFilter.class) : null,
+        oldValueRequired, synchronous));
+
+    CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+    final Cache<Long, Long> cache = cacheManager.createCache("event-benchmark-test", configuration);
+
+    MutableConfiguration<Long, Long> expiringConfiguration = new MutableConfiguration<>(configuration);
+    expiringConfiguration.setExpiryPolicyFactory(
+        CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.MILLISECONDS, expiryMillis)));
+    Cache<Long, Long> expiringCache = cacheManager.createCache("event-benchmark-expiry-test", expiringConfiguration);
+    try {
+      final long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(threads) / rate : 0;
+      final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+      long start = System.nanoTime();
+
+      ExecutorService executorService = Executors.newFixedThreadPool(threads);
+      long iterations = 0;
+      try {
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+          final int owner = thread;
+          futures.add(executorService.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+              long next = System.nanoTime();
+              long iteration = 0;
+              while (System.nanoTime() - deadline < 0) {
+                long key = (long) owner * keys + iteration % keys;
+
+                cache.put(key, pace(next));
+                next += interval;
+                cache.put(key, pace(next));
+                next += interval;
+                // the removed event carries the time of its removal, so the
+                // update timestamping it shares the removal's turn
+                cache.put(key, pace(next));
+                cache.remove(key);
+                next += 2 * interval;
+
+                iteration++;
+              }
+              return iteration;
+            }
+          }));
+        }
+        for (Future<Long> future : futures) {
+          iterations += future.get();
+        }
+      } finally {
+        executorService.shutdownNow();
+      }
+      long drivenNanos = System.nanoTime() - start;
+
+      // expire an entry of each key of a thread
+      long expiring = Math.min(keys, iterations);
+      for (long key = 0; key < expiring; key++) {
+        expiringCache.put(key, System.nanoTime());
+      }
+      Thread.sleep(expiryMillis + 100);
+      for (long key = 0; key < expiring; key++) {
+        listener.expiredAt.put(key, System.nanoTime());
+        expiringCache.get(key);
+      }
+
+      client.flush();
+      long delivered = listener.awaitQuiescence(TimeUnit.SECONDS.toMillis(30));
+      long deliveredNanos = listener.lastDeliveryNanos.get() - start;
+
+      LOG.info(String.format("%s listener, oldValueRequired=%b, filtered=%b: %.0f mutations/s, %.0f events/s",
+          synchronous ? "synchronous" : "asynchronous", oldValueRequired, filtered,
+          4 * iterations * (double) TimeUnit.SECONDS.toNanos(1) / drivenNanos,
+          delivered * (double) TimeUnit.SECONDS.toNanos(1) / deliveredNanos));
+      for (EventType eventType : EventType.values()) {
+        LatencyHistogram latencies = listener.latencies.get(eventType);
+        long count = listener.counts.get(eventType).get();
+        if (latencies.getCount() == 0) {
+          LOG.info(String.format("  %s: %d events, not timed", eventType, count));
+        } else {
+          LOG.info(String.format("  %s: %d events, p50=%dus, p99=%dus, max=%dus", eventType, count,
+              latencies.getPercentile(50, TimeUnit.MICROSECONDS), latencies.getPercentile(99, TimeUnit.MICROSECONDS),
+              latencies.getMaximum(TimeUnit.MICROSECONDS)));
+        }
+      }
+
+      long created = listener.counts.get(EventType.CREATED).get();
+      long updated = listener.counts.get(EventType.UPDATED).get();
+      long removed = listener.counts.get(EventType.REMOVED).get();
+      assertThat(delivered, is(greaterThan(0L)));
+      if (filtered) {
+        assertThat(created, is(lessThanOrEqualTo(iterations + expiring)));
+      } else {
+        assertThat(created, is(iterations + expiring));
+        assertThat(updated, is(2 * iterations));
+        assertThat(removed, is(iterations));
+      }
+    } finally {
+      cacheManager.destroyCache(cache.getName());
+      cacheManager.destroyCache(expiringCache.getName());
+      client.close();
+      server.close();
+    }
+  }
+
+  /**
+   * Waits until the next mutation is due, returning the time to timestamp it with.
+   *
+   * @param due the {@link System#nanoTime()} at which the mutation is due
+   * @return the {@link System#nanoTime()} of the mutation
+   */
+  private static long pace(long due) throws InterruptedException {
+    long now = System.nanoTime();
+    while (due - now > 0) {
+      long remaining = due - now;
+      if (remaining > TimeUnit.MILLISECONDS.toNanos(1)) {
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(remaining));
+      } else {
+        Thread.yield();
+      }
+      now = System.nanoTime();
+    }
+    return now;
+  }
+
+  /**
+   * A {@link CacheEntryEventFilter} accepting the events of even keys.
+   */
+  public static class EvenKeyFilter implements CacheEntryEventFilter<Long, Long>, Serializable {
+
+    @Override
+    public boolean evaluate(CacheEntryEvent<? extends Long, ? extends Long> event) throws CacheEntryListenerException {
+      return event.getKey() % 2 == 0;
+    }
+  }
+
+  /**
+   * A listener counting events and recording the latency from the mutation of
+   * each event to its callback, by {@link EventType}.
+   */
+  private static class LatencyRecordingListener implements CacheEntryCreatedListener<Long, Long>,
+      CacheEntryUpdatedListener<Long, Long>, CacheEntryRemovedListener<Long, Long>,
+      CacheEntryExpiredListener<Long, Long> {
+
+    /**
+     * The {@link LatencyHistogram} of each {@link EventType}.
+     */
+    private final Map<EventType, LatencyHistogram> latencies = new EnumMap<>(EventType.class);
+
+    /**
+     * The number of events of each {@link EventType}.
+     */
+    private final Map<EventType, AtomicLong> counts = new EnumMap<>(EventType.class);
+
+    /**
+     * The {@link System#nanoTime()} at which each key was last accessed to expire it.
+     */
+    private final Map<Long, Long> expiredAt = new ConcurrentHashMap<>();
+
+    /**
+     * The number of events delivered.
+     */
+    private final AtomicLong delivered = new AtomicLong();
+
+    /**
+     * The {@link System#nanoTime()} of the latest delivery.
+     */
+    private final AtomicLong lastDeliveryNanos = new AtomicLong();
+
+    /**
+     * Constructs a {@link LatencyRecordingListener}.
+     */
+    LatencyRecordingListener() {
+      for (EventType eventType : EventType.values()) {
+        latencies.put(eventType, new LatencyHistogram());
+        counts.put(eventType, new AtomicLong());
+      }
+    }
+
+    @Override
+    public void onCreated(Iterable<CacheEntryEvent<? extends Long, ? extends Long>> events) {
+      for (CacheEntryEvent<? extends Long, ? extends Long> event : events) {
+        record(EventType.CREATED, event.getValue());
+      }
+    }
+
+    @Override
+    public void onUpdated(Iterable<CacheEntryEvent<? extends Long, ? extends Long>> events) {
+      for (CacheEntryEvent<? extends Long, ? extends Long> event : events) {
+        record(EventType.UPDATED, event.getValue());
+      }
+    }
+
+    @Override
+    public void onRemoved(Iterable<CacheEntryEvent<? extends Long, ? extends Long>> events) {
+      for (CacheEntryEvent<? extends Long, ? extends Long> event : events) {
+        record(EventType.REMOVED, event.getValue());
+      }
+    }
+
+    @Override
+    public void onExpired(Iterable<CacheEntryEvent<? extends Long, ? extends Long>> events) {
+      for (CacheEntryEvent<? extends Long, ? extends Long> event : events) {
+        record(EventType.EXPIRED, expiredAt.get(event.getKey()));
+      }
+    }
+
+    /**
+     * Records the delivery of an event.
+     *
+     * @param eventType    the {@link EventType} of the event
+     * @param mutatedNanos the {@link System#nanoTime()} of the mutation, or
+     *                     <code>null</code> when unknown, in which case the
+     *                     event is counted but not timed
+     */
+    private void record(EventType eventType, Long mutatedNanos) {
+      long now = System.nanoTime();
+      if (mutatedNanos != null) {
+        latencies.get(eventType).record(Math.max(0, now - mutatedNanos));
+      }
+      counts.get(eventType).incrementAndGet();
+      delivered.incrementAndGet();
+      lastDeliveryNanos.set(now);
+    }
+
+    /**
+     * Waits until no event has been delivered for a while.
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return the number of events delivered
+     */
+    long awaitQuiescence(long timeoutMillis) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      long seen = -1;
+      while (delivered.get() != seen && System.currentTimeMillis() < deadline) {
+        seen = delivered.get();
+        Thread.sleep(250);
+      }
+      return delivered.get();
+    }
+  }
+}
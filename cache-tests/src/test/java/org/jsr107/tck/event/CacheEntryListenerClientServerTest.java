@@ -11,9 +11,21 @@ import org.jsr107.tck.testutil.CacheTestSupport;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListenerException;
 import javax.cache.event.EventType;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.hamcrest.CoreMatchers.is;
 
@@ -85,4 +97,292 @@ public class CacheEntryListenerClientServerTest {
     }
   }
 
+  /**
+   * Ensure that the events of a callback are delivered to the listeners of
+   * the {@link org.jsr107.tck.event.CacheEntryListenerServer} in batches of at
+   * most the batch size, each in a single callback.
+   */
+  @Test
+  public void shouldDeliverEventsInBatches() throws Exception {
+    CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+    MutableConfiguration<String, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(String.class, String.class);
+    Cache<String, String> cache = cacheManager.createCache("batched-event-test", configuration);
+
+    BatchRecordingListener listener = new BatchRecordingListener();
+    CacheEntryListenerServer<String, String> serverListener =
+      new CacheEntryListenerServer<>(10011, String.class, String.class);
+    serverListener.addCacheEventListener(listener);
+    serverListener.open();
+
+    CacheEntryListenerClient<String, String> clientListener =
+      new CacheEntryListenerClient<>(serverListener.getInetAddress(), serverListener.getPort(), 4);
+    try {
+      List<CacheEntryEvent<? extends String, ? extends String>> events = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        TestCacheEntryEvent<String, String> event = new TestCacheEntryEvent<>(cache, EventType.CREATED);
+        event.setKey("key-" + i);
+        event.setValue("value-" + i);
+        events.add(event);
+      }
+
+      clientListener.onCreated(events);
+
+      Assert.assertThat(listener.batches.size(), is(3));
+      Assert.assertThat(listener.batches.get(0), is(4));
+      Assert.assertThat(listener.batches.get(2), is(2));
+      Assert.assertThat(serverListener.getEventBatches().getCount(), is(3L));
+      Assert.assertThat(serverListener.getEventBatches().getTotal(), is(10L));
+    } finally {
+      clientListener.close();
+      serverListener.close();
+      cacheManager.destroyCache(cache.getName());
+    }
+  }
+
+  /**
+   * Ensure that events forwarded without acknowledgement are delivered in
+   * order once flushed, and that failures of the server's listeners aren't
+   * thrown to the client.
+   */
+  @Test
+  public void shouldForwardEventsWithoutAcknowledgement() throws Exception {
+    CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+    MutableConfiguration<String, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(String.class, String.class);
+    Cache<String, String> cache = cacheManager.createCache("forwarded-event-test", configuration);
+
+    BatchRecordingListener listener = new BatchRecordingListener();
+    CacheEntryListenerServer<String, String> serverListener =
+      new CacheEntryListenerServer<>(10011, String.class, String.class);
+    serverListener.addCacheEventListener(listener);
+    serverListener.open();
+
+    CacheEntryListenerClient<String, String> clientListener =
+      new CacheEntryListenerClient<>(serverListener.getInetAddress(), serverListener.getPort(), 1, 4, false);
+    try {
+      for (int i = 0; i < 10; i++) {
+        TestCacheEntryEvent<String, String> event = new TestCacheEntryEvent<>(cache, EventType.CREATED);
+        event.setKey("key-" + i);
+        event.setValue("value-" + i);
+        List<CacheEntryEvent<? extends String, ? extends String>> events = new ArrayList<>();
+        events.add(event);
+        clientListener.onCreated(events);
+      }
+      clientListener.flush();
+
+      Assert.assertThat(listener.batches.size(), is(10));
+      for (int i = 0; i < 10; i++) {
+        Assert.assertThat(listener.keys.get(i), is("key-" + i));
+      }
+
+      // an unacknowledged failure is logged by the server
+      listener.failing = true;
+      TestCacheEntryEvent<String, String> event = new TestCacheEntryEvent<>(cache, EventType.CREATED);
+      event.setKey("key-10");
+      event.setValue("value-10");
+      List<CacheEntryEvent<? extends String, ? extends String>> events = new ArrayList<>();
+      events.add(event);
+      clientListener.onCreated(events);
+      clientListener.flush();
+      Assert.assertThat(listener.batches.size(), is(11));
+    } finally {
+      clientListener.close();
+      serverListener.close();
+      cacheManager.destroyCache(cache.getName());
+    }
+  }
+
+  /**
+   * Ensure that events whose source can't be resolved by the server fail,
+   * whether acknowledged or forwarded, rather than being dropped.
+   */
+  @Test
+  public void shouldFailEventsOfUnresolvableSources() throws Exception {
+    CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+    MutableConfiguration<String, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(String.class, String.class);
+    Cache<String, String> cache = cacheManager.createCache("unresolvable-event-test", configuration);
+
+    List<CacheEntryEvent<? extends String, ? extends String>> events = new ArrayList<>();
+    TestCacheEntryEvent<String, String> event = new TestCacheEntryEvent<>(cache, EventType.CREATED);
+    event.setKey("key");
+    event.setValue("value");
+    events.add(event);
+    cacheManager.destroyCache(cache.getName());
+
+    BatchRecordingListener listener = new BatchRecordingListener();
+    CacheEntryListenerServer<String, String> serverListener =
+      new CacheEntryListenerServer<>(10011, String.class, String.class);
+    serverListener.addCacheEventListener(listener);
+    serverListener.open();
+
+    CacheEntryListenerClient<String, String> acknowledgingListener =
+      new CacheEntryListenerClient<>(serverListener.getInetAddress(), serverListener.getPort(), 1);
+    CacheEntryListenerClient<String, String> forwardingListener =
+      new CacheEntryListenerClient<>(serverListener.getInetAddress(), serverListener.getPort(), 1, 4, false);
+    try {
+      try {
+        acknowledgingListener.onCreated(events);
+        Assert.fail("A CacheEntryListenerException should have been thrown");
+      } catch (CacheEntryListenerException e) {
+        // expected
+      }
+
+      forwardingListener.onCreated(events);
+      try {
+        forwardingListener.flush();
+        Assert.fail("A CacheEntryListenerException should have been thrown");
+      } catch (CacheEntryListenerException e) {
+        // expected
+      }
+
+      Assert.assertThat(listener.batches.isEmpty(), is(true));
+    } finally {
+      acknowledgingListener.close();
+      forwardingListener.close();
+      serverListener.close();
+    }
+  }
+
+  /**
+   * Ensure that a synchronous listener receives its events before the
+   * mutation returns, even when a window for forwarding events without
+   * acknowledgement is configured.
+   */
+  @Test
+  public void shouldAcknowledgeSynchronousListenersWhateverTheWindow() throws Exception {
+    BatchRecordingListener listener = new BatchRecordingListener();
+    CacheEntryListenerServer<String, String> serverListener =
+      new CacheEntryListenerServer<>(10011, String.class, String.class);
+    serverListener.addCacheEventListener(listener);
+    serverListener.open();
+
+    String window = System.getProperty(CacheEntryListenerClient.WINDOW_PROPERTY);
+    System.setProperty(CacheEntryListenerClient.WINDOW_PROPERTY, "64");
+    CacheEntryListenerClient<String, String> clientListener;
+    try {
+      clientListener = new CacheEntryListenerClient<>(serverListener.getInetAddress(), serverListener.getPort());
+    } finally {
+      if (window == null) {
+        System.clearProperty(CacheEntryListenerClient.WINDOW_PROPERTY);
+      } else {
+        System.setProperty(CacheEntryListenerClient.WINDOW_PROPERTY, window);
+      }
+    }
+    Assert.assertThat(clientListener.isSynchronous(), is(true));
+    Assert.assertThat(clientListener.getWindow(), is(64));
+
+    CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+    MutableConfiguration<String, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(String.class, String.class);
+    configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<String, String>(
+      FactoryBuilder.factoryOf(clientListener), null, false, true));
+    Cache<String, String> cache = cacheManager.createCache("synchronous-window-test", configuration);
+    try {
+      for (int i = 0; i < 10; i++) {
+        cache.put("key-" + i, "value-" + i);
+        Assert.assertThat(listener.keys.size(), is(i + 1));
+        Assert.assertThat(listener.keys.get(i), is("key-" + i));
+      }
+    } finally {
+      cacheManager.destroyCache(cache.getName());
+      clientListener.close();
+      serverListener.close();
+    }
+  }
+
+  /**
+   * Ensure that listeners may be added and removed while events are being
+   * delivered, without disturbing delivery to the other listeners, and that
+   * adding a listener twice registers it once.
+   */
+  @Test
+  public void shouldChangeListenersWhileDeliveringEvents() throws Exception {
+    CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+    MutableConfiguration<String, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(String.class, String.class);
+    Cache<String, String> cache = cacheManager.createCache("changing-listeners-test", configuration);
+
+    BatchRecordingListener listener = new BatchRecordingListener();
+    final BatchRecordingListener transientListener = new BatchRecordingListener();
+    final CacheEntryListenerServer<String, String> serverListener =
+      new CacheEntryListenerServer<>(10011, String.class, String.class);
+    serverListener.addCacheEventListener(listener);
+    serverListener.addCacheEventListener(listener);
+    serverListener.open();
+
+    CacheEntryListenerClient<String, String> clientListener =
+      new CacheEntryListenerClient<>(serverListener.getInetAddress(), serverListener.getPort());
+
+    final AtomicBoolean delivering = new AtomicBoolean(true);
+    Thread registrar = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (delivering.get()) {
+          serverListener.addCacheEventListener(transientListener);
+          serverListener.removeCacheEventListener(transientListener);
+        }
+      }
+    });
+    registrar.start();
+    try {
+      for (int i = 0; i < 1000; i++) {
+        TestCacheEntryEvent<String, String> event = new TestCacheEntryEvent<>(cache, EventType.CREATED);
+        event.setKey("key-" + i);
+        event.setValue("value-" + i);
+        List<CacheEntryEvent<? extends String, ? extends String>> events = new ArrayList<>();
+        events.add(event);
+        clientListener.onCreated(events);
+      }
+    } finally {
+      delivering.set(false);
+      registrar.join();
+      clientListener.close();
+      serverListener.close();
+      cacheManager.destroyCache(cache.getName());
+    }
+
+    Assert.assertThat(listener.batches.size(), is(1000));
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertThat(listener.keys.get(i), is("key-" + i));
+    }
+  }
+
+  /**
+   * A {@link CacheEntryCreatedListener} recording the number of events of each callback.
+   */
+  private static class BatchRecordingListener implements CacheEntryCreatedListener<String, String> {
+
+    /**
+     * The number of events of each callback.
+     */
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+    /**
+     * The keys of the events, in the order they were delivered.
+     */
+    private final List<String> keys = new CopyOnWriteArrayList<>();
+
+    /**
+     * Should callbacks fail once recorded?
+     */
+    private volatile boolean failing;
+
+    @Override
+    public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events)
+      throws CacheEntryListenerException {
+      int count = 0;
+      for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+        keys.add(event.getKey());
+        count++;
+      }
+      batches.add(count);
+
+      if (failing) {
+        throw new CacheEntryListenerException("simulated failure of a listener");
+      }
+    }
+  }
+
 }
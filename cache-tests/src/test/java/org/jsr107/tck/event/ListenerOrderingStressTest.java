@@ -0,0 +1,151 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.event;
+
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.configuration.MutableConfiguration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Drives a high rate of concurrent mutations across many keys at a
+ * {@link Cache}, checking with an {@link OrderingCheckingListener} that the
+ * events of each key are delivered in order, for synchronous and asynchronous
+ * listeners.
+ * <p>
+ * Each thread owns its keys, so the mutations of a key are made in the order
+ * of their sequence numbers.  Events are delivered through a
+ * {@link CacheEntryListenerClient} and {@link CacheEntryListenerServer},
+ * asynchronous listeners using fire-and-forget forwarding, which preserves
+ * the order in which the implementation dispatches them.  The load is
+ * configured with the <code>org.jsr107.tck.stress.threads</code>,
+ * <code>.keys</code> and <code>.mutations</code> system properties, the
+ * latter being the total for each kind of listener.
+ */
+public class ListenerOrderingStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(ListenerOrderingStressTest.class.getName());
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(ListenerOrderingStressTest.class);
+
+  /**
+   * Ensure that the events of each key are delivered in order to a
+   * synchronous listener.
+   */
+  @Test
+  public void shouldDeliverEventsOfEachKeyInOrderSynchronously() throws Exception {
+    checkOrdering(true);
+  }
+
+  /**
+   * Ensure that the events of each key are delivered in order to an
+   * asynchronous listener.
+   */
+  @Test
+  public void shouldDeliverEventsOfEachKeyInOrderAsynchronously() throws Exception {
+    checkOrdering(false);
+  }
+
+  /**
+   * Mutates keys from many threads and checks the order in which their
+   * events are delivered.
+   *
+   * @param synchronous is the listener synchronous?
+   */
+  private void checkOrdering(boolean synchronous) throws Exception {
+    final int threads = Integer.getInteger("org.jsr107.tck.stress.threads", 8);
+    final int keys = Integer.getInteger("org.jsr107.tck.stress.keys", 1024);
+    long mutations = Long.getLong("org.jsr107.tck.stress.mutations", 1000000);
+    final long mutationsPerThread = mutations / threads;
+
+    final OrderingCheckingListener<Integer> listener = new OrderingCheckingListener<>();
+    CacheEntryListenerServer<Integer, Long> server = new CacheEntryListenerServer<>(10011, Integer.class, Long.class);
+    server.addCacheEventListener(listener);
+    server.open();
+
+    CacheEntryListenerClient<Integer, Long> client = new CacheEntryListenerClient<>(server.getInetAddress(),
+        server.getPort(), CacheEntryListenerClient.DEFAULT_BATCH_SIZE, 64, synchronous);
+
+    MutableConfiguration<Integer, Long> configuration = new MutableConfiguration<>();
+    configuration.setTypes(Integer.class, Long.class);
+    configuration.addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<Integer, Long>(
+        FactoryBuilder.factoryOf(client), null, false, synchronous));
+
+    CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+    final Cache<Integer, Long> cache = cacheManager.createCache("listener-ordering-test", configuration);
+    try {
+      long start = System.nanoTime();
+      ExecutorService executorService = Executors.newFixedThreadPool(threads);
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+          final int owner = thread;
+          futures.add(executorService.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              Random random = new Random(owner);
+              for (long i = 0; i < mutationsPerThread; i++) {
+                int key = owner * keys + random.nextInt(keys);
+                cache.put(key, listener.nextSequence());
+              }
+              return null;
+            }
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        executorService.shutdownNow();
+      }
+      long drivenNanos = System.nanoTime() - start;
+
+      client.flush();
+      long expected = mutationsPerThread * threads;
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+      while (listener.getEventCount() < expected && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      LOG.info(String.format("%s listener, %d threads mutating %d keys each: %.0f mutations/s, %s",
+          synchronous ? "synchronous" : "asynchronous", threads, keys,
+          expected * (double) TimeUnit.SECONDS.toNanos(1) / drivenNanos, listener));
+
+      assertThat(listener.getEventCount(), is(expected));
+      assertThat(listener.getViolationCount(), is(0L));
+    } finally {
+      cacheManager.destroyCache(cache.getName());
+      client.close();
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link OrderingCheckingListener}.
+ */
+public class OrderingCheckingListenerTest {
+
+  /**
+   * The {@link CacheManager} for the each test.
+   */
+  private CacheManager cacheManager;
+
+  /**
+   * The {@link Cache} that is the source of the events.
+   */
+  private Cache<Integer, Long> cache;
+
+  /**
+   * Establish the {@link Cache} that is the source of the events.
+   */
+  @Before
+  public void onBeforeEachTest() {
+    cacheManager = Caching.getCachingProvider().getCacheManager();
+    MutableConfiguration<Integer, Long> configuration = new MutableConfiguration<>();
+    configuration.setTypes(Integer.class, Long.class);
+    cache = cacheManager.createCache("ordering-checking-test", configuration);
+  }
+
+  /**
+   * Clean up the {@link Cache} after a test.
+   */
+  @After
+  public void onAfterEachTest() {
+    cacheManager.destroyCache(cache.getName());
+    cache = null;
+  }
+
+  /**
+   * Ensure that events delivered in order, interleaved across keys, aren't
+   * violations.
+   */
+  @Test
+  public void shouldAcceptEventsInOrderPerKey() {
+    OrderingCheckingListener<Integer> listener = new OrderingCheckingListener<>();
+    long first = listener.nextSequence();
+    long second = listener.nextSequence();
+    long third = listener.nextSequence();
+
+    deliver(listener, EventType.CREATED, 2, second);
+    deliver(listener, EventType.CREATED, 1, first);
+    deliver(listener, EventType.UPDATED, 1, third);
+
+    assertThat(listener.getEventCount(), is(3L));
+    assertThat(listener.getViolationCount(), is(0L));
+    assertThat(listener.getMaximumDistance(), is(0L));
+  }
+
+  /**
+   * Ensure that events delivered out of order, or repeated, are violations
+   * with their reorder distance.
+   */
+  @Test
+  public void shouldRecordViolationsAndDistance() {
+    OrderingCheckingListener<Integer> listener = new OrderingCheckingListener<>();
+    long[] sequences = new long[5];
+    for (int i = 0; i < sequences.length; i++) {
+      sequences[i] = listener.nextSequence();
+    }
+
+    deliver(listener, EventType.UPDATED, 1, sequences[4]);
+    deliver(listener, EventType.CREATED, 1, sequences[0]);
+    deliver(listener, EventType.UPDATED, 1, sequences[4]);
+
+    assertThat(listener.getEventCount(), is(3L));
+    assertThat(listener.getViolationCount(), is(2L));
+    assertThat(listener.getMaximumDistance(), is(4L));
+    assertThat(listener.getMeanDistance(), is(2.0));
+  }
+
+  /**
+   * Delivers an event to a listener.
+   *
+   * @param listener       the {@link OrderingCheckingListener}
+   * @param eventType      the {@link EventType} of the event
+   * @param key            the key of the event
+   * @param sequenceNumber the sequence number of the event
+   */
+  private void deliver(OrderingCheckingListener<Integer> listener, EventType eventType, int key, long sequenceNumber) {
+    TestCacheEntryEvent<Integer, Long> event = new TestCacheEntryEvent<>(cache, eventType);
+    event.setKey(key);
+    event.setValue(sequenceNumber);
+    Iterable<CacheEntryEvent<? extends Integer, ? extends Long>> events =
+        Collections.<CacheEntryEvent<? extends Integer, ? extends Long>>singletonList(event);
+    if (eventType == EventType.CREATED) {
+      listener.onCreated(events);
+    } else {
+      listener.onUpdated(events);
+    }
+  }
+}
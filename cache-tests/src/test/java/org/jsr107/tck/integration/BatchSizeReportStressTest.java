@@ -0,0 +1,173 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.support.BatchStatistics;
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableConfiguration;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Reports the sizes of the batches an implementation hands to
+ * {@link javax.cache.integration.CacheLoader#loadAll(Iterable)},
+ * {@link javax.cache.integration.CacheWriter#writeAll(java.util.Collection)} and
+ * {@link javax.cache.integration.CacheWriter#deleteAll(java.util.Collection)}
+ * for {@link Cache#getAll(Set)}, {@link Cache#putAll(Map)} and
+ * {@link Cache#removeAll(Set)} workloads of increasing size, and how many
+ * entries it loads, writes or deletes individually instead.
+ * <p>
+ * The specification doesn't require batching, so only that every entry
+ * reaches the integration layer is asserted.
+ */
+public class BatchSizeReportStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(BatchSizeReportStressTest.class.getName());
+
+  /**
+   * The sizes of the workloads.
+   */
+  private static final int[] SIZES = {1, 10, 100, 1000};
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(BatchSizeReportStressTest.class);
+
+  /**
+   * The {@link CacheManager} for the each test.
+   */
+  private CacheManager cacheManager;
+
+  /**
+   * The {@link CacheLoaderServer} delegating to the recording loader.
+   */
+  private CacheLoaderServer<String, String> cacheLoaderServer;
+
+  /**
+   * The {@link CacheWriterServer} delegating to the recording writer.
+   */
+  private CacheWriterServer<String, String> cacheWriterServer;
+
+  /**
+   * The {@link Cache} for the each test.
+   */
+  private Cache<String, String> cache;
+
+  /**
+   * Establish a read-through and write-through {@link Cache} for a test.
+   */
+  @Before
+  public void onBeforeEachTest() throws IOException {
+    cacheLoaderServer = new CacheLoaderServer<String, String>(10000);
+    cacheLoaderServer.open();
+
+    cacheWriterServer = new CacheWriterServer<String, String>(10001, null);
+    cacheWriterServer.open();
+
+    cacheManager = Caching.getCachingProvider().getCacheManager();
+
+    CacheLoaderClient<String, String> cacheLoader =
+        new CacheLoaderClient<>(cacheLoaderServer.getInetAddress(), cacheLoaderServer.getPort());
+    CacheWriterClient<String, String> cacheWriter =
+        new CacheWriterClient<>(cacheWriterServer.getInetAddress(), cacheWriterServer.getPort());
+
+    MutableConfiguration<String, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(String.class, String.class);
+    configuration.setCacheLoaderFactory(FactoryBuilder.factoryOf(cacheLoader));
+    configuration.setReadThrough(true);
+    configuration.setCacheWriterFactory(FactoryBuilder.factoryOf(cacheWriter));
+    configuration.setWriteThrough(true);
+
+    cacheManager.createCache("batch-size-report-test", configuration);
+    cache = cacheManager.getCache("batch-size-report-test", String.class, String.class);
+  }
+
+  /**
+   * Clean up the {@link CacheManager} and {@link Cache} after a test.
+   */
+  @After
+  public void onAfterEachTest() {
+    cacheManager.destroyCache(cache.getName());
+
+    cacheLoaderServer.close();
+    cacheLoaderServer = null;
+
+    cacheWriterServer.close();
+    cacheWriterServer = null;
+
+    cache = null;
+  }
+
+  /**
+   * Runs each workload with fresh recorders, reporting the batches.
+   */
+  @Test
+  public void shouldReportBatchSizes() {
+    for (int size : SIZES) {
+      RecordingCacheLoader<String> cacheLoader = new RecordingCacheLoader<String>();
+      RecordingCacheWriter<String, String> cacheWriter = new RecordingCacheWriter<>(true);
+      cacheLoaderServer.setCacheLoader(cacheLoader);
+      cacheWriterServer.setCacheWriter(cacheWriter);
+
+      Set<String> keys = new HashSet<>();
+      Map<String, String> entries = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        keys.add("getAll-" + size + "-" + i);
+        entries.put("putAll-" + size + "-" + i, "value-" + i);
+      }
+
+      cache.getAll(keys);
+      assertThat(cacheLoader.getLoadCount(), is(size));
+      report("getAll", size, cacheLoader.getLoadAllBatches(), cacheLoader.getLoadCount());
+
+      cache.putAll(entries);
+      assertThat(cacheWriter.getWriteCount(), is((long) size));
+      report("putAll", size, cacheWriter.getWriteBatches(), cacheWriter.getWriteCount());
+
+      cache.removeAll(entries.keySet());
+      assertThat(cacheWriter.getDeleteCount(), is((long) size));
+      report("removeAll", size, cacheWriter.getDeleteBatches(), cacheWriter.getDeleteCount());
+    }
+  }
+
+  /**
+   * Reports the batches of a workload.
+   *
+   * @param workload   the name of the workload
+   * @param size       the number of entries in the workload
+   * @param batches    the {@link BatchStatistics} of the batches
+   * @param operations the number of entries loaded, written or deleted
+   */
+  private static void report(String workload, int size, BatchStatistics batches, long operations) {
+    long individually = operations - batches.getTotal();
+    double meanBatchSize = (double) operations / (batches.getCount() + individually);
+
+    LOG.info(String.format("%s of %d: average batch size %.1f, %d individually, batches{%s}",
+        workload, size, meanBatchSize, individually, batches));
+  }
+}
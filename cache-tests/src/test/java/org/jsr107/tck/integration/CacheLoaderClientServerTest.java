@@ -10,6 +10,15 @@ package org.jsr107.tck.integration;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -77,6 +86,112 @@ public class CacheLoaderClientServerTest {
     serverCacheLoader.close();
   }
 
+  /**
+   * Ensure that the entries loaded by a {@link StreamingCacheLoader} are handed
+   * on by the {@link CacheLoaderClient} as they arrive, or collected when a
+   * {@link java.util.Map} is requested.
+   */
+  @Test
+  public void shouldStreamLoadAllFromServerWithClient() throws Exception {
+    StreamingRecordingCacheLoader recordingCacheLoader = new StreamingRecordingCacheLoader();
+    CacheLoaderServer<String, String> serverCacheLoader = new CacheLoaderServer<String, String>(10000, recordingCacheLoader);
+    serverCacheLoader.open();
+    CacheLoaderClient<String, String> clientCacheLoader = new CacheLoaderClient<>(serverCacheLoader.getInetAddress(), serverCacheLoader.getPort());
+
+    Set<String> keys = new HashSet<String>();
+    for (int i = 0; i < 1000; i++) {
+      keys.add("key-" + i);
+    }
+
+    final Map<String, String> streamed = new HashMap<String, String>();
+    clientCacheLoader.loadAll(keys, new StreamingCacheLoader.EntryConsumer<String, String>() {
+      @Override
+      public void accept(String key, String value) {
+        streamed.put(key, value);
+      }
+    });
+    Assert.assertThat(streamed.keySet(), is(keys));
+    Assert.assertThat(streamed.get("key-42"), is("key-42"));
+
+    Map<String, String> loaded = clientCacheLoader.loadAll(keys);
+    Assert.assertThat(loaded, is(streamed));
+    Assert.assertThat(recordingCacheLoader.getStreamedCount(), is(2000));
+    Assert.assertThat(serverCacheLoader.getLoadAllBatches().getCount(), is(2L));
+    Assert.assertThat(serverCacheLoader.getLoadAllBatches().getMean(), is(1000.0));
+
+    clientCacheLoader.close();
+    serverCacheLoader.close();
+  }
+
+  /**
+   * Ensure that the keys of a loadAll are loaded in partitions in parallel by
+   * the {@link CacheLoaderServer} when a parallelism is configured.
+   */
+  @Test
+  public void shouldLoadAllInParallelFromServerWithClient() throws Exception {
+    PartitionRecordingCacheLoader recordingCacheLoader = new PartitionRecordingCacheLoader();
+    CacheLoaderServer<String, String> serverCacheLoader = new CacheLoaderServer<String, String>(10000, recordingCacheLoader);
+    serverCacheLoader.setParallelism(4);
+    serverCacheLoader.open();
+    CacheLoaderClient<String, String> clientCacheLoader = new CacheLoaderClient<>(serverCacheLoader.getInetAddress(), serverCacheLoader.getPort());
+
+    Set<String> keys = new HashSet<String>();
+    for (int i = 0; i < 1000; i++) {
+      keys.add("key-" + i);
+    }
+
+    Map<String, String> loaded = clientCacheLoader.loadAll(keys);
+    Assert.assertThat(loaded.keySet(), is(keys));
+    Assert.assertThat(loaded.get("key-42"), is("key-42"));
+    Assert.assertThat(recordingCacheLoader.getLoadCount(), is(1000));
+    Assert.assertThat(recordingCacheLoader.getPartitionCount(), is(4));
+    Assert.assertThat(serverCacheLoader.getLoadAllBatches().getCount(), is(1L));
+
+    clientCacheLoader.close();
+    serverCacheLoader.close();
+  }
+
+  /**
+   * Ensure that the entries of the partitions that were loaded are handed on
+   * when another partition fails, after which the failure is re-thrown.
+   */
+  @Test
+  public void shouldStreamLoadedPartitionsWhenAPartitionFails() throws Exception {
+    PartitionRecordingCacheLoader recordingCacheLoader = new PartitionRecordingCacheLoader();
+    CacheLoaderServer<String, String> serverCacheLoader = new CacheLoaderServer<String, String>(10000, recordingCacheLoader);
+    serverCacheLoader.setParallelism(4);
+    serverCacheLoader.open();
+    CacheLoaderClient<String, String> clientCacheLoader = new CacheLoaderClient<>(serverCacheLoader.getInetAddress(), serverCacheLoader.getPort());
+
+    Set<String> keys = new HashSet<String>();
+    for (int i = 0; i < 100; i++) {
+      keys.add("key-" + i);
+    }
+    keys.add(PartitionRecordingCacheLoader.POISON);
+
+    final Map<String, String> streamed = new HashMap<String, String>();
+    try {
+      clientCacheLoader.loadAll(keys, new StreamingCacheLoader.EntryConsumer<String, String>() {
+        @Override
+        public void accept(String key, String value) {
+          streamed.put(key, value);
+        }
+      });
+      fail("An UnsupportedOperationException should have been thrown");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    // every partition but the one with the poison key is handed on
+    Assert.assertThat(streamed.containsKey(PartitionRecordingCacheLoader.POISON), is(false));
+    Assert.assertThat(streamed.size(), is(recordingCacheLoader.getLoadCount()));
+    Assert.assertThat(streamed.size() >= 100 - 100 / 4, is(true));
+    Assert.assertThat(recordingCacheLoader.getPartitionCount(), is(4));
+
+    clientCacheLoader.close();
+    serverCacheLoader.close();
+  }
+
   /**
    * Assert that the server checks correctly whether open clients exists when close
    * is called.
@@ -94,4 +209,72 @@ public class CacheLoaderClientServerTest {
     serverCacheLoader.close();
   }
 
+  /**
+   * A {@link RecordingCacheLoader} that hands on each entry as it is loaded.
+   */
+  private static class StreamingRecordingCacheLoader extends RecordingCacheLoader<String>
+      implements StreamingCacheLoader<String, String> {
+
+    /**
+     * The number of entries handed on.
+     */
+    private final AtomicInteger streamedCount = new AtomicInteger();
+
+    @Override
+    public void loadAll(Iterable<? extends String> keys, EntryConsumer<String, String> consumer) {
+      for (String key : keys) {
+        consumer.accept(key, load(key));
+        streamedCount.incrementAndGet();
+      }
+    }
+
+    /**
+     * Obtains the number of entries handed on.
+     *
+     * @return the number of entries
+     */
+    int getStreamedCount() {
+      return streamedCount.get();
+    }
+  }
+
+  /**
+   * A {@link RecordingCacheLoader} that records the loadAll partitions it is
+   * asked to load, failing a partition containing the {@link #POISON} key.
+   */
+  private static class PartitionRecordingCacheLoader extends RecordingCacheLoader<String> {
+
+    /**
+     * The key that fails the partition containing it.
+     */
+    static final String POISON = "poison";
+
+    /**
+     * The partitions, by their first key.
+     */
+    private final Set<String> partitions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @Override
+    public Map<String, String> loadAll(Iterable<? extends String> keys) {
+      Iterator<? extends String> iterator = keys.iterator();
+      if (iterator.hasNext()) {
+        partitions.add(iterator.next());
+      }
+      for (String key : keys) {
+        if (POISON.equals(key)) {
+          throw new UnsupportedOperationException("Can't load " + key);
+        }
+      }
+      return super.loadAll(keys);
+    }
+
+    /**
+     * Obtains the number of partitions loaded, or that failed to load.
+     *
+     * @return the number of partitions
+     */
+    int getPartitionCount() {
+      return partitions.size();
+    }
+  }
 }
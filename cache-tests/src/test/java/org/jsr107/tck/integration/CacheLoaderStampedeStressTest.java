@@ -0,0 +1,175 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableConfiguration;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Measures whether, and how well, an implementation coalesces concurrent
+ * read-through loads of the same key, by hammering {@link Cache#get(Object)}
+ * on cold hot keys from many threads with a slow {@link javax.cache.integration.CacheLoader}.
+ * <p>
+ * The specification doesn't require loads to be coalesced, so only the
+ * values returned are asserted, and the duplicate loads are reported.
+ * The load is configured with the <code>org.jsr107.tck.stress.threads</code>,
+ * <code>.keys</code>, <code>.rounds</code> and <code>.latencyMillis</code>
+ * system properties.
+ * Concurrent loads are also bounded by the connections of the
+ * {@link org.jsr107.tck.support.ClientPool} of the {@link CacheLoaderClient}.
+ */
+public class CacheLoaderStampedeStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(CacheLoaderStampedeStressTest.class.getName());
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(CacheLoaderStampedeStressTest.class);
+
+  /**
+   * The {@link CacheManager} for the each test.
+   */
+  private CacheManager cacheManager;
+
+  /**
+   * A {@link CacheLoaderServer} that will delegate {@link Cache} request
+   * onto the in-flight recording {@link javax.cache.integration.CacheLoader}.
+   */
+  private CacheLoaderServer<String, String> cacheLoaderServer;
+
+  /**
+   * The {@link Cache} for the each test.
+   */
+  private Cache<String, String> cache;
+
+  /**
+   * Establish the {@link CacheManager} and {@link Cache} for a test.
+   */
+  @Before
+  public void onBeforeEachTest() throws IOException {
+    cacheLoaderServer = new CacheLoaderServer<String, String>(10000);
+    cacheLoaderServer.open();
+
+    cacheManager = Caching.getCachingProvider().getCacheManager();
+
+    CacheLoaderClient<String, String> cacheLoader =
+        new CacheLoaderClient<>(cacheLoaderServer.getInetAddress(), cacheLoaderServer.getPort());
+
+    MutableConfiguration<String, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(String.class, String.class);
+    configuration.setCacheLoaderFactory(FactoryBuilder.factoryOf(cacheLoader));
+    configuration.setReadThrough(true);
+
+    cacheManager.createCache("cache-loader-stampede-test", configuration);
+    cache = cacheManager.getCache("cache-loader-stampede-test", String.class, String.class);
+  }
+
+  /**
+   * Clean up the {@link CacheManager} and {@link Cache} after a test.
+   */
+  @After
+  public void onAfterEachTest() {
+    cacheManager.destroyCache(cache.getName());
+
+    cacheLoaderServer.close();
+    cacheLoaderServer = null;
+
+    cache = null;
+  }
+
+  /**
+   * Hammers cold hot keys from many threads, each round with new keys, and
+   * reports the duplicate loads.
+   */
+  @Test
+  public void shouldReportCoalescingOfConcurrentLoads() throws Exception {
+    final int threads = Integer.getInteger("org.jsr107.tck.stress.threads", 32);
+    final int keys = Integer.getInteger("org.jsr107.tck.stress.keys", 16);
+    int rounds = Integer.getInteger("org.jsr107.tck.stress.rounds", 10);
+    long latencyMillis = Long.getLong("org.jsr107.tck.stress.latencyMillis", 20);
+
+    InFlightRecordingCacheLoader<String, String> cacheLoader = new InFlightRecordingCacheLoader<>(
+        new LatencyInjectingCacheLoader<>(new RecordingCacheLoader<String>(),
+            LatencyDistribution.fixed(latencyMillis, TimeUnit.MILLISECONDS), 42));
+    cacheLoaderServer.setCacheLoader(cacheLoader);
+
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      for (int round = 0; round < rounds; round++) {
+        final List<String> hotKeys = new ArrayList<>();
+        for (int key = 0; key < keys; key++) {
+          hotKeys.add("round-" + round + "-key-" + key);
+        }
+
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+          futures.add(executorService.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              List<String> order = new ArrayList<>(hotKeys);
+              Collections.shuffle(order);
+
+              barrier.await();
+              for (String key : order) {
+                assertThat(cache.get(key), is(equalTo(key)));
+              }
+              return null;
+            }
+          }));
+        }
+
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    long loads = cacheLoader.getLoadCount();
+    int distinctKeys = cacheLoader.getKeyCount();
+    assertThat(distinctKeys, is(keys * rounds));
+    assertThat(loads, greaterThanOrEqualTo((long) distinctKeys));
+
+    LOG.info(String.format("Stampede of %d threads on %d keys over %d rounds with %dms loads: "
+            + "%d loads of %d keys (%.1f%% coalesced), %d duplicate loads, at most %d concurrent loads of a key",
+        threads, keys, rounds, latencyMillis, loads, distinctKeys,
+        100.0 * distinctKeys / loads, cacheLoader.getDuplicateLoadCount(),
+        cacheLoader.getMaximumConcurrentLoads()));
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Writes and deletes a batch of many more chunks than a connection can buffer
+ * acknowledgements for, with {@link CacheWriterClient#writeAll(Collection)}
+ * and {@link CacheWriterClient#deleteAll(Collection)}, ensuring that the
+ * client and server don't block on each other and reporting the time taken.
+ * <p>
+ * Each chunk holds a single entry.  The load is configured with the
+ * <code>org.jsr107.tck.stress.batchSize</code> system property.
+ */
+public class CacheWriterChunkingStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(CacheWriterChunkingStressTest.class.getName());
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(CacheWriterChunkingStressTest.class);
+
+  /**
+   * Writes and then deletes a batch sent in single-entry chunks.
+   */
+  @Test(timeout = 300000)
+  public void shouldWriteAllAndDeleteAllManyTinyChunks() throws Exception {
+    int batchSize = Integer.getInteger("org.jsr107.tck.stress.batchSize", 1000000);
+
+    RecordingCacheWriter<Integer, String> recordingCacheWriter = new RecordingCacheWriter<>();
+    CacheWriterServer<Integer, String> serverCacheWriter = new CacheWriterServer<>(10000, recordingCacheWriter);
+    serverCacheWriter.open();
+    CacheWriterClient<Integer, String> clientCacheWriter =
+        new CacheWriterClient<>(serverCacheWriter.getInetAddress(), serverCacheWriter.getPort(), 1);
+    try {
+      Collection<Cache.Entry<? extends Integer, ? extends String>> entries = new ArrayList<>(batchSize);
+      Collection<Integer> keys = new ArrayList<>(batchSize);
+      for (int i = 0; i < batchSize; i++) {
+        entries.add(new CacheWriterTest.Entry<>(i, "v"));
+        keys.add(i);
+      }
+
+      long start = System.nanoTime();
+      clientCacheWriter.writeAll(entries);
+      long writeAllNanos = System.nanoTime() - start;
+
+      assertThat(entries.isEmpty(), is(true));
+      assertThat(recordingCacheWriter.getWriteCount(), is((long) batchSize));
+
+      start = System.nanoTime();
+      clientCacheWriter.deleteAll(keys);
+      long deleteAllNanos = System.nanoTime() - start;
+
+      assertThat(keys.isEmpty(), is(true));
+      assertThat(recordingCacheWriter.getDeleteCount(), is((long) batchSize));
+
+      LOG.info(String.format("Batches of %d single-entry chunks: writeAll took %dms, deleteAll took %dms",
+          batchSize, TimeUnit.NANOSECONDS.toMillis(writeAllNanos), TimeUnit.NANOSECONDS.toMillis(deleteAllNanos)));
+    } finally {
+      clientCacheWriter.close();
+      serverCacheWriter.close();
+    }
+  }
+}
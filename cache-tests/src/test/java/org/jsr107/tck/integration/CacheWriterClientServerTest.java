@@ -10,6 +10,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import javax.cache.Cache;
+import javax.cache.CacheException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -69,6 +75,144 @@ public class CacheWriterClientServerTest {
         serverCacheWriter.close();
     }
 
+    /**
+     * Ensure that writeAll and deleteAll are sent in chunks, each written by
+     * the underlying cache Writer as it arrives.
+     */
+    @Test
+    public void shouldWriteAllAndDeleteAllInChunks() throws Exception {
+        ChunkRecordingCacheWriter<Integer, String> chunkRecordingCacheWriter = new ChunkRecordingCacheWriter<>();
+        CacheWriterServer<Integer, String> serverCacheWriter = new CacheWriterServer<>(10000,
+                                                                   chunkRecordingCacheWriter);
+        serverCacheWriter.open();
+        CacheWriterClient<Integer, String> clientCacheWriter =
+            new CacheWriterClient<>(serverCacheWriter.getInetAddress(), serverCacheWriter.getPort(), 10);
+
+        Collection<Cache.Entry<? extends Integer, ? extends String>> entries = new ArrayList<>();
+        Collection<Integer> keys = new ArrayList<>();
+        for (int i = 1; i <= 95; i++) {
+            entries.add(new Entry<>(i, "value-" + i));
+            keys.add(i);
+        }
+
+        clientCacheWriter.writeAll(entries);
+        Assert.assertThat(entries.isEmpty(), is(true));
+        Assert.assertThat(chunkRecordingCacheWriter.getWriteCount(), is(95L));
+        Assert.assertThat(chunkRecordingCacheWriter.getChunkSizes().size(), is(10));
+        Assert.assertThat(chunkRecordingCacheWriter.getChunkSizes().get(9), is(5));
+        Assert.assertThat(serverCacheWriter.getWriteAllBatches().getCount(), is(1L));
+        Assert.assertThat(serverCacheWriter.getWriteAllBatches().getMaximum(), is(95L));
+        Assert.assertThat(chunkRecordingCacheWriter.getWriteBatches().getCount(), is(10L));
+        Assert.assertThat(chunkRecordingCacheWriter.getWriteBatches().getMaximum(), is(10L));
+
+        clientCacheWriter.deleteAll(keys);
+        Assert.assertThat(keys.isEmpty(), is(true));
+        Assert.assertThat(chunkRecordingCacheWriter.getDeleteCount(), is(95L));
+        Assert.assertThat(chunkRecordingCacheWriter.getChunkSizes().size(), is(20));
+        Assert.assertThat(serverCacheWriter.getDeleteAllBatches().getTotal(), is(95L));
+        Assert.assertThat(chunkRecordingCacheWriter.getDeleteBatches().getCount(), is(10L));
+
+        clientCacheWriter.close();
+        serverCacheWriter.close();
+    }
+
+    /**
+     * Ensure that when a chunk fails, only the entries that were written are
+     * removed from the collection, across the chunks that preceded it.
+     */
+    @Test
+    public void shouldRecordPartialSuccessOfChunks() throws Exception {
+        // fail the 50th write and delete, in the fifth chunk
+        BatchPartialSuccessRecordingClassWriter<Integer, String> partialCacheWriter =
+            new BatchPartialSuccessRecordingClassWriter<>(50, 50);
+        CacheWriterServer<Integer, String> serverCacheWriter = new CacheWriterServer<>(10000,
+                                                                   partialCacheWriter);
+        serverCacheWriter.open();
+        CacheWriterClient<Integer, String> clientCacheWriter =
+            new CacheWriterClient<>(serverCacheWriter.getInetAddress(), serverCacheWriter.getPort(), 10);
+
+        Collection<Cache.Entry<? extends Integer, ? extends String>> entries = new ArrayList<>();
+        Collection<Integer> keys = new ArrayList<>();
+        for (int i = 1; i <= 95; i++) {
+            entries.add(new Entry<>(i, "value-" + i));
+            keys.add(i);
+        }
+
+        try {
+            clientCacheWriter.writeAll(entries);
+            fail("A CacheException should have been thrown");
+        } catch (CacheException e) {
+            // expected
+        }
+        Set<Integer> notWrittenKeys = new HashSet<>();
+        for (Cache.Entry<? extends Integer, ? extends String> entry : entries) {
+            notWrittenKeys.add(entry.getKey());
+        }
+        Assert.assertThat(notWrittenKeys.size(), is(46));
+        Assert.assertThat(partialCacheWriter.getWriteCount(), is(49L));
+        for (int i = 1; i <= 95; i++) {
+            // entries remain exactly when not written
+            Assert.assertThat(partialCacheWriter.hasWritten(i), is(!notWrittenKeys.contains(i)));
+        }
+        assertFailedInFifthChunk(notWrittenKeys);
+
+        try {
+            clientCacheWriter.deleteAll(keys);
+            fail("A CacheException should have been thrown");
+        } catch (CacheException e) {
+            // expected
+        }
+        Assert.assertThat(keys.size(), is(46));
+        Assert.assertThat(partialCacheWriter.getDeleteCount(), is(49L));
+        assertFailedInFifthChunk(new HashSet<>(keys));
+
+        clientCacheWriter.close();
+        serverCacheWriter.close();
+    }
+
+    /**
+     * Asserts that the chunks preceding the fifth chunk of ten succeeded, and
+     * that those following it weren't attempted.
+     *
+     * @param remainingKeys the keys remaining after the failure
+     */
+    private static void assertFailedInFifthChunk(Set<Integer> remainingKeys) {
+        for (int i = 1; i <= 40; i++) {
+            Assert.assertThat(remainingKeys.contains(i), is(false));
+        }
+        for (int i = 51; i <= 95; i++) {
+            Assert.assertThat(remainingKeys.contains(i), is(true));
+        }
+    }
+
+    /**
+     * A {@link RecordingCacheWriter} that records the size of each batch
+     * it is asked to write or delete.
+     */
+    private static class ChunkRecordingCacheWriter<K, V> extends RecordingCacheWriter<K, V> {
+        private final List<Integer> chunkSizes = new ArrayList<>();
+
+        @Override
+        public void writeAll(Collection<Cache.Entry<? extends K, ? extends V>> entries) {
+            recordChunk(entries.size());
+            super.writeAll(entries);
+        }
+
+        @Override
+        public void deleteAll(Collection<?> entries) {
+            recordChunk(entries.size());
+            super.deleteAll(entries);
+        }
+
+        private synchronized void recordChunk(int size) {
+            chunkSizes.add(size);
+        }
+
+        public synchronized List<Integer> getChunkSizes() {
+            return new ArrayList<>(chunkSizes);
+        }
+    }
+
     private static class Entry<K, V> implements Cache.Entry<K, V> {
         private K key;
         private V value;
@@ -0,0 +1,133 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.integration.DiskBackedCacheLoaderWriter.SyncPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.cache.Cache;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link DiskBackedCacheLoaderWriter}.
+ */
+public class DiskBackedCacheLoaderWriterTest {
+
+  /**
+   * The folder of the stores of each test.
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Ensure that entries written can be loaded until they are deleted.
+   */
+  @Test
+  public void shouldLoadWhatWasWritten() throws Exception {
+    try (DiskBackedCacheLoaderWriter<Long, String> store =
+             new DiskBackedCacheLoaderWriter<>(folder.newFolder(), SyncPolicy.NEVER)) {
+      store.write(new CacheWriterTest.Entry<>(1L, "one"));
+      store.write(new CacheWriterTest.Entry<>(1L, "uno"));
+
+      Collection<Cache.Entry<? extends Long, ? extends String>> entries = new ArrayList<>();
+      entries.add(new CacheWriterTest.Entry<>(2L, "two"));
+      entries.add(new CacheWriterTest.Entry<>(3L, "three"));
+      store.writeAll(entries);
+      assertThat(entries.isEmpty(), is(true));
+
+      assertThat(store.load(1L), is("uno"));
+      assertThat(store.load(4L), is(nullValue()));
+      Map<Long, String> loaded = store.loadAll(Arrays.asList(1L, 2L, 3L, 4L));
+      assertThat(loaded.size(), is(3));
+      assertThat(loaded.get(3L), is("three"));
+
+      store.delete(1L);
+      store.deleteAll(new HashSet<Object>(Arrays.asList(2L, 4L)));
+      assertThat(store.load(1L), is(nullValue()));
+      assertThat(store.load(2L), is(nullValue()));
+      assertThat(store.load(3L), is("three"));
+      assertThat(store.getKeyCount(), is(4));
+    }
+  }
+
+  /**
+   * Ensure that a reopened store recovers the entries of its log, discarding
+   * a partially written record.
+   */
+  @Test
+  public void shouldRecoverFromTheLog() throws Exception {
+    File directory = folder.newFolder();
+    long logSize;
+    try (DiskBackedCacheLoaderWriter<Integer, String> store =
+             new DiskBackedCacheLoaderWriter<>(directory, SyncPolicy.PER_CALL)) {
+      for (int i = 0; i < 5000; i++) {
+        store.write(new CacheWriterTest.Entry<>(i, "value-" + i));
+      }
+      for (int i = 0; i < 5000; i += 2) {
+        store.delete(i);
+      }
+      logSize = store.getLogSize();
+    }
+
+    try (FileOutputStream log = new FileOutputStream(new File(directory, DiskBackedCacheLoaderWriter.LOG_FILE), true)) {
+      log.write(new byte[] {0, 0, 0, 42, 0, 0, 0, 42, 1, 2, 3});
+    }
+
+    try (DiskBackedCacheLoaderWriter<Integer, String> store =
+             new DiskBackedCacheLoaderWriter<>(directory, SyncPolicy.PER_CALL)) {
+      assertThat(store.getLogSize(), is(logSize));
+      assertThat(store.getKeyCount(), is(5000));
+      assertThat(store.load(4242), is(nullValue()));
+      assertThat(store.load(4243), is("value-4243"));
+
+      store.write(new CacheWriterTest.Entry<>(4242, "again"));
+      assertThat(store.load(4242), is("again"));
+    }
+  }
+
+  /**
+   * Ensure that the log is forced according to the {@link SyncPolicy}.
+   */
+  @Test
+  public void shouldSyncAccordingToPolicy() throws Exception {
+    assertThat(syncsToWriteTenEntries(SyncPolicy.NEVER), is(0L));
+    assertThat(syncsToWriteTenEntries(SyncPolicy.PER_CALL), is(1L));
+    assertThat(syncsToWriteTenEntries(SyncPolicy.PER_RECORD), is(10L));
+  }
+
+  /**
+   * Writes ten entries in a batch to a new store.
+   *
+   * @param syncPolicy the {@link SyncPolicy} of the store
+   * @return the number of times the log was forced
+   */
+  private long syncsToWriteTenEntries(SyncPolicy syncPolicy) throws Exception {
+    try (DiskBackedCacheLoaderWriter<Integer, Integer> store =
+             new DiskBackedCacheLoaderWriter<>(folder.newFolder(), syncPolicy)) {
+      List<Cache.Entry<? extends Integer, ? extends Integer>> entries = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        entries.add(new CacheWriterTest.Entry<>(i, i));
+      }
+      store.writeAll(entries);
+      assertThat(store.load(7), is(7));
+      return store.getSyncLatencies().getCount();
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.integration.DiskBackedCacheLoaderWriter.SyncPolicy;
+import org.jsr107.tck.support.LatencyHistogram;
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableConfiguration;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Measures the throughput and latency of read-through and write-through
+ * against the {@link DiskBackedCacheLoaderWriter}, for each of its
+ * {@link SyncPolicy}s, with individual and batched writes.
+ * <p>
+ * The load is configured with the <code>org.jsr107.tck.stress.entries</code>
+ * and <code>.batchSize</code> system properties.  The store is created in a
+ * temporary folder, so run with <code>java.io.tmpdir</code> on the disk to be
+ * measured.
+ */
+public class DiskBackedStoreStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(DiskBackedStoreStressTest.class.getName());
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(DiskBackedStoreStressTest.class);
+
+  /**
+   * The folder of the stores.
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The {@link CacheManager} for the each test.
+   */
+  private CacheManager cacheManager;
+
+  /**
+   * The {@link CacheLoaderServer} delegating to the store.
+   */
+  private CacheLoaderServer<Integer, String> cacheLoaderServer;
+
+  /**
+   * The {@link CacheWriterServer} delegating to the store.
+   */
+  private CacheWriterServer<Integer, String> cacheWriterServer;
+
+  /**
+   * The {@link Cache} for the each test.
+   */
+  private Cache<Integer, String> cache;
+
+  /**
+   * Establish a read-through and write-through {@link Cache} for a test.
+   */
+  @Before
+  public void onBeforeEachTest() throws IOException {
+    cacheLoaderServer = new CacheLoaderServer<Integer, String>(10000);
+    cacheLoaderServer.open();
+
+    cacheWriterServer = new CacheWriterServer<Integer, String>(10001, null);
+    cacheWriterServer.open();
+
+    cacheManager = Caching.getCachingProvider().getCacheManager();
+
+    CacheLoaderClient<Integer, String> cacheLoader =
+        new CacheLoaderClient<>(cacheLoaderServer.getInetAddress(), cacheLoaderServer.getPort());
+    CacheWriterClient<Integer, String> cacheWriter =
+        new CacheWriterClient<>(cacheWriterServer.getInetAddress(), cacheWriterServer.getPort());
+
+    MutableConfiguration<Integer, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(Integer.class, String.class);
+    configuration.setCacheLoaderFactory(FactoryBuilder.factoryOf(cacheLoader));
+    configuration.setReadThrough(true);
+    configuration.setCacheWriterFactory(FactoryBuilder.factoryOf(cacheWriter));
+    configuration.setWriteThrough(true);
+
+    cacheManager.createCache("disk-backed-store-test", configuration);
+    cache = cacheManager.getCache("disk-backed-store-test", Integer.class, String.class);
+  }
+
+  /**
+   * Clean up the {@link CacheManager} and {@link Cache} after a test.
+   */
+  @After
+  public void onAfterEachTest() {
+    cacheManager.destroyCache(cache.getName());
+
+    cacheLoaderServer.close();
+    cacheLoaderServer = null;
+
+    cacheWriterServer.close();
+    cacheWriterServer = null;
+
+    cache = null;
+  }
+
+  /**
+   * Writes through and reads through a new store for each {@link SyncPolicy},
+   * reporting throughput and latency percentiles.
+   */
+  @Test
+  public void shouldReportDiskBackedThroughputAndLatency() throws Exception {
+    int entries = Integer.getInteger("org.jsr107.tck.stress.entries", 10000);
+    int batchSize = Integer.getInteger("org.jsr107.tck.stress.batchSize", 100);
+
+    for (SyncPolicy syncPolicy : SyncPolicy.values()) {
+      try (DiskBackedCacheLoaderWriter<Integer, String> store =
+               new DiskBackedCacheLoaderWriter<>(folder.newFolder(), syncPolicy)) {
+        cacheLoaderServer.setCacheLoader(store);
+        cacheWriterServer.setCacheWriter(store);
+
+        LatencyHistogram puts = new LatencyHistogram();
+        long start = System.nanoTime();
+        for (int i = 0; i < entries; i++) {
+          long started = System.nanoTime();
+          cache.put(i, "value-" + i);
+          puts.record(System.nanoTime() - started);
+        }
+        report(syncPolicy, "put", puts, entries, System.nanoTime() - start);
+
+        LatencyHistogram putAlls = new LatencyHistogram();
+        start = System.nanoTime();
+        for (int i = entries; i < 2 * entries; i += batchSize) {
+          Map<Integer, String> batch = new HashMap<>();
+          for (int j = i; j < Math.min(i + batchSize, 2 * entries); j++) {
+            batch.put(j, "value-" + j);
+          }
+          long started = System.nanoTime();
+          cache.putAll(batch);
+          putAlls.record(System.nanoTime() - started);
+        }
+        report(syncPolicy, "putAll of " + batchSize, putAlls, entries, System.nanoTime() - start);
+
+        cache.clear();
+
+        LatencyHistogram gets = new LatencyHistogram();
+        start = System.nanoTime();
+        for (int i = 0; i < 2 * entries; i++) {
+          long started = System.nanoTime();
+          assertThat(cache.get(i), is("value-" + i));
+          gets.record(System.nanoTime() - started);
+        }
+        report(syncPolicy, "read-through get", gets, 2 * entries, System.nanoTime() - start);
+
+        assertThat(store.getKeyCount(), is(2 * entries));
+        LOG.info(String.format("%s: log of %d bytes, %d syncs{%s}",
+            syncPolicy, store.getLogSize(), store.getSyncLatencies().getCount(), store.getSyncLatencies()));
+
+        cache.clear();
+      }
+    }
+  }
+
+  /**
+   * Reports the throughput and latency of a workload.
+   *
+   * @param syncPolicy the {@link SyncPolicy} of the store
+   * @param workload   the name of the workload
+   * @param latencies  the {@link LatencyHistogram} of the calls
+   * @param entries    the number of entries written or read
+   * @param nanos      the time taken by the workload
+   */
+  private static void report(SyncPolicy syncPolicy, String workload, LatencyHistogram latencies,
+                             int entries, long nanos) {
+    LOG.info(String.format("%s %s: %.0f entries/s, p50=%dus, p99=%dus, max=%dus",
+        syncPolicy, workload, entries * (double) TimeUnit.SECONDS.toNanos(1) / nanos,
+        latencies.getPercentile(50, TimeUnit.MICROSECONDS),
+        latencies.getPercentile(99, TimeUnit.MICROSECONDS),
+        latencies.getMaximum(TimeUnit.MICROSECONDS)));
+  }
+}
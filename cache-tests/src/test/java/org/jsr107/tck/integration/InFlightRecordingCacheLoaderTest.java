@@ -0,0 +1,92 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link InFlightRecordingCacheLoader}.
+ */
+public class InFlightRecordingCacheLoaderTest {
+
+  /**
+   * Ensure that sequential loads of a key aren't duplicates.
+   */
+  @Test
+  public void shouldNotRecordSequentialLoadsAsDuplicates() {
+    InFlightRecordingCacheLoader<String, String> cacheLoader =
+        new InFlightRecordingCacheLoader<>(new RecordingCacheLoader<String>());
+
+    cacheLoader.load("hello");
+    cacheLoader.load("hello");
+    cacheLoader.loadAll(Arrays.asList("hello", "gudday"));
+
+    assertThat(cacheLoader.getLoadCount("hello"), is(3));
+    assertThat(cacheLoader.getLoadCount(), is(4L));
+    assertThat(cacheLoader.getKeyCount(), is(2));
+    assertThat(cacheLoader.getDuplicateLoadCount(), is(0L));
+    assertThat(cacheLoader.getMaximumConcurrentLoads(), is(1));
+  }
+
+  /**
+   * Ensure that concurrent loads of a key are recorded as duplicates.
+   */
+  @Test
+  public void shouldRecordConcurrentLoadsAsDuplicates() throws Exception {
+    final CountDownLatch loading = new CountDownLatch(3);
+    final CountDownLatch release = new CountDownLatch(1);
+    final InFlightRecordingCacheLoader<String, String> cacheLoader =
+        new InFlightRecordingCacheLoader<>(new RecordingCacheLoader<String>() {
+          @Override
+          public String load(String key) {
+            loading.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return super.load(key);
+          }
+        });
+
+    ExecutorService executorService = Executors.newFixedThreadPool(3);
+    try {
+      Future<?>[] futures = new Future<?>[3];
+      for (int i = 0; i < futures.length; i++) {
+        futures[i] = executorService.submit(new Runnable() {
+          @Override
+          public void run() {
+            cacheLoader.load("hello");
+          }
+        });
+      }
+
+      assertThat(loading.await(10, TimeUnit.SECONDS), is(true));
+      release.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertThat(cacheLoader.getLoadCount("hello"), is(3));
+    assertThat(cacheLoader.getDuplicateLoadCount(), is(2L));
+    assertThat(cacheLoader.getMaximumConcurrentLoads("hello"), is(3));
+    assertThat(cacheLoader.getMaximumConcurrentLoads(), is(3));
+  }
+}
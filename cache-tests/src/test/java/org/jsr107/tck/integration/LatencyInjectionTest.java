@@ -0,0 +1,138 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheLoaderException;
+import javax.cache.integration.CacheWriterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Functional Tests for the {@link LatencyDistribution}s, the
+ * {@link LatencyInjectingCacheLoader} and the {@link LatencyInjectingCacheWriter}.
+ */
+public class LatencyInjectionTest {
+
+  /**
+   * Ensure that the same seed draws the same latencies.
+   */
+  @Test
+  public void shouldDrawReproducibleLatencies() {
+    LatencyDistribution distribution = LatencyDistribution.bimodal(
+        LatencyDistribution.exponential(1, TimeUnit.MILLISECONDS),
+        LatencyDistribution.uniform(50, 100, TimeUnit.MILLISECONDS), 0.01);
+
+    Random random1 = new Random(42);
+    Random random2 = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(distribution.nextNanos(random1), Matchers.is(distribution.nextNanos(random2)));
+    }
+  }
+
+  /**
+   * Ensure that each {@link LatencyDistribution} draws latencies of the expected shape.
+   */
+  @Test
+  public void shouldDrawDistributedLatencies() {
+    Random random = new Random(42);
+
+    LatencyDistribution fixed = LatencyDistribution.fixed(3, TimeUnit.MILLISECONDS);
+    assertThat(fixed.nextNanos(random), Matchers.is(TimeUnit.MILLISECONDS.toNanos(3)));
+
+    LatencyDistribution uniform = LatencyDistribution.uniform(1, 2, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 1000; i++) {
+      long nanos = uniform.nextNanos(random);
+      assertThat(nanos, Matchers.greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(1)));
+      assertThat(nanos, Matchers.lessThan(TimeUnit.MILLISECONDS.toNanos(2)));
+    }
+
+    LatencyDistribution exponential = LatencyDistribution.exponential(1, TimeUnit.MILLISECONDS);
+    long total = 0;
+    for (int i = 0; i < 10000; i++) {
+      total += exponential.nextNanos(random);
+    }
+    assertThat(total / 10000, Matchers.greaterThan(TimeUnit.MICROSECONDS.toNanos(900)));
+    assertThat(total / 10000, Matchers.lessThan(TimeUnit.MICROSECONDS.toNanos(1100)));
+
+    LatencyDistribution bimodal = LatencyDistribution.bimodal(
+        LatencyDistribution.fixed(0, TimeUnit.MILLISECONDS),
+        LatencyDistribution.fixed(1, TimeUnit.SECONDS), 0.1);
+    int spikes = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (bimodal.nextNanos(random) > 0) {
+        spikes++;
+      }
+    }
+    assertThat(spikes, Matchers.greaterThan(800));
+    assertThat(spikes, Matchers.lessThan(1200));
+  }
+
+  /**
+   * Ensure that a {@link LatencyInjectingCacheLoader} delays loads and fails
+   * at the configured rate, without delegating failed loads.
+   */
+  @Test
+  public void shouldInjectLatencyAndFailuresIntoLoads() {
+    RecordingCacheLoader<String> recordingCacheLoader = new RecordingCacheLoader<>();
+    LatencyInjectingCacheLoader<String, String> cacheLoader = new LatencyInjectingCacheLoader<>(
+        recordingCacheLoader, LatencyDistribution.fixed(2, TimeUnit.MILLISECONDS), 42);
+
+    long start = System.nanoTime();
+    assertThat(cacheLoader.load("hello"), Matchers.is("hello"));
+    assertThat(System.nanoTime() - start, Matchers.greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(2)));
+    assertThat(cacheLoader.getInjectedLatencies().getCount(), Matchers.is(1L));
+
+    LatencyInjectingCacheLoader<String, String> failingCacheLoader = new LatencyInjectingCacheLoader<>(
+        recordingCacheLoader, LatencyDistribution.fixed(0, TimeUnit.MILLISECONDS), 1.0, 42);
+    try {
+      failingCacheLoader.load("gudday");
+      fail("A CacheLoaderException should have been thrown");
+    } catch (CacheLoaderException e) {
+      // expected
+    }
+    assertThat(failingCacheLoader.getInjectedFailureCount(), Matchers.is(1L));
+    assertThat(recordingCacheLoader.hasLoaded("gudday"), Matchers.is(false));
+  }
+
+  /**
+   * Ensure that a {@link LatencyInjectingCacheWriter} fails at approximately
+   * the configured rate, leaving the entries of failed batches unwritten.
+   */
+  @Test
+  public void shouldInjectFailuresIntoWrites() {
+    RecordingCacheWriter<Integer, String> recordingCacheWriter = new RecordingCacheWriter<>();
+    LatencyInjectingCacheWriter<Integer, String> cacheWriter = new LatencyInjectingCacheWriter<>(
+        recordingCacheWriter, LatencyDistribution.fixed(0, TimeUnit.MILLISECONDS), 0.25, 42);
+
+    int failures = 0;
+    for (int i = 0; i < 1000; i++) {
+      Collection<Cache.Entry<? extends Integer, ? extends String>> entries = new ArrayList<>();
+      entries.add(new CacheWriterTest.Entry<>(i, "value-" + i));
+      try {
+        cacheWriter.writeAll(entries);
+        assertThat(recordingCacheWriter.hasWritten(i), Matchers.is(true));
+      } catch (CacheWriterException e) {
+        failures++;
+        assertThat(entries.size(), Matchers.is(1));
+        assertThat(recordingCacheWriter.hasWritten(i), Matchers.is(false));
+      }
+    }
+
+    assertThat(cacheWriter.getInjectedFailureCount(), Matchers.is((long) failures));
+    assertThat(failures, Matchers.greaterThan(200));
+    assertThat(failures, Matchers.lessThan(300));
+  }
+}
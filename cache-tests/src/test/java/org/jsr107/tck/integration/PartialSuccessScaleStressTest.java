@@ -0,0 +1,145 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Measures the end to end cost of partially successful
+ * {@link CacheWriterClient#writeAll(java.util.Collection)} and
+ * {@link CacheWriterClient#deleteAll(java.util.Collection)} calls of large
+ * batches, including reconciling the entries, or keys, that weren't written
+ * with the collection passed in, using a
+ * {@link BatchPartialSuccessRecordingClassWriter} that fails part way
+ * through each batch.
+ * <p>
+ * The batches are {@link ArrayList}s, for which removing the written entries
+ * one at a time would be quadratic.  The load is configured with the
+ * <code>org.jsr107.tck.stress.batchSize</code> and <code>.failureFraction</code>
+ * system properties, the latter being the fraction of each batch left
+ * unwritten.
+ */
+public class PartialSuccessScaleStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(PartialSuccessScaleStressTest.class.getName());
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(PartialSuccessScaleStressTest.class);
+
+  /**
+   * The {@link CacheWriterServer} delegating to the failing writer.
+   */
+  private CacheWriterServer<Integer, String> cacheWriterServer;
+
+  /**
+   * The {@link CacheWriterClient} of the {@link #cacheWriterServer}.
+   */
+  private CacheWriterClient<Integer, String> cacheWriterClient;
+
+  /**
+   * Establish the {@link CacheWriterServer} and {@link CacheWriterClient} for a test.
+   */
+  @Before
+  public void onBeforeEachTest() throws IOException {
+    cacheWriterServer = new CacheWriterServer<Integer, String>(10000, null);
+    cacheWriterServer.open();
+
+    cacheWriterClient = new CacheWriterClient<>(cacheWriterServer.getInetAddress(), cacheWriterServer.getPort());
+  }
+
+  /**
+   * Clean up the {@link CacheWriterClient} and {@link CacheWriterServer} after a test.
+   */
+  @After
+  public void onAfterEachTest() throws IOException {
+    cacheWriterClient.close();
+    cacheWriterClient = null;
+
+    cacheWriterServer.close();
+    cacheWriterServer = null;
+  }
+
+  /**
+   * Writes and then deletes a large batch that fails part way through,
+   * reporting the time taken and asserting that exactly the entries, and
+   * keys, that weren't written remain.
+   */
+  @Test
+  public void shouldReconcilePartialSuccessOfLargeBatches() {
+    int batchSize = Integer.getInteger("org.jsr107.tck.stress.batchSize", 100000);
+    double failureFraction = Double.parseDouble(System.getProperty("org.jsr107.tck.stress.failureFraction", "0.5"));
+    int unwritten = Math.max(1, (int) Math.round(failureFraction * batchSize));
+    int written = batchSize - unwritten;
+
+    BatchPartialSuccessRecordingClassWriter<Integer, String> cacheWriter =
+        new BatchPartialSuccessRecordingClassWriter<>(written + 1, written + 1);
+    cacheWriterServer.setCacheWriter(cacheWriter);
+
+    List<Cache.Entry<? extends Integer, ? extends String>> entries = new ArrayList<>(batchSize);
+    List<Integer> keys = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      entries.add(new CacheWriterTest.Entry<>(i, "value-" + i));
+      keys.add(i);
+    }
+
+    long start = System.nanoTime();
+    try {
+      cacheWriterClient.writeAll(entries);
+      fail("A CacheException should have been thrown");
+    } catch (CacheException e) {
+      // expected
+    }
+    long writeAllNanos = System.nanoTime() - start;
+
+    assertThat(entries.size(), is(unwritten));
+    assertThat(cacheWriter.getWriteCount(), is((long) written));
+    for (Cache.Entry<? extends Integer, ? extends String> entry : entries) {
+      assertThat(cacheWriter.hasWritten(entry.getKey()), is(false));
+    }
+
+    start = System.nanoTime();
+    try {
+      cacheWriterClient.deleteAll(keys);
+      fail("A CacheException should have been thrown");
+    } catch (CacheException e) {
+      // expected
+    }
+    long deleteAllNanos = System.nanoTime() - start;
+
+    assertThat(keys.size(), is(unwritten));
+    assertThat(cacheWriter.getDeleteCount(), is((long) written));
+    for (Integer key : keys) {
+      assertThat(cacheWriter.hasDeleted(key), is(false));
+    }
+
+    LOG.info(String.format("Batches of %d with %.1f%% left unwritten: writeAll took %dms, deleteAll took %dms",
+        batchSize, 100.0 * unwritten / batchSize,
+        TimeUnit.NANOSECONDS.toMillis(writeAllNanos), TimeUnit.NANOSECONDS.toMillis(deleteAllNanos)));
+  }
+}
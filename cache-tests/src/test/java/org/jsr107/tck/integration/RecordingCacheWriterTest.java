@@ -0,0 +1,69 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.junit.Test;
+
+import javax.cache.Cache;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Functional Tests for the {@link RecordingCacheWriter}.
+ */
+public class RecordingCacheWriterTest {
+
+  /**
+   * Ensure that a compact {@link RecordingCacheWriter} records counts and
+   * batches, but not keys or values.
+   */
+  @Test
+  public void shouldRecordCompactly() {
+    RecordingCacheWriter<Integer, String> cacheWriter = new RecordingCacheWriter<>(true);
+    assertThat(cacheWriter.isCompact(), is(true));
+
+    Collection<Cache.Entry<? extends Integer, ? extends String>> entries = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      entries.add(new CacheWriterTest.Entry<>(i, "value-" + i));
+    }
+    cacheWriter.writeAll(entries);
+    cacheWriter.delete(3);
+
+    assertThat(entries.isEmpty(), is(true));
+    assertThat(cacheWriter.getWriteCount(), is(10L));
+    assertThat(cacheWriter.getWriteBatchCount(), is(1L));
+    assertThat(cacheWriter.getMaximumWriteBatchSize(), is(10L));
+    assertThat(cacheWriter.getDeleteCount(), is(1L));
+    try {
+      cacheWriter.get(2);
+      fail("An IllegalStateException should have been thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      cacheWriter.hasWritten(2);
+      fail("An IllegalStateException should have been thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      cacheWriter.hasDeleted(3);
+      fail("An IllegalStateException should have been thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    cacheWriter.clear();
+    assertThat(cacheWriter.getWriteCount(), is(0L));
+    assertThat(cacheWriter.getWriteBatchCount(), is(0L));
+    assertThat(cacheWriter.getDeleteCount(), is(0L));
+  }
+}
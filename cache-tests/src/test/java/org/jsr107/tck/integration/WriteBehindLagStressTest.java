@@ -0,0 +1,177 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.jsr107.tck.testutil.ExcludeListExcluder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableConfiguration;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Drives sustained put and remove traffic at a {@link Cache} that writes to a
+ * {@link WriteBehindRecordingCacheWriter}, reporting how far writes lag
+ * behind mutations, how many mutations are coalesced and whether the writes
+ * of each key arrive in order.
+ * <p>
+ * The specification only defines write-through, for which the lag is the
+ * cost of the write, but an implementation that writes behind when
+ * configured to do so by its own means is measured in the same way.  That
+ * every mutation is eventually written, in order and within the maximum lag,
+ * is asserted.  The load is configured with the
+ * <code>org.jsr107.tck.stress.threads</code>, <code>.keys</code>,
+ * <code>.durationMillis</code> and <code>.maxLagMillis</code> system properties.
+ */
+public class WriteBehindLagStressTest {
+
+  /**
+   * Logger
+   */
+  private static final Logger LOG = Logger.getLogger(WriteBehindLagStressTest.class.getName());
+
+  /**
+   * Rule used to exclude tests
+   */
+  @Rule
+  public ExcludeListExcluder rule = new ExcludeListExcluder(WriteBehindLagStressTest.class);
+
+  /**
+   * The {@link CacheManager} for the each test.
+   */
+  private CacheManager cacheManager;
+
+  /**
+   * The {@link CacheWriterServer} delegating to the recording writer.
+   */
+  private CacheWriterServer<Integer, String> cacheWriterServer;
+
+  /**
+   * The {@link Cache} for the each test.
+   */
+  private Cache<Integer, String> cache;
+
+  /**
+   * Establish a write-through {@link Cache} for a test.
+   */
+  @Before
+  public void onBeforeEachTest() throws IOException {
+    cacheWriterServer = new CacheWriterServer<Integer, String>(10000, null);
+    cacheWriterServer.open();
+
+    cacheManager = Caching.getCachingProvider().getCacheManager();
+
+    CacheWriterClient<Integer, String> cacheWriter =
+        new CacheWriterClient<>(cacheWriterServer.getInetAddress(), cacheWriterServer.getPort());
+
+    MutableConfiguration<Integer, String> configuration = new MutableConfiguration<>();
+    configuration.setTypes(Integer.class, String.class);
+    configuration.setCacheWriterFactory(FactoryBuilder.factoryOf(cacheWriter));
+    configuration.setWriteThrough(true);
+
+    cacheManager.createCache("write-behind-lag-test", configuration);
+    cache = cacheManager.getCache("write-behind-lag-test", Integer.class, String.class);
+  }
+
+  /**
+   * Clean up the {@link CacheManager} and {@link Cache} after a test.
+   */
+  @After
+  public void onAfterEachTest() {
+    cacheManager.destroyCache(cache.getName());
+
+    cacheWriterServer.close();
+    cacheWriterServer = null;
+
+    cache = null;
+  }
+
+  /**
+   * Puts and removes keys from many threads, each thread owning its own
+   * keys, then waits for every mutation to be written and reports the lag.
+   */
+  @Test
+  public void shouldWriteEveryMutationInOrderWithBoundedLag() throws Exception {
+    final int threads = Integer.getInteger("org.jsr107.tck.stress.threads", 8);
+    final int keys = Integer.getInteger("org.jsr107.tck.stress.keys", 64);
+    long durationMillis = Long.getLong("org.jsr107.tck.stress.durationMillis", 2000);
+    long maxLagMillis = Long.getLong("org.jsr107.tck.stress.maxLagMillis", 5000);
+
+    final WriteBehindRecordingCacheWriter<Integer, String> cacheWriter = new WriteBehindRecordingCacheWriter<>();
+    cacheWriterServer.setCacheWriter(cacheWriter);
+
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Long>> futures = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        final int owner = thread;
+        futures.add(executorService.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            Random random = new Random(owner);
+            boolean[] present = new boolean[keys];
+            long mutations = 0;
+            while (System.nanoTime() - deadline < 0) {
+              int index = random.nextInt(keys);
+              int key = owner * keys + index;
+              if (present[index] && random.nextInt(4) == 0) {
+                cacheWriter.mutating(key, null);
+                cache.remove(key);
+                present[index] = false;
+              } else {
+                String value = "value-" + mutations;
+                cacheWriter.mutating(key, value);
+                cache.put(key, value);
+                present[index] = true;
+              }
+              mutations++;
+            }
+            return mutations;
+          }
+        }));
+      }
+
+      long mutations = 0;
+      for (Future<Long> future : futures) {
+        mutations += future.get();
+      }
+      assertThat(cacheWriter.getMutationCount(), is(mutations));
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    boolean written = cacheWriter.awaitWritten(maxLagMillis, TimeUnit.MILLISECONDS);
+
+    LOG.info(String.format("%d threads mutating %d keys each for %dms: %.0f mutations/s, %s",
+        threads, keys, durationMillis,
+        cacheWriter.getMutationCount() * 1000.0 / durationMillis, cacheWriter));
+
+    assertThat(written, is(true));
+    assertThat(cacheWriter.getOrderingViolationCount(), is(0L));
+    assertThat(cacheWriter.getLags().getMaximum(TimeUnit.MILLISECONDS), is(lessThanOrEqualTo(maxLagMillis)));
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.integration;
+
+import org.junit.Test;
+
+import javax.cache.Cache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link WriteBehindRecordingCacheWriter}.
+ */
+public class WriteBehindRecordingCacheWriterTest {
+
+  /**
+   * Ensure that writes and deletes received in order are matched to their
+   * mutations, with none coalesced.
+   */
+  @Test
+  public void shouldMatchWritesInOrder() throws Exception {
+    WriteBehindRecordingCacheWriter<Integer, String> cacheWriter = new WriteBehindRecordingCacheWriter<>();
+
+    cacheWriter.mutating(1, "one");
+    cacheWriter.write(new CacheWriterTest.Entry<>(1, "one"));
+    cacheWriter.mutating(1, null);
+    cacheWriter.delete(1);
+    cacheWriter.mutating(2, "two");
+    assertThat(cacheWriter.getPendingKeyCount(), is(1L));
+    assertThat(cacheWriter.awaitWritten(0, TimeUnit.MILLISECONDS), is(false));
+
+    Collection<Cache.Entry<? extends Integer, ? extends String>> entries = new ArrayList<>();
+    entries.add(new CacheWriterTest.Entry<>(2, "two"));
+    cacheWriter.writeAll(entries);
+
+    assertThat(cacheWriter.awaitWritten(0, TimeUnit.MILLISECONDS), is(true));
+    assertThat(cacheWriter.getMutationCount(), is(3L));
+    assertThat(cacheWriter.getOperationCount(), is(3L));
+    assertThat(cacheWriter.getLags().getCount(), is(3L));
+    assertThat(cacheWriter.getCoalescedCount(), is(0L));
+    assertThat(cacheWriter.getCoalescingRatio(), is(1.0));
+    assertThat(cacheWriter.getOrderingViolationCount(), is(0L));
+  }
+
+  /**
+   * Ensure that mutations superseded before being written are coalesced, and
+   * that writes of superseded values are ordering violations.
+   */
+  @Test
+  public void shouldRecordCoalescingAndOrderingViolations() throws Exception {
+    WriteBehindRecordingCacheWriter<Integer, String> cacheWriter = new WriteBehindRecordingCacheWriter<>();
+
+    cacheWriter.mutating(1, "a");
+    cacheWriter.mutating(1, "b");
+    cacheWriter.mutating(1, null);
+    cacheWriter.mutating(2, "c");
+    cacheWriter.mutating(1, "d");
+
+    cacheWriter.write(new CacheWriterTest.Entry<>(1, "d"));
+    cacheWriter.write(new CacheWriterTest.Entry<>(1, "b"));
+    cacheWriter.deleteAll(new ArrayList<>(Arrays.asList(2)));
+    cacheWriter.write(new CacheWriterTest.Entry<>(2, "c"));
+
+    assertThat(cacheWriter.getMutationCount(), is(5L));
+    assertThat(cacheWriter.getOperationCount(), is(4L));
+    assertThat(cacheWriter.getCoalescedCount(), is(3L));
+    assertThat(cacheWriter.getOrderingViolationCount(), is(2L));
+    assertThat(cacheWriter.getPendingKeyCount(), is(0L));
+    assertThat(cacheWriter.getLags().getCount(), is(2L));
+  }
+}
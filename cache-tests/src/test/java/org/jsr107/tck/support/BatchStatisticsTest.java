@@ -0,0 +1,45 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link BatchStatistics}.
+ */
+public class BatchStatisticsTest {
+
+  /**
+   * Ensure that batches are recorded in power of two buckets.
+   */
+  @Test
+  public void shouldRecordBatchSizes() {
+    BatchStatistics statistics = new BatchStatistics();
+    statistics.record(0);
+    statistics.record(1);
+    statistics.record(3);
+    statistics.record(4);
+    statistics.record(100);
+
+    assertThat(statistics.getCount(), Matchers.is(5L));
+    assertThat(statistics.getTotal(), Matchers.is(108L));
+    assertThat(statistics.getMean(), Matchers.closeTo(21.6, 0.001));
+    assertThat(statistics.getMaximum(), Matchers.is(100L));
+    assertThat(statistics.getHistogram(), Matchers.is(new long[] {1, 1, 1, 1, 0, 0, 0, 1}));
+    assertThat(statistics.getPercentile(20), Matchers.is(0L));
+    assertThat(statistics.getPercentile(60), Matchers.is(3L));
+    assertThat(statistics.getPercentile(100), Matchers.is(100L));
+
+    statistics.reset();
+    assertThat(statistics.getCount(), Matchers.is(0L));
+    assertThat(statistics.getHistogram().length, Matchers.is(0));
+    assertThat(statistics.getPercentile(50), Matchers.is(0L));
+  }
+}
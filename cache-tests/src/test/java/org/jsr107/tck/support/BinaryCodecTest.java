@@ -0,0 +1,85 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+
+package org.jsr107.tck.support;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import javax.cache.expiry.Duration;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link BinaryCodec} class.
+ */
+public class BinaryCodecTest {
+
+  /**
+   * Ensure that values of every supported type, and others, survive a round trip.
+   */
+  @Test
+  public void shouldRoundTripValues() throws Exception {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 30000; i++) {
+      builder.append('\u20ac');
+    }
+
+    Object[] values = {null, 42L, -7, "hello", builder.toString(),
+        new Duration(TimeUnit.MINUTES, 5), Duration.ZERO, Arrays.asList(1, 2, 3)};
+
+    Object[] results = roundTrip(new BinaryCodec(), values);
+
+    assertThat(results, Matchers.equalTo(values));
+  }
+
+  /**
+   * Ensure that <code>byte[]</code>s and {@link Duration#ETERNAL} survive a round trip.
+   */
+  @Test
+  public void shouldRoundTripBytesAndEternal() throws Exception {
+    Object[] results = roundTrip(new BinaryCodec(), new byte[] {1, 2, 3}, Duration.ETERNAL);
+
+    assertThat((byte[]) results[0], Matchers.equalTo(new byte[] {1, 2, 3}));
+    assertThat(results[1], Matchers.equalTo((Object) Duration.ETERNAL));
+  }
+
+  /**
+   * Ensure that common keys are encoded more compactly than with Java serialization.
+   */
+  @Test
+  public void shouldBeMoreCompactThanSerialization() throws Exception {
+    assertThat(encode(new BinaryCodec(), 1L, 2L, 3L).length,
+        Matchers.lessThan(encode(new SerializationCodec(), 1L, 2L, 3L).length));
+  }
+
+  private static byte[] encode(Codec codec, Object... values) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    for (Object value : values) {
+      codec.writeObject(oos, value);
+    }
+    oos.close();
+    return bytes.toByteArray();
+  }
+
+  private static Object[] roundTrip(Codec codec, Object... values) throws Exception {
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(encode(codec, values)));
+    Object[] results = new Object[values.length];
+    for (int i = 0; i < values.length; i++) {
+      results[i] = codec.readObject(ois);
+    }
+    return results;
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+
+package org.jsr107.tck.support;
+
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link ClientPool} class.
+ */
+public class ClientPoolTest {
+
+  private Server server;
+
+  @Before
+  public void openServer() throws IOException {
+    server = new Server(10000);
+    server.addOperationHandler(new ClientServerTest.PingPong());
+    server.addOperationHandler(new SlowPingPong());
+    server.addOperationHandler(new HangUpPingPong());
+    server.open();
+  }
+
+  @After
+  public void closeServer() {
+    //fails when the pool left connections open
+    server.close();
+  }
+
+  /**
+   * Ensure that sequential invocations reuse a single connection.
+   */
+  @Test
+  public void shouldReuseIdleConnection() {
+    ClientPool pool = new ClientPool(server.getInetAddress(), server.getPort(), 4, 0);
+    try {
+      for (int i = 0; i < 10; i++) {
+        assertThat(pool.invoke(new ClientServerTest.PingPong()), Matchers.equalTo("pong"));
+      }
+
+      assertThat(pool.getMissCount(), Matchers.is(1L));
+      assertThat(pool.getHitCount(), Matchers.is(9L));
+      assertThat(pool.getWaitCount(), Matchers.is(0L));
+      assertThat(pool.getSize(), Matchers.is(1));
+      assertThat(pool.getIdleCount(), Matchers.is(1));
+    } finally {
+      pool.close();
+    }
+  }
+
+  /**
+   * Ensure that concurrent invocations wait for a connection once the
+   * {@link ClientPool} is exhausted, and never exceed the maximum size.
+   */
+  @Test
+  public void shouldWaitWhenExhausted() throws Exception {
+    final ClientPool pool = new ClientPool(server.getInetAddress(), server.getPort(), 2, 0);
+    ExecutorService executorService = Executors.newFixedThreadPool(6);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (int i = 0; i < 6; i++) {
+        results.add(executorService.submit(new Callable<String>() {
+          @Override
+          public String call() {
+            return pool.invoke(new SlowPingPong());
+          }
+        }));
+      }
+
+      for (Future<String> result : results) {
+        assertThat(result.get(), Matchers.equalTo("pong"));
+      }
+
+      assertThat(pool.getMissCount(), Matchers.is(2L));
+      assertThat(pool.getHitCount(), Matchers.is(4L));
+      assertThat(pool.getWaitCount(), Matchers.greaterThan(0L));
+      assertThat(pool.getWaitTime(TimeUnit.NANOSECONDS), Matchers.greaterThan(0L));
+      assertThat(pool.getSize(), Matchers.is(2));
+    } finally {
+      executorService.shutdown();
+      pool.close();
+    }
+  }
+
+  /**
+   * Ensure that connections idle for longer than the idle timeout are closed.
+   */
+  @Test
+  public void shouldCloseExpiredConnections() throws Exception {
+    ClientPool pool = new ClientPool(server.getInetAddress(), server.getPort(), 4, 1);
+    try {
+      pool.invoke(new ClientServerTest.PingPong());
+      Thread.sleep(20);
+      pool.invoke(new ClientServerTest.PingPong());
+
+      assertThat(pool.getMissCount(), Matchers.is(2L));
+      assertThat(pool.getHitCount(), Matchers.is(0L));
+      assertThat(pool.getSize(), Matchers.is(1));
+    } finally {
+      pool.close();
+    }
+  }
+
+  /**
+   * Ensure that expiring a connection the {@link Server} has already dropped
+   * neither fails the invocation that expired it nor loses its place in the
+   * {@link ClientPool}.
+   */
+  @Test
+  public void shouldExpireDroppedConnections() throws Exception {
+    ClientPool pool = new ClientPool(server.getInetAddress(), server.getPort(), 1, 1);
+    try {
+      assertThat(pool.invoke(new HangUpPingPong()), Matchers.equalTo("pong"));
+      Thread.sleep(20);
+
+      assertThat(pool.invoke(new ClientServerTest.PingPong()), Matchers.equalTo("pong"));
+      assertThat(pool.invoke(new ClientServerTest.PingPong()), Matchers.equalTo("pong"));
+
+      assertThat(pool.getMissCount(), Matchers.is(2L));
+      assertThat(pool.getSize(), Matchers.is(1));
+    } finally {
+      pool.close();
+    }
+  }
+
+  /**
+   * A {@link ClientServerTest.PingPong} that keeps the connection busy for a while.
+   */
+  public static class SlowPingPong extends ClientServerTest.PingPong {
+    @Override
+    public String getType() {
+      return "slowpingpong";
+    }
+
+    @Override
+    public void onProcess(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.onProcess(ois, oos);
+    }
+  }
+
+  /**
+   * A {@link ClientServerTest.PingPong} after which the {@link Server} drops
+   * the connection.
+   */
+  public static class HangUpPingPong extends ClientServerTest.PingPong {
+    @Override
+    public String getType() {
+      return "hanguppingpong";
+    }
+
+    @Override
+    public void onProcess(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+      super.onProcess(ois, oos);
+      oos.flush();
+      throw new IOException("Hanging up");
+    }
+  }
+}
@@ -8,13 +8,28 @@
 package org.jsr107.tck.support;
 
 import org.hamcrest.Matchers;
+import org.junit.Assume;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * Functional Tests for the {@link Client} and {@link Server} classes.
@@ -47,10 +62,413 @@ public class ClientServerTest {
     }
   }
 
+  /**
+   * Ensure that many {@link Client}s may concurrently "ping" and receive a
+   * "pong" from a {@link Server} using the {@link Server.Engine#NIO} engine.
+   */
+  @Test
+  public void shouldPingPongUsingSelectorEngine() throws Exception {
+
+    Server server = new Server(10000, Server.Engine.NIO);
+    server.addOperationHandler(new PingPong());
+
+    assertConcurrentPingPong(server);
+  }
+
+  /**
+   * Ensure that many {@link Client}s may concurrently "ping" and receive a
+   * "pong" from a {@link Server} serving connections using virtual threads
+   * (or platform threads when the runtime doesn't support them).
+   */
+  @Test
+  public void shouldPingPongUsingVirtualThreads() throws Exception {
+
+    System.setProperty(Server.VIRTUAL_THREADS_PROPERTY, "true");
+    Server server;
+    try {
+      server = new Server(10000, Server.Engine.SOCKET);
+    } finally {
+      System.clearProperty(Server.VIRTUAL_THREADS_PROPERTY);
+    }
+    server.addOperationHandler(new PingPong());
+
+    assertConcurrentPingPong(server);
+  }
+
+  /**
+   * Ensure that many threads may concurrently "ping" and receive a "pong"
+   * through a single multiplexed {@link Client}.
+   */
+  @Test
+  public void shouldPingPongUsingMultiplexedClient() throws Exception {
+
+    Server server = new Server(10000);
+    server.addOperationHandler(new PingPong());
+    server.open();
+
+    final Client client = new Client(server.getInetAddress(), server.getPort(), true);
+    assertThat(client.isMultiplexed(), Matchers.is(true));
+
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (int i = 0; i < 50; i++) {
+        results.add(executorService.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            String result = null;
+            for (int i = 0; i < 100; i++) {
+              result = client.invoke(new PingPong());
+            }
+            return result;
+          }
+        }));
+      }
+
+      for (Future<String> result : results) {
+        assertThat(result.get(), Matchers.equalTo("pong"));
+      }
+    } finally {
+      executorService.shutdown();
+      client.invoke(Server.CLOSE_OPERATION);
+      client.close();
+      server.close();
+    }
+  }
+
+  /**
+   * Ensure that a {@link Server} using the {@link Server.Engine#NIO} engine
+   * serves requests larger than it buffers for a connection, to a handler
+   * that is slow to read them.
+   */
+  @Test(timeout = 30000)
+  public void shouldServeLargeRequestsUsingSelectorEngine() throws Exception {
+
+    Server server = new Server(10000, Server.Engine.NIO);
+    server.addOperationHandler(new Echo());
+    server.open();
+
+    Client client = new Client(server.getInetAddress(), server.getPort());
+    try {
+      byte[] request = new byte[4 * 1024 * 1024];
+      new Random(42).nextBytes(request);
+
+      assertThat(client.invoke(new Echo(request)), Matchers.equalTo(request.length));
+      assertThat(client.invoke(new Echo(request)), Matchers.equalTo(request.length));
+    } finally {
+      client.invoke(Server.CLOSE_OPERATION);
+      client.close();
+      server.close();
+    }
+  }
+
+  /**
+   * Ensure that a {@link Server} using the {@link Server.Engine#NIO} engine
+   * serves more multiplexed {@link Client}s than it has worker threads, and
+   * still serves regular {@link Client}s.
+   */
+  @Test(timeout = 30000)
+  public void shouldServeMultiplexedClientsBeyondSelectorEngineWorkers() throws Exception {
+
+    Server server = new Server(10000, Server.Engine.NIO);
+    server.addOperationHandler(new PingPong());
+
+    System.setProperty(Server.NIO_WORKERS_PROPERTY, "1");
+    try {
+      server.open();
+    } finally {
+      System.clearProperty(Server.NIO_WORKERS_PROPERTY);
+    }
+
+    List<Client> clients = new ArrayList<Client>();
+    try {
+      for (int i = 0; i < 3; i++) {
+        Client client = new Client(server.getInetAddress(), server.getPort(), true);
+        clients.add(client);
+        assertThat(client.invoke(new PingPong()), Matchers.equalTo("pong"));
+      }
+
+      Client client = new Client(server.getInetAddress(), server.getPort());
+      clients.add(client);
+      assertThat(client.invoke(new PingPong()), Matchers.equalTo("pong"));
+
+      for (Client multiplexed : clients) {
+        assertThat(multiplexed.invoke(new PingPong()), Matchers.equalTo("pong"));
+      }
+    } finally {
+      for (Client client : clients) {
+        client.invoke(Server.CLOSE_OPERATION);
+        client.close();
+      }
+      server.close();
+    }
+  }
+
+  /**
+   * Ensure that many {@link Client}s may concurrently "ping" and receive a
+   * "pong" from a {@link Server} in the same JVM without using sockets.
+   */
+  @Test
+  public void shouldPingPongInProcess() throws Exception {
+
+    Server server = new Server(10000);
+    server.addOperationHandler(new PingPong());
+
+    System.setProperty(Client.TRANSPORT_PROPERTY, "local");
+    try {
+      server.open();
+      Client client = new Client(server.getInetAddress(), server.getPort());
+      assertThat(client.isInProcess(), Matchers.is(true));
+      assertThat(client.invoke(new PingPong()), Matchers.equalTo("pong"));
+      client.invoke(Server.CLOSE_OPERATION);
+      client.close();
+
+      assertConcurrentPingPong(server);
+    } finally {
+      System.clearProperty(Client.TRANSPORT_PROPERTY);
+    }
+  }
+
+  /**
+   * Ensure that a {@link Client} can "ping" a {@link Server} over a Unix
+   * domain socket, when the Java runtime supports them.
+   */
+  @Test
+  public void shouldPingPongOverUnixDomainSocket() throws Exception {
+    Assume.assumeTrue(UnixDomainSockets.isSupported());
+
+    Server server = new Server(10000);
+    server.addOperationHandler(new PingPong());
+
+    System.setProperty(Client.TRANSPORT_PROPERTY, "unix");
+    try {
+      server.open();
+      File socketFile = UnixDomainSockets.getPath(server.getPort()).toFile();
+      assertThat(socketFile.exists(), Matchers.is(true));
+
+      assertConcurrentPingPong(server);
+
+      assertThat(socketFile.exists(), Matchers.is(false));
+    } finally {
+      System.clearProperty(Client.TRANSPORT_PROPERTY);
+    }
+  }
+
+  /**
+   * Ensure that a {@link Server} fails to open on a Unix domain socket that
+   * is already in use, rather than replacing it.
+   */
+  @Test
+  public void shouldNotReplaceUnixDomainSocketInUse() throws Exception {
+    Assume.assumeTrue(UnixDomainSockets.isSupported());
+
+    Server server = new Server(10000);
+    server.addOperationHandler(new PingPong());
+
+    Server other = new Server(10000);
+    other.addOperationHandler(new PingPong());
+
+    System.setProperty(Client.TRANSPORT_PROPERTY, "unix");
+    try {
+      server.open();
+      try {
+        other.open();
+        fail("An IOException should have been thrown");
+      } catch (IOException e) {
+        // expected
+      }
+
+      assertConcurrentPingPong(server);
+    } finally {
+      other.close();
+      System.clearProperty(Client.TRANSPORT_PROPERTY);
+    }
+  }
+
+  /**
+   * Ensure that a {@link Server} records {@link OperationStatistics} for the
+   * {@link Operation}s of both regular and multiplexed {@link Client}s, and
+   * exposes them through JMX while open.
+   */
+  @Test
+  public void shouldRecordOperationStatistics() throws Exception {
+
+    Server server = new Server(10000);
+    server.addOperationHandler(new PingPong());
+
+    server.open();
+    ObjectName name = new ObjectName("org.jsr107.tck.support:type=OperationStatistics,port="
+        + server.getPort() + ",operation=" + ObjectName.quote("pingpong"));
+    try {
+      for (boolean multiplexed : new boolean[] {false, true}) {
+        Client client = new Client(server.getInetAddress(), server.getPort(), multiplexed);
+        for (int i = 0; i < 10; i++) {
+          assertThat(client.invoke(new PingPong()), Matchers.equalTo("pong"));
+        }
+        client.invoke(Server.CLOSE_OPERATION);
+        client.close();
+      }
+
+      OperationStatistics statistics = server.getOperationStatistics("pingpong");
+      assertThat(statistics.getCount(), Matchers.is(20L));
+      assertThat(statistics.getBytesIn(), Matchers.greaterThan(0L));
+      assertThat(statistics.getBytesOut(), Matchers.greaterThan(0L));
+      assertThat(statistics.getHandlerTimeMaximum(), Matchers.greaterThanOrEqualTo(statistics.getHandlerTime50thPercentile()));
+      assertThat(server.dumpOperationStatistics(), Matchers.containsString("pingpong: count=20"));
+
+      MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      assertThat(mBeanServer.getAttribute(name, "Count"), Matchers.equalTo((Object) 20L));
+    } finally {
+      server.close();
+    }
+
+    assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), Matchers.is(false));
+  }
+
+  /**
+   * Ensure that {@link Operation}s may be invoked asynchronously, completing
+   * their {@link OperationFuture}s and notifying listeners as replies arrive.
+   */
+  @Test
+  public void shouldInvokeAsynchronously() throws Exception {
+
+    Server server = new Server(10000);
+    server.addOperationHandler(new PingPong());
+
+    server.open();
+    try {
+      for (boolean multiplexed : new boolean[] {false, true}) {
+        Client client = new Client(server.getInetAddress(), server.getPort(), multiplexed);
+
+        //listeners are notified after the futures complete, so await them separately
+        final CountDownLatch notified = new CountDownLatch(100);
+        OperationFuture.Listener<String> listener = new OperationFuture.Listener<String>() {
+          @Override
+          public void onComplete(OperationFuture<String> future) {
+            if ("pong".equals(future.getNow())) {
+              notified.countDown();
+            }
+          }
+        };
+
+        List<OperationFuture<String>> futures = new ArrayList<OperationFuture<String>>();
+        for (int i = 0; i < 100; i++) {
+          OperationFuture<String> future = client.invokeAsync(new PingPong());
+          future.addListener(listener);
+          futures.add(future);
+        }
+
+        for (OperationFuture<String> future : futures) {
+          assertThat(future.get(10, TimeUnit.SECONDS), Matchers.equalTo("pong"));
+        }
+        assertThat(notified.await(10, TimeUnit.SECONDS), Matchers.is(true));
+
+        client.invoke(Server.CLOSE_OPERATION);
+        client.close();
+      }
+    } finally {
+      server.close();
+    }
+  }
+
+  /**
+   * Opens the specified {@link Server} and asserts that many concurrent
+   * {@link Client}s can "ping" it, closing the {@link Server} afterwards.
+   *
+   * @param server the {@link Server} with a {@link PingPong} handler
+   */
+  private void assertConcurrentPingPong(Server server) throws Exception {
+    server.open();
+
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (int i = 0; i < 50; i++) {
+        results.add(executorService.submit(new PingPongClient(server, 100)));
+      }
+
+      for (Future<String> result : results) {
+        assertThat(result.get(), Matchers.equalTo("pong"));
+      }
+    } finally {
+      executorService.shutdown();
+      server.close();
+    }
+  }
+
+  /**
+   * A {@link Callable} that connects a {@link Client} to a {@link Server},
+   * performs a number of {@link PingPong}s and then closes the {@link Client}.
+   */
+  private static class PingPongClient implements Callable<String> {
+    private final Server server;
+    private final int count;
+
+    PingPongClient(Server server, int count) {
+      this.server = server;
+      this.count = count;
+    }
+
+    @Override
+    public String call() throws Exception {
+      Client client = new Client(server.getInetAddress(), server.getPort());
+      try {
+        String result = null;
+        for (int i = 0; i < count; i++) {
+          result = client.invoke(new PingPong());
+        }
+        return result;
+      } finally {
+        client.invoke(Server.CLOSE_OPERATION);
+        client.close();
+      }
+    }
+  }
+
+  /**
+   * The {@link Echo} {@link Operation} and {@link OperationHandler}, replying
+   * with the length of the bytes sent, which the handler waits a while
+   * before reading.
+   */
+  public static class Echo implements Operation<Integer>, OperationHandler {
+    private final byte[] bytes;
+
+    public Echo() {
+      this(null);
+    }
+
+    public Echo(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public String getType() {
+      return "echo";
+    }
+
+    @Override
+    public Integer onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+      oos.writeObject(bytes);
+      oos.flush();
+      return (Integer) ois.readObject();
+    }
+
+    @Override
+    public void onProcess(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] request = (byte[]) ois.readObject();
+      oos.writeObject(request.length);
+    }
+  }
+
   /**
    * The {@link PingPong} {@link Operation} and {@link OperationHandler}.
    */
-  public static class PingPong implements Operation<String>, OperationHandler {
+  public static class PingPong implements AsyncOperation<String>, OperationHandler {
     @Override
     public String getType() {
       return "pingpong";
@@ -58,7 +476,17 @@ public class ClientServerTest {
 
     @Override
     public String onInvoke(ObjectInputStream ois, ObjectOutputStream oos) throws IOException, ClassNotFoundException {
+      onRequest(oos);
+      return onReply(ois);
+    }
+
+    @Override
+    public void onRequest(ObjectOutputStream oos) throws IOException {
       oos.writeObject("ping");
+    }
+
+    @Override
+    public String onReply(ObjectInputStream ois) throws IOException, ClassNotFoundException {
       return (String) ois.readObject();
     }
 
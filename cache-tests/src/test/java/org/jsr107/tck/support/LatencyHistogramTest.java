@@ -0,0 +1,57 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+
+package org.jsr107.tck.support;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link LatencyHistogram} class.
+ */
+public class LatencyHistogramTest {
+
+  /**
+   * Ensure that percentiles are estimated within the precision of the buckets.
+   */
+  @Test
+  public void shouldEstimatePercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    assertThat(histogram.getCount(), Matchers.is(1000L));
+    assertThat(histogram.getPercentile(50, TimeUnit.MICROSECONDS), Matchers.allOf(
+        Matchers.greaterThanOrEqualTo(485L), Matchers.lessThanOrEqualTo(515L)));
+    assertThat(histogram.getPercentile(99, TimeUnit.MICROSECONDS), Matchers.allOf(
+        Matchers.greaterThanOrEqualTo(960L), Matchers.lessThanOrEqualTo(1000L)));
+    assertThat(histogram.getPercentile(100, TimeUnit.MICROSECONDS), Matchers.is(1000L));
+    assertThat(histogram.getMaximum(TimeUnit.MICROSECONDS), Matchers.is(1000L));
+  }
+
+  /**
+   * Ensure that extreme latencies are recorded, and that a reset histogram is empty.
+   */
+  @Test
+  public void shouldRecordExtremesAndReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-1);
+    histogram.record(Long.MAX_VALUE);
+
+    assertThat(histogram.getPercentile(50, TimeUnit.NANOSECONDS), Matchers.is(0L));
+    assertThat(histogram.getPercentile(100, TimeUnit.NANOSECONDS), Matchers.is(Long.MAX_VALUE));
+
+    histogram.reset();
+    assertThat(histogram.getCount(), Matchers.is(0L));
+    assertThat(histogram.getPercentile(99.9, TimeUnit.NANOSECONDS), Matchers.is(0L));
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+
+package org.jsr107.tck.support;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link ResettingObjectOutputStream} class.
+ */
+public class ResettingObjectOutputStreamTest {
+
+  /**
+   * Ensure that the stream is reset every N objects and remains readable.
+   */
+  @Test
+  public void shouldResetAfterObjectLimit() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ResettingObjectOutputStream oos = new ResettingObjectOutputStream(bytes, 10, 0);
+    Codec codec = new SerializationCodec();
+
+    for (int i = 0; i < 105; i++) {
+      codec.writeObject(oos, new Date(i));
+    }
+    oos.flush();
+
+    assertThat(oos.getResetCount(), Matchers.is(10L));
+    assertThat(oos.getObjectsSinceReset(), Matchers.is(5));
+    assertThat(ResettingObjectOutputStream.getRetainedObjectCount(), Matchers.greaterThanOrEqualTo(5L));
+
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int i = 0; i < 105; i++) {
+      assertThat(codec.readObject(ois), Matchers.equalTo((Object) new Date(i)));
+    }
+    oos.close();
+  }
+
+  /**
+   * Ensure that the stream is reset once N bytes have been written.
+   */
+  @Test
+  public void shouldResetAfterByteLimit() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ResettingObjectOutputStream oos = new ResettingObjectOutputStream(bytes, 0, 4096);
+    Codec codec = new BinaryCodec();
+
+    ArrayList<Integer> value = new ArrayList<Integer>();
+    for (int i = 0; i < 100; i++) {
+      value.add(i);
+    }
+    for (int i = 0; i < 100; i++) {
+      codec.writeObject(oos, new ArrayList<Integer>(value));
+    }
+    oos.flush();
+
+    assertThat(oos.getResetCount(), Matchers.greaterThan(0L));
+    assertThat(oos.getBytesSinceReset(), Matchers.lessThan(4096L + bytes.size() / 100));
+
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int i = 0; i < 100; i++) {
+      assertThat(codec.readObject(ois), Matchers.equalTo((Object) value));
+    }
+    oos.close();
+  }
+}
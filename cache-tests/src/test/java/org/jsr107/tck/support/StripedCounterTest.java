@@ -0,0 +1,62 @@
+/**
+ *  Copyright (c) 2011-2016 Terracotta, Inc.
+ *  Copyright (c) 2011-2016 Oracle and/or its affiliates.
+ *
+ *  All rights reserved. Use is subject to license terms.
+ */
+package org.jsr107.tck.support;
+
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertThat;
+
+/**
+ * Functional Tests for the {@link StripedCounter}.
+ */
+public class StripedCounterTest {
+
+  /**
+   * Ensure that concurrent additions aren't lost, including across resets.
+   */
+  @Test
+  public void shouldNotLoseConcurrentAdditions() throws Exception {
+    final StripedCounter counter = new StripedCounter();
+
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executorService.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = 0; j < 100000; j++) {
+              counter.increment();
+            }
+            counter.add(5);
+            return null;
+          }
+        }));
+      }
+
+      long reset = 0;
+      for (int i = 0; i < 100; i++) {
+        reset += counter.reset();
+      }
+
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      assertThat(reset + counter.get(), Matchers.is(8 * 100005L));
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+}